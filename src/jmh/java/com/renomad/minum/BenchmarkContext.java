@@ -0,0 +1,47 @@
+package com.renomad.minum;
+
+import com.renomad.minum.logging.Logger;
+import com.renomad.minum.queue.ActionQueueKiller;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds a {@link Context} for benchmarks.  Unlike the one used in tests, it
+ * has an ordinary {@link Logger}, logging only errors, so that the benchmarks
+ * measure the code rather than the logging of tests.
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+        // not meant to be instantiated
+    }
+
+    public static Context build() {
+        return build(new Properties());
+    }
+
+    /**
+     * @param properties adjustments to the configuration, on top of the
+     *                   benchmark defaults
+     */
+    public static Context build(Properties properties) {
+        var allProperties = new Properties();
+        allProperties.setProperty("LOG_LEVELS", "ASYNC_ERROR");
+        allProperties.setProperty("DB_DIRECTORY", "target/benchmark_db");
+        allProperties.putAll(properties);
+        var constants = new Constants(allProperties);
+        var executorService = Executors.newVirtualThreadPerTaskExecutor();
+        var context = new Context(executorService, constants);
+        context.setLogger(new Logger(constants, executorService, "benchmarks"));
+        return context;
+    }
+
+    public static void shutdown(Context context) {
+        new ActionQueueKiller(context).killAllQueues();
+        context.getLogger().stop();
+        context.getExecutorService().shutdownNow();
+    }
+}
@@ -0,0 +1,80 @@
+package com.renomad.minum.database;
+
+import com.renomad.minum.BenchmarkContext;
+import com.renomad.minum.sampledomain.PersonName;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing to, and reading from, the database.  Writes update a fixed set of
+ * rows, so the amount of data on disk stays the same however long this runs.
+ * <p>
+ *     A write returns once the change is made in memory, and the file is
+ *     written afterwards, so {@link #write()} measures only the in-memory part.
+ *     {@link #writeAndPersist()} waits for each write to reach disk, and the
+ *     queue of pending writes is drained after every iteration, so one
+ *     iteration's backlog is not counted against the next.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbBenchmarks {
+
+    private static final int ROW_COUNT = 1000;
+
+    private Context context;
+    private Path dbDirectory;
+    private Db<PersonName> db;
+    private long nextIndex;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        context = BenchmarkContext.build();
+        dbDirectory = Path.of(context.getConstants().dbDirectory).resolve("db_benchmarks");
+        new FileUtils(context.getLogger(), context.getConstants()).deleteDirectoryRecursivelyIfExists(dbDirectory);
+        db = new Db<>(dbDirectory, context, PersonName.EMPTY);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            db.write(new PersonName(0L, "person " + i));
+        }
+        db.awaitPersisted();
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitPersisted() throws InterruptedException {
+        db.awaitPersisted();
+    }
+
+    @TearDown
+    public void tearDown() {
+        // the files are left in place, and removed at the start of the next run
+        db.stop();
+        BenchmarkContext.shutdown(context);
+    }
+
+    @Benchmark
+    public PersonName write() {
+        long index = nextIndex++ % ROW_COUNT + 1;
+        return db.write(new PersonName(index, "updated person " + index));
+    }
+
+    @Benchmark
+    public PersonName writeAndPersist() throws InterruptedException {
+        PersonName person = write();
+        db.awaitPersisted();
+        return person;
+    }
+
+    @Benchmark
+    public Collection<PersonName> values() {
+        return db.values();
+    }
+}
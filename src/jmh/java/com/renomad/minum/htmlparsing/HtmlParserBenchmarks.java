@@ -0,0 +1,48 @@
+package com.renomad.minum.htmlparsing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an HTML page into nodes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlParserBenchmarks {
+
+    private HtmlParser htmlParser;
+    private String page;
+
+    @Setup
+    public void setup() {
+        htmlParser = new HtmlParser();
+        var rows = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            rows.append("<tr class=\"row\" data-id=\"").append(i).append("\"><td>").append(i)
+                    .append("</td><td><a href=\"/photo?id=").append(i).append("\">photo ").append(i).append("</a></td></tr>\n");
+        }
+        page = """
+                <!DOCTYPE html>
+                <html lang="en">
+                <head><title>Photos</title><meta charset="utf-8"></head>
+                <body>
+                <form action="upload" method="post"><input type="text" name="description"><button>Send</button></form>
+                <table>
+                """ + rows + """
+                </table>
+                </body>
+                </html>
+                """;
+    }
+
+    @Benchmark
+    public List<HtmlParseNode> parse() {
+        return htmlParser.parse(page);
+    }
+}
@@ -0,0 +1,54 @@
+package com.renomad.minum.logging;
+
+import com.renomad.minum.BenchmarkContext;
+import com.renomad.minum.state.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost to the caller of logging, when the level is turned off,
+ * and when it is on.  Output is discarded, so this measures the logger
+ * rather than the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmarks {
+
+    @Param({"DEBUG", "ASYNC_ERROR"})
+    public String logLevels;
+
+    private Context context;
+    private ILogger logger;
+    private PrintStream originalOut;
+    private int requestNumber;
+
+    @Setup
+    public void setup() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        var properties = new Properties();
+        properties.setProperty("LOG_LEVELS", logLevels);
+        context = BenchmarkContext.build(properties);
+        logger = context.getLogger();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.shutdown(context);
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void logDebug() {
+        int number = requestNumber++;
+        logger.logDebug(() -> "handling request number " + number);
+    }
+}
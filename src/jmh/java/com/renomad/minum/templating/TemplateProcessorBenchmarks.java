@@ -0,0 +1,59 @@
+package com.renomad.minum.templating;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a template, the way most HTML pages are built
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateProcessorBenchmarks {
+
+    private static final String TEMPLATE = """
+            <!DOCTYPE html>
+            <html lang="en">
+            <head>
+                <title>{{ title }}</title>
+                <meta name="description" content="{{ description }}">
+            </head>
+            <body>
+                <header><h1>{{ title }}</h1><p>Welcome, {{ username }}</p></header>
+                <main>
+                    {{ content }}
+                </main>
+                <footer>{{ footer }}</footer>
+            </body>
+            </html>
+            """;
+
+    private TemplateProcessor templateProcessor;
+    private Map<String, String> values;
+
+    @Setup
+    public void setup() {
+        templateProcessor = TemplateProcessor.buildProcessor(TEMPLATE);
+        values = Map.of(
+                "title", "Photos of the moon",
+                "description", "A collection of photographs",
+                "username", "alice",
+                "content", "<ul><li>first</li><li>second</li><li>third</li></ul>".repeat(20),
+                "footer", "Copyright 2024");
+    }
+
+    @Benchmark
+    public TemplateProcessor buildProcessor() {
+        return TemplateProcessor.buildProcessor(TEMPLATE);
+    }
+
+    @Benchmark
+    public String renderTemplate() {
+        return templateProcessor.renderTemplate(values);
+    }
+}
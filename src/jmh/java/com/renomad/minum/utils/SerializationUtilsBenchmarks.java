@@ -0,0 +1,35 @@
+package com.renomad.minum.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting data to and from the text stored by the database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationUtilsBenchmarks {
+
+    private String serialized;
+
+    @Setup
+    public void setup() {
+        serialized = serializeHelper();
+    }
+
+    @Benchmark
+    public String serializeHelper() {
+        return SerializationUtils.serializeHelper(12345L, "alice", "a description, with | some characters & to encode", 42, null);
+    }
+
+    @Benchmark
+    public List<String> deserializeHelper() {
+        return SerializationUtils.deserializeHelper(serialized);
+    }
+}
@@ -0,0 +1,121 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.BenchmarkContext;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing bodies at a larger scale than {@link RequestParsingBenchmarks}:
+ * streaming a 100 megabyte multipart upload, and a typical url-encoded form
+ * read in bulk compared with pulling it through the streaming iterable a
+ * byte at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyProcessorBenchmarks {
+
+    private static final String BOUNDARY = "----WebKitFormBoundaryGlzbZJMmR2xSuAaT";
+    private static final int COUNT_OF_PARTITIONS = 100;
+
+    private static final String URL_ENCODED_BODY = "username=alice&email=alice%40example.com&password=correct+horse+battery+staple" +
+            "&comment=Hello+there%2C+this+is+a+longer+comment+with+some+%22punctuation%22+and+%E2%9C%93" +
+            "&remember_me=true&redirect=%2Fhome%2Fdashboard%3Ftab%3D1";
+
+    private Context context;
+    private BodyProcessor bodyProcessor;
+    private byte[] partitionHeader;
+    private byte[] partitionContent;
+    private byte[] lineEnding;
+    private byte[] closingBoundary;
+    private int multipartContentLength;
+    private byte[] urlEncodedBytes;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.build();
+        bodyProcessor = new BodyProcessor(context);
+        partitionContent = new byte[1024 * 1024];
+        for (int i = 0; i < partitionContent.length; i++) {
+            partitionContent[i] = (byte) (i % 251);
+        }
+        partitionHeader = ("--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"image_uploads\"; filename=\"photo.jpg\"\r\n" +
+                "Content-Type: image/jpeg\r\n" +
+                "\r\n").getBytes(StandardCharsets.US_ASCII);
+        lineEnding = "\r\n".getBytes(StandardCharsets.US_ASCII);
+        closingBoundary = ("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        multipartContentLength = COUNT_OF_PARTITIONS * (partitionHeader.length + partitionContent.length + lineEnding.length) + closingBoundary.length;
+        urlEncodedBytes = URL_ENCODED_BODY.getBytes(StandardCharsets.US_ASCII);
+        readBuffer = new byte[8192];
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.shutdown(context);
+    }
+
+    /**
+     * A hundred partitions of one megabyte each, read with a bulk buffer.  The
+     * body is put together from the same few arrays as it is read, so the
+     * benchmark does not need to hold 100 megabytes in memory.
+     * @return the count of bytes read from the partitions
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long multipartLargeUpload() throws IOException {
+        List<InputStream> pieces = new ArrayList<>();
+        for (int i = 0; i < COUNT_OF_PARTITIONS; i++) {
+            pieces.add(new ByteArrayInputStream(partitionHeader));
+            pieces.add(new ByteArrayInputStream(partitionContent));
+            pieces.add(new ByteArrayInputStream(lineEnding));
+        }
+        pieces.add(new ByteArrayInputStream(closingBoundary));
+        var inputStream = new SequenceInputStream(Collections.enumeration(pieces));
+
+        long totalBytesRead = 0;
+        for (StreamingMultipartPartition partition : bodyProcessor.getMultiPartIterable(inputStream, BOUNDARY, multipartContentLength)) {
+            int count;
+            while ((count = partition.read(readBuffer, 0, readBuffer.length)) != -1) {
+                totalBytesRead += count;
+            }
+        }
+        return totalBytesRead;
+    }
+
+    @Benchmark
+    public Body urlEncodedBulk() {
+        return bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(urlEncodedBytes), urlEncodedBytes.length);
+    }
+
+    /**
+     * The way url-encoded forms were parsed before reading the body in bulk
+     */
+    @Benchmark
+    public Map<String, byte[]> urlEncodedStreaming() throws IOException {
+        var result = new HashMap<String, byte[]>();
+        for (var keyValue : bodyProcessor.getUrlEncodedDataIterable(new ByteArrayInputStream(urlEncodedBytes), urlEncodedBytes.length)) {
+            String value = new String(keyValue.getUedg().readAllBytes(), StandardCharsets.US_ASCII);
+            String decoded = StringUtils.decode(value);
+            result.put(keyValue.getKey(), decoded == null ? new byte[0] : decoded.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.BenchmarkContext;
+import com.renomad.minum.state.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+/**
+ * The work done on every request: reading lines, parsing the request
+ * line and headers, parsing bodies, and the whole of it together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmarks {
+
+    private static final String HEADERS = """
+            Host: localhost:8080\r
+            User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r
+            Accept-Language: en-US,en;q=0.5\r
+            Accept-Encoding: gzip, deflate, br\r
+            Connection: keep-alive\r
+            Cookie: sessionid=abc123def456\r
+            Upgrade-Insecure-Requests: 1\r
+            \r
+            """;
+
+    private static final String URL_ENCODED_BODY = "name=alice&email=alice%40example.com&comment=hello+there%2C+friend&count=42";
+
+    private static final String MULTIPART_BODY = """
+            --i_am_a_boundary\r
+            Content-Disposition: form-data; name="description"\r
+            \r
+            a picture of the moon\r
+            --i_am_a_boundary\r
+            Content-Disposition: form-data; name="image_uploads"; filename="moon.txt"\r
+            Content-Type: text/plain\r
+            \r
+            """ + "0123456789".repeat(100) + """
+            \r
+            --i_am_a_boundary--\r
+            """;
+
+    private Context context;
+    private RequestLine emptyRequestLine;
+    private InputStreamUtils inputStreamUtils;
+    private BodyProcessor bodyProcessor;
+    private byte[] headerBytes;
+    private byte[] urlEncodedBytes;
+    private byte[] multipartBytes;
+    private byte[] fullRequestBytes;
+    private InMemoryTransport transport;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.build();
+        emptyRequestLine = new RequestLine(RequestLine.Method.NONE, PathDetails.empty, HttpVersion.NONE, "", context.getLogger());
+        inputStreamUtils = new InputStreamUtils(context.getConstants().maxReadLineSizeBytes);
+        bodyProcessor = new BodyProcessor(context);
+        headerBytes = HEADERS.getBytes(StandardCharsets.US_ASCII);
+        urlEncodedBytes = URL_ENCODED_BODY.getBytes(StandardCharsets.US_ASCII);
+        multipartBytes = MULTIPART_BODY.getBytes(StandardCharsets.US_ASCII);
+        fullRequestBytes = ("GET /hello?name=alice HTTP/1.1\r\n" + HEADERS).getBytes(StandardCharsets.US_ASCII);
+
+        var webFramework = new WebFramework(context);
+        webFramework.registerPath(GET, "hello", request -> Response.htmlOk("hello " + request.getRequestLine().queryString().get("name")));
+        transport = new InMemoryTransport(context, webFramework);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.shutdown(context);
+    }
+
+    @Benchmark
+    public RequestLine extractRequestLine() {
+        return emptyRequestLine.extractRequestLine("GET /photos/detail?id=123&size=large HTTP/1.1");
+    }
+
+    @Benchmark
+    public String readLine() throws IOException {
+        return inputStreamUtils.readLine(new ByteArrayInputStream(headerBytes));
+    }
+
+    @Benchmark
+    public Headers parseHeaders() {
+        return new Headers(Headers.getAllHeaders(new ByteArrayInputStream(headerBytes), inputStreamUtils));
+    }
+
+    @Benchmark
+    public Body parseUrlEncodedBody() {
+        return bodyProcessor.extractBodyFromInputStream(urlEncodedBytes.length,
+                "application/x-www-form-urlencoded",
+                new ByteArrayInputStream(urlEncodedBytes));
+    }
+
+    @Benchmark
+    public Body parseMultipartBody() {
+        return bodyProcessor.extractBodyFromInputStream(multipartBytes.length,
+                "multipart/form-data; boundary=i_am_a_boundary",
+                new ByteArrayInputStream(multipartBytes));
+    }
+
+    /**
+     * A whole request, from raw bytes to raw response, without a network.
+     * See {@link InMemoryTransport}
+     */
+    @Benchmark
+    public byte[] fullPipeline() throws Exception {
+        return transport.send(fullRequestBytes);
+    }
+}
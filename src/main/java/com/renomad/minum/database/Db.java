@@ -2,6 +2,10 @@ package com.renomad.minum.database;
 
 import com.renomad.minum.state.Context;
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.Counter;
+import com.renomad.minum.metrics.DbPersistEvent;
+import com.renomad.minum.metrics.Histogram;
+import com.renomad.minum.metrics.MetricsRegistry;
 import com.renomad.minum.queue.AbstractActionQueue;
 import com.renomad.minum.queue.ActionQueue;
 import com.renomad.minum.utils.FileUtils;
@@ -16,6 +20,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -63,6 +68,20 @@ public final class Db<T extends DbData<?>> {
     private final FileUtils fileUtils;
     private boolean hasLoadedData;
 
+    private final Counter writeCount;
+    private final Counter deleteCount;
+
+    /**
+     * How long from a write being made in memory until it is
+     * persisted to disk.  This grows when the disk falls behind.
+     */
+    private final Histogram persistenceLag;
+
+    /**
+     * The name of this database, used to label metrics and events
+     */
+    private final String dbName;
+
     /**
      * Constructs an in-memory disk-persisted database.
      * @param dbDirectory this uniquely names your database, and also sets the directory
@@ -83,6 +102,13 @@ public final class Db<T extends DbData<?>> {
         this.emptyInstance = instance;
         this.fileUtils = new FileUtils(logger, context.getConstants());
 
+        MetricsRegistry metrics = context.getMetrics();
+        this.dbName = String.valueOf(dbDirectory.getFileName());
+        this.writeCount = metrics.counter("minum_db_writes", "db", dbName);
+        this.deleteCount = metrics.counter("minum_db_deletes", "db", dbName);
+        this.persistenceLag = metrics.histogram("minum_db_persistence_lag", "db", dbName);
+        metrics.gauge("minum_db_entries", data::size, "db", dbName);
+
         if (Files.exists(fullPathForIndexFile)) {
             long indexValue;
             try (var fileReader = new FileReader(fullPathForIndexFile.toFile(), StandardCharsets.UTF_8)) {
@@ -120,6 +146,21 @@ public final class Db<T extends DbData<?>> {
         actionQueue.stop();
     }
 
+    /**
+     * Wait until every change made so far has been written to disk.
+     * <p>
+     *     A write or delete returns once the change is made in memory, and the
+     *     files are written afterwards, in order, on [actionQueue].  This waits for
+     *     that work to catch up, for when the files must be current, such as
+     *     when measuring how fast data is really stored.
+     * </p>
+     */
+    public void awaitPersisted() throws InterruptedException {
+        var persisted = new CountDownLatch(1);
+        actionQueue.enqueue("await persisted", persisted::countDown);
+        persisted.await();
+    }
+
     /**
      * Similar to {@link #stop()} but gives more control over how long
      * we'll wait before crashing it closed.  See {@link ActionQueue#stop(int, int)}
@@ -188,9 +229,14 @@ public final class Db<T extends DbData<?>> {
                 modificationLock.unlock();
             }
 
+            writeCount.increment();
+
             // *** now handle the disk portion ***
             boolean finalNewIndexCreated = newIndexCreated;
+            long enqueuedNanos = System.nanoTime();
             actionQueue.enqueue("persist data to disk", () -> {
+                var persistEvent = new DbPersistEvent();
+                persistEvent.begin();
                 final Path fullPath = dbDirectory.resolve(newData.getIndex() + DATABASE_FILE_SUFFIX);
                 logger.logTrace(() -> String.format("writing data to %s", fullPath));
                 String serializedData = newData.serialize();
@@ -201,6 +247,8 @@ public final class Db<T extends DbData<?>> {
                 if (finalNewIndexCreated) {
                     fileUtils.writeString(fullPathForIndexFile, String.valueOf(newData.getIndex() + 1));
                 }
+                persistEvent.finish(dbName, "write", newData.getIndex());
+                persistenceLag.record(System.nanoTime() - enqueuedNanos);
             });
 
             // returning the data at this point is the most convenient
@@ -253,9 +301,12 @@ public final class Db<T extends DbData<?>> {
             } finally {
                 modificationLock.unlock();
             }
+            deleteCount.increment();
 
             // now handle the disk portion
             actionQueue.enqueue("delete data from disk", () -> {
+                var persistEvent = new DbPersistEvent();
+                persistEvent.begin();
                 final Path fullPath = dbDirectory.resolve(dataIndex + DATABASE_FILE_SUFFIX);
                 logger.logTrace(() -> String.format("deleting data at %s", fullPath));
                 try {
@@ -267,6 +318,7 @@ public final class Db<T extends DbData<?>> {
                 } catch (Exception ex) {
                     logger.logAsyncError(() -> "failed to delete file " + fullPath + " during deleteOnDisk. Exception: " + ex);
                 }
+                persistEvent.finish(dbName, "delete", dataIndex);
             });
         } finally {
             deleteLock.unlock();
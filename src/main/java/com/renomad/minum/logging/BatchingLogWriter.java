@@ -0,0 +1,238 @@
+package com.renomad.minum.logging;
+
+import com.renomad.minum.metrics.LogFlushEvent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.renomad.minum.utils.TimeUtils.getTimestampIsoInstant;
+
+/**
+ * The backend of the {@link Logger}.  Threads logging a message put it
+ * in a {@link LogRingBuffer}, and a single thread takes them out in
+ * batches, encoding each batch with a {@link LogEncoder} into one array
+ * of bytes, which is handed to the {@link LogAppender} in one write.
+ * <p>
+ *     When the buffer is full, the {@link LogOverflowPolicy} decides
+ *     whether to wait or to throw the message away.  Thrown-away messages
+ *     are counted, and the count is logged once there is room.
+ * </p>
+ */
+final class BatchingLogWriter {
+
+    /**
+     * The most messages written together in one batch
+     */
+    static final int MAX_BATCH_MESSAGES = 1024;
+
+    /**
+     * How long the writing thread rests when there is nothing to
+     * write, unless woken sooner by a new message
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * How long a thread waits before trying again to add its message
+     * to a full buffer, under {@link LogOverflowPolicy#BLOCK}
+     */
+    private static final long FULL_BUFFER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final String name;
+    private final LogRingBuffer ringBuffer;
+    private final LogOverflowPolicy overflowPolicy;
+    private final LogAppender appender;
+
+    /**
+     * With {@link LogOverflowPolicy#DROP_TRACE_FIRST}, TRACE messages
+     * are thrown away once this many messages are waiting
+     */
+    private final int traceLimit;
+    private final LongAdder droppedCount;
+    private final CountDownLatch writerFinished;
+
+    private volatile Thread writerThread;
+    private volatile boolean isWriterParked;
+    private volatile boolean isStopRequested;
+
+    // these are only used by the writing thread
+    private final LogEncoder encoder;
+    private long droppedCountReported;
+    private boolean batchHasAudit;
+
+    BatchingLogWriter(String name, int bufferSize, LogOverflowPolicy overflowPolicy, LogFormat format, LogAppender appender) {
+        this.name = name;
+        this.ringBuffer = new LogRingBuffer(bufferSize);
+        this.overflowPolicy = overflowPolicy;
+        this.appender = appender;
+        this.traceLimit = ringBuffer.capacity() / 4 * 3;
+        this.droppedCount = new LongAdder();
+        this.writerFinished = new CountDownLatch(1);
+        this.encoder = new LogEncoder(format);
+    }
+
+    /**
+     * Start the thread which writes the log
+     */
+    BatchingLogWriter initialize(ExecutorService executorService) {
+        executorService.submit(this::writeLoop);
+        return this;
+    }
+
+    /**
+     * Add a message to be written.
+     * @param level the level of the message, or null for text to be written as-is
+     * @param fields pairs of key and value to go with the message, or null
+     * @return false if this writer is stopped, in which case the caller
+     *         should write the message some other way.
+     */
+    boolean write(LoggingLevel level, String message, String[] fields) {
+        if (isStopRequested) return false;
+        long timestampMillis = System.currentTimeMillis();
+        if (level == LoggingLevel.TRACE && overflowPolicy == LogOverflowPolicy.DROP_TRACE_FIRST && ringBuffer.size() >= traceLimit) {
+            droppedCount.increment();
+            return true;
+        }
+        while (!ringBuffer.offer(level, message, fields, timestampMillis)) {
+            if (overflowPolicy == LogOverflowPolicy.DROP || isStopRequested) {
+                droppedCount.increment();
+                return true;
+            }
+            wakeWriter();
+            LockSupport.parkNanos(FULL_BUFFER_PARK_NANOS);
+        }
+        if (isWriterParked) {
+            wakeWriter();
+        }
+        return true;
+    }
+
+    private void wakeWriter() {
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void writeLoop() {
+        Thread.currentThread().setName(name);
+        writerThread = Thread.currentThread();
+        try {
+            while (true) {
+                int count = writeBatch();
+                if (count > 0) continue;
+                if (isStopRequested || Thread.currentThread().isInterrupted()) {
+                    // one last look, for anything added while we were deciding to stop
+                    isStopRequested = true;
+                    while (writeBatch() > 0) {
+                        // writing what remains
+                    }
+                    return;
+                }
+                flushPendingSync();
+                isWriterParked = true;
+                if (ringBuffer.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                isWriterParked = false;
+            }
+        } finally {
+            isStopRequested = true;
+            try {
+                appender.close();
+            } catch (Exception ex) {
+                System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(), "failed to close " + appender + ": " + ex);
+            }
+            writerFinished.countDown();
+        }
+    }
+
+    /**
+     * Take a batch of messages from the buffer and write them out
+     * @return how many messages were written
+     */
+    private int writeBatch() {
+        var flushEvent = new LogFlushEvent();
+        flushEvent.begin();
+        int count = ringBuffer.drain(this::encode, MAX_BATCH_MESSAGES);
+        long dropped = droppedCount.sum();
+        if (dropped > droppedCountReported) {
+            encoder.encode(LoggingLevel.ASYNC_ERROR, (dropped - droppedCountReported) + " log messages were dropped because the log buffer was full. Overflow policy: " + overflowPolicy, null, System.currentTimeMillis());
+            droppedCountReported = dropped;
+        }
+        if (encoder.length() > 0) {
+            try {
+                appender.append(encoder.buffer(), encoder.length());
+                if (batchHasAudit) {
+                    appender.syncAudit();
+                }
+            } catch (Exception ex) {
+                System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(), "failed to write a batch of log messages: " + ex);
+            }
+            encoder.reset();
+            batchHasAudit = false;
+        }
+        flushEvent.finish(count);
+        return count;
+    }
+
+    private void flushPendingSync() {
+        try {
+            appender.flushPendingSync();
+        } catch (Exception ex) {
+            System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(), "failed to sync the log: " + ex);
+        }
+    }
+
+    /**
+     * Encode one message into the batch.  If that fails, whatever part of
+     * it was encoded is removed and the failure is logged in its place,
+     * so one bad message cannot stop the writing thread.
+     */
+    private void encode(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        if (level == LoggingLevel.AUDIT) {
+            batchHasAudit = true;
+        }
+        int lengthBefore = encoder.length();
+        try {
+            encoder.encode(level, message, fields, timestampMillis);
+        } catch (RuntimeException ex) {
+            encoder.truncate(lengthBefore);
+            encoder.encode(LoggingLevel.ASYNC_ERROR, "failed to encode a log message at level " + level + ": " + ex, null, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Stop accepting messages, and wait a short while for those
+     * already in the buffer to be written.
+     */
+    void stop() {
+        isStopRequested = true;
+        wakeWriter();
+        try {
+            if (!writerFinished.await(1, TimeUnit.SECONDS)) {
+                System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.DEBUG.name(), name + " did not finish writing within a second. Messages waiting: " + ringBuffer.size());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isStopped() {
+        return isStopRequested;
+    }
+
+    /**
+     * How many messages have been thrown away, see {@link LogOverflowPolicy}
+     */
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
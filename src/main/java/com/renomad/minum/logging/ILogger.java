@@ -43,6 +43,69 @@ public interface ILogger {
      */
     void logAudit(ThrowingSupplier<String, Exception> msg);
 
+    /**
+     * Logs a message with fields - pairs of key and value, such as the
+     * route or remote address - kept apart from the message.  The JSON
+     * and logfmt formats write each field as its own key, for log tools
+     * to search on (see {@link LogFormat}).  The fields need no string
+     * building by the caller, and if the level is disabled they cost
+     * nothing more than the array holding them.
+     * <pre>{@code
+     *     logger.log(LoggingLevel.AUDIT, () -> "user logged in", "user", username, "remote", remoteAddress);
+     * }</pre>
+     * <p>
+     *     By default, the fields are added to the end of the message.
+     * </p>
+     * @param fields pairs of key and value
+     */
+    default void log(LoggingLevel level, ThrowingSupplier<String, Exception> msg, String... fields) {
+        ThrowingSupplier<String, Exception> messageWithFields = () -> {
+            var sb = new StringBuilder(msg.get());
+            for (int i = 0; i < fields.length; i += 2) {
+                sb.append(' ').append(fields[i]).append('=').append(i + 1 < fields.length ? fields[i + 1] : "");
+            }
+            return sb.toString();
+        };
+        switch (level) {
+            case DEBUG -> logDebug(messageWithFields);
+            case TRACE -> logTrace(messageWithFields);
+            case ASYNC_ERROR -> logAsyncError(messageWithFields);
+            case AUDIT -> logAudit(messageWithFields);
+        }
+    }
+
+    /**
+     * Whether messages at this level are being logged.  The log methods
+     * already check this, but a caller building an expensive message -
+     * or one on a path run for every request, where even creating the
+     * lambda costs something - may check first and skip the call entirely.
+     * <pre>{@code
+     *     if (logger.isTraceEnabled()) {
+     *         logger.logTrace(() -> String.format("%s took %d millis", sw, elapsed));
+     *     }
+     * }</pre>
+     * <p>
+     *     By default, every level is enabled.
+     * </p>
+     */
+    default boolean isEnabled(LoggingLevel level) {
+        return true;
+    }
+
+    /**
+     * See {@link #isEnabled(LoggingLevel)}
+     */
+    default boolean isTraceEnabled() {
+        return isEnabled(LoggingLevel.TRACE);
+    }
+
+    /**
+     * See {@link #isEnabled(LoggingLevel)}
+     */
+    default boolean isDebugEnabled() {
+        return isEnabled(LoggingLevel.DEBUG);
+    }
+
     /**
      * When we are shutting down the system it is necessary to
      * explicitly stop the logger.
@@ -0,0 +1,42 @@
+package com.renomad.minum.logging;
+
+import java.io.IOException;
+
+/**
+ * The destination for the {@link Logger}'s output.  It receives
+ * the encoded log lines in batches, each batch as one array of bytes.
+ */
+@FunctionalInterface
+public interface LogAppender {
+
+    /**
+     * Write a batch of log lines
+     * @param bytes encoded log lines, each ending with a newline
+     * @param length how many bytes of the array to write, starting at zero
+     */
+    void append(byte[] bytes, int length) throws IOException;
+
+    /**
+     * Called after appending a batch holding AUDIT messages, for an appender
+     * able to make sure they are stored durably.  Does nothing by default.
+     */
+    default void syncAudit() throws IOException {
+        // nothing to do for most appenders
+    }
+
+    /**
+     * Called regularly while the logger has nothing to write, so an appender
+     * which put off a {@link #syncAudit()} can finish it even if no more
+     * batches arrive.  Does nothing by default.
+     */
+    default void flushPendingSync() throws IOException {
+        // nothing to do for most appenders
+    }
+
+    /**
+     * Called once, when the logger stops, after the last batch
+     */
+    default void close() throws IOException {
+        // nothing to do for most appenders
+    }
+}
@@ -0,0 +1,296 @@
+package com.renomad.minum.logging;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Encodes log messages in a {@link LogFormat}, straight into an array of
+ * bytes which is reused from batch to batch.  Each message is escaped and
+ * converted to UTF-8 as it is copied in, in one pass.
+ * <p>
+ *     Many messages share the same millisecond, so the rendered
+ *     timestamp is kept and reused until the time changes.
+ * </p>
+ * <p>
+ *     Not thread-safe - it belongs to the logger's writing thread.
+ * </p>
+ */
+final class LogEncoder {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneOffset.UTC);
+    private static final int INITIAL_BYTES = 64 * 1024;
+    private static final int MAX_RETAINED_BYTES = 1024 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final LogFormat format;
+    private byte[] buffer;
+    private int length;
+    private long cachedTimestampMillis;
+    private byte[] cachedTimestamp;
+
+    LogEncoder(LogFormat format) {
+        this(format, INITIAL_BYTES);
+    }
+
+    /**
+     * @param initialBytes the starting size of the buffer, which grows as needed
+     */
+    LogEncoder(LogFormat format, int initialBytes) {
+        this.format = format;
+        this.buffer = new byte[initialBytes];
+        this.cachedTimestampMillis = Long.MIN_VALUE;
+    }
+
+    /**
+     * Add one message, ending with a newline
+     * @param level the level of the message, or null for text to be written as-is
+     * @param fields pairs of key and value, or null
+     */
+    void encode(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        if (level == null) {
+            appendText(message, false);
+            return;
+        }
+        switch (format) {
+            case TEXT -> encodeText(level, message, fields, timestampMillis);
+            case JSON -> encodeJson(level, message, fields, timestampMillis);
+            case LOGFMT -> encodeLogfmt(level, message, fields, timestampMillis);
+        }
+        appendByte('\n');
+    }
+
+    private void encodeText(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        appendBytes(timestamp(timestampMillis));
+        appendByte('\t');
+        appendAscii(level.name());
+        appendByte('\t');
+        if (message == null) {
+            appendAscii("(NULL)");
+        } else if (message.isEmpty()) {
+            appendAscii("(EMPTY)");
+        } else if (message.isBlank()) {
+            appendAscii("(BLANK)");
+        } else {
+            appendText(message, true);
+        }
+        if (fields != null) {
+            for (int i = 0; i < fields.length; i += 2) {
+                appendByte(i == 0 ? '\t' : ' ');
+                appendText(fieldKey(fields, i), true);
+                appendByte('=');
+                appendText(fieldValue(fields, i), true);
+            }
+        }
+    }
+
+    private void encodeJson(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        appendAscii("{\"time\":\"");
+        appendBytes(timestamp(timestampMillis));
+        appendAscii("\",\"level\":\"");
+        appendAscii(level.name());
+        appendAscii("\",\"message\":");
+        appendJsonString(message);
+        if (fields != null) {
+            for (int i = 0; i < fields.length; i += 2) {
+                appendByte(',');
+                appendJsonString(fieldKey(fields, i));
+                appendByte(':');
+                appendJsonString(fieldValue(fields, i));
+            }
+        }
+        appendByte('}');
+    }
+
+    private void encodeLogfmt(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        appendAscii("time=");
+        appendBytes(timestamp(timestampMillis));
+        appendAscii(" level=");
+        appendAscii(level.name());
+        appendAscii(" msg=");
+        appendQuoted(message == null ? "(NULL)" : message);
+        if (fields != null) {
+            for (int i = 0; i < fields.length; i += 2) {
+                appendByte(' ');
+                appendText(fieldKey(fields, i), true);
+                appendByte('=');
+                String value = fieldValue(fields, i);
+                if (needsLogfmtQuotes(value)) {
+                    appendQuoted(value);
+                } else {
+                    appendText(value, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * The key at this index, with a null key shown as "null"
+     */
+    private static String fieldKey(String[] fields, int keyIndex) {
+        return fields[keyIndex] == null ? "null" : fields[keyIndex];
+    }
+
+    /**
+     * The value for the key at this index, with an unpaired
+     * key or a null value shown as empty.
+     */
+    private static String fieldValue(String[] fields, int keyIndex) {
+        if (keyIndex + 1 >= fields.length || fields[keyIndex + 1] == null) return "";
+        return fields[keyIndex + 1];
+    }
+
+    private static boolean needsLogfmtQuotes(String value) {
+        if (value.isEmpty()) return true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == '=' || c == '"' || c == '\\') return true;
+        }
+        return false;
+    }
+
+    private byte[] timestamp(long timestampMillis) {
+        if (timestampMillis != cachedTimestampMillis) {
+            cachedTimestamp = TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestampMillis)).getBytes(StandardCharsets.US_ASCII);
+            cachedTimestampMillis = timestampMillis;
+        }
+        return cachedTimestamp;
+    }
+
+    private void appendJsonString(String value) {
+        if (value == null) {
+            appendAscii("null");
+            return;
+        }
+        appendQuoted(value);
+    }
+
+    private void appendQuoted(String value) {
+        appendByte('"');
+        appendText(value, false, true);
+        appendByte('"');
+    }
+
+    private void appendText(String value, boolean isShowingWhitespace) {
+        appendText(value, isShowingWhitespace, false);
+    }
+
+    /**
+     * Copy text into the buffer as UTF-8, escaping as we go.
+     * @param isShowingWhitespace tabs, carriage returns, and newlines are shown as
+     *                            escapes, keeping a message on one line
+     * @param isQuoted the text is inside double-quotes, so quotes, backslashes,
+     *                 and all control characters are escaped
+     */
+    private void appendText(String value, boolean isShowingWhitespace, boolean isQuoted) {
+        int valueLength = value.length();
+        // the most one character can become is a six-byte escape
+        ensureCapacity(valueLength * 6);
+        byte[] b = buffer;
+        int position = length;
+        for (int i = 0; i < valueLength; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (isQuoted || isShowingWhitespace) {
+                    switch (c) {
+                        case '\t' -> { b[position++] = '\\'; b[position++] = 't'; continue; }
+                        case '\r' -> { b[position++] = '\\'; b[position++] = 'r'; continue; }
+                        case '\n' -> { b[position++] = '\\'; b[position++] = 'n'; continue; }
+                        default -> { }
+                    }
+                }
+                if (isQuoted && (c == '"' || c == '\\')) {
+                    b[position++] = '\\';
+                    b[position++] = (byte) c;
+                } else if (isQuoted && c < 0x20) {
+                    b[position++] = '\\';
+                    b[position++] = 'u';
+                    b[position++] = '0';
+                    b[position++] = '0';
+                    b[position++] = HEX[c >> 4];
+                    b[position++] = HEX[c & 0xF];
+                } else {
+                    b[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                b[position++] = (byte) (0xC0 | (c >> 6));
+                b[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < valueLength && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+                    i += 1;
+                    b[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    b[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    b[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    b[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    // half of a pair, which cannot be encoded
+                    b[position++] = '?';
+                }
+            } else {
+                b[position++] = (byte) (0xE0 | (c >> 12));
+                b[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = position;
+    }
+
+    /**
+     * Copy text known to hold only ASCII, such as a level's name
+     */
+    private void appendAscii(String value) {
+        int valueLength = value.length();
+        ensureCapacity(valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void appendBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void appendByte(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (length + additionalBytes > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, length + additionalBytes)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Throw away everything after this length, such as a message
+     * which failed partway through being encoded.
+     */
+    void truncate(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Empty the buffer for the next batch, shrinking it back if a large
+     * batch made it grow a lot.
+     */
+    void reset() {
+        length = 0;
+        if (buffer.length > MAX_RETAINED_BYTES) {
+            buffer = new byte[INITIAL_BYTES];
+        }
+    }
+}
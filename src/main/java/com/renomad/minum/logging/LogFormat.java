@@ -0,0 +1,29 @@
+package com.renomad.minum.logging;
+
+/**
+ * How the {@link Logger} writes each message.  Fields given
+ * to {@link ILogger#log(LoggingLevel, ThrowingSupplier, String...)}
+ * are written as their own keys in the structured formats.
+ */
+public enum LogFormat {
+
+    /**
+     * Tab-separated timestamp, level, and message, with any whitespace
+     * in the message shown as escapes, and fields after a further tab.
+     * For example:
+     * <pre>{@code 2024-01-31T23:59:59.123Z	DEBUG	hello world	route=login}</pre>
+     */
+    TEXT,
+
+    /**
+     * One JSON object per line.  For example:
+     * <pre>{@code {"time":"2024-01-31T23:59:59.123Z","level":"DEBUG","message":"hello world","route":"login"}}</pre>
+     */
+    JSON,
+
+    /**
+     * Space-separated keys and values, quoting values where needed.  For example:
+     * <pre>{@code time=2024-01-31T23:59:59.123Z level=DEBUG msg="hello world" route=login}</pre>
+     */
+    LOGFMT
+}
@@ -0,0 +1,29 @@
+package com.renomad.minum.logging;
+
+/**
+ * What the {@link Logger} does with a message when its buffer is
+ * full, meaning messages are arriving faster than they can be written.
+ * Messages which are thrown away are counted, and that count is
+ * written to the log once there is room.
+ */
+public enum LogOverflowPolicy {
+
+    /**
+     * The thread logging the message waits until there is room.  No
+     * message is lost, but a slow log slows the whole system.
+     */
+    BLOCK,
+
+    /**
+     * TRACE messages are thrown away once the buffer is three-quarters
+     * full, keeping the remaining room for the other levels, which
+     * wait if the buffer fills completely.
+     */
+    DROP_TRACE_FIRST,
+
+    /**
+     * Any message arriving while the buffer is full is thrown away.
+     * Logging never slows the system, at the cost of losing messages.
+     */
+    DROP
+}
@@ -0,0 +1,139 @@
+package com.renomad.minum.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of log entries, written by many threads and
+ * read by one.  Its slots are allocated once, up front, so adding
+ * an entry does not allocate, and a full buffer refuses entries
+ * rather than growing.
+ * <p>
+ *     Each slot has a sequence number, which says whose turn it is.  A
+ *     producer claims the next position by compare-and-set, fills in the
+ *     slot, and then sets its sequence to show it is ready.  The consumer
+ *     reads ready slots in order, and then sets their sequence to show
+ *     they may be written again, one lap around the ring later.
+ * </p>
+ */
+final class LogRingBuffer {
+
+    /**
+     * Receives the entries as they are taken out of the buffer
+     */
+    interface EntryConsumer {
+        void accept(LoggingLevel level, String message, String[] fields, long timestampMillis);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final LoggingLevel[] levels;
+    private final String[] messages;
+    private final String[][] fields;
+    private final long[] timestamps;
+
+    /**
+     * The next position a producer will claim
+     */
+    private final AtomicLong tail;
+
+    /**
+     * The next position the consumer will read.  Only the consumer
+     * changes this, it is atomic so producers may read it for {@link #size()}
+     */
+    private final AtomicLong head;
+
+    /**
+     * @param requestedCapacity the least number of entries to hold.  This is
+     *                          rounded up to a power of two.
+     */
+    LogRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("The log buffer must hold at least two entries. Requested: " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.levels = new LoggingLevel[capacity];
+        this.messages = new String[capacity];
+        this.fields = new String[capacity][];
+        this.timestamps = new long[capacity];
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    /**
+     * Add an entry, if there is room.
+     * @param level the level of the message, or null for text to be written as-is
+     * @param fields pairs of key and value to go with the message, or null
+     * @return false if the buffer is full
+     */
+    boolean offer(LoggingLevel level, String message, String[] fields, long timestampMillis) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[index] = level;
+                    messages[index] = message;
+                    this.fields[index] = fields;
+                    timestamps[index] = timestampMillis;
+                    // publishing the slot - the consumer will not read it before this
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the consumer has not yet emptied this slot from the last lap
+                return false;
+            } else {
+                // another producer claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take up to maxEntries entries out of the buffer, in order.  Only
+     * one thread may call this.
+     * @return how many entries were taken
+     */
+    int drain(EntryConsumer consumer, int maxEntries) {
+        long position = head.get();
+        int count = 0;
+        while (count < maxEntries) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) break;
+            LoggingLevel level = levels[index];
+            String message = messages[index];
+            String[] entryFields = fields[index];
+            long timestampMillis = timestamps[index];
+            messages[index] = null;
+            fields[index] = null;
+            // freeing the slot for the producer one lap later
+            sequences.set(index, position + capacity);
+            position += 1;
+            head.lazySet(position);
+            count += 1;
+            consumer.accept(level, message, entryFields, timestampMillis);
+        }
+        return count;
+    }
+
+    /**
+     * Roughly how many entries are waiting.  Exact only when nothing is
+     * being added or removed.
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -1,40 +1,117 @@
 package com.renomad.minum.logging;
 
-import com.renomad.minum.state.Constants;
 import com.renomad.minum.queue.AbstractActionQueue;
+import com.renomad.minum.state.Constants;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static com.renomad.minum.utils.TimeUtils.getTimestampIsoInstant;
 
 /**
  * Implementation of {@link ILogger}
+ * <p>
+ *     Messages are handed to a {@link BatchingLogWriter}, which writes
+ *     them out in batches on its own thread, to standard out or, if
+ *     {@link Constants#logFile} is set, to a {@link RollingFileAppender}.
+ *     See {@link Constants#logBufferSize} and {@link Constants#logOverflowPolicy}
+ *     for tuning its behavior under heavy logging.
+ * </p>
+ * <p>
+ *     The enabled levels are kept as bits in one volatile int, so checking
+ *     a level is a single read.  They start from {@link Constants#logLevels}
+ *     and may be changed while running with {@link #setEnabledLevels(Collection)},
+ *     and TRACE messages may be sampled with {@link #setTraceSampleRate(int)}.
+ * </p>
  */
 public class Logger implements ILogger {
     /**
-     * The {@link LoggingActionQueue} that handles all
-     * our messages thread-safely by taking
-     * them off the top of a queue.
+     * The {@link BatchingLogWriter} that takes our messages
+     * thread-safely and writes them out in order.
      */
-    protected final AbstractActionQueue loggingActionQueue;
+    final BatchingLogWriter logWriter;
+    private final LogFormat logFormat;
     private final ExecutorService executorService;
-    private final Map<LoggingLevel, Boolean> activeLogLevels;
+
+    /**
+     * The enabled levels, one bit for each, by {@link LoggingLevel#ordinal()}
+     */
+    private volatile int enabledLevelsMask;
+
+    /**
+     * One in this many TRACE messages is written
+     */
+    private volatile int traceSampleRate;
 
     /**
      * Constructor
      * @param constants used for determining enabled log levels
      * @param executorService provides thread handling for the logs, used to
-     *                        build a {@link LoggingActionQueue}
-     * @param name sets a name on the {@link LoggingActionQueue} to aid debugging, to
-     *             help distinguish queues.
+     *                        run the {@link BatchingLogWriter}
+     * @param name sets a name on the {@link BatchingLogWriter} to aid debugging, to
+     *             help distinguish loggers.
      */
     public Logger(Constants constants, ExecutorService executorService, String name) {
+        this(constants, executorService, name, buildAppender(constants, executorService, name));
+    }
+
+    /**
+     * Build a logger writing its output to the given {@link LogAppender}
+     * @param constants used for determining enabled log levels and the log buffer
+     * @param executorService provides thread handling for the logs, used to
+     *                        run the {@link BatchingLogWriter}
+     * @param name sets a name on the {@link BatchingLogWriter} to aid debugging, to
+     *             help distinguish loggers.
+     * @param appender where the log lines are written
+     */
+    public Logger(Constants constants, ExecutorService executorService, String name, LogAppender appender) {
         this.executorService = executorService;
-        loggingActionQueue = new LoggingActionQueue("loggerPrinter" + name, executorService, constants).initialize();
-        activeLogLevels = convertToMap(constants.logLevels);
+        logFormat = constants.logFormat;
+        logWriter = new BatchingLogWriter("loggerPrinter" + name, constants.logBufferSize, constants.logOverflowPolicy, logFormat, appender).initialize(executorService);
+        enabledLevelsMask = convertToMask(constants.logLevels);
+        traceSampleRate = checkTraceSampleRate(constants.traceLogSampleRate);
+    }
+
+    /**
+     * Write to the file configured in {@link Constants#logFile}, or if
+     * none, or it cannot be opened, to standard out.
+     */
+    static LogAppender buildAppender(Constants constants, ExecutorService executorService, String name) {
+        if (constants.logFile.isBlank()) {
+            return Logger::writeToStandardOut;
+        }
+        AbstractActionQueue compressionQueue = constants.compressRotatedLogFiles ?
+                new LoggingActionQueue("logCompressor" + name, executorService, constants).initialize() :
+                null;
+        try {
+            return new RollingFileAppender(
+                    Path.of(constants.logFile),
+                    constants.logFileMaxBytes,
+                    TimeUnit.MINUTES.toMillis(constants.logFileRotationMinutes),
+                    constants.auditLogSyncIntervalMillis,
+                    compressionQueue);
+        } catch (IOException ex) {
+            System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(),
+                    "Unable to open log file " + constants.logFile + ", writing the log to standard out instead: " + ex);
+            if (compressionQueue != null) {
+                compressionQueue.stop();
+            }
+            return Logger::writeToStandardOut;
+        }
+    }
+
+    private static void writeToStandardOut(byte[] bytes, int length) {
+        System.out.write(bytes, 0, length);
+        System.out.flush();
     }
 
     /**
@@ -48,30 +125,123 @@ public class Logger implements ILogger {
         return activeLogLevels;
     }
 
+    /**
+     * Convert the enabled log levels to bits, by {@link LoggingLevel#ordinal()}
+     */
+    static int convertToMask(Collection<LoggingLevel> enabledLoggingLevels) {
+        int mask = 0;
+        for (LoggingLevel level : enabledLoggingLevels) {
+            mask |= 1 << level.ordinal();
+        }
+        return mask;
+    }
+
+    @Override
+    public boolean isEnabled(LoggingLevel level) {
+        return (enabledLevelsMask & (1 << level.ordinal())) != 0;
+    }
+
+    /**
+     * Change which levels are logged, taking effect at once for all threads
+     */
+    public final void setEnabledLevels(Collection<LoggingLevel> enabledLoggingLevels) {
+        enabledLevelsMask = convertToMask(enabledLoggingLevels);
+    }
+
+    /**
+     * The levels currently being logged
+     */
+    public Set<LoggingLevel> getEnabledLevels() {
+        Set<LoggingLevel> levels = EnumSet.noneOf(LoggingLevel.class);
+        int mask = enabledLevelsMask;
+        for (LoggingLevel level : LoggingLevel.values()) {
+            if ((mask & (1 << level.ordinal())) != 0) {
+                levels.add(level);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Write only one in this many TRACE messages, chosen at random, so
+     * TRACE may be enabled for a while on a busy system without
+     * flooding the log.  One writes them all.
+     */
+    public final void setTraceSampleRate(int oneIn) {
+        traceSampleRate = checkTraceSampleRate(oneIn);
+    }
+
+    private static int checkTraceSampleRate(int oneIn) {
+        if (oneIn < 1) {
+            throw new IllegalArgumentException("The trace sample rate must be at least 1. Received: " + oneIn);
+        }
+        return oneIn;
+    }
+
+    /**
+     * See {@link #setTraceSampleRate(int)}
+     */
+    public int getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
     @Override
     public void logDebug(ThrowingSupplier<String, Exception> msg) {
-        logHelper(msg, LoggingLevel.DEBUG, activeLogLevels, loggingActionQueue);
+        write(LoggingLevel.DEBUG, msg, null);
     }
 
     @Override
     public void logTrace(ThrowingSupplier<String, Exception> msg) {
-        logHelper(msg, LoggingLevel.TRACE, activeLogLevels, loggingActionQueue);
+        write(LoggingLevel.TRACE, msg, null);
     }
 
     @Override
     public void logAudit(ThrowingSupplier<String, Exception> msg) {
-        logHelper(msg, LoggingLevel.AUDIT, activeLogLevels, loggingActionQueue);
+        write(LoggingLevel.AUDIT, msg, null);
+    }
+
+    @Override
+    public void log(LoggingLevel level, ThrowingSupplier<String, Exception> msg, String... fields) {
+        write(level, msg, fields);
     }
 
     @Override
     public void stop() {
-        this.loggingActionQueue.stop();
+        this.logWriter.stop();
         this.executorService.shutdownNow();
     }
 
     @Override
     public void logAsyncError(ThrowingSupplier<String, Exception> msg) {
-        logHelper(msg, LoggingLevel.ASYNC_ERROR, activeLogLevels, loggingActionQueue);
+        write(LoggingLevel.ASYNC_ERROR, msg, null);
+    }
+
+    /**
+     * How many messages were thrown away because the log buffer
+     * was full, see {@link LogOverflowPolicy}
+     */
+    public long getDroppedMessageCount() {
+        return logWriter.getDroppedCount();
+    }
+
+    private void write(LoggingLevel loggingLevel, ThrowingSupplier<String, Exception> msg, String[] fields) {
+        if ((enabledLevelsMask & (1 << loggingLevel.ordinal())) == 0) return;
+        if (loggingLevel == LoggingLevel.TRACE) {
+            int sampleRate = traceSampleRate;
+            if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) return;
+        }
+        String receivedMessage;
+        try {
+            receivedMessage = msg.get();
+        } catch (Exception ex) {
+            receivedMessage = "EXCEPTION DURING GET: " + ex;
+        }
+        if (!logWriter.write(loggingLevel, receivedMessage, fields)) {
+            // the writer is stopped, e.g. during shutdown, so we write directly
+            var encoder = new LogEncoder(logFormat, 256);
+            encoder.encode(loggingLevel, receivedMessage, fields, System.currentTimeMillis());
+            writeToStandardOut(encoder.buffer(), encoder.length());
+        }
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.renomad.minum.logging;
 
+import com.renomad.minum.metrics.LogFlushEvent;
 import com.renomad.minum.queue.AbstractActionQueue;
 import com.renomad.minum.queue.ActionQueue;
 import com.renomad.minum.state.Constants;
@@ -59,7 +60,10 @@ final class LoggingActionQueue implements AbstractActionQueue {
     }
 
     static void runAction(RunnableWithDescription action) {
+        var flushEvent = new LogFlushEvent();
+        flushEvent.begin();
         action.run();
+        flushEvent.finish(1);
     }
 
     /**
@@ -0,0 +1,228 @@
+package com.renomad.minum.logging;
+
+import com.renomad.minum.queue.AbstractActionQueue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static com.renomad.minum.utils.TimeUtils.getTimestampIsoInstant;
+
+/**
+ * A {@link LogAppender} writing to a file, starting a new one when the
+ * file grows too large or is too old.
+ * <p>
+ *     Each batch from the {@link BatchingLogWriter} goes to the file in
+ *     one write through a {@link FileChannel}.  When it is time to rotate,
+ *     the current file is renamed with the time appended, such
+ *     as <em>minum.log.20240131-235959</em>, and a new file is begun. Rotated
+ *     files may be compressed with gzip, which happens on a separate queue
+ *     so that logging does not wait on it.
+ * </p>
+ * <p>
+ *     The operating system may hold written data in memory for a while
+ *     before storing it on disk, where it would be lost if the machine
+ *     failed.  Because AUDIT messages record what users did, batches with
+ *     AUDIT messages are forced to disk, at most as often as the configured
+ *     interval allows.
+ * </p>
+ * <p>
+ *     Only the logger's writing thread calls this, so it needs no locking.
+ * </p>
+ */
+public final class RollingFileAppender implements LogAppender {
+
+    private static final DateTimeFormatter ROTATED_FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final long rotationIntervalMillis;
+    private final long auditSyncIntervalMillis;
+    private final AbstractActionQueue compressionQueue;
+    private final LongSupplier clock;
+
+    private FileChannel channel;
+    private long fileSize;
+    private long nextRotationMillis;
+    private long lastAuditSyncMillis;
+    private boolean isAuditSyncPending;
+
+    /**
+     * @param file the file to write.  Its directory is created if necessary.
+     * @param maxFileBytes the size past which the file is rotated, or zero to
+     *                     never rotate by size
+     * @param rotationIntervalMillis how often the file is rotated, or zero to never
+     *                               rotate by time.  Rotations happen on multiples of this
+     *                               interval since the epoch, so a day's interval rotates
+     *                               at midnight UTC.
+     * @param auditSyncIntervalMillis the least time between forcing AUDIT messages to disk.
+     *                                Zero forces every batch with an AUDIT message, and a
+     *                                negative number never forces.
+     * @param compressionQueue the queue which gzips the rotated files, or null to leave
+     *                         them uncompressed
+     */
+    public RollingFileAppender(Path file, long maxFileBytes, long rotationIntervalMillis, long auditSyncIntervalMillis, AbstractActionQueue compressionQueue) throws IOException {
+        this(file, maxFileBytes, rotationIntervalMillis, auditSyncIntervalMillis, compressionQueue, System::currentTimeMillis);
+    }
+
+    /**
+     * See {@link #RollingFileAppender(Path, long, long, long, AbstractActionQueue)}
+     * @param clock provides the current time in milliseconds, for tests
+     */
+    RollingFileAppender(Path file, long maxFileBytes, long rotationIntervalMillis, long auditSyncIntervalMillis, AbstractActionQueue compressionQueue, LongSupplier clock) throws IOException {
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.rotationIntervalMillis = rotationIntervalMillis;
+        this.auditSyncIntervalMillis = auditSyncIntervalMillis;
+        this.compressionQueue = compressionQueue;
+        this.clock = clock;
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+        nextRotationMillis = nextRotationAfter(clock.getAsLong());
+    }
+
+    private long nextRotationAfter(long now) {
+        return rotationIntervalMillis > 0 ? (now / rotationIntervalMillis + 1) * rotationIntervalMillis : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void append(byte[] bytes, int length) throws IOException {
+        if (!channel.isOpen()) {
+            // the channel closes if our thread is interrupted while writing
+            open();
+        }
+        long now = clock.getAsLong();
+        if (fileSize == 0) {
+            // nothing to rotate yet
+            nextRotationMillis = Math.max(nextRotationMillis, nextRotationAfter(now));
+        } else if (now >= nextRotationMillis || (maxFileBytes > 0 && fileSize + length > maxFileBytes)) {
+            rotate(now);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        fileSize += length;
+        if (isAuditSyncPending && auditSyncIntervalMillis >= 0 && now - lastAuditSyncMillis >= auditSyncIntervalMillis) {
+            force(now);
+        }
+    }
+
+    @Override
+    public void syncAudit() throws IOException {
+        if (auditSyncIntervalMillis < 0) return;
+        long now = clock.getAsLong();
+        if (now - lastAuditSyncMillis >= auditSyncIntervalMillis) {
+            force(now);
+        } else {
+            // too soon since the last, so this waits for a later batch
+            isAuditSyncPending = true;
+        }
+    }
+
+    /**
+     * Force AUDIT messages put off by {@link #syncAudit()} to disk, once the
+     * interval has passed, since on a quiet system no later write may come.
+     */
+    @Override
+    public void flushPendingSync() throws IOException {
+        if (!isAuditSyncPending) return;
+        long now = clock.getAsLong();
+        if (now - lastAuditSyncMillis >= auditSyncIntervalMillis) {
+            force(now);
+        }
+    }
+
+    boolean isAuditSyncPending() {
+        return isAuditSyncPending;
+    }
+
+    private void force(long now) throws IOException {
+        channel.force(false);
+        lastAuditSyncMillis = now;
+        isAuditSyncPending = false;
+    }
+
+    /**
+     * Rename the current file with the time appended, and start a new one
+     */
+    private void rotate(long now) throws IOException {
+        channel.force(false);
+        channel.close();
+        isAuditSyncPending = false;
+        Path rotatedFile = chooseRotatedFileName(now);
+        Files.move(file, rotatedFile);
+        if (compressionQueue != null) {
+            compressionQueue.enqueue("RollingFileAppender#compress(" + rotatedFile + ")", () -> compress(rotatedFile));
+        }
+        open();
+    }
+
+    private Path chooseRotatedFileName(long now) {
+        String baseName = file.getFileName() + "." + ROTATED_FILE_TIME_FORMAT.format(Instant.ofEpochMilli(now));
+        Path rotatedFile = file.resolveSibling(baseName);
+        for (int i = 1; Files.exists(rotatedFile) || Files.exists(rotatedFile.resolveSibling(rotatedFile.getFileName() + ".gz")); i++) {
+            rotatedFile = file.resolveSibling(baseName + "-" + i);
+        }
+        return rotatedFile;
+    }
+
+    /**
+     * Gzip a rotated file, then delete the original.  If this fails, the
+     * original is kept and the partial compressed file removed.
+     */
+    static void compress(Path rotatedFile) {
+        Path compressedFile = rotatedFile.resolveSibling(rotatedFile.getFileName() + ".gz");
+        try (InputStream inputStream = Files.newInputStream(rotatedFile);
+             OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(compressedFile), 64 * 1024)) {
+            inputStream.transferTo(outputStream);
+        } catch (IOException ex) {
+            System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(), "failed to compress rotated log file " + rotatedFile + ": " + ex);
+            try {
+                Files.deleteIfExists(compressedFile);
+            } catch (IOException deleteException) {
+                // leaving it - the original is still there
+            }
+            return;
+        }
+        try {
+            Files.delete(rotatedFile);
+        } catch (IOException ex) {
+            System.out.printf("%s\t%s\t%s%n", getTimestampIsoInstant(), LoggingLevel.ASYNC_ERROR.name(), "failed to delete compressed log file " + rotatedFile + ": " + ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+        if (compressionQueue != null) {
+            compressionQueue.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RollingFileAppender{" + file + "}";
+    }
+}
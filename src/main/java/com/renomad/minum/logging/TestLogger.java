@@ -98,6 +98,36 @@ private final Queue<String> recentLogLines;
         }
     }
 
+    /**
+     * Every level is reported as enabled, so that guarded messages still
+     * reach the recent log lines tests search, whatever the configured levels.
+     */
+    @Override
+    public boolean isEnabled(LoggingLevel level) {
+        return true;
+    }
+
+    /**
+     * The fields are kept in the recent log lines after the message, as
+     * key=value, so tests can search for them.
+     */
+    @Override
+    public void log(LoggingLevel level, ThrowingSupplier<String, Exception> msg, String... fields) {
+        loggingLock.lock();
+        try {
+            addToCache(() -> {
+                var sb = new StringBuilder(String.valueOf(extractMessage(msg)));
+                for (int i = 0; i < fields.length; i += 2) {
+                    sb.append(' ').append(fields[i]).append('=').append(i + 1 < fields.length ? fields[i + 1] : "");
+                }
+                return sb.toString();
+            });
+            super.log(level, msg, fields);
+        } finally {
+            loggingLock.unlock();
+        }
+    }
+
     /**
      * Provides an ability to search over the recent past log messages,
      * case-insensitively.
@@ -202,11 +232,12 @@ private final Queue<String> recentLogLines;
             final var baseLength = 11;
             final var dashes = "-".repeat(msg.length() + baseLength);
 
-            loggingActionQueue.enqueue("Testlogger#test("+msg+")", () -> {
-                testCount += 1;
-                System.out.printf("%n+%s+%n| TEST %d: %s |%n+%s+%n%n", dashes, testCount, msg, dashes);
-                recentLogLines.add(msg);
-            });
+            testCount += 1;
+            String banner = String.format("%n+%s+%n| TEST %d: %s |%n+%s+%n%n", dashes, testCount, msg, dashes);
+            if (!logWriter.write(null, banner, null)) {
+                System.out.print(banner);
+            }
+            recentLogLines.add(msg);
         } finally {
             loggingLock.unlock();
         }
@@ -218,7 +249,7 @@ private final Queue<String> recentLogLines;
 
     @Override
     public String toString() {
-        return "TestLogger using queue: " + super.loggingActionQueue.toString();
+        return "TestLogger using queue: " + logWriter;
     }
 
 }
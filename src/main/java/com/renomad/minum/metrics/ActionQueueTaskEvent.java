@@ -0,0 +1,36 @@
+package com.renomad.minum.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for one action run by an {@link com.renomad.minum.queue.ActionQueue}
+ */
+@Name("minum.ActionQueueTask")
+@Label("Action Queue Task")
+@Category({"Minum", "Queue"})
+@Description("One action run by an ActionQueue")
+@StackTrace(false)
+public final class ActionQueueTaskEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Description")
+    String description;
+
+    /**
+     * End the event, and commit it if a recording wants it
+     */
+    public void finish(String queue, String description) {
+        end();
+        if (shouldCommit()) {
+            this.queue = queue;
+            this.description = description;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.renomad.minum.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count which only goes up, such as the number of requests served.
+ * <p>
+ *     This is backed by a {@link LongAdder}, which spreads updates from many
+ *     threads across separate cells, so incrementing never waits on a lock
+ *     and rarely contends, even when every request does it.
+ * </p>
+ */
+public final class Counter {
+
+    private final LongAdder adder;
+
+    Counter() {
+        this.adder = new LongAdder();
+    }
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long amount) {
+        adder.add(amount);
+    }
+
+    /**
+     * The current total.  While other threads are updating, this is
+     * a close estimate rather than an exact snapshot.
+     */
+    public long get() {
+        return adder.sum();
+    }
+}
@@ -0,0 +1,42 @@
+package com.renomad.minum.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for a {@link com.renomad.minum.database.Db}
+ * writing data to disk, or deleting it.
+ */
+@Name("minum.DbPersist")
+@Label("Database Persistence")
+@Category({"Minum", "Database"})
+@Description("Writing data to disk, or deleting it, for a database")
+@StackTrace(false)
+public final class DbPersistEvent extends jdk.jfr.Event {
+
+    @Label("Database")
+    String db;
+
+    @Label("Action")
+    @Description("write or delete")
+    String action;
+
+    @Label("Index")
+    long index;
+
+    /**
+     * End the event, and commit it if a recording wants it
+     */
+    public void finish(String db, String action, long index) {
+        end();
+        if (shouldCommit()) {
+            this.db = db;
+            this.action = action;
+            this.index = index;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.renomad.minum.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations, in nanoseconds, for reporting percentiles.
+ * <p>
+ *     Values are counted in buckets whose width grows with their magnitude
+ *     (log-linear), so every value is kept to within about 3% of its true size,
+ *     from nanoseconds up to hours, in a fixed 15 kilobytes.  Recording is a few
+ *     arithmetic steps and atomic additions, with no locks and no allocation,
+ *     so it is safe to call from many threads on every request.
+ * </p>
+ * <p>
+ *     This shares its {@link LogLinearBuckets} with
+ *     {@link com.renomad.minum.testing.LatencyHistogram}, which is more
+ *     precise but meant for a single thread.
+ * </p>
+ */
+public final class Histogram {
+
+    /**
+     * Each power of two is split into 32 buckets, less precise than
+     * {@link com.renomad.minum.testing.LatencyHistogram} to keep each
+     * of the many histograms in the registry small.
+     */
+    static final LogLinearBuckets BUCKETS = new LogLinearBuckets(6);
+    private static final int BUCKET_COUNT = BUCKETS.bucketCount();
+
+    private final AtomicLongArray counts;
+    private final LongAdder totalCount;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    Histogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Record one duration.  Negative values are counted as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(BUCKETS.bucketIndex(value));
+        totalCount.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * The duration which the given percentage of recorded values are at or below,
+     * for example 99.9 for the 99.9th percentile.
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        return percentiles(percentile)[0];
+    }
+
+    /**
+     * Similar to {@link #percentile(double)}, for several percentiles at once,
+     * which is cheaper than asking for each separately.
+     * @param percentiles in increasing order, such as 50, 90, 99
+     * @return the durations in nanoseconds, in the same order
+     */
+    public long[] percentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] result = new long[percentiles.length];
+        if (total == 0) return result;
+        long currentMax = max.get();
+        long runningCount = 0;
+        int bucket = -1;
+        for (int p = 0; p < percentiles.length; p++) {
+            long targetCount = Math.max(1, (long) Math.ceil(Math.min(percentiles[p], 100.0) / 100.0 * total));
+            while (runningCount < targetCount && bucket < BUCKET_COUNT - 1) {
+                bucket++;
+                runningCount += snapshot[bucket];
+            }
+            result[p] = Math.min(currentMax, BUCKETS.highestValueInBucket(Math.max(0, bucket)));
+        }
+        return result;
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * The total of all recorded durations, in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * The largest duration recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * A summary in milliseconds, such as "count=1000 p50=0.401 p99=1.020 max=4.001 (ms)"
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%.3f p99=%.3f max=%.3f (ms)",
+                getCount(),
+                percentile(50) / 1e6,
+                percentile(99) / 1e6,
+                getMax() / 1e6);
+    }
+}
@@ -0,0 +1,57 @@
+package com.renomad.minum.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event spanning one HTTP request, from its request
+ * line being read until the response is sent.  The {@link HttpStageEvent}s on
+ * the same thread during this time show where the time went.
+ * <p>
+ *     When no recording is running, these cost close to nothing.  To record, start
+ *     the program with {@code -XX:StartFlightRecording=filename=minum.jfr}, or attach
+ *     with {@code jcmd <pid> JFR.start}, and then view the recording in JDK Mission
+ *     Control, or print it with {@code jfr print --events minum.HttpRequest minum.jfr}
+ * </p>
+ */
+@Name("minum.HttpRequest")
+@Label("HTTP Request")
+@Category({"Minum", "HTTP"})
+@Description("One HTTP request, from reading its request line to sending the response")
+@StackTrace(false)
+public final class HttpRequestEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Route")
+    @Description("The path the endpoint was registered with, or _static or _unmatched")
+    String route;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Remote Address")
+    String remoteAddress;
+
+    /**
+     * End the event, and commit it if a recording wants it
+     */
+    public void finish(String method, String route, String path, int status, String remoteAddress) {
+        end();
+        if (shouldCommit()) {
+            this.method = method;
+            this.route = route;
+            this.path = path;
+            this.status = status;
+            this.remoteAddress = remoteAddress;
+            commit();
+        }
+    }
+}
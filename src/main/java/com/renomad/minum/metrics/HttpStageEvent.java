@@ -0,0 +1,46 @@
+package com.renomad.minum.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for one stage of handling an HTTP request,
+ * within an {@link HttpRequestEvent}.  The stages are:
+ * <ul>
+ *     <li>{@link #READ_HEAD} - reading the headers</li>
+ *     <li>{@link #READ_BODY} - reading the body, when the endpoint asks for it</li>
+ *     <li>{@link #HANDLER} - running the endpoint, which includes reading the body</li>
+ *     <li>{@link #COMPRESS} - compressing the response with gzip</li>
+ *     <li>{@link #WRITE} - sending the response on the socket</li>
+ * </ul>
+ */
+@Name("minum.HttpStage")
+@Label("HTTP Request Stage")
+@Category({"Minum", "HTTP"})
+@Description("One stage of handling an HTTP request")
+@StackTrace(false)
+public final class HttpStageEvent extends jdk.jfr.Event {
+
+    public static final String READ_HEAD = "read head";
+    public static final String READ_BODY = "read body";
+    public static final String HANDLER = "handler";
+    public static final String COMPRESS = "compress";
+    public static final String WRITE = "write";
+
+    @Label("Stage")
+    String stage;
+
+    /**
+     * End the event, and commit it if a recording wants it
+     */
+    public void finish(String stage) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.renomad.minum.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Gauges and counters describing the Java virtual machine: heap memory, garbage
+ * collection, and threads.
+ */
+public final class JvmMetrics {
+
+    private JvmMetrics() {
+        // making this private to be clear it isn't supposed to be instantiated.
+    }
+
+    /**
+     * Register the JVM gauges and counters in the given registry.  Each is read from the
+     * JVM's management beans only when the metrics are rendered.
+     */
+    public static void register(MetricsRegistry metrics) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        metrics.gauge("jvm_heap_used_bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        metrics.gauge("jvm_heap_committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+        metrics.gauge("jvm_heap_max_bytes", () -> memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // these only go up, so they are counters, letting tools compute rates from them
+            metrics.functionCounter("jvm_gc_collections", gc::getCollectionCount, "gc", gc.getName());
+            metrics.functionCounter("jvm_gc_time_millis", gc::getCollectionTime, "gc", gc.getName());
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        metrics.gauge("jvm_platform_threads", threads::getThreadCount);
+    }
+}
@@ -0,0 +1,33 @@
+package com.renomad.minum.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for the logger writing out a batch of messages
+ */
+@Name("minum.LogFlush")
+@Label("Log Flush")
+@Category({"Minum", "Logging"})
+@Description("The logger writing out a batch of messages")
+@StackTrace(false)
+public final class LogFlushEvent extends jdk.jfr.Event {
+
+    @Label("Messages")
+    int messages;
+
+    /**
+     * End the event, and commit it if a recording wants it
+     * @param messages how many messages were written
+     */
+    public void finish(int messages) {
+        end();
+        if (shouldCommit()) {
+            this.messages = messages;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.renomad.minum.metrics;
+
+/**
+ * The bucket layout of our histograms, {@link Histogram} and
+ * {@link com.renomad.minum.testing.LatencyHistogram}.
+ * <p>
+ *     Like an HDR histogram, each power of two is split into the same number
+ *     of buckets, so bucket widths grow with the magnitude of the values
+ *     (log-linear).  Every value is kept to within a fixed fraction of its
+ *     true size, from nanoseconds up to hours, in a fixed count of buckets.
+ *     Finding the bucket of a value is a few arithmetic steps.
+ * </p>
+ */
+public final class LogLinearBuckets {
+
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final int bucketCount;
+
+    /**
+     * @param subBucketBits each power of two is split into 2^(subBucketBits - 1)
+     *                      buckets, so values are kept to within about
+     *                      1 / 2^(subBucketBits - 1) of their true size.
+     */
+    public LogLinearBuckets(int subBucketBits) {
+        this.subBucketBits = subBucketBits;
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.bucketCount = (64 - subBucketBits + 2) * subBucketHalfCount;
+    }
+
+    /**
+     * How many buckets are needed to hold every value from zero to {@link Long#MAX_VALUE}
+     */
+    public int bucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * The bucket holding this value, which must not be negative
+     */
+    public int bucketIndex(long value) {
+        if (value < subBucketCount) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (subBucketBits - 1);
+        int subBucket = (int) (value >>> shift);
+        return shift * subBucketHalfCount + subBucket;
+    }
+
+    /**
+     * The largest value which lands in this bucket
+     */
+    public long highestValueInBucket(int index) {
+        if (index < subBucketCount) return index;
+        int shift = index / subBucketHalfCount - 1;
+        long subBucket = index % subBucketHalfCount + subBucketHalfCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,176 @@
+package com.renomad.minum.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * Holds the counters, gauges, and histograms describing the running system,
+ * available from {@link com.renomad.minum.state.Context#getMetrics()}.
+ * <p>
+ *     A metric is identified by its name and its labels, which are given as
+ *     pairs of key and value.  Asking again for the same name and labels returns
+ *     the same metric, so callers may either look it up each time or keep it
+ *     in a field, which is cheaper on a hot path.
+ * </p>
+ * {@snippet :
+ *     Counter signups = context.getMetrics().counter("signups", "plan", "free");
+ *     signups.increment();
+ *
+ *     Histogram renderTime = context.getMetrics().histogram("render_duration");
+ *     long start = System.nanoTime();
+ *     renderPage();
+ *     renderTime.record(System.nanoTime() - start);
+ * }
+ * <p>
+ *     Histograms record nanoseconds.  Keep the number of distinct label values
+ *     small - every combination is a separate metric, held for the life of the program.
+ * </p>
+ */
+public final class MetricsRegistry {
+
+    /**
+     * The name of a metric and its labels, rendered in the
+     * Prometheus style, such as {@code route="login",status="200"}, or an
+     * empty string if there are no labels.
+     */
+    public record MetricKey(String name, String labels) {
+
+        /**
+         * The value of the label with this key, unescaped, or null if there is no such label
+         */
+        public String labelValue(String key) {
+            int i = 0;
+            while (i < labels.length()) {
+                int equalsIndex = labels.indexOf('=', i);
+                if (equalsIndex < 0) return null;
+                boolean isMatch = labels.startsWith(key, i) && equalsIndex - i == key.length();
+                var value = new StringBuilder();
+                int j = equalsIndex + 2;
+                for (; j < labels.length() && labels.charAt(j) != '"'; j++) {
+                    char c = labels.charAt(j);
+                    if (c == '\\') {
+                        j++;
+                        c = labels.charAt(j) == 'n' ? '\n' : labels.charAt(j);
+                    }
+                    value.append(c);
+                }
+                if (isMatch) return value.toString();
+                // skip past the closing quote and the comma
+                i = j + 2;
+            }
+            return null;
+        }
+    }
+
+    private final Map<MetricKey, Counter> counters;
+    private final Map<MetricKey, LongSupplier> functionCounters;
+    private final Map<MetricKey, LongSupplier> gauges;
+    private final Map<MetricKey, Histogram> histograms;
+
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.functionCounters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the counter with this name and labels, creating it if needed
+     * @param labels pairs of label key and value, such as "route", "login"
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(buildKey(name, labels), x -> new Counter());
+    }
+
+    /**
+     * Get the histogram with this name and labels, creating it if needed
+     * @param labels pairs of label key and value, such as "route", "login"
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(buildKey(name, labels), x -> new Histogram());
+    }
+
+    /**
+     * Register a gauge - a value which may go up and down, such as the
+     * depth of a queue.  The supplier is only called when the metrics
+     * are read, so it costs nothing in the meantime.  Registering the same
+     * name and labels again replaces the earlier supplier.
+     * @param labels pairs of label key and value, such as "queue", "DatabaseWriter"
+     */
+    public void gauge(String name, LongSupplier supplier, String... labels) {
+        gauges.put(buildKey(name, labels), supplier);
+    }
+
+    /**
+     * Register a counter whose total is kept somewhere else, such as the count
+     * of garbage collections kept by the JVM.  Like a {@link Counter}, it must
+     * only go up, and like a gauge, the supplier is only called when the metrics
+     * are read.  Registering the same name and labels again replaces the earlier
+     * supplier.  Don't use the name of a {@link Counter} here.
+     * @param labels pairs of label key and value, such as "gc", "G1 Young Generation"
+     */
+    public void functionCounter(String name, LongSupplier supplier, String... labels) {
+        functionCounters.put(buildKey(name, labels), supplier);
+    }
+
+    /**
+     * A read-only view of all counters
+     */
+    public Map<MetricKey, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * A read-only view of all counters registered with {@link #functionCounter(String, LongSupplier, String...)}
+     */
+    public Map<MetricKey, LongSupplier> getFunctionCounters() {
+        return Collections.unmodifiableMap(functionCounters);
+    }
+
+    /**
+     * A read-only view of all gauges
+     */
+    public Map<MetricKey, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * A read-only view of all histograms
+     */
+    public Map<MetricKey, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    static MetricKey buildKey(String name, String... labels) {
+        if (labels.length == 0) return new MetricKey(name, "");
+        mustBeTrue(labels.length % 2 == 0, "labels must be in pairs of key and value. Your input: " + String.join(",", labels));
+        var sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            escapeLabelValue(labels[i + 1], sb);
+            sb.append('"');
+        }
+        return new MetricKey(name, sb.toString());
+    }
+
+    /**
+     * Escape a label value as the Prometheus text format expects: backslash,
+     * double-quote, and line feed are preceded by a backslash.
+     */
+    private static void escapeLabelValue(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '"' -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                default -> sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.renomad.minum.metrics;
+
+import com.renomad.minum.metrics.MetricsRegistry.MetricKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Renders a {@link MetricsRegistry} in the Prometheus text exposition format.
+ * See <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Exposition formats</a>
+ * <p>
+ *     Counters get the conventional "_total" suffix.  Histograms are rendered
+ *     as summaries, in seconds, with the 50th, 90th, 99th and 99.9th percentiles.
+ * </p>
+ */
+public final class PrometheusFormat {
+
+    private static final String[] QUANTILE_LABELS = {"quantile=\"0.5\"", "quantile=\"0.9\"", "quantile=\"0.99\"", "quantile=\"0.999\""};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private PrometheusFormat() {
+        // making this private to be clear it isn't supposed to be instantiated.
+    }
+
+    public static String render(MetricsRegistry metrics) {
+        var sb = new StringBuilder(8 * 1024);
+
+        for (var family : groupByName(metrics.getCounters()).entrySet()) {
+            String name = family.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            for (var metric : family.getValue()) {
+                appendSample(sb, name, metric.getKey().labels(), "").append(metric.getValue().get()).append('\n');
+            }
+        }
+
+        for (var family : groupByName(metrics.getFunctionCounters()).entrySet()) {
+            String name = family.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            for (Map.Entry<MetricKey, LongSupplier> metric : family.getValue()) {
+                appendSample(sb, name, metric.getKey().labels(), "").append(metric.getValue().getAsLong()).append('\n');
+            }
+        }
+
+        for (var family : groupByName(metrics.getGauges()).entrySet()) {
+            String name = family.getKey();
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            for (Map.Entry<MetricKey, LongSupplier> metric : family.getValue()) {
+                appendSample(sb, name, metric.getKey().labels(), "").append(metric.getValue().getAsLong()).append('\n');
+            }
+        }
+
+        for (var family : groupByName(metrics.getHistograms()).entrySet()) {
+            String name = family.getKey() + "_seconds";
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (var metric : family.getValue()) {
+                String labels = metric.getKey().labels();
+                Histogram histogram = metric.getValue();
+                long[] values = histogram.percentiles(PERCENTILES);
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    appendSample(sb, name, labels, QUANTILE_LABELS[i]).append(values[i] / 1e9).append('\n');
+                }
+                appendSample(sb, name + "_sum", labels, "").append(histogram.getSum() / 1e9).append('\n');
+                appendSample(sb, name + "_count", labels, "").append(histogram.getCount()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prometheus expects all the samples of one metric to be together,
+     * so we group them by name.  Sorting by name also keeps the output stable.
+     */
+    private static <T> Map<String, List<Map.Entry<MetricKey, T>>> groupByName(Map<MetricKey, T> metrics) {
+        var result = new TreeMap<String, List<Map.Entry<MetricKey, T>>>();
+        for (var entry : metrics.entrySet()) {
+            result.computeIfAbsent(entry.getKey().name(), x -> new ArrayList<>()).add(entry);
+        }
+        return result;
+    }
+
+    private static StringBuilder appendSample(StringBuilder sb, String name, String labels, String extraLabel) {
+        sb.append(name);
+        if (!labels.isEmpty() || !extraLabel.isEmpty()) {
+            sb.append('{').append(labels);
+            if (!labels.isEmpty() && !extraLabel.isEmpty()) sb.append(',');
+            sb.append(extraLabel).append('}');
+        }
+        return sb.append(' ');
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains the {@link com.renomad.minum.metrics.MetricsRegistry}, which
+ * holds counters, gauges, and histograms describing how the system is running, and
+ * the JDK Flight Recorder events for tracing individual requests and tasks.
+ */
+package com.renomad.minum.metrics;
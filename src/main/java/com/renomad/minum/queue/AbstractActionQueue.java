@@ -57,6 +57,14 @@ public interface AbstractActionQueue {
      */
     LinkedBlockingQueue<RunnableWithDescription> getQueue();
 
+    /**
+     * The count of actions waiting to be run.  Unlike {@link #getQueue()},
+     * this does not copy the queue.
+     */
+    default int size() {
+        return getQueue().size();
+    }
+
     /**
      * Indicate whether this has had its {@link #stop()} method completed.
      */
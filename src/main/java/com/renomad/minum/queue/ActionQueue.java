@@ -2,6 +2,8 @@ package com.renomad.minum.queue;
 
 import com.renomad.minum.state.Context;
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.ActionQueueTaskEvent;
+import com.renomad.minum.metrics.Histogram;
 import com.renomad.minum.utils.*;
 
 import java.util.concurrent.*;
@@ -21,6 +23,10 @@ public final class ActionQueue implements AbstractActionQueue {
     private final ExecutorService queueExecutor;
     private final LinkedBlockingQueue<RunnableWithDescription> queue;
     private final ILogger logger;
+    /**
+     * How long each action takes to run
+     */
+    private final Histogram runDuration;
     private boolean stop = false;
     private Thread queueThread;
     private boolean isStoppedStatus;
@@ -37,6 +43,8 @@ public final class ActionQueue implements AbstractActionQueue {
         this.queue = new LinkedBlockingQueue<>();
         context.getActionQueueState().offerToQueue(this);
         this.logger = context.getLogger();
+        this.runDuration = context.getMetrics().histogram("minum_action_queue_run_duration", "queue", name);
+        context.getMetrics().gauge("minum_action_queue_depth", queue::size, "queue", name);
     }
 
     // Regarding the InfiniteLoopStatement - indeed, we expect that the while loop
@@ -68,11 +76,16 @@ public final class ActionQueue implements AbstractActionQueue {
 
     private void runAction() throws InterruptedException {
         RunnableWithDescription action = queue.take();
+        long startNanos = System.nanoTime();
+        var taskEvent = new ActionQueueTaskEvent();
+        taskEvent.begin();
         try {
             action.run();
         } catch (Exception e) {
             logger.logAsyncError(() -> StacktraceUtils.stackTraceToString(e));
         }
+        taskEvent.finish(name, action.toString());
+        runDuration.record(System.nanoTime() - startNanos);
     }
 
     /**
@@ -142,6 +155,11 @@ public final class ActionQueue implements AbstractActionQueue {
         return new LinkedBlockingQueue<>(queue);
     }
 
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
     @Override
     public boolean isStopped() {
         return isStoppedStatus;
@@ -1,5 +1,6 @@
 package com.renomad.minum.queue;
 
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -34,4 +35,11 @@ public class ActionQueueState {
         return aqQueue.isEmpty();
     }
 
+    /**
+     * A snapshot of the action queues currently registered
+     */
+    public List<AbstractActionQueue> getQueues() {
+        return List.copyOf(aqQueue);
+    }
+
 }
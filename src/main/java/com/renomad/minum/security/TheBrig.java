@@ -4,6 +4,7 @@ import com.renomad.minum.state.Constants;
 import com.renomad.minum.state.Context;
 import com.renomad.minum.database.Db;
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.Counter;
 import com.renomad.minum.utils.SearchUtils;
 import com.renomad.minum.utils.ThrowingRunnable;
 import com.renomad.minum.utils.TimeUtils;
@@ -23,6 +24,11 @@ public final class TheBrig implements ITheBrig {
     private final ReentrantLock lock = new ReentrantLock();
     private Thread myThread;
 
+    /**
+     * The count of times a client was sent to jail, or had their sentence extended
+     */
+    private final Counter sentenceCount;
+
     /**
      * How long our inner thread will sleep before waking up to scan
      * for old keys
@@ -35,6 +41,7 @@ public final class TheBrig implements ITheBrig {
         this.logger = context.getLogger();
         this.inmatesDb = context.getDb("the_brig", Inmate.EMPTY);
         this.sleepTime = sleepTime;
+        this.sentenceCount = context.getMetrics().counter("minum_brig_sentences");
     }
 
     /**
@@ -155,6 +162,7 @@ public final class TheBrig implements ITheBrig {
         } finally {
             lock.unlock();
         }
+        sentenceCount.increment();
         return true;
 
     }
@@ -1,5 +1,7 @@
 package com.renomad.minum.state;
 
+import com.renomad.minum.logging.LogFormat;
+import com.renomad.minum.logging.LogOverflowPolicy;
 import com.renomad.minum.logging.LoggingLevel;
 import com.renomad.minum.utils.TimeUtils;
 
@@ -28,6 +30,15 @@ public final class Constants {
         dbDirectory = properties.getProperty("DB_DIRECTORY",  "db");
         staticFilesDirectory = properties.getProperty("STATIC_FILES_DIRECTORY",  "static");
         logLevels = convertLoggingStringsToEnums(getProp("LOG_LEVELS", "DEBUG,TRACE,ASYNC_ERROR,AUDIT"));
+        traceLogSampleRate = getProp("TRACE_LOG_SAMPLE_RATE", 1);
+        logBufferSize = getProp("LOG_BUFFER_SIZE", 8 * 1024);
+        logOverflowPolicy = LogOverflowPolicy.valueOf(properties.getProperty("LOG_OVERFLOW_POLICY", "DROP_TRACE_FIRST").trim().toUpperCase(Locale.ROOT));
+        logFormat = LogFormat.valueOf(properties.getProperty("LOG_FORMAT", "TEXT").trim().toUpperCase(Locale.ROOT));
+        logFile = properties.getProperty("LOG_FILE", "");
+        logFileMaxBytes = getProp("LOG_FILE_MAX_BYTES", 100 * 1024 * 1024);
+        logFileRotationMinutes = getProp("LOG_FILE_ROTATION_MINUTES", 24 * 60);
+        compressRotatedLogFiles = getProp("COMPRESS_ROTATED_LOG_FILES", true);
+        auditLogSyncIntervalMillis = getProp("AUDIT_LOG_SYNC_INTERVAL_MILLIS", 0);
         keystorePath = properties.getProperty("KEYSTORE_PATH",  "");
         keystorePassword = properties.getProperty("KEYSTORE_PASSWORD",  "");
         maxReadSizeBytes = getProp("MAX_READ_SIZE_BYTES",  10 * 1024 * 1024);
@@ -43,6 +54,15 @@ public final class Constants {
         staticFileCacheTime = getProp("STATIC_FILE_CACHE_TIME", 60 * 5);
         useCacheForStaticFiles = getProp("USE_CACHE_FOR_STATIC_FILES", true);
         maxElementsLruCacheStaticFiles = getProp("MAX_ELEMENTS_LRU_CACHE_STATIC_FILES", 1000);
+        multipartTempDirectory = properties.getProperty("MULTIPART_TEMP_DIRECTORY", "");
+        multipartInMemoryThresholdBytes = getProp("MULTIPART_IN_MEMORY_THRESHOLD_BYTES", 1024 * 1024);
+        maxStreamedBodySizeBytes = getProp("MAX_STREAMED_BODY_SIZE_BYTES", 1024L * 1024 * 1024);
+        maxWebSocketConnections = getProp("MAX_WEBSOCKET_CONNECTIONS", 1000);
+        maxWebSocketMessageSizeBytes = getProp("MAX_WEBSOCKET_MESSAGE_SIZE_BYTES", 1024 * 1024);
+        responseCacheMaxBytes = getProp("RESPONSE_CACHE_MAX_BYTES", 10 * 1024 * 1024);
+        bulkheadLimits = getProp("BULKHEAD_LIMITS", "");
+        bulkheadQueueTimeoutMillis = getProp("BULKHEAD_QUEUE_TIMEOUT_MILLIS", 10 * 1000);
+        isEndpointAccountingEnabled = getProp("IS_ENDPOINT_ACCOUNTING_ENABLED", false);
     }
 
     /**
@@ -75,6 +95,60 @@ public final class Constants {
      */
     public final List<LoggingLevel> logLevels;
 
+    /**
+     * When TRACE is enabled, one in this many TRACE messages is written,
+     * chosen at random.  One writes them all.  This, like the enabled
+     * log levels, may be changed while running - see {@link com.renomad.minum.logging.Logger#setTraceSampleRate(int)}
+     */
+    public final int traceLogSampleRate;
+
+    /**
+     * How many log messages may wait to be written before the
+     * {@link #logOverflowPolicy} applies.  Rounded up to a power of two.
+     */
+    public final int logBufferSize;
+
+    /**
+     * What to do with log messages arriving faster than they
+     * can be written, see {@link LogOverflowPolicy}
+     */
+    public final LogOverflowPolicy logOverflowPolicy;
+
+    /**
+     * How each log message is written, as text or as structured
+     * JSON or logfmt. See {@link LogFormat}
+     */
+    public final LogFormat logFormat;
+
+    /**
+     * The file to write the log to, or blank to write to standard out.
+     * See {@link com.renomad.minum.logging.RollingFileAppender}
+     */
+    public final String logFile;
+
+    /**
+     * The size in bytes past which the log file is rotated, or zero for no limit
+     */
+    public final int logFileMaxBytes;
+
+    /**
+     * How many minutes between rotations of the log file, or zero to only
+     * rotate by size.  The default, a day, rotates at midnight UTC.
+     */
+    public final int logFileRotationMinutes;
+
+    /**
+     * Whether rotated log files are compressed with gzip
+     */
+    public final boolean compressRotatedLogFiles;
+
+    /**
+     * The least milliseconds between forcing AUDIT log messages to disk.  Zero
+     * forces every write with an AUDIT message, negative never forces.  Only
+     * applies when writing to a {@link #logFile}.
+     */
+    public final int auditLogSyncIntervalMillis;
+
     /**
      * The path to the keystore, required for encrypted TLS communication
      */
@@ -188,6 +262,79 @@ public final class Constants {
      */
     public final int maxElementsLruCacheStaticFiles;
 
+    /**
+     * A directory for temporary files holding large multipart partitions.
+     * <p>
+     *     If blank (the default), every partition of a multipart body is held in memory
+     *     when reading with {@link com.renomad.minum.web.IRequest#getBody()}.  If set,
+     *     partitions larger than {@link #multipartInMemoryThresholdBytes} are streamed
+     *     into a file in this directory instead, and the file is deleted after the response
+     *     is sent.  This allows raising {@link #maxReadSizeBytes} for large uploads without
+     *     holding the uploads on the heap.
+     * </p>
+     */
+    public final String multipartTempDirectory;
+
+    /**
+     * If {@link #multipartTempDirectory} is set, multipart partitions larger than
+     * this many bytes are stored on disk rather than in memory.
+     */
+    public final int multipartInMemoryThresholdBytes;
+
+    /**
+     * This is the most bytes we'll accept in a body which is streamed directly
+     * to a file or channel, using {@link com.renomad.minum.web.IRequest#writeBodyTo(java.nio.file.Path)}.
+     * Since those bytes never pass through memory all at once, this can be far
+     * larger than {@link #maxReadSizeBytes}.
+     */
+    public final long maxStreamedBodySizeBytes;
+
+    /**
+     * The most WebSocket connections we will hold open at once, across
+     * all registered WebSocket paths.  Beyond this, upgrade requests
+     * receive a 503 Service Unavailable.
+     * See {@link com.renomad.minum.web.WebFramework#registerWebSocket(String, com.renomad.minum.web.WebSocketHandler)}
+     */
+    public final int maxWebSocketConnections;
+
+    /**
+     * The largest WebSocket message we will accept, in bytes, after
+     * joining any fragments.  A client sending more is disconnected
+     * with a close code of 1009 (message too big).
+     */
+    public final int maxWebSocketMessageSizeBytes;
+
+    /**
+     * The most bytes held by the cache of responses from endpoints, counting
+     * both the plain and compressed copies.  When full, the least-recently
+     * used entries are dropped.  See {@link com.renomad.minum.web.CachePolicy}
+     */
+    public final int responseCacheMaxBytes;
+
+    /**
+     * Adjustments to the limits for each kind of work, replacing the defaults
+     * in {@link com.renomad.minum.web.WorkClass}.  Given in groups of three: the
+     * name of the work class, how many may run at once, and how many may wait.
+     * <p>
+     *     Example: {@code auth,8,100,uploads,4,20}
+     * </p>
+     */
+    public final List<String> bulkheadLimits;
+
+    /**
+     * The most time a request will wait for its turn, when its kind of work
+     * is at its limit, before receiving a 503.  See {@link com.renomad.minum.web.Bulkhead}
+     */
+    public final int bulkheadQueueTimeoutMillis;
+
+    /**
+     * If true, the CPU time and memory allocated by each endpoint are measured
+     * and added up by route, shown in the metrics and diagnostics.  This
+     * runs endpoints on platform threads, which costs some throughput, so
+     * it is off by default.  See {@link com.renomad.minum.web.WebFramework}
+     */
+    public final boolean isEndpointAccountingEnabled;
+
     /**
      * A helper method to remove some redundant boilerplate code for grabbing
      * configuration values from minum.config
@@ -196,6 +343,14 @@ public final class Constants {
         return Integer.parseInt(properties.getProperty(propName, String.valueOf(propDefault)));
     }
 
+    /**
+     * A helper method to remove some redundant boilerplate code for grabbing
+     * configuration values from minum.config
+     */
+    private long getProp(String propName, long propDefault) {
+        return Long.parseLong(properties.getProperty(propName, String.valueOf(propDefault)));
+    }
+
     /**
      * A helper method to remove some redundant boilerplate code for grabbing
      * configuration values from minum.config
@@ -291,12 +446,12 @@ public final class Constants {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Constants constants = (Constants) o;
-        return serverPort == constants.serverPort && secureServerPort == constants.secureServerPort && maxReadSizeBytes == constants.maxReadSizeBytes && maxReadLineSizeBytes == constants.maxReadLineSizeBytes && socketTimeoutMillis == constants.socketTimeoutMillis && keepAliveTimeoutSeconds == constants.keepAliveTimeoutSeconds && vulnSeekingJailDuration == constants.vulnSeekingJailDuration && isTheBrigEnabled == constants.isTheBrigEnabled && startTime == constants.startTime && staticFileCacheTime == constants.staticFileCacheTime && useCacheForStaticFiles == constants.useCacheForStaticFiles && maxElementsLruCacheStaticFiles == constants.maxElementsLruCacheStaticFiles && Objects.equals(properties, constants.properties) && Objects.equals(hostName, constants.hostName) && Objects.equals(dbDirectory, constants.dbDirectory) && Objects.equals(staticFilesDirectory, constants.staticFilesDirectory) && Objects.equals(logLevels, constants.logLevels) && Objects.equals(keystorePath, constants.keystorePath) && Objects.equals(keystorePassword, constants.keystorePassword) && Objects.equals(suspiciousErrors, constants.suspiciousErrors) && Objects.equals(suspiciousPaths, constants.suspiciousPaths) && Objects.equals(extraMimeMappings, constants.extraMimeMappings);
+        return serverPort == constants.serverPort && secureServerPort == constants.secureServerPort && maxReadSizeBytes == constants.maxReadSizeBytes && maxReadLineSizeBytes == constants.maxReadLineSizeBytes && socketTimeoutMillis == constants.socketTimeoutMillis && keepAliveTimeoutSeconds == constants.keepAliveTimeoutSeconds && vulnSeekingJailDuration == constants.vulnSeekingJailDuration && isTheBrigEnabled == constants.isTheBrigEnabled && startTime == constants.startTime && staticFileCacheTime == constants.staticFileCacheTime && useCacheForStaticFiles == constants.useCacheForStaticFiles && maxElementsLruCacheStaticFiles == constants.maxElementsLruCacheStaticFiles && multipartInMemoryThresholdBytes == constants.multipartInMemoryThresholdBytes && maxStreamedBodySizeBytes == constants.maxStreamedBodySizeBytes && maxWebSocketConnections == constants.maxWebSocketConnections && maxWebSocketMessageSizeBytes == constants.maxWebSocketMessageSizeBytes && responseCacheMaxBytes == constants.responseCacheMaxBytes && bulkheadQueueTimeoutMillis == constants.bulkheadQueueTimeoutMillis && isEndpointAccountingEnabled == constants.isEndpointAccountingEnabled && logBufferSize == constants.logBufferSize && logOverflowPolicy == constants.logOverflowPolicy && logFormat == constants.logFormat && logFileMaxBytes == constants.logFileMaxBytes && logFileRotationMinutes == constants.logFileRotationMinutes && compressRotatedLogFiles == constants.compressRotatedLogFiles && auditLogSyncIntervalMillis == constants.auditLogSyncIntervalMillis && Objects.equals(logFile, constants.logFile) && Objects.equals(bulkheadLimits, constants.bulkheadLimits) && Objects.equals(properties, constants.properties) && Objects.equals(hostName, constants.hostName) && Objects.equals(dbDirectory, constants.dbDirectory) && Objects.equals(staticFilesDirectory, constants.staticFilesDirectory) && Objects.equals(logLevels, constants.logLevels) && traceLogSampleRate == constants.traceLogSampleRate && Objects.equals(keystorePath, constants.keystorePath) && Objects.equals(keystorePassword, constants.keystorePassword) && Objects.equals(suspiciousErrors, constants.suspiciousErrors) && Objects.equals(suspiciousPaths, constants.suspiciousPaths) && Objects.equals(extraMimeMappings, constants.extraMimeMappings) && Objects.equals(multipartTempDirectory, constants.multipartTempDirectory);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(properties, serverPort, secureServerPort, hostName, dbDirectory, staticFilesDirectory, logLevels, keystorePath, keystorePassword, maxReadSizeBytes, maxReadLineSizeBytes, socketTimeoutMillis, keepAliveTimeoutSeconds, vulnSeekingJailDuration, isTheBrigEnabled, suspiciousErrors, suspiciousPaths, startTime, extraMimeMappings, staticFileCacheTime, useCacheForStaticFiles, maxElementsLruCacheStaticFiles);
+        return Objects.hash(properties, serverPort, secureServerPort, hostName, dbDirectory, staticFilesDirectory, logLevels, traceLogSampleRate, keystorePath, keystorePassword, maxReadSizeBytes, maxReadLineSizeBytes, socketTimeoutMillis, keepAliveTimeoutSeconds, vulnSeekingJailDuration, isTheBrigEnabled, suspiciousErrors, suspiciousPaths, startTime, extraMimeMappings, staticFileCacheTime, useCacheForStaticFiles, maxElementsLruCacheStaticFiles, multipartTempDirectory, multipartInMemoryThresholdBytes, maxStreamedBodySizeBytes, maxWebSocketConnections, maxWebSocketMessageSizeBytes, responseCacheMaxBytes, bulkheadLimits, bulkheadQueueTimeoutMillis, isEndpointAccountingEnabled, logBufferSize, logOverflowPolicy, logFormat, logFile, logFileMaxBytes, logFileRotationMinutes, compressRotatedLogFiles, auditLogSyncIntervalMillis);
     }
 }
 
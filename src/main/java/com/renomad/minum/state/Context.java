@@ -3,6 +3,7 @@ package com.renomad.minum.state;
 import com.renomad.minum.database.Db;
 import com.renomad.minum.database.DbData;
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.MetricsRegistry;
 import com.renomad.minum.queue.ActionQueueState;
 import com.renomad.minum.web.FullSystem;
 
@@ -20,6 +21,7 @@ import java.util.concurrent.ExecutorService;
  *     <li>Building a Minum {@link Db} database</li>
  *     <li>Getting system constants like the database directory</li>
  *     <li>Getting the system {@link ExecutorService} for starting threads or an {@link com.renomad.minum.queue.ActionQueue}</li>
+ *     <li>Getting the {@link MetricsRegistry}, for counting and timing what the system does</li>
  *     <li>Getting a {@link FullSystem} object, which has</li>
  *     <ul>
  *         <li>the {@link com.renomad.minum.web.WebFramework}, which registers endpoints</li>
@@ -35,11 +37,13 @@ public final class Context {
     private final Constants constants;
     private FullSystem fullSystem;
     private final ActionQueueState actionQueueState;
+    private final MetricsRegistry metrics;
 
     public Context(ExecutorService executorService, Constants constants) {
         this.executorService = executorService;
         this.constants = constants;
         actionQueueState = new ActionQueueState();
+        metrics = new MetricsRegistry();
     }
 
     public void setLogger(ILogger logger) {
@@ -70,6 +74,13 @@ public final class Context {
         return actionQueueState;
     }
 
+    /**
+     * The counters, gauges and histograms describing this running system
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     /**
      * This is a helper method to instantiate a {@link Db} class,
      * avoiding the need for a user to provide the root database
@@ -0,0 +1,121 @@
+package com.renomad.minum.testing;
+
+import com.renomad.minum.metrics.LogLinearBuckets;
+
+/**
+ * Records latencies, in nanoseconds, for reporting percentiles.
+ * <p>
+ *     Like an HDR histogram, values are counted in buckets whose width grows
+ *     with their magnitude (see {@link LogLinearBuckets}), so that every value is kept to within about 1.6%
+ *     of its true size, from nanoseconds up to hours, in a fixed and small
+ *     amount of memory.  Recording a value is a few arithmetic steps and no
+ *     allocation, so it is cheap enough to run for every request.
+ * </p>
+ * <p>
+ *     This is not thread-safe.  Give each thread its own, and combine them
+ *     afterwards with {@link #add(LatencyHistogram)}.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Each power of two is split into 64 buckets
+     */
+    static final LogLinearBuckets BUCKETS = new LogLinearBuckets(7);
+    private static final int BUCKET_COUNT = BUCKETS.bucketCount();
+
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long min;
+    private long max;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+        this.min = Long.MAX_VALUE;
+    }
+
+    /**
+     * Record one latency.  Negative values are counted as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[BUCKETS.bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the values recorded in another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * The latency which the given percentage of recorded values are at or below,
+     * for example 99.9 for the 99.9th percentile.
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long targetCount = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += counts[i];
+            if (runningCount >= targetCount) {
+                return Math.min(max, Math.max(min, BUCKETS.highestValueInBucket(i)));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * The smallest latency recorded, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * The largest latency recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * The average latency, in nanoseconds
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * A summary in milliseconds, such as "count=1000 min=0.210 p50=0.401 p90=0.652 p99=1.020 p99.9=3.114 max=4.001 mean=0.450 (ms)"
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f mean=%.3f (ms)",
+                totalCount,
+                getMin() / 1e6,
+                percentile(50) / 1e6,
+                percentile(90) / 1e6,
+                percentile(99) / 1e6,
+                percentile(99.9) / 1e6,
+                getMax() / 1e6,
+                getMean() / 1e6);
+    }
+}
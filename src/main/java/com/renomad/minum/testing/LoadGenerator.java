@@ -0,0 +1,478 @@
+package com.renomad.minum.testing;
+
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.web.FullSystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * Sends many HTTP requests to a server at once, and measures how it copes.
+ * <p>
+ *     Each of the concurrent workers keeps its own connection open and reuses it
+ *     (HTTP keep-alive), as a browser or a proxy would, so the measurements are
+ *     of the server rather than of opening connections.  Each worker reads
+ *     responses through its own buffer, and the latencies are kept in a
+ *     {@link LatencyHistogram} per worker, merged at the end.
+ * </p>
+ * <p>
+ *     There are two modes:
+ * </p>
+ * <ul>
+ *     <li>
+ *         <b>Closed-loop</b> (the default) - each worker sends its next request as
+ *         soon as the previous response arrives.  This finds the greatest throughput.
+ *     </li>
+ *     <li>
+ *         <b>Constant-rate</b> - see {@link #withConstantRate(double)}.  Requests are
+ *         scheduled at a fixed rate regardless of how quickly the server responds, and
+ *         latency is measured from when each was scheduled.  This shows how the
+ *         server behaves at a given load, including the queueing a slow response
+ *         causes for the requests behind it.
+ *     </li>
+ * </ul>
+ * <p>
+ *     Here is an example, run against a system started in the same program:
+ * </p>
+ * <pre>{@code
+ * FullSystem fs = FullSystem.initialize();
+ * LoadResult result = LoadGenerator.forFullSystem(fs, List.of(
+ *             LoadRequest.get("photos").withWeight(9),
+ *             LoadRequest.post("upload", "application/x-www-form-urlencoded", "name=moon")))
+ *         .withConcurrency(50)
+ *         .withDuration(Duration.ofSeconds(30))
+ *         .run();
+ * System.out.println(result);
+ * }</pre>
+ */
+public final class LoadGenerator {
+
+    /**
+     * How long to wait on the server before a request is counted as failed
+     */
+    private static final int SOCKET_TIMEOUT_MILLIS = 30_000;
+
+    private final String host;
+    private final int port;
+    private final List<LoadRequest> requestMix;
+    private final int concurrency;
+    private final Duration duration;
+    private final long maxRequests;
+    private final double requestsPerSecond;
+    private final boolean isKeepAlive;
+
+    /**
+     * Build a load generator for a server at the given host and port.  By default,
+     * it runs 10 workers in the closed-loop mode for 10 seconds.
+     * @param requestMix the requests to send, each chosen at random according to its weight
+     */
+    public LoadGenerator(String host, int port, List<LoadRequest> requestMix) {
+        this(host, port, requestMix, 10, Duration.ofSeconds(10), Long.MAX_VALUE, 0, true);
+    }
+
+    private LoadGenerator(String host, int port, List<LoadRequest> requestMix, int concurrency,
+                          Duration duration, long maxRequests, double requestsPerSecond, boolean isKeepAlive) {
+        mustBeTrue(!requestMix.isEmpty(), "The load generator needs at least one request to send");
+        this.host = host;
+        this.port = port;
+        this.requestMix = List.copyOf(requestMix);
+        this.concurrency = concurrency;
+        this.duration = duration;
+        this.maxRequests = maxRequests;
+        this.requestsPerSecond = requestsPerSecond;
+        this.isKeepAlive = isKeepAlive;
+    }
+
+    /**
+     * Build a load generator aimed at the plain-text server of a running {@link FullSystem}
+     */
+    public static LoadGenerator forFullSystem(FullSystem fullSystem, List<LoadRequest> requestMix) {
+        Constants constants = fullSystem.getContext().getConstants();
+        return new LoadGenerator(constants.hostName, constants.serverPort, requestMix);
+    }
+
+    /**
+     * How many requests may be underway at once, each with its own connection
+     */
+    public LoadGenerator withConcurrency(int concurrency) {
+        mustBeTrue(concurrency > 0, "The concurrency of the load generator must be positive");
+        return new LoadGenerator(host, port, requestMix, concurrency, duration, maxRequests, requestsPerSecond, isKeepAlive);
+    }
+
+    /**
+     * How long to run.  The run ends at this time, or after
+     * {@link #withMaxRequests(long)}, whichever comes first.
+     */
+    public LoadGenerator withDuration(Duration duration) {
+        mustBeTrue(duration.isPositive(), "The duration of the load generator must be positive");
+        return new LoadGenerator(host, port, requestMix, concurrency, duration, maxRequests, requestsPerSecond, isKeepAlive);
+    }
+
+    /**
+     * How many requests to send in total
+     */
+    public LoadGenerator withMaxRequests(long maxRequests) {
+        mustBeTrue(maxRequests > 0, "The maximum count of requests must be positive");
+        return new LoadGenerator(host, port, requestMix, concurrency, duration, maxRequests, requestsPerSecond, isKeepAlive);
+    }
+
+    /**
+     * Send requests at a constant rate, rather than as fast as the server answers.
+     * The concurrency must be large enough to keep up with the rate, or requests
+     * will queue behind one another, which shows in the latencies.
+     */
+    public LoadGenerator withConstantRate(double requestsPerSecond) {
+        mustBeTrue(requestsPerSecond > 0, "The rate of requests must be positive");
+        return new LoadGenerator(host, port, requestMix, concurrency, duration, maxRequests, requestsPerSecond, isKeepAlive);
+    }
+
+    /**
+     * Whether to reuse connections.  If false, each request opens a new
+     * connection, which is useful to compare against.
+     */
+    public LoadGenerator withKeepAlive(boolean isKeepAlive) {
+        return new LoadGenerator(host, port, requestMix, concurrency, duration, maxRequests, requestsPerSecond, isKeepAlive);
+    }
+
+    /**
+     * Run the load, returning once every worker has finished
+     */
+    public LoadResult run() throws InterruptedException {
+        List<PreparedRequest> preparedRequests = prepareRequests();
+        int[] cumulativeWeights = new int[requestMix.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < requestMix.size(); i++) {
+            totalWeight += requestMix.get(i).weight();
+            cumulativeWeights[i] = totalWeight;
+        }
+
+        long intervalNanos = requestsPerSecond > 0 ? (long) (1e9 / requestsPerSecond) : 0;
+        var nextSlot = new AtomicLong();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + duration.toNanos();
+
+        var workers = new ArrayList<Worker>();
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < concurrency; i++) {
+            var worker = new Worker(preparedRequests, cumulativeWeights, totalWeight, nextSlot, startNanos, endNanos, intervalNanos);
+            workers.add(worker);
+            threads.add(Thread.ofVirtual().name("minum-load-" + i).start(worker));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        var latencies = new LatencyHistogram();
+        var statusCounts = new TreeMap<Integer, Long>();
+        long requestCount = 0;
+        long errorCount = 0;
+        String firstError = null;
+        for (Worker worker : workers) {
+            latencies.add(worker.latencies);
+            worker.statusCounts.forEach((status, count) -> statusCounts.merge(status, count, Long::sum));
+            requestCount += worker.latencies.getCount();
+            errorCount += worker.errorCount;
+            if (firstError == null) firstError = worker.firstError;
+        }
+        return new LoadResult(requestCount, errorCount, elapsed, latencies, statusCounts, firstError);
+    }
+
+    /**
+     * A request, converted to bytes once, ahead of the run
+     */
+    private record PreparedRequest(byte[] bytes, boolean isHead) {}
+
+    private List<PreparedRequest> prepareRequests() {
+        var result = new ArrayList<PreparedRequest>();
+        for (LoadRequest loadRequest : requestMix) {
+            var sb = new StringBuilder();
+            sb.append(loadRequest.method()).append(" /").append(loadRequest.path()).append(" HTTP/1.1\r\n");
+            sb.append("Host: ").append(host).append(':').append(port).append("\r\n");
+            loadRequest.headers().forEach((key, value) -> sb.append(key).append(": ").append(value).append("\r\n"));
+            if (loadRequest.body().length > 0) {
+                sb.append("Content-Length: ").append(loadRequest.body().length).append("\r\n");
+            }
+            sb.append(isKeepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+            sb.append("\r\n");
+            var bytes = new ByteArrayOutputStream();
+            bytes.writeBytes(sb.toString().getBytes(StandardCharsets.US_ASCII));
+            bytes.writeBytes(loadRequest.body());
+            result.add(new PreparedRequest(bytes.toByteArray(), loadRequest.method().equalsIgnoreCase("HEAD")));
+        }
+        return result;
+    }
+
+    /**
+     * Sends requests one after another over its own connection,
+     * until the run's time or count of requests is used up
+     */
+    private final class Worker implements Runnable {
+
+        private final List<PreparedRequest> preparedRequests;
+        private final int[] cumulativeWeights;
+        private final int totalWeight;
+        private final AtomicLong nextSlot;
+        private final long startNanos;
+        private final long endNanos;
+        private final long intervalNanos;
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final Map<Integer, Long> statusCounts = new HashMap<>();
+        private long errorCount;
+        private String firstError;
+        private Connection connection;
+
+        Worker(List<PreparedRequest> preparedRequests, int[] cumulativeWeights, int totalWeight,
+               AtomicLong nextSlot, long startNanos, long endNanos, long intervalNanos) {
+            this.preparedRequests = preparedRequests;
+            this.cumulativeWeights = cumulativeWeights;
+            this.totalWeight = totalWeight;
+            this.nextSlot = nextSlot;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long slot = nextSlot.getAndIncrement();
+                    if (slot >= maxRequests) break;
+                    long scheduledNanos;
+                    if (intervalNanos > 0) {
+                        scheduledNanos = startNanos + slot * intervalNanos;
+                        if (scheduledNanos >= endNanos) break;
+                        waitUntil(scheduledNanos);
+                    } else {
+                        scheduledNanos = System.nanoTime();
+                        if (scheduledNanos >= endNanos) break;
+                    }
+                    PreparedRequest request = choose();
+                    try {
+                        int status = send(request);
+                        latencies.record(System.nanoTime() - scheduledNanos);
+                        statusCounts.merge(status, 1L, Long::sum);
+                    } catch (IOException ex) {
+                        errorCount++;
+                        if (firstError == null) firstError = ex.toString();
+                        closeConnection();
+                    }
+                }
+            } finally {
+                closeConnection();
+            }
+        }
+
+        private PreparedRequest choose() {
+            if (preparedRequests.size() == 1) return preparedRequests.getFirst();
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) return preparedRequests.get(i);
+            }
+            return preparedRequests.getLast();
+        }
+
+        /**
+         * Send a request and read its whole response, returning the status code
+         */
+        private int send(PreparedRequest request) throws IOException {
+            boolean isReused = connection != null;
+            if (!isReused) {
+                connection = new Connection(host, port);
+            }
+            try {
+                return connection.exchange(request);
+            } catch (EOFException ex) {
+                // the server may have closed an idle connection just as
+                // we reused it.  One retry on a fresh connection covers that.
+                if (!isReused || connection.hasReadResponseBytes) throw ex;
+                closeConnection();
+                connection = new Connection(host, port);
+                return connection.exchange(request);
+            } finally {
+                if (connection != null && connection.isClosingAfterResponse) {
+                    closeConnection();
+                }
+            }
+        }
+
+        private void closeConnection() {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
+    private static void waitUntil(long targetNanos) {
+        long remaining;
+        while ((remaining = targetNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * One connection to the server, reading responses through its own buffer
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        private final InputStream inputStream;
+        private final OutputStream outputStream;
+        private final byte[] buffer = new byte[16 * 1024];
+        private int position;
+        private int limit;
+        private final StringBuilder line = new StringBuilder();
+        private boolean hasReadResponseBytes;
+        private boolean isClosingAfterResponse;
+
+        Connection(String host, int port) throws IOException {
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            this.inputStream = socket.getInputStream();
+            this.outputStream = socket.getOutputStream();
+        }
+
+        int exchange(PreparedRequest request) throws IOException {
+            hasReadResponseBytes = false;
+            isClosingAfterResponse = !isKeepAlive;
+            outputStream.write(request.bytes());
+            outputStream.flush();
+
+            String statusLine = readLine();
+            // e.g. "HTTP/1.1 200 OK"
+            if (statusLine.length() < 12 || !statusLine.startsWith("HTTP/")) {
+                throw new IOException("Unexpected status line from server: " + statusLine);
+            }
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+
+            long contentLength = -1;
+            boolean isChunked = false;
+            String headerLine;
+            while (!(headerLine = readLine()).isEmpty()) {
+                int colon = headerLine.indexOf(':');
+                if (colon < 0) continue;
+                String name = headerLine.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = headerLine.substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length" -> contentLength = Long.parseLong(value);
+                    case "transfer-encoding" -> isChunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                    case "connection" -> isClosingAfterResponse |= value.equalsIgnoreCase("close");
+                    default -> { /* not needed */ }
+                }
+            }
+
+            if (request.isHead() || status == 204 || status == 304 || (status >= 100 && status < 200)) {
+                return status;
+            }
+            if (isChunked) {
+                readChunkedBody();
+            } else if (contentLength >= 0) {
+                skip(contentLength);
+            } else {
+                // no length given, so the body runs until the server closes the connection
+                while (fill()) {
+                    position = limit;
+                }
+                isClosingAfterResponse = true;
+            }
+            return status;
+        }
+
+        private void readChunkedBody() throws IOException {
+            while (true) {
+                String sizeLine = readLine();
+                int semicolon = sizeLine.indexOf(';');
+                long size = Long.parseLong((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+                if (size == 0) {
+                    // skip any trailers, through the final empty line
+                    while (!readLine().isEmpty()) { /* discard */ }
+                    return;
+                }
+                skip(size);
+                readLine();
+            }
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (position == limit && !fill()) {
+                    throw new EOFException("The server closed the connection");
+                }
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                    return line.toString();
+                }
+                line.append((char) (b & 0xff));
+            }
+        }
+
+        private void skip(long count) throws IOException {
+            long remaining = count;
+            while (remaining > 0) {
+                if (position == limit && !fill()) {
+                    throw new EOFException("The server closed the connection partway through a body");
+                }
+                int step = (int) Math.min(remaining, limit - position);
+                position += step;
+                remaining -= step;
+            }
+        }
+
+        /**
+         * Read more from the socket into the buffer
+         * @return false if the server closed the connection
+         */
+        private boolean fill() throws IOException {
+            int count = inputStream.read(buffer, 0, buffer.length);
+            if (count < 0) return false;
+            hasReadResponseBytes = true;
+            position = 0;
+            limit = count;
+            return true;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // nothing more to do, we are finished with it
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGenerator{" +
+                "host='" + host + '\'' +
+                ", port=" + port +
+                ", concurrency=" + concurrency +
+                ", duration=" + duration +
+                ", requestsPerSecond=" + requestsPerSecond +
+                ", isKeepAlive=" + isKeepAlive +
+                '}';
+    }
+}
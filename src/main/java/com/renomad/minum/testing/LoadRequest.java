@@ -0,0 +1,43 @@
+package com.renomad.minum.testing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * One kind of request sent by a {@link LoadGenerator}.  Several of these, each
+ * with a weight, make up a mix, for example nine reads to each write.
+ * @param method the HTTP method, such as "GET"
+ * @param path the path and query, without the leading slash, as in {@code photos?id=1}
+ * @param headers extra headers to send.  Host, Content-Length, and Connection are added automatically.
+ * @param body the body to send, or an empty array
+ * @param weight how often this is chosen, relative to the others in the mix
+ */
+public record LoadRequest(String method, String path, Map<String, String> headers, byte[] body, int weight) {
+
+    public LoadRequest {
+        mustBeTrue(weight > 0, "The weight of a load request must be positive. Was: " + weight);
+    }
+
+    /**
+     * A GET request to a path, with a weight of one
+     */
+    public static LoadRequest get(String path) {
+        return new LoadRequest("GET", path, Map.of(), new byte[0], 1);
+    }
+
+    /**
+     * A POST request to a path with a body, with a weight of one
+     */
+    public static LoadRequest post(String path, String contentType, String body) {
+        return new LoadRequest("POST", path, Map.of("Content-Type", contentType), body.getBytes(StandardCharsets.UTF_8), 1);
+    }
+
+    /**
+     * This request, with a different weight in the mix
+     */
+    public LoadRequest withWeight(int weight) {
+        return new LoadRequest(method, path, headers, body, weight);
+    }
+}
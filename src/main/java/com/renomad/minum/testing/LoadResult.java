@@ -0,0 +1,43 @@
+package com.renomad.minum.testing;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The outcome of a run of the {@link LoadGenerator}
+ * @param requestCount the count of requests which received a complete response, of any status
+ * @param errorCount the count of requests which failed, such as from a refused or dropped connection
+ * @param elapsed how long the run took
+ * @param latencies the latency of each completed request.  In the constant-rate mode, this
+ *                  is measured from when the request was scheduled to be sent, so that a
+ *                  slow server is not hidden by requests being sent late.
+ * @param statusCounts the count of responses of each status code, such as 200
+ * @param firstError a description of the first error, or null if there were none
+ */
+public record LoadResult(long requestCount,
+                         long errorCount,
+                         Duration elapsed,
+                         LatencyHistogram latencies,
+                         Map<Integer, Long> statusCounts,
+                         String firstError) {
+
+    /**
+     * Completed requests per second
+     */
+    public double throughput() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : requestCount * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d errors=%d elapsed=%dms throughput=%.1f/s statuses=%s latency: %s%s",
+                requestCount,
+                errorCount,
+                elapsed.toMillis(),
+                throughput(),
+                statusCounts,
+                latencies,
+                firstError == null ? "" : " first error: " + firstError);
+    }
+}
@@ -1,5 +1,6 @@
 package com.renomad.minum.utils;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,4 +29,59 @@ public final class ByteUtils {
         return resultArray;
     }
 
+    /**
+     * Builds the "bad character" skip table used by
+     * {@link #indexOf(byte[], int, int, byte[], int[])}, per the
+     * Boyer-Moore-Horspool algorithm.
+     * <p>
+     *     For each possible byte value, this tells us how far we may slide
+     *     the pattern forward when that byte is found under the last position
+     *     of the pattern and the comparison fails.  Build it once per pattern
+     *     and reuse it for every search.
+     * </p>
+     */
+    public static int[] buildSkipTable(byte[] pattern) {
+        if (pattern == null || pattern.length == 0) {
+            throw new UtilsException("expected a valid non-empty pattern to build a skip table");
+        }
+        int[] skipTable = new int[256];
+        Arrays.fill(skipTable, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            skipTable[pattern[i] & 0xff] = pattern.length - 1 - i;
+        }
+        return skipTable;
+    }
+
+    /**
+     * Searches for a pattern of bytes within a region of a byte array, using
+     * the Boyer-Moore-Horspool algorithm.
+     * <p>
+     *     Because a mismatch usually lets us slide the pattern forward by its
+     *     entire length, we only examine a fraction of the bytes in the region.
+     *     That is valuable for things like multipart boundaries, where the pattern
+     *     is long and the data between occurrences can be megabytes.
+     * </p>
+     * @param data the bytes to search
+     * @param from the first index of the region to search (inclusive)
+     * @param to the end of the region to search (exclusive)
+     * @param pattern the bytes we are looking for
+     * @param skipTable the table built by {@link #buildSkipTable(byte[])} for this pattern
+     * @return the index in data where the pattern begins, or -1 if not found in the region
+     */
+    public static int indexOf(byte[] data, int from, int to, byte[] pattern, int[] skipTable) {
+        int lastPatternIndex = pattern.length - 1;
+        int i = from;
+        while (i <= to - pattern.length) {
+            int j = lastPatternIndex;
+            while (data[i + j] == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j -= 1;
+            }
+            i += skipTable[data[i + lastPatternIndex] & 0xff];
+        }
+        return -1;
+    }
+
 }
@@ -1,6 +1,8 @@
 package com.renomad.minum.utils;
 
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.Counter;
+import com.renomad.minum.metrics.MetricsRegistry;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -21,17 +23,34 @@ public final class FileReader implements IFileReader {
     private final Map<String, byte[]> lruCache;
     private final boolean useCacheForStaticFiles;
     private final ILogger logger;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
 
     public FileReader(Map<String, byte[]> lruCache, boolean useCacheForStaticFiles, ILogger logger) {
+        this(lruCache, useCacheForStaticFiles, logger, new MetricsRegistry());
+    }
+
+    /**
+     * Similar to {@link #FileReader(Map, boolean, ILogger)}, counting hits and
+     * misses of the cache in the given {@link MetricsRegistry}
+     */
+    public FileReader(Map<String, byte[]> lruCache, boolean useCacheForStaticFiles, ILogger logger, MetricsRegistry metrics) {
         this.lruCache = lruCache;
         this.useCacheForStaticFiles = useCacheForStaticFiles;
         this.logger = logger;
+        this.cacheHits = metrics.counter("minum_static_cache_hits");
+        this.cacheMisses = metrics.counter("minum_static_cache_misses");
     }
 
     @Override
     public byte[] readFile(String path) throws IOException {
-        if (useCacheForStaticFiles && lruCache.containsKey(path)) {
-            return lruCache.get(path);
+        if (useCacheForStaticFiles) {
+            byte[] cached = lruCache.get(path);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+            cacheMisses.increment();
         }
 
         if (badFilePathPatterns.matcher(path).find()) {
@@ -2,6 +2,8 @@ package com.renomad.minum.web;
 
 import com.renomad.minum.utils.StringUtils;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -39,7 +41,7 @@ public final class Body {
      * An empty body instance, useful when you
      * need an instantiated body.
      */
-    public static final Body EMPTY = new Body(Map.of(), EMPTY_BYTES, List.of(), BodyType.NONE);
+    public static final Body EMPTY = wrap(Map.of(), EMPTY_BYTES, List.of(), BodyType.NONE);
 
     /**
      * Build a body for an HTTP message
@@ -49,12 +51,30 @@ public final class Body {
      * @param partitions if the body is of type form/multipart, these will be the list of partitions
      */
     public Body(Map<String, byte[]> bodyMap, byte[] raw, List<Partition> partitions, BodyType bodyType) {
-        this.bodyMap = new HashMap<>(bodyMap);
-        this.raw = raw.clone();
+        this(bodyMap, raw, partitions, bodyType, true);
+    }
+
+    /**
+     * @param makeCopies if true, we copy the map and raw bytes, so later changes
+     *                   to them by the caller won't affect this body.  See {@link #wrap(Map, byte[], List, BodyType)}
+     */
+    private Body(Map<String, byte[]> bodyMap, byte[] raw, List<Partition> partitions, BodyType bodyType, boolean makeCopies) {
+        this.bodyMap = makeCopies ? new HashMap<>(bodyMap) : bodyMap;
+        this.raw = makeCopies ? raw.clone() : raw;
         this.partitions = partitions;
         this.bodyType = bodyType;
     }
 
+    /**
+     * Build a body which takes ownership of the data provided, without
+     * making defensive copies.  This is for use by the framework while parsing
+     * a request, where the map and arrays were freshly built and nothing else
+     * holds a reference to them.
+     */
+    static Body wrap(Map<String, byte[]> bodyMap, byte[] raw, List<Partition> partitions, BodyType bodyType) {
+        return new Body(bodyMap, raw, partitions, bodyType, false);
+    }
+
     /**
      * Return the value for a key, as a string. This method
      * presumes the data was sent URL-encoded.
@@ -104,6 +124,14 @@ public final class Body {
         return this.raw.clone();
     }
 
+    /**
+     * Returns a read-only view of the raw bytes of this HTTP message's body.  Unlike
+     * {@link #asBytes()}, this does not copy the data, which matters for large bodies.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(raw).asReadOnlyBuffer();
+    }
+
     /**
      * If the body is of type form/multipart, return the partitions
      * <p>
@@ -132,7 +160,7 @@ public final class Body {
      * ability to select multiple files on the input with type=file)
      */
     public List<Partition> getPartitionByName(String name) {
-        return getPartitionHeaders().stream().filter(x -> x.getContentDisposition().getName().equalsIgnoreCase(name)).toList();
+        return partitions.stream().filter(x -> x.getContentDisposition().getName().equalsIgnoreCase(name)).toList();
     }
 
     /**
@@ -157,7 +185,17 @@ public final class Body {
      * Get all the keys for the key-value pairs in the body
      */
     public Set<String> getKeys() {
-        return bodyMap.keySet();
+        return Collections.unmodifiableSet(bodyMap.keySet());
+    }
+
+    /**
+     * Delete any temporary files holding multipart partitions.
+     * See {@link Partition#isStoredOnDisk()}
+     */
+    void deleteTemporaryFiles() throws IOException {
+        for (Partition partition : partitions) {
+            partition.deleteTemporaryFile();
+        }
     }
 
     @Override
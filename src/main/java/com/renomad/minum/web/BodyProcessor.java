@@ -4,12 +4,21 @@ import com.renomad.minum.logging.ILogger;
 import com.renomad.minum.security.ForbiddenUseException;
 import com.renomad.minum.state.Constants;
 import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.ByteUtils;
 import com.renomad.minum.utils.StringUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -22,14 +31,12 @@ final class BodyProcessor implements IBodyProcessor {
 
     private final ILogger logger;
     private final IInputStreamUtils inputStreamUtils;
-    private int countOfPartitions;
     private final Constants constants;
 
     BodyProcessor(Context context) {
         this.constants = context.getConstants();
         this.logger = context.getLogger();
         this.inputStreamUtils = new InputStreamUtils(constants.maxReadLineSizeBytes);
-        this.countOfPartitions = 0;
     }
 
     @Override
@@ -52,6 +59,88 @@ final class BodyProcessor implements IBodyProcessor {
         return extractBodyFromInputStream(h.contentLength(), contentType, is);
     }
 
+    @Override
+    public long checkStreamedBodyLength(Headers h) {
+        long contentLength = h.contentLengthLong();
+        if (contentLength < 0) {
+            throw new WebServerException("Error: a content-length header is required to write the body to a channel. Minum does not read chunked transfer-encoding.");
+        }
+        if (contentLength > constants.maxStreamedBodySizeBytes) {
+            throw new ForbiddenUseException("It is disallowed to stream a body with a length more than " + constants.maxStreamedBodySizeBytes + " bytes");
+        }
+        return contentLength;
+    }
+
+    @Override
+    public long writeBody(InputStream inputStream, Headers h, WritableByteChannel target) throws IOException {
+        long contentLength = checkStreamedBodyLength(h);
+
+        // The socket's stream is wrapped (e.g. in a PushbackInputStream), so this is an
+        // adapter which copies through a small buffer, not the socket's own channel.  The
+        // copy into a FileChannel may therefore still pass through user space.
+        ReadableByteChannel source = Channels.newChannel(inputStream);
+        long countTransferred;
+        if (target instanceof FileChannel fileChannel) {
+            countTransferred = transferToFileChannel(source, fileChannel, contentLength);
+        } else {
+            countTransferred = transferToChannel(source, target, contentLength);
+        }
+
+        if (countTransferred != contentLength) {
+            // The client stopped sending before giving us everything promised by the
+            // content-length - for example, by using the browser's "stop" button during an upload.
+            throw new IOException("Error: The inputstream has closed unexpectedly while reading. Expected " + contentLength + " bytes, received " + countTransferred);
+        }
+        logger.logTrace(() -> "wrote " + countTransferred + " bytes of the body to a channel");
+        return countTransferred;
+    }
+
+    /**
+     * Use {@link FileChannel#transferFrom} to move the bytes.  Note that
+     * transferFrom does not adjust the position of the file channel, so
+     * we do that ourselves afterwards.
+     * @return the count of bytes transferred, which will be less than contentLength
+     * only if the source ended early.
+     */
+    private static long transferToFileChannel(ReadableByteChannel source, FileChannel target, long contentLength) throws IOException {
+        long startPosition = target.position();
+        long countTransferred = 0;
+        while (countTransferred < contentLength) {
+            long result = target.transferFrom(source, startPosition + countTransferred, contentLength - countTransferred);
+            if (result <= 0) {
+                break;
+            }
+            countTransferred += result;
+        }
+        target.position(startPosition + countTransferred);
+        return countTransferred;
+    }
+
+    /**
+     * Copy the bytes through a single reusable buffer, never reading
+     * more than contentLength bytes from the source.
+     * @return the count of bytes transferred, which will be less than contentLength
+     * only if the source ended early.
+     */
+    private static long transferToChannel(ReadableByteChannel source, WritableByteChannel target, long contentLength) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(contentLength, BufferedBodyInputStream.DEFAULT_BUFFER_SIZE));
+        long countTransferred = 0;
+        while (countTransferred < contentLength) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), contentLength - countTransferred));
+            int result = source.read(buffer);
+            if (result == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            countTransferred += result;
+        }
+        return countTransferred;
+    }
+
     /**
      * Handles the parsing of the body data for either form-urlencoded or
      * multipart/form-data
@@ -77,7 +166,7 @@ final class BodyProcessor implements IBodyProcessor {
         } else {
             logger.logDebug(() -> "did not recognize a key-value pattern content-type, returning the raw bytes for the body.  Content-Type was: " + contentType);
             // we can return the whole byte array here because we never read from it
-            return new Body(Map.of(), inputStreamUtils.read(contentLength, is), List.of(), BodyType.UNRECOGNIZED);
+            return Body.wrap(Map.of(), inputStreamUtils.read(contentLength, is), List.of(), BodyType.UNRECOGNIZED);
         }
     }
 
@@ -92,10 +181,11 @@ final class BodyProcessor implements IBodyProcessor {
 
         if (boundaryValue.isBlank()) {
             logger.logDebug(() -> "The boundary value was blank for the multipart input. Returning an empty map");
-            return new Body(Map.of(), new byte[0], List.of(), BodyType.UNRECOGNIZED);
+            return Body.wrap(Map.of(), new byte[0], List.of(), BodyType.UNRECOGNIZED);
         }
 
         List<Partition> partitions = new ArrayList<>();
+        int countOfPartitions = 0;
 
         try {
             for (StreamingMultipartPartition p : getMultiPartIterable(inputStream, boundaryValue, contentLength)) {
@@ -103,7 +193,7 @@ final class BodyProcessor implements IBodyProcessor {
                 if (countOfPartitions >= MAX_BODY_KEYS_URL_ENCODED) {
                     throw new WebServerException("Error: body had excessive number of partitions (" + countOfPartitions + ").  Maximum allowed: " + MAX_BODY_KEYS_URL_ENCODED);
                 }
-                partitions.add(new Partition(p.getHeaders(), p.readAllBytes(), p.getContentDisposition()));
+                partitions.add(readPartition(p));
             }
 
 
@@ -111,12 +201,43 @@ final class BodyProcessor implements IBodyProcessor {
             logger.logDebug(() -> "Unable to parse this body. returning what we have so far.  Exception message: " + ex.getMessage());
             // we have to return nothing for the raw bytes, because at this point we are halfway through
             // reading the inputstream and don't want to return broken data
-            return new Body(Map.of(), new byte[0], partitions, BodyType.MULTIPART);
+            return Body.wrap(Map.of(), new byte[0], partitions, BodyType.MULTIPART);
         }
         if (partitions.isEmpty()) {
-            return new Body(Map.of(), new byte[0], List.of(), BodyType.UNRECOGNIZED);
+            return Body.wrap(Map.of(), new byte[0], List.of(), BodyType.UNRECOGNIZED);
         } else {
-            return new Body(Map.of(), new byte[0], partitions, BodyType.MULTIPART);
+            return Body.wrap(Map.of(), new byte[0], partitions, BodyType.MULTIPART);
+        }
+    }
+
+    /**
+     * Read the data of a single partition.  If a directory for temporary files
+     * has been configured, and the data is larger than our threshold, it will be streamed
+     * to a file on disk rather than kept in memory.
+     * See {@link Constants#multipartTempDirectory}
+     */
+    private Partition readPartition(StreamingMultipartPartition p) throws IOException {
+        if (constants.multipartTempDirectory.isBlank()) {
+            return new Partition(p.getHeaders(), p.readAllBytes(), p.getContentDisposition());
+        }
+
+        // read one byte more than the threshold, so we know whether it was exceeded
+        byte[] firstBytes = p.readNBytes(constants.multipartInMemoryThresholdBytes + 1);
+        if (firstBytes.length <= constants.multipartInMemoryThresholdBytes) {
+            return new Partition(p.getHeaders(), firstBytes, p.getContentDisposition());
+        }
+
+        Path tempDirectory = Path.of(constants.multipartTempDirectory);
+        Files.createDirectories(tempDirectory);
+        Path tempFile = Files.createTempFile(tempDirectory, "minum_partition_", ".tmp");
+        logger.logTrace(() -> "Storing multipart partition " + p.getContentDisposition().getName() + " on disk at " + tempFile);
+        try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+            outputStream.write(firstBytes);
+            long remainingLength = p.transferTo(outputStream);
+            return new Partition(p.getHeaders(), tempFile, firstBytes.length + remainingLength, p.getContentDisposition());
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
         }
     }
 
@@ -149,35 +270,116 @@ final class BodyProcessor implements IBodyProcessor {
             return Body.EMPTY;
         }
         final var postedPairs = new HashMap<String, byte[]>();
+        int countOfPairs = 0;
 
         try {
+            // The body is bounded by maxReadSizeBytes, so we pull it off the socket in one read,
+            // and then split it and decode the values in place. For very large forms, see
+            // getUrlEncodedDataIterable, which streams the data instead.
+            final byte[] data = inputStreamUtils.read(contentLength, is);
+            int segmentStart = 0;
+            while (segmentStart < data.length) {
+                int ampersandIndex = indexOf(data, (byte) '&', segmentStart, data.length);
+                int segmentEnd = ampersandIndex == -1 ? data.length : ampersandIndex;
+                int equalsIndex = indexOf(data, (byte) '=', segmentStart, segmentEnd);
+                int keyEnd = equalsIndex == -1 ? segmentEnd : equalsIndex;
+
+                if (keyEnd - segmentStart > MAX_KEY_SIZE_BYTES) {
+                    throw new WebServerException("Maximum size for name attribute is " + MAX_KEY_SIZE_BYTES + " ascii characters");
+                }
+                // URL encoding is in ASCII only.
+                String key = equalsIndex == -1 ? "" : new String(data, segmentStart, keyEnd - segmentStart, StandardCharsets.US_ASCII);
+                if (key.isBlank()) {
+                    throw new WebServerException("Unable to parse this body. no key found during parsing");
+                }
 
-            for (final var keyValue : getUrlEncodedDataIterable(is, contentLength)) {
-                countOfPartitions += 1;
-                if (countOfPartitions >= MAX_BODY_KEYS_URL_ENCODED) {
-                    throw new WebServerException("Error: body had excessive number of partitions ("+countOfPartitions+").  Maximum allowed: " + MAX_BODY_KEYS_URL_ENCODED);
+                countOfPairs += 1;
+                if (countOfPairs >= MAX_BODY_KEYS_URL_ENCODED) {
+                    throw new WebServerException("Error: body had excessive number of partitions ("+countOfPairs+").  Maximum allowed: " + MAX_BODY_KEYS_URL_ENCODED);
+                }
+
+                int valueStart = equalsIndex + 1;
+                final byte[] convertedValue;
+                if (isNullMarker(data, valueStart, segmentEnd)) {
+                    convertedValue = new byte[0];
+                } else {
+                    int valueEnd = percentDecodeInPlace(data, valueStart, segmentEnd);
+                    convertedValue = Arrays.copyOfRange(data, valueStart, valueEnd);
                 }
-                String value = new String(keyValue.getUedg().readAllBytes(), StandardCharsets.US_ASCII);
-                String key = keyValue.getKey();
-                final var decodedValue = StringUtils.decode(value);
-                final var convertedValue = decodedValue == null ? "".getBytes(StandardCharsets.UTF_8) : decodedValue.getBytes(StandardCharsets.UTF_8);
 
                 final var result = postedPairs.put(key, convertedValue);
 
                 if (result != null) {
-                    throw new WebServerException("Error: key (" +key + ") was duplicated in the post body - previous version was " + new String(result, StandardCharsets.US_ASCII) + " and recent data was " + decodedValue);
+                    throw new WebServerException("Error: key (" +key + ") was duplicated in the post body - previous version was " + new String(result, StandardCharsets.US_ASCII) + " and recent data was " + new String(convertedValue, StandardCharsets.UTF_8));
                 }
+                segmentStart = segmentEnd + 1;
             }
         } catch (Exception ex) {
             logger.logDebug(() -> "Unable to parse this body. returning what we have so far.  Exception message: " + ex.getMessage());
-            // we have to return nothing for the raw bytes, because at this point we are halfway through
-            // reading the inputstream and don't want to return broken data
-            return new Body(postedPairs, new byte[0], List.of(), BodyType.UNRECOGNIZED);
+            // we return nothing for the raw bytes, because the data may have been
+            // partially decoded in place by this point.
+            return Body.wrap(postedPairs, new byte[0], List.of(), BodyType.UNRECOGNIZED);
         }
-        // we return nothing for the raw bytes because the code for parsing the streaming data
-        // doesn't begin with a fully-read byte array - it pulls data off the stream one byte
-        // at a time.
-        return new Body(postedPairs, new byte[0], List.of(), BodyType.FORM_URL_ENCODED);
+        // we return nothing for the raw bytes, because the values were
+        // decoded in place, overwriting the original data.
+        return Body.wrap(postedPairs, new byte[0], List.of(), BodyType.FORM_URL_ENCODED);
+    }
+
+    /**
+     * Returns the index of the first occurrence of a byte between "from" (inclusive)
+     * and "to" (exclusive), or -1 if not found.
+     */
+    private static int indexOf(byte[] data, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final byte[] NULL_MARKER = "%NULL%".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Minum's convention is that a value of "%NULL%" stands for null, see {@link StringUtils#decode(String)}
+     */
+    private static boolean isNullMarker(byte[] data, int from, int to) {
+        return Arrays.equals(data, from, to, NULL_MARKER, 0, NULL_MARKER.length);
+    }
+
+    /**
+     * Decode percent-encoded data, in place.  Plus signs become spaces, and
+     * each "%xy" becomes the byte with that hex value.  Because the decoded
+     * data is never longer than the encoded data, we can write it over the
+     * original bytes as we go.
+     * @return one past the index of the last decoded byte
+     */
+    static int percentDecodeInPlace(byte[] data, int from, int to) {
+        int writeIndex = from;
+        int readIndex = from;
+        while (readIndex < to) {
+            byte b = data[readIndex];
+            if (b == '+') {
+                data[writeIndex] = ' ';
+                readIndex += 1;
+            } else if (b == '%') {
+                if (readIndex + 2 >= to) {
+                    throw new WebServerException("URLDecoder: Incomplete trailing escape (%) pattern");
+                }
+                int high = Character.digit(data[readIndex + 1], 16);
+                int low = Character.digit(data[readIndex + 2], 16);
+                if (high == -1 || low == -1) {
+                    throw new WebServerException("URLDecoder: Illegal hex characters in escape (%) pattern");
+                }
+                data[writeIndex] = (byte) ((high << 4) + low);
+                readIndex += 3;
+            } else {
+                data[writeIndex] = b;
+                readIndex += 1;
+            }
+            writeIndex += 1;
+        }
+        return writeIndex;
     }
 
     /**
@@ -257,15 +459,21 @@ final class BodyProcessor implements IBodyProcessor {
 
     @Override
     public Iterable<StreamingMultipartPartition> getMultiPartIterable(InputStream inputStream, String boundaryValue, int contentLength) {
+        // the partitions end where we find a carriage-return, newline, two dashes, and the boundary value.
+        // We build the search table for that once, and share it across all the partitions.
+        byte[] boundary = ("\r\n--" + boundaryValue).getBytes(StandardCharsets.US_ASCII);
+        int[] boundarySkipTable = ByteUtils.buildSkipTable(boundary);
+
         return () -> new Iterator<>() {
 
             final CountBytesRead countBytesRead = new CountBytesRead();
+            final BufferedBodyInputStream bufferedInputStream = new BufferedBodyInputStream(inputStream, contentLength, countBytesRead, boundary.length * 2);
             boolean hasReadFirstPartition = false;
 
             @Override
             public boolean hasNext() {
-                // determining if we have more to read is a little tricky because we have a buffer
-                // filled by reading ahead, looking for the boundary value
+                // determining if we have more to read is a little tricky because of the closing
+                // boundary at the end of the last partition
                 return (contentLength - countBytesRead.getCount()) > boundaryValue.length();
             }
 
@@ -279,8 +487,7 @@ final class BodyProcessor implements IBodyProcessor {
                 if (! hasReadFirstPartition) {
                     String s;
                     try {
-                        s = inputStreamUtils.readLine(inputStream);
-                        countBytesRead.incrementBy(s.length() + 2);
+                        s = inputStreamUtils.readLine(bufferedInputStream);
                         hasReadFirstPartition = true;
                         if (!s.contains(boundaryValue)) {
                             throw new IOException("Error: First line must contain the expected boundary value. Expected to find: "+ boundaryValue + " in: " + s);
@@ -289,12 +496,7 @@ final class BodyProcessor implements IBodyProcessor {
                         throw new WebServerException(e);
                     }
                 }
-                List<String> allHeaders = Headers.getAllHeaders(inputStream, inputStreamUtils);
-                int lengthOfHeaders = allHeaders.stream().map(String::length).reduce(0, Integer::sum);
-                // each line has a CR + LF (that's two bytes) and the headers end with a second pair of CR+LF.
-                int extraCrLfs = (2 * allHeaders.size()) + 2;
-                countBytesRead.incrementBy(lengthOfHeaders + extraCrLfs);
-
+                List<String> allHeaders = Headers.getAllHeaders(bufferedInputStream, inputStreamUtils);
                 Headers headers = new Headers(allHeaders);
 
                 List<String> cds = headers.valueByKey("Content-Disposition");
@@ -320,7 +522,7 @@ final class BodyProcessor implements IBodyProcessor {
                 // at this point our inputstream pointer is at the beginning of the
                 // body data.  From here until the end it's pure data.
 
-                return new StreamingMultipartPartition(headers, inputStream, new ContentDisposition(name, filename), boundaryValue, countBytesRead, contentLength);
+                return new StreamingMultipartPartition(headers, bufferedInputStream, new ContentDisposition(name, filename), boundary, boundarySkipTable);
             }
 
 
@@ -0,0 +1,146 @@
+package com.renomad.minum.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A buffering wrapper around the socket's {@link InputStream}, used while
+ * reading a request body.
+ * <p>
+ *     Two properties matter here.  First, we never ask the underlying stream
+ *     for more bytes than remain in the body (per the content-length header),
+ *     because in a keep-alive connection any further read would block, waiting
+ *     on a next request which may never come. Second, the buffer is exposed
+ *     to classes in this package (see {@link StreamingMultipartPartition}), so they can
+ *     scan large windows of bytes in place rather than pulling them one at a time.
+ * </p>
+ * <p>
+ *     Every byte handed out - whether through a read or through {@link #consume(int)} -
+ *     is counted in the provided {@link CountBytesRead}.
+ * </p>
+ */
+final class BufferedBodyInputStream extends InputStream {
+
+    /**
+     * 8k buffer is my understanding of a decent size.  Fast, doesn't waste too much space.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream inputStream;
+    private final CountBytesRead countBytesRead;
+    private final byte[] buffer;
+
+    /**
+     * Index of the next unread byte in the buffer
+     */
+    private int position;
+
+    /**
+     * One past the index of the last valid byte in the buffer
+     */
+    private int limit;
+
+    /**
+     * How many bytes we may still pull from the underlying stream
+     */
+    private long remainingInSource;
+
+    /**
+     * @param contentLength the most bytes we will ever read from the underlying stream
+     * @param minimumBufferSize the buffer will be at least this large, or {@link #DEFAULT_BUFFER_SIZE},
+     *                          whichever is greater.
+     */
+    BufferedBodyInputStream(InputStream inputStream, long contentLength, CountBytesRead countBytesRead, int minimumBufferSize) {
+        this.inputStream = inputStream;
+        this.countBytesRead = countBytesRead;
+        this.remainingInSource = contentLength;
+        this.buffer = new byte[Math.max(DEFAULT_BUFFER_SIZE, minimumBufferSize)];
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Try to have at least "minimum" unread bytes available in the buffer, reading
+     * from the underlying stream as necessary.
+     * @return the count of unread bytes available in the buffer.  This will be less
+     *         than "minimum" only when the body has been fully pulled from the underlying stream.
+     * @throws IOException if the underlying stream closes before we have read the full body
+     */
+    int fill(int minimum) throws IOException {
+        if (limit - position >= minimum) {
+            return limit - position;
+        }
+        // slide the unread bytes to the front, to make room
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < minimum && remainingInSource > 0) {
+            int lengthToRead = (int) Math.min(buffer.length - limit, remainingInSource);
+            int result = inputStream.read(buffer, limit, lengthToRead);
+            if (result == -1) {
+                // Because we always have the content length while reading the body, we know
+                // exactly how many bytes to expect.  A -1 here means the client stopped sending early,
+                // for example, by using the browser's "stop" button during a large upload.
+                throw new IOException("Error: The inputstream has closed unexpectedly while reading");
+            }
+            limit += result;
+            remainingInSource -= result;
+        }
+        return limit - position;
+    }
+
+    /**
+     * The internal buffer, for in-place scanning. Only the region
+     * between {@link #getPosition()} and {@link #getLimit()} is valid.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Mark bytes in the buffer as read, without copying them anywhere
+     */
+    void consume(int count) {
+        position += count;
+        countBytesRead.incrementBy(count);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (fill(1) == 0) {
+            return -1;
+        }
+        int result = buffer[position] & 0xff;
+        consume(1);
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (fill(1) == 0) {
+            return -1;
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, count);
+        consume(count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+}
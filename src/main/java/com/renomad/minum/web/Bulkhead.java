@@ -0,0 +1,179 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE;
+
+/**
+ * Limits how many requests of one {@link WorkClass} run at once.  Past the
+ * limit, requests wait in a queue of limited size.  If the queue is full, or
+ * a request waits longer than {@link com.renomad.minum.state.Constants#bulkheadQueueTimeoutMillis},
+ * the client receives a 503 and is asked to retry shortly.
+ * <p>
+ *     Each request already has its own virtual thread, so rather than separate
+ *     executors, a bulkhead is a count of permits which those threads wait on.
+ * </p>
+ * <p>
+ *     Get these from {@link WebFramework#getBulkhead(WorkClass)} to see how busy each kind of work is.
+ *     The same figures are in the metrics, labelled by work class, see {@link WebFramework#buildBulkheads}
+ * </p>
+ */
+public final class Bulkhead {
+
+    private final WorkClass workClass;
+    private final int concurrencyLimit;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+
+    /**
+     * Fair, so that waiting requests are let through in the order they arrived
+     */
+    private final Semaphore permits;
+    private final AtomicInteger queuedCount;
+    private final LongAdder admittedCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder totalQueueNanos;
+    private final LongAccumulator maxQueueNanos;
+
+    /**
+     * The time spent waiting in the queue, by the requests which had to wait
+     */
+    private final Histogram queueDuration;
+
+    Bulkhead(WorkClass workClass, int concurrencyLimit, int queueSize, long queueTimeoutMillis, Histogram queueDuration) {
+        this.workClass = workClass;
+        this.concurrencyLimit = concurrencyLimit;
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.permits = new Semaphore(concurrencyLimit, true);
+        this.queuedCount = new AtomicInteger();
+        this.admittedCount = new LongAdder();
+        this.rejectedCount = new LongAdder();
+        this.totalQueueNanos = new LongAdder();
+        this.maxQueueNanos = new LongAccumulator(Long::max, 0);
+        this.queueDuration = queueDuration;
+    }
+
+    /**
+     * Run the endpoint once there is room, or return a 503 if there is no room in time
+     */
+    IResponse run(IRequest request, ThrowingFunction<IRequest, IResponse> webHandler) throws Exception {
+        // the untimed tryAcquire would let a new arrival barge past those already
+        // waiting, so if anyone is waiting, we join the end of the line.  The timed
+        // form, even with no wait, honors the semaphore's fairness.
+        if (queuedCount.get() > 0 || !permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            if (queuedCount.incrementAndGet() > queueSize) {
+                queuedCount.decrementAndGet();
+                return reject();
+            }
+            long startNanos = System.nanoTime();
+            boolean isAcquired;
+            try {
+                isAcquired = permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                queuedCount.decrementAndGet();
+                long queueNanos = System.nanoTime() - startNanos;
+                totalQueueNanos.add(queueNanos);
+                maxQueueNanos.accumulate(queueNanos);
+                queueDuration.record(queueNanos);
+            }
+            if (!isAcquired) {
+                return reject();
+            }
+        }
+        admittedCount.increment();
+        try {
+            return webHandler.apply(request);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * The rejection closes the connection, since the request's body - for
+     * {@link WorkClass#UPLOADS}, nearly always present - was never read, and
+     * what remains of it must not be taken for the next request.
+     */
+    private IResponse reject() {
+        rejectedCount.increment();
+        return Response.buildResponse(CODE_503_SERVICE_UNAVAILABLE,
+                Map.of("Content-Type", "text/plain;charset=UTF-8", "Retry-After", "1", "Connection", "close"),
+                "Server busy");
+    }
+
+    public WorkClass getWorkClass() {
+        return workClass;
+    }
+
+    /**
+     * How many requests may run at once
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * How many requests may wait, when the concurrency limit is reached
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * The count of requests running now
+     */
+    public int getActiveCount() {
+        return concurrencyLimit - permits.availablePermits();
+    }
+
+    /**
+     * The count of requests waiting now
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * The count of requests which have been allowed to run
+     */
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+
+    /**
+     * The count of requests turned away with a 503
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * The total time requests have spent waiting in the queue, in nanoseconds
+     */
+    public long getTotalQueueNanos() {
+        return totalQueueNanos.sum();
+    }
+
+    /**
+     * The longest time any request has spent waiting in the queue, in nanoseconds
+     */
+    public long getMaxQueueNanos() {
+        return maxQueueNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{" +
+                "workClass=" + workClass +
+                ", concurrencyLimit=" + concurrencyLimit +
+                ", queueSize=" + queueSize +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+package com.renomad.minum.web;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * How the responses of an endpoint are cached.  Apply this to an endpoint with
+ * {@link RouteOptions#withCache(CachePolicy)}.  See {@link ResponseCache}
+ * <p>
+ *     Responses are cached by method and path.  By default, the query string and
+ *     request headers are ignored, so every request to the path shares one cached
+ *     response.  If the response depends on some of them, name those with
+ *     {@link #withQueryParameters(String...)} and {@link #withHeaders(String...)},
+ *     and each combination of their values is cached separately.
+ * </p>
+ * <p>
+ *     Requests carrying a Cookie or Authorization header are not cached, since the
+ *     response may be meant for that user alone, unless those headers are named
+ *     with {@link #withHeaders(String...)}, or {@link #withCredentialsIgnored()} says
+ *     the response is the same for everyone.
+ * </p>
+ * <pre>{@code
+ * webFramework.registerPath(GET, "photos", listPhotos::listPhotosPage,
+ *         RouteOptions.DEFAULT.withCache(
+ *                 CachePolicy.forDuration(Duration.ofSeconds(30))
+ *                         .withStaleWhileRevalidate(Duration.ofMinutes(5))
+ *                         .withQueryParameters("page")));
+ * }</pre>
+ */
+public final class CachePolicy {
+
+    private final Duration timeToLive;
+    private final Duration staleWhileRevalidate;
+    private final List<String> queryParameters;
+    private final List<String> headers;
+    private final boolean isIgnoringCredentials;
+
+    private CachePolicy(Duration timeToLive, Duration staleWhileRevalidate, List<String> queryParameters, List<String> headers, boolean isIgnoringCredentials) {
+        this.timeToLive = timeToLive;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.queryParameters = queryParameters;
+        this.headers = headers;
+        this.isIgnoringCredentials = isIgnoringCredentials;
+    }
+
+    /**
+     * Cache responses for this long, after which the endpoint is run again
+     */
+    public static CachePolicy forDuration(Duration timeToLive) {
+        mustBeTrue(timeToLive.isPositive(), "The time to live for a cached response must be positive");
+        return new CachePolicy(timeToLive, Duration.ZERO, List.of(), List.of(), false);
+    }
+
+    /**
+     * For this long after an entry expires, keep sending it while the endpoint
+     * runs in the background to refresh it.  Clients then never wait on the
+     * endpoint, unless an entry goes unrequested past this window.
+     * <p>
+     *     The background refresh runs the endpoint with the request that found the
+     *     entry stale, after that request has been answered, so the endpoint must
+     *     not read the request body.
+     * </p>
+     */
+    public CachePolicy withStaleWhileRevalidate(Duration staleWhileRevalidate) {
+        mustBeTrue(!staleWhileRevalidate.isNegative(), "The stale-while-revalidate duration must not be negative");
+        return new CachePolicy(timeToLive, staleWhileRevalidate, queryParameters, headers, isIgnoringCredentials);
+    }
+
+    /**
+     * Cache separately for each combination of values of these query string parameters
+     */
+    public CachePolicy withQueryParameters(String... queryParameters) {
+        return new CachePolicy(timeToLive, staleWhileRevalidate, List.of(queryParameters), headers, isIgnoringCredentials);
+    }
+
+    /**
+     * Cache separately for each combination of values of these request
+     * headers, for example "accept-language".  Case-insensitive.
+     */
+    public CachePolicy withHeaders(String... headers) {
+        return new CachePolicy(timeToLive, staleWhileRevalidate, queryParameters,
+                Arrays.stream(headers).map(x -> x.toLowerCase(Locale.ROOT)).toList(), isIgnoringCredentials);
+    }
+
+    /**
+     * Cache responses to requests carrying a Cookie or Authorization header, sharing
+     * them with everyone.  Only for endpoints whose response is the same whoever asks.
+     */
+    public CachePolicy withCredentialsIgnored() {
+        return new CachePolicy(timeToLive, staleWhileRevalidate, queryParameters, headers, true);
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public Duration getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public List<String> getQueryParameters() {
+        return queryParameters;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * See {@link #withCredentialsIgnored()}
+     */
+    public boolean isIgnoringCredentials() {
+        return isIgnoringCredentials;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CachePolicy that = (CachePolicy) o;
+        return Objects.equals(timeToLive, that.timeToLive) && Objects.equals(staleWhileRevalidate, that.staleWhileRevalidate) && Objects.equals(queryParameters, that.queryParameters) && Objects.equals(headers, that.headers) && isIgnoringCredentials == that.isIgnoringCredentials;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timeToLive, staleWhileRevalidate, queryParameters, headers, isIgnoringCredentials);
+    }
+
+    @Override
+    public String toString() {
+        return "CachePolicy{" +
+                "timeToLive=" + timeToLive +
+                ", staleWhileRevalidate=" + staleWhileRevalidate +
+                ", queryParameters=" + queryParameters +
+                ", headers=" + headers +
+                ", isIgnoringCredentials=" + isIgnoringCredentials +
+                '}';
+    }
+}
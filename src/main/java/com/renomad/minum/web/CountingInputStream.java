@@ -0,0 +1,52 @@
+package com.renomad.minum.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it, so that {@link Request} can report
+ * how much of a body was actually taken from the socket, rather than
+ * how much the client claimed in its content-length header.
+ */
+final class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountingInputStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = in.read();
+        if (result != -1) count += 1;
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = in.read(b, off, len);
+        if (result > 0) count += result;
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = in.skip(n);
+        if (result > 0) count += result;
+        return result;
+    }
+
+    /**
+     * Marking is not supported, since resetting would make the count wrong
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
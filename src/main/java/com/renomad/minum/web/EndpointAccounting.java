@@ -0,0 +1,108 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.metrics.MetricsRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the CPU time and the bytes allocated while running each endpoint,
+ * adding them up by route in the {@link MetricsRegistry}.  This finds the
+ * endpoints causing the most garbage collection.  Enabled by
+ * {@link com.renomad.minum.state.Constants#isEndpointAccountingEnabled}.
+ * <p>
+ *     Only the endpoint's own code is measured, wrapped around it when it is
+ *     registered, inside its {@link Bulkhead} and deadline.  The pre-handler,
+ *     middleware, cache and the waiting for a turn or a response are not.
+ * </p>
+ * <p>
+ *     The JVM keeps these numbers for each platform thread, but it does not
+ *     keep them for virtual threads, which serve our connections.  So while this
+ *     is enabled, an endpoint called on a virtual thread is run on a platform
+ *     thread instead, with the virtual thread waiting for it.  That costs a
+ *     hand-off between threads for each request, which is why it is off by default.
+ *     There is no fixed count of those threads, so one slow endpoint does not hold
+ *     up the others.  The bulkheads already limit how many endpoints run at once,
+ *     and threads left idle for a minute are stopped.
+ * </p>
+ * <p>
+ *     Work the endpoint hands to other threads, such as the future
+ *     returned by an asynchronous endpoint, is not counted.
+ * </p>
+ */
+final class EndpointAccounting {
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final MetricsRegistry metrics;
+    private final ExecutorService platformExecutor;
+
+    private EndpointAccounting(com.sun.management.ThreadMXBean threadMXBean, MetricsRegistry metrics) {
+        this.threadMXBean = threadMXBean;
+        this.metrics = metrics;
+        this.platformExecutor = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("endpoint accounting ", 0).factory());
+    }
+
+    /**
+     * Build an {@link EndpointAccounting}, or return null if this JVM cannot
+     * measure the CPU time and allocation of threads.
+     */
+    static EndpointAccounting build(MetricsRegistry metrics, ILogger logger) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean) ||
+                !threadMXBean.isThreadAllocatedMemorySupported() ||
+                !threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            logger.logDebug(() -> "Endpoint accounting was enabled, but this JVM cannot measure thread allocation and CPU time. Leaving it disabled.");
+            return null;
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        threadMXBean.setThreadCpuTimeEnabled(true);
+        return new EndpointAccounting(threadMXBean, metrics);
+    }
+
+    /**
+     * Run the endpoint, adding its CPU time and allocation to the totals for its route
+     */
+    <T> T measure(String routeName, Callable<T> endpoint) throws Exception {
+        if (!Thread.currentThread().isVirtual()) {
+            return measureOnThisThread(routeName, endpoint);
+        }
+        Future<T> future = platformExecutor.submit(() -> measureOnThisThread(routeName, endpoint));
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw ex;
+        } catch (InterruptedException ex) {
+            // such as when the endpoint runs past its deadline
+            future.cancel(true);
+            throw ex;
+        }
+    }
+
+    /**
+     * Stop the platform threads.  Called when the {@link WebFramework} shuts down.
+     */
+    void shutdown() {
+        platformExecutor.shutdownNow();
+    }
+
+    private <T> T measureOnThisThread(String routeName, Callable<T> endpoint) throws Exception {
+        long allocatedBytesAtStart = threadMXBean.getCurrentThreadAllocatedBytes();
+        long cpuNanosAtStart = threadMXBean.getCurrentThreadCpuTime();
+        try {
+            return endpoint.call();
+        } finally {
+            long allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBytesAtStart;
+            long cpuNanos = threadMXBean.getCurrentThreadCpuTime() - cpuNanosAtStart;
+            metrics.counter("minum_endpoint_accounted_requests", "route", routeName).increment();
+            metrics.counter("minum_endpoint_allocated_bytes", "route", routeName).add(allocatedBytes);
+            metrics.counter("minum_endpoint_cpu_nanos", "route", routeName).add(cpuNanos);
+        }
+    }
+}
@@ -17,6 +17,8 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class is responsible for instantiating necessary classes
@@ -68,15 +70,33 @@ public final class FullSystem {
      */
     public static Context buildContext() {
         var constants = new Constants();
-        var executorService = Executors.newVirtualThreadPerTaskExecutor();
+        var liveThreadCount = new LongAdder();
+        var executorService = Executors.newThreadPerTaskExecutor(buildCountingThreadFactory(liveThreadCount));
         var logger = new Logger(constants, executorService, "primary logger");
 
         var context = new Context(executorService, constants);
         context.setLogger(logger);
+        context.getMetrics().gauge("minum_virtual_threads", liveThreadCount::sum);
 
         return context;
     }
 
+    /**
+     * A factory of virtual threads which keeps count of those alive.  The JVM
+     * does not otherwise report how many virtual threads exist.
+     */
+    static ThreadFactory buildCountingThreadFactory(LongAdder liveThreadCount) {
+        ThreadFactory virtualThreadFactory = Thread.ofVirtual().factory();
+        return runnable -> virtualThreadFactory.newThread(() -> {
+            liveThreadCount.increment();
+            try {
+                runnable.run();
+            } finally {
+                liveThreadCount.decrement();
+            }
+        });
+    }
+
     /**
      * This is the typical entry point for system instantiation.  It will build
      * a {@link Context} object for you, and then properly instantiates the {@link FullSystem}.
@@ -193,6 +213,9 @@ public final class FullSystem {
         if (!hasShutdown) {
             logger.logTrace(() -> "close called on " + this);
             closeCore(logger, context, server, sslServer, this.toString());
+            if (webFramework != null) {
+                webFramework.shutdown();
+            }
             hasShutdown = true;
         }
     }
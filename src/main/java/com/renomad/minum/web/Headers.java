@@ -108,10 +108,7 @@ public final class Headers{
      * we do not find a content length, return -1.
      */
     public int contentLength() {
-        List<String> cl = headerStrings.stream().filter(x -> x.toLowerCase(Locale.ROOT).startsWith("content-length")).toList();
-        if (cl.size() > 1) {
-            throw new WebServerException("The number of content-length headers must be exactly zero or one.  Received: " + cl);
-        }
+        List<String> cl = findContentLengthHeader();
         int contentLength = -1;
         if (!cl.isEmpty()) {
             Matcher clMatcher = contentLengthRegex.matcher(cl.getFirst());
@@ -123,6 +120,33 @@ public final class Headers{
         return contentLength;
     }
 
+    /**
+     * Like {@link #contentLength()}, but as a long, for bodies which
+     * may be larger than 2 gigabytes, such as those streamed to a file
+     * with {@link IRequest#writeBodyTo(java.nio.file.Path)}.
+     * If we do not find a content length, return -1.
+     */
+    public long contentLengthLong() {
+        List<String> cl = findContentLengthHeader();
+        long contentLength = -1;
+        if (!cl.isEmpty()) {
+            Matcher clMatcher = contentLengthRegex.matcher(cl.getFirst());
+            mustBeTrue(clMatcher.matches(), "The content length header value must match the contentLengthRegex");
+            contentLength = Long.parseLong(clMatcher.group(1));
+            mustBeTrue(contentLength >= 0, "Content-length cannot be negative");
+        }
+
+        return contentLength;
+    }
+
+    private List<String> findContentLengthHeader() {
+        List<String> cl = headerStrings.stream().filter(x -> x.toLowerCase(Locale.ROOT).startsWith("content-length")).toList();
+        if (cl.size() > 1) {
+            throw new WebServerException("The number of content-length headers must be exactly zero or one.  Received: " + cl);
+        }
+        return cl;
+    }
+
     /**
      * Indicates whether the headers in this request
      * have a Connection: Keep-Alive
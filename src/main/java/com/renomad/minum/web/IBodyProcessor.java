@@ -1,6 +1,8 @@
 package com.renomad.minum.web;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * An interface for the {@link BodyProcessor} implementation.
@@ -77,4 +79,29 @@ public interface IBodyProcessor {
      *                      header.
      */
     Iterable<StreamingMultipartPartition> getMultiPartIterable(InputStream inputStream, String boundaryValue, int contentLength);
+
+    /**
+     * Confirm the body may be streamed by {@link #writeBody}: it must have a
+     * content-length no larger than
+     * {@link com.renomad.minum.state.Constants#maxStreamedBodySizeBytes}.
+     * @return the content-length
+     * @throws WebServerException if there is no content-length header
+     * @throws com.renomad.minum.security.ForbiddenUseException if the body is too large
+     */
+    long checkStreamedBodyLength(Headers headers);
+
+    /**
+     * Write the body straight from the {@link InputStream} into a channel, such as a
+     * {@link java.nio.channels.FileChannel}, without holding it in memory.
+     * <br>
+     * The count of bytes to read is obtained from the content-length header, which
+     * is required, and checked with {@link #checkStreamedBodyLength(Headers)}.  If the
+     * target is a {@link java.nio.channels.FileChannel}, the data is moved with
+     * {@link java.nio.channels.FileChannel#transferFrom}.
+     * @param inputStream The {@link InputStream} is set at the beginning of the body in the Request.
+     * @param target where the bytes of the body will be written
+     * @return the count of bytes written, which will be the content-length
+     * @throws IOException if the stream closes before we have read the content-length in bytes
+     */
+    long writeBody(InputStream inputStream, Headers headers, WritableByteChannel target) throws IOException;
 }
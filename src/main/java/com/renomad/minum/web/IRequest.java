@@ -1,5 +1,8 @@
 package com.renomad.minum.web;
 
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
 /**
  * An interface for {@link Request}. Built
  * to enable easier testing on web handlers.
@@ -73,4 +76,26 @@ public interface IRequest {
      * using the {@link #getBody()} method, which is far more convenient.
      */
     Iterable<StreamingMultipartPartition> getMultipartIterable();
+
+    /**
+     * Write the body of this request directly into a file, without holding
+     * it in memory.  This is intended for large uploads of a single kind of
+     * data, such as a request with a content type of application/octet-stream
+     * or a video.  If the file exists, it will be replaced.
+     * <br>
+     * A content-length header is required, and the length may be up to
+     * {@link com.renomad.minum.state.Constants#maxStreamedBodySizeBytes}.  If the
+     * client stops sending before the full body arrives, the partial file is deleted.
+     * <br>
+     * Like {@link #getSocketWrapper()}, use this instead of {@link #getBody()}, not in addition to it.
+     * @return the count of bytes written
+     */
+    long writeBodyTo(Path path);
+
+    /**
+     * Similar to {@link #writeBodyTo(Path)}, but writes the body into any
+     * {@link WritableByteChannel}.  The channel is not closed afterwards.
+     * @return the count of bytes written
+     */
+    long writeBodyTo(WritableByteChannel channel);
 }
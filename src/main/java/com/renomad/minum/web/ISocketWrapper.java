@@ -66,4 +66,31 @@ public interface ISocketWrapper extends Closeable {
      * file of key HOST_NAME in {@link Constants#hostName}
      */
     String getHostName();
+
+    /**
+     * Check whether the client has closed its side of the connection, without
+     * consuming any of the data it may have sent.  This is used while waiting on
+     * slow work for a request, to stop early if nobody is left to receive the result.
+     * <p>
+     *     This must only be called by the thread reading from the socket, at a point
+     *     where it is not in the middle of reading a request.  It is not safe to call
+     *     while another thread may be reading from the socket.  It may shorten the
+     *     socket's read timeout, so call {@link #endDisconnectChecks()} once finished checking.
+     *     It may also change the stream returned by {@link #getInputStream()}, so get
+     *     that again afterwards.
+     * </p>
+     * @return true if the client has disconnected.  Implementations which cannot
+     * tell return false.
+     */
+    default boolean isClientDisconnected() {
+        return false;
+    }
+
+    /**
+     * Undo any change {@link #isClientDisconnected()} made to the socket, such
+     * as to its read timeout, before reading from it normally again.
+     */
+    default void endDisconnectChecks() {
+        // nothing to undo for most implementations
+    }
 }
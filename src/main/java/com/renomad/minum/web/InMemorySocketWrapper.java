@@ -0,0 +1,143 @@
+package com.renomad.minum.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+
+/**
+ * An {@link ISocketWrapper} with no socket behind it.  The client's bytes
+ * are read from an array, and whatever the server sends is kept in memory.
+ * <p>
+ *     This is the transport used by {@link InMemoryTransport}.  It may be
+ *     refilled with {@link #reset(byte[])} and used again, so that running
+ *     many requests does not allocate a new one each time.
+ * </p>
+ */
+public final class InMemorySocketWrapper implements ISocketWrapper {
+
+    /**
+     * A {@link ByteArrayInputStream} whose contents may be swapped out
+     */
+    private static final class ResettableInputStream extends ByteArrayInputStream {
+
+        ResettableInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        void reset(byte[] newBuf) {
+            this.buf = newBuf;
+            this.pos = 0;
+            this.mark = 0;
+            this.count = newBuf.length;
+        }
+    }
+
+    private final ResettableInputStream inputStream;
+    private final ByteArrayOutputStream outputStream;
+    private final String remoteAddress;
+    private final HttpServerType serverType;
+    private final String hostName;
+
+    /**
+     * @param requestBytes the raw bytes sent by the client, possibly several requests one after another
+     * @param remoteAddress the address the client appears to come from, such as "127.0.0.1"
+     */
+    public InMemorySocketWrapper(byte[] requestBytes, String remoteAddress, HttpServerType serverType, String hostName) {
+        this.inputStream = new ResettableInputStream(requestBytes);
+        this.outputStream = new ByteArrayOutputStream();
+        this.remoteAddress = remoteAddress;
+        this.serverType = serverType;
+        this.hostName = hostName;
+    }
+
+    /**
+     * Prepare for another exchange, with new bytes from the client,
+     * and nothing yet sent by the server
+     */
+    public void reset(byte[] requestBytes) {
+        inputStream.reset(requestBytes);
+        outputStream.reset();
+    }
+
+    /**
+     * Everything the server has sent since the last {@link #reset(byte[])}
+     */
+    public byte[] getSentBytes() {
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public void send(String msg) {
+        outputStream.writeBytes(msg.getBytes(Charset.defaultCharset()));
+    }
+
+    @Override
+    public void send(byte[] bodyContents) {
+        outputStream.writeBytes(bodyContents);
+    }
+
+    @Override
+    public void send(byte[] bodyContents, int off, int len) {
+        outputStream.write(bodyContents, off, len);
+    }
+
+    @Override
+    public void send(int b) {
+        outputStream.write(b);
+    }
+
+    @Override
+    public void sendHttpLine(String msg) {
+        send(msg + WebEngine.HTTP_CRLF);
+    }
+
+    /**
+     * There is no real port, so this is always 0
+     */
+    @Override
+    public int getLocalPort() {
+        return 0;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddrWithPort() {
+        return InetSocketAddress.createUnresolved(remoteAddress, 0);
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return remoteAddress;
+    }
+
+    @Override
+    public HttpServerType getServerType() {
+        return serverType;
+    }
+
+    /**
+     * Nothing to close.  The contents remain available, and
+     * it may be used again after {@link #reset(byte[])}.
+     */
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public String getHostName() {
+        return hostName;
+    }
+
+    @Override
+    public String toString() {
+        return "(InMemorySocketWrapper for remote address: " + remoteAddress + ")";
+    }
+}
@@ -0,0 +1,78 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.ThrowingRunnable;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs raw HTTP requests through the whole of a {@link WebFramework} - the
+ * parsing, routing, endpoints, headers and compression - without any network,
+ * returning the raw bytes of the response.
+ * <p>
+ *     This is useful for testing, and for measuring the overhead of the framework
+ *     itself, free of the variation that sockets and the operating system bring.
+ *     The requests run on the calling thread, exactly as they would on a
+ *     connection's thread in the server.
+ * </p>
+ * <pre>{@code
+ * var webFramework = new WebFramework(context);
+ * webFramework.registerPath(GET, "hello", request -> Response.htmlOk("hello"));
+ * var transport = new InMemoryTransport(context, webFramework);
+ * String response = transport.send("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+ * }</pre>
+ * <p>
+ *     Several requests may be given at once, one after another, as a client
+ *     using keep-alive would send them, and their responses are returned together.
+ * </p>
+ * <p>
+ *     This is not thread-safe, since it reuses one {@link InMemorySocketWrapper}.
+ *     Give each thread its own.
+ * </p>
+ */
+public final class InMemoryTransport {
+
+    private final WebFramework webFramework;
+    private final InMemorySocketWrapper socketWrapper;
+    private final ThrowingRunnable handler;
+
+    /**
+     * Build a transport which appears to the framework as a
+     * plain-text connection from 127.0.0.1
+     */
+    public InMemoryTransport(Context context, WebFramework webFramework) {
+        this.webFramework = webFramework;
+        this.socketWrapper = new InMemorySocketWrapper(new byte[0], "127.0.0.1", HttpServerType.PLAIN_TEXT_HTTP, context.getConstants().hostName);
+        this.handler = webFramework.makePrimaryHttpHandler(socketWrapper, null);
+    }
+
+    /**
+     * Send the raw bytes of one or more requests, and get back
+     * the raw bytes of everything the server sent in reply
+     */
+    public byte[] send(byte[] requestBytes) throws Exception {
+        socketWrapper.reset(requestBytes);
+        // the handler names the thread after the connection, as it would
+        // on a server's thread.  Here that is the caller's thread, so put it back.
+        Thread currentThread = Thread.currentThread();
+        String originalName = currentThread.getName();
+        try {
+            handler.run();
+        } finally {
+            currentThread.setName(originalName);
+        }
+        return socketWrapper.getSentBytes();
+    }
+
+    /**
+     * Send the text of one or more requests, and get back the text of the
+     * reply.  The text is converted as UTF-8 in both directions.
+     */
+    public String send(String request) throws Exception {
+        return new String(send(request.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    public WebFramework getWebFramework() {
+        return webFramework;
+    }
+}
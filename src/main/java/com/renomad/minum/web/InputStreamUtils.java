@@ -42,27 +42,14 @@ final class InputStreamUtils implements IInputStreamUtils {
 
     @Override
     public byte[] read(int lengthToRead, InputStream inputStream) {
-        final int typicalBufferSize = 1024 * 8;
-        byte[] buf = new byte[Math.min(lengthToRead, typicalBufferSize)]; // 8k buffer is my understanding of a decent size.  Fast, doesn't waste too much space.
+        // the length is only what the client claims, so the memory is taken in
+        // bounded steps as the bytes actually arrive, rather than all at once.
         byte[] data;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int read;
-        int totalRead = 0;
         try {
-            while ((read = inputStream.read(buf)) >= 0) {
-                totalRead += read;
-                if (totalRead < lengthToRead) {
-                    // if we haven't gotten everything we wanted, write this to the output and loop again
-                    baos.write(buf, 0, read);
-                } else {
-                    baos.write(buf, 0, read - (totalRead - lengthToRead));
-                    break;
-                }
-            }
+            data = inputStream.readNBytes(lengthToRead);
         } catch (IOException ex) {
             throw new UtilsException(ex);
         }
-        data = baos.toByteArray();
 
         if (data.length != lengthToRead) {
             String message = String.format("length of bytes read (%d) must be what we expected (%d)", data.length, lengthToRead);
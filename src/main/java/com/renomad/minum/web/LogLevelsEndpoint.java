@@ -0,0 +1,104 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.Logger;
+import com.renomad.minum.logging.LoggingLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_400_BAD_REQUEST;
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_403_FORBIDDEN;
+
+/**
+ * The endpoint for viewing and changing the log levels while running,
+ * registered by {@link WebFramework#registerLogLevelsEndpoint(String, java.util.Collection)}.
+ * <ul>
+ *     <li>GET shows the enabled levels and the TRACE sample rate, as JSON</li>
+ *     <li>POST changes them, from a form with <em>levels</em>, such
+ *     as "DEBUG,TRACE,ASYNC_ERROR,AUDIT", and <em>trace_sample_rate</em>.
+ *     Either may be left out to keep its current value.</li>
+ * </ul>
+ * <p>
+ *     Only clients from the allowed addresses may use this, everyone
+ *     else receives a 403 FORBIDDEN.
+ * </p>
+ */
+final class LogLevelsEndpoint {
+
+    private final Logger logger;
+    private final Set<String> allowedRemoteAddresses;
+
+    LogLevelsEndpoint(Logger logger, Set<String> allowedRemoteAddresses) {
+        this.logger = logger;
+        this.allowedRemoteAddresses = allowedRemoteAddresses;
+    }
+
+    IResponse get(IRequest request) {
+        if (!allowedRemoteAddresses.contains(request.getRemoteRequester())) {
+            return Response.buildLeanResponse(CODE_403_FORBIDDEN);
+        }
+        return render();
+    }
+
+    IResponse post(IRequest request) {
+        if (!allowedRemoteAddresses.contains(request.getRemoteRequester())) {
+            return Response.buildLeanResponse(CODE_403_FORBIDDEN);
+        }
+        String levelsValue = request.getBody().asString("levels");
+        String sampleRateValue = request.getBody().asString("trace_sample_rate");
+
+        List<LoggingLevel> levels = null;
+        if (!levelsValue.isEmpty()) {
+            levels = new ArrayList<>();
+            for (String level : levelsValue.split(",")) {
+                String trimmedLevel = level.trim().toUpperCase(Locale.ROOT);
+                if (trimmedLevel.isEmpty()) continue;
+                try {
+                    levels.add(LoggingLevel.valueOf(trimmedLevel));
+                } catch (IllegalArgumentException ex) {
+                    return Response.buildResponse(CODE_400_BAD_REQUEST, Map.of("Content-Type", "text/plain; charset=utf-8"), "Unknown log level: " + trimmedLevel);
+                }
+            }
+        }
+        int sampleRate = 0;
+        if (!sampleRateValue.isEmpty()) {
+            try {
+                sampleRate = Integer.parseInt(sampleRateValue);
+            } catch (NumberFormatException ex) {
+                sampleRate = -1;
+            }
+            if (sampleRate < 1) {
+                return Response.buildResponse(CODE_400_BAD_REQUEST, Map.of("Content-Type", "text/plain; charset=utf-8"), "The trace sample rate must be a whole number, at least 1. Received: " + sampleRateValue);
+            }
+        }
+
+        // all checked, so now we apply them
+        if (levels != null) {
+            logger.setEnabledLevels(levels);
+        }
+        if (sampleRate > 0) {
+            logger.setTraceSampleRate(sampleRate);
+        }
+        logger.logAudit(() -> "Log levels changed by " + request.getRemoteRequester() + " to " + logger.getEnabledLevels() + ", trace sample rate " + logger.getTraceSampleRate());
+        return render();
+    }
+
+    private IResponse render() {
+        var sb = new StringBuilder(128);
+        sb.append("{\"levels\":[");
+        boolean isFirst = true;
+        for (LoggingLevel level : logger.getEnabledLevels()) {
+            if (!isFirst) sb.append(',');
+            isFirst = false;
+            MetricsEndpoints.appendJsonString(sb, level.name());
+        }
+        sb.append("],\"trace_sample_rate\":").append(logger.getTraceSampleRate()).append('}');
+        return Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", "application/json; charset=utf-8", "Cache-Control", "no-store"),
+                sb.toString());
+    }
+}
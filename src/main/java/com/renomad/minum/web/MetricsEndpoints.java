@@ -0,0 +1,197 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.Counter;
+import com.renomad.minum.metrics.MetricsRegistry;
+import com.renomad.minum.metrics.PrometheusFormat;
+import com.renomad.minum.queue.AbstractActionQueue;
+import com.renomad.minum.queue.ActionQueueState;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_403_FORBIDDEN;
+
+/**
+ * The endpoints showing how the running system is doing, registered
+ * by {@link WebFramework#registerMetricsEndpoints(String, String, java.util.Collection)}.
+ * <ul>
+ *     <li>metrics, in the Prometheus text format, for scraping</li>
+ *     <li>diagnostics, as JSON, for a person to read</li>
+ * </ul>
+ * <p>
+ *     Only clients from the allowed addresses may see these, everyone
+ *     else receives a 403 FORBIDDEN.
+ * </p>
+ */
+final class MetricsEndpoints {
+
+    /**
+     * How many routes to list in the diagnostics, by their allocation
+     */
+    private static final int TOP_ENDPOINTS_COUNT = 10;
+
+    private final MetricsRegistry metrics;
+    private final ActionQueueState actionQueueState;
+    private final long startTimeMillis;
+    private final Set<String> allowedRemoteAddresses;
+
+    MetricsEndpoints(MetricsRegistry metrics, ActionQueueState actionQueueState, long startTimeMillis, Set<String> allowedRemoteAddresses) {
+        this.metrics = metrics;
+        this.actionQueueState = actionQueueState;
+        this.startTimeMillis = startTimeMillis;
+        this.allowedRemoteAddresses = allowedRemoteAddresses;
+    }
+
+    IResponse metrics(IRequest request) {
+        if (!allowedRemoteAddresses.contains(request.getRemoteRequester())) {
+            return Response.buildLeanResponse(CODE_403_FORBIDDEN);
+        }
+        return Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", "text/plain; version=0.0.4; charset=utf-8", "Cache-Control", "no-store"),
+                PrometheusFormat.render(metrics));
+    }
+
+    IResponse diagnostics(IRequest request) {
+        if (!allowedRemoteAddresses.contains(request.getRemoteRequester())) {
+            return Response.buildLeanResponse(CODE_403_FORBIDDEN);
+        }
+        return Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", "application/json; charset=utf-8", "Cache-Control", "no-store"),
+                renderDiagnostics());
+    }
+
+    String renderDiagnostics() {
+        var sb = new StringBuilder(2 * 1024);
+        sb.append("{\"uptime_millis\":").append(System.currentTimeMillis() - startTimeMillis);
+
+        sb.append(",\"open_connections\":");
+        appendGaugesByLabel(sb, "minum_open_connections", "server");
+
+        sb.append(",\"action_queues\":{");
+        boolean isFirst = true;
+        for (AbstractActionQueue queue : actionQueueState.getQueues()) {
+            if (!isFirst) sb.append(',');
+            isFirst = false;
+            appendJsonString(sb, queue.toString()).append(':').append(queue.size());
+        }
+        sb.append('}');
+
+        sb.append(",\"database_entries\":");
+        appendGaugesByLabel(sb, "minum_db_entries", "db");
+
+        long hits = counterValue("minum_static_cache_hits", "");
+        long misses = counterValue("minum_static_cache_misses", "");
+        sb.append(",\"static_cache\":{\"hits\":").append(hits)
+                .append(",\"misses\":").append(misses)
+                .append(",\"hit_rate\":").append(hits + misses == 0 ? 0.0 : (double) hits / (hits + misses))
+                .append('}');
+
+        sb.append(",\"endpoints_by_allocation\":");
+        appendTopEndpointsByAllocation(sb);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        sb.append(",\"jvm\":{\"heap_used_bytes\":").append(heap.getUsed())
+                .append(",\"heap_committed_bytes\":").append(heap.getCommitted())
+                .append(",\"heap_max_bytes\":").append(heap.getMax())
+                .append(",\"platform_threads\":").append(ManagementFactory.getThreadMXBean().getThreadCount());
+        LongSupplier virtualThreads = metrics.getGauges().get(new MetricsRegistry.MetricKey("minum_virtual_threads", ""));
+        if (virtualThreads != null) {
+            sb.append(",\"virtual_threads\":").append(virtualThreads.getAsLong());
+        }
+        sb.append(",\"garbage_collectors\":{");
+        isFirst = true;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!isFirst) sb.append(',');
+            isFirst = false;
+            appendJsonString(sb, gc.getName())
+                    .append(":{\"collections\":").append(gc.getCollectionCount())
+                    .append(",\"time_millis\":").append(gc.getCollectionTime()).append('}');
+        }
+        sb.append("}}}");
+        return sb.toString();
+    }
+
+    /**
+     * Render the routes allocating the most memory, as measured by {@link EndpointAccounting},
+     * as a JSON array sorted from most to least.  Empty unless that accounting is enabled.
+     */
+    private void appendTopEndpointsByAllocation(StringBuilder sb) {
+        List<Map.Entry<MetricsRegistry.MetricKey, Counter>> allocations = metrics.getCounters().entrySet().stream()
+                .filter(x -> x.getKey().name().equals("minum_endpoint_allocated_bytes"))
+                .sorted(Comparator.comparingLong((Map.Entry<MetricsRegistry.MetricKey, Counter> x) -> x.getValue().get()).reversed())
+                .limit(TOP_ENDPOINTS_COUNT)
+                .toList();
+        sb.append('[');
+        boolean isFirst = true;
+        for (var allocation : allocations) {
+            String route = allocation.getKey().labelValue("route");
+            String labels = allocation.getKey().labels();
+            long requests = counterValue("minum_endpoint_accounted_requests", labels);
+            long allocatedBytes = allocation.getValue().get();
+            if (!isFirst) sb.append(',');
+            isFirst = false;
+            sb.append("{\"route\":");
+            appendJsonString(sb, route)
+                    .append(",\"requests\":").append(requests)
+                    .append(",\"allocated_bytes\":").append(allocatedBytes)
+                    .append(",\"allocated_bytes_per_request\":").append(requests == 0 ? 0 : allocatedBytes / requests)
+                    .append(",\"cpu_nanos\":").append(counterValue("minum_endpoint_cpu_nanos", labels))
+                    .append('}');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * The value of a counter, or zero if there is none.  Unlike
+     * {@link MetricsRegistry#counter(String, String...)}, this never creates one.
+     * @param labels the labels as rendered in the {@link MetricsRegistry.MetricKey}
+     */
+    private long counterValue(String name, String labels) {
+        Counter counter = metrics.getCounters().get(new MetricsRegistry.MetricKey(name, labels));
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Render the gauges of one name as a JSON object, keyed by the value of one of their labels
+     */
+    private void appendGaugesByLabel(StringBuilder sb, String name, String labelKey) {
+        sb.append('{');
+        boolean isFirst = true;
+        for (var gauge : metrics.getGauges().entrySet()) {
+            if (!gauge.getKey().name().equals(name)) continue;
+            if (!isFirst) sb.append(',');
+            isFirst = false;
+            appendJsonString(sb, String.valueOf(gauge.getKey().labelValue(labelKey))).append(':').append(gauge.getValue().getAsLong());
+        }
+        sb.append('}');
+    }
+
+    static StringBuilder appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"');
+    }
+}
@@ -0,0 +1,30 @@
+package com.renomad.minum.web;
+
+/**
+ * Code run around endpoints, for concerns shared by many of them, such as
+ * authentication, logging, or redirects.  Register with
+ * {@link WebFramework#registerMiddleware(Middleware)} and its variants.
+ * <p>
+ *     A middleware receives the request and the next step, which is either the
+ *     next middleware or the endpoint itself.  It may adjust the response from
+ *     the next step, or return its own response without calling it at all.
+ * </p>
+ * <pre>{@code
+ * // only authenticated users may reach anything under "secure/"
+ * webFramework.registerMiddleware("secure/", (request, next) -> {
+ *     if (auth.processAuth(request).isAuthenticated()) {
+ *         return next.apply(request);
+ *     } else {
+ *         return Response.buildLeanResponse(CODE_403_FORBIDDEN);
+ *     }
+ * });
+ * }</pre>
+ */
+@FunctionalInterface
+public interface Middleware {
+
+    /**
+     * @param next the rest of the chain for this endpoint.  Call it to carry on.
+     */
+    IResponse apply(IRequest request, ThrowingFunction<IRequest, IResponse> next) throws Exception;
+}
@@ -2,22 +2,58 @@ package com.renomad.minum.web;
 
 import com.renomad.minum.utils.StringUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
 
 /**
  * Represents a single partition in a multipart/form-data body response
+ * <p>
+ *     Ordinarily, the content is held in memory.  However, if the system
+ *     is configured with {@link com.renomad.minum.state.Constants#multipartTempDirectory},
+ *     partitions larger than {@link com.renomad.minum.state.Constants#multipartInMemoryThresholdBytes}
+ *     are stored in a temporary file instead, available through {@link #getPath()} and
+ *     {@link #getInputStream()}.  Those files are deleted once the response has been sent,
+ *     so move or copy the file during the request if it needs to be kept.
+ * </p>
  */
 public final class Partition {
 
+    private static final byte[] EMPTY_BYTES = new byte[0];
     private final Headers headers;
     private final byte[] content;
     private final ContentDisposition contentDisposition;
 
+    /**
+     * If this partition's content was stored on disk, this is the
+     * path to that file.  Otherwise, null.
+     */
+    private final Path contentFile;
+    private final long contentLength;
+
     public Partition(Headers headers, byte[] content, ContentDisposition contentDisposition) {
         this.headers = headers;
         this.content = content;
         this.contentDisposition = contentDisposition;
+        this.contentFile = null;
+        this.contentLength = content.length;
+    }
+
+    /**
+     * Build a partition whose content is stored in a file on disk
+     * @param contentFile the path to the file holding this partition's data
+     * @param contentLength the count of bytes in the file
+     */
+    Partition(Headers headers, Path contentFile, long contentLength, ContentDisposition contentDisposition) {
+        this.headers = headers;
+        this.content = EMPTY_BYTES;
+        this.contentDisposition = contentDisposition;
+        this.contentFile = contentFile;
+        this.contentLength = contentLength;
     }
 
     public Headers getHeaders() {
@@ -28,24 +64,90 @@ public final class Partition {
         return contentDisposition;
     }
 
+    /**
+     * Returns the content of this partition as an array of bytes.
+     * <p>
+     *     If this partition was stored on disk, this will read the whole
+     *     file into memory - for large data, prefer {@link #getInputStream()}
+     *     or {@link #getPath()}.
+     * </p>
+     */
     public byte[] getContent() {
+        if (contentFile != null) {
+            try {
+                return Files.readAllBytes(contentFile);
+            } catch (IOException e) {
+                throw new WebServerException(e);
+            }
+        }
         return content.clone();
     }
+
     public String getContentAsString() {
+        if (contentFile != null) {
+            return StringUtils.byteArrayToString(getContent());
+        }
         return StringUtils.byteArrayToString(content);
     }
 
+    /**
+     * Returns an {@link InputStream} of this partition's content, whether
+     * it is held in memory or stored on disk.
+     */
+    public InputStream getInputStream() {
+        if (contentFile != null) {
+            try {
+                return Files.newInputStream(contentFile);
+            } catch (IOException e) {
+                throw new WebServerException(e);
+            }
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * If this partition was stored in a temporary file, returns the path
+     * to that file. Otherwise, returns null.
+     */
+    public Path getPath() {
+        return contentFile;
+    }
+
+    /**
+     * True if this partition's content was stored in a temporary file
+     * rather than held in memory.
+     */
+    public boolean isStoredOnDisk() {
+        return contentFile != null;
+    }
+
+    /**
+     * The count of bytes in this partition's content
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * If this partition was stored on disk, delete the file.
+     */
+    void deleteTemporaryFile() throws IOException {
+        if (contentFile != null) {
+            Files.deleteIfExists(contentFile);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Partition partition = (Partition) o;
-        return Objects.equals(headers, partition.headers) && Arrays.equals(content, partition.content) && Objects.equals(contentDisposition, partition.contentDisposition);
+        return contentLength == partition.contentLength && Objects.equals(headers, partition.headers) && Arrays.equals(content, partition.content) && Objects.equals(contentDisposition, partition.contentDisposition) && Objects.equals(contentFile, partition.contentFile);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(headers, contentDisposition);
+        int result = Objects.hash(headers, contentDisposition, contentFile, contentLength);
         result = 31 * result + Arrays.hashCode(content);
         return result;
     }
@@ -1,5 +1,14 @@
 package com.renomad.minum.web;
 
+import com.renomad.minum.metrics.HttpStageEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
 /**
@@ -59,6 +68,12 @@ public final class Request implements IRequest {
     private final IBodyProcessor bodyProcessor;
     private boolean hasStartedReadingBody;
 
+    /**
+     * Wraps the socket's stream while the framework reads the body, so we
+     * know how many bytes it took.  Null until the body is read.
+     */
+    private CountingInputStream bodyInputStream;
+
     /**
      * Constructor for a HTTP request
      * @param  remoteRequester This is the remote address making the request
@@ -94,7 +109,11 @@ public final class Request implements IRequest {
                     " If intending to use getBody(), use it exclusively");
         }
         if (body == null) {
-            body = bodyProcessor.extractData(socketWrapper.getInputStream(), headers);
+            var readBodyEvent = new HttpStageEvent();
+            readBodyEvent.begin();
+            bodyInputStream = new CountingInputStream(socketWrapper.getInputStream());
+            body = bodyProcessor.extractData(bodyInputStream, headers);
+            readBodyEvent.finish(HttpStageEvent.READ_BODY);
         }
         return body;
     }
@@ -111,6 +130,54 @@ public final class Request implements IRequest {
         return socketWrapper;
     }
 
+    /**
+     * The stream the body readers in this class use, counting what they take
+     * from the socket.
+     */
+    private InputStream getBodyInputStream() {
+        bodyInputStream = new CountingInputStream(getSocketWrapper().getInputStream());
+        return bodyInputStream;
+    }
+
+    /**
+     * The count of body bytes the framework's readers actually took from the
+     * socket, which may differ from the content-length the client claimed.
+     * Bytes read directly from {@link #getSocketWrapper()} are not included.
+     */
+    long getBodyBytesRead() {
+        return bodyInputStream == null ? 0 : bodyInputStream.getCount();
+    }
+
+    /**
+     * True if the client has closed the connection while we were working on
+     * this request.  We can only look when the request has no body, since
+     * otherwise the handler may be reading from the socket at the same time.
+     */
+    boolean isClientDisconnected() {
+        if (hasStartedReadingBody || WebFramework.isThereIsABody(headers)) {
+            return false;
+        }
+        return socketWrapper.isClientDisconnected();
+    }
+
+    /**
+     * See {@link ISocketWrapper#endDisconnectChecks()}
+     */
+    void endDisconnectChecks() {
+        socketWrapper.endDisconnectChecks();
+    }
+
+    /**
+     * Delete any temporary files created while reading the body, such as
+     * large multipart partitions stored on disk.  This is run by the framework
+     * after the response has been sent.
+     */
+    void deleteTemporaryFiles() throws IOException {
+        if (body != null) {
+            body.deleteTemporaryFiles();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -142,7 +209,7 @@ public final class Request implements IRequest {
         if (!headers.contentType().contains("application/x-www-form-urlencoded")) {
             throw new WebServerException("This request was not sent with a content type of application/x-www-form-urlencoded.  The content type was: " + headers.contentType());
         }
-        return bodyProcessor.getUrlEncodedDataIterable(getSocketWrapper().getInputStream(), getHeaders().contentLength());
+        return bodyProcessor.getUrlEncodedDataIterable(getBodyInputStream(), getHeaders().contentLength());
     }
 
     /**
@@ -184,6 +251,51 @@ public final class Request implements IRequest {
             throw new WebServerException(parsingError);
         }
 
-        return bodyProcessor.getMultiPartIterable(getSocketWrapper().getInputStream(), boundaryValue ,getHeaders().contentLength());
+        return bodyProcessor.getMultiPartIterable(getBodyInputStream(), boundaryValue ,getHeaders().contentLength());
+    }
+
+    @Override
+    public long writeBodyTo(Path path) {
+        checkForExistingBody();
+        // check before opening the file, so an invalid request never truncates an existing file
+        bodyProcessor.checkStreamedBodyLength(headers);
+        var readBodyEvent = new HttpStageEvent();
+        readBodyEvent.begin();
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long bytesWritten = bodyProcessor.writeBody(getBodyInputStream(), headers, fileChannel);
+            readBodyEvent.finish(HttpStageEvent.READ_BODY);
+            return bytesWritten;
+        } catch (IOException ex) {
+            deletePartialFile(path, ex);
+            throw new WebServerException(ex);
+        } catch (RuntimeException ex) {
+            deletePartialFile(path, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Remove whatever was written of the body, so we don't leave a partial file behind.
+     */
+    private static void deletePartialFile(Path path, Exception ex) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException deleteException) {
+            ex.addSuppressed(deleteException);
+        }
+    }
+
+    @Override
+    public long writeBodyTo(WritableByteChannel channel) {
+        checkForExistingBody();
+        var readBodyEvent = new HttpStageEvent();
+        readBodyEvent.begin();
+        try {
+            long bytesWritten = bodyProcessor.writeBody(getBodyInputStream(), headers, channel);
+            readBodyEvent.finish(HttpStageEvent.READ_BODY);
+            return bytesWritten;
+        } catch (IOException ex) {
+            throw new WebServerException(ex);
+        }
     }
 }
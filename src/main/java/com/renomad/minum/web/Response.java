@@ -9,12 +9,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.zip.GZIPOutputStream;
 
 import static com.renomad.minum.utils.FileUtils.badFilePathPatterns;
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
 import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
 import static com.renomad.minum.web.StatusLine.StatusCode.CODE_206_PARTIAL_CONTENT;
 
@@ -63,12 +65,23 @@ import static com.renomad.minum.web.StatusLine.StatusCode.CODE_206_PARTIAL_CONTE
  */
 public final class Response implements IResponse {
 
+    /**
+     * The output of a response without a body
+     */
+    private static final ThrowingConsumer<ISocketWrapper> NO_OUTPUT = socketWrapper -> {};
+
     private final StatusLine.StatusCode statusCode;
     private final Map<String, String> extraHeaders;
     private final byte[] body;
     private final ThrowingConsumer<ISocketWrapper> outputGenerator;
     private final long bodyLength;
 
+    /**
+     * If not null, this response with its body already compressed, returned
+     * by {@link #compressBody()}.  See {@link #withCompressedVariant(Response)}
+     */
+    private final Response compressedVariant;
+
 
     /**
      * This is the constructor that provides access to all fields.  It is not intended
@@ -83,10 +96,39 @@ public final class Response implements IResponse {
     Response(StatusLine.StatusCode statusCode, Map<String, String> extraHeaders, byte[] body,
              ThrowingConsumer<ISocketWrapper> outputGenerator, long bodyLength) {
         this.statusCode = statusCode;
-        this.extraHeaders = new HashMap<>(extraHeaders);
+        // this is the one copy of the headers made for a response.  Everything
+        // internal reads through this unmodifiable view, see getExtraHeadersView()
+        this.extraHeaders = Collections.unmodifiableMap(new HashMap<>(extraHeaders));
         this.body = body;
         this.outputGenerator = outputGenerator;
         this.bodyLength = bodyLength;
+        this.compressedVariant = null;
+    }
+
+    /**
+     * Build a response from another, sharing its status code and
+     * headers, with a different body.  Used by {@link #compressBody()}
+     */
+    private Response(Response original, byte[] body) {
+        this.statusCode = original.statusCode;
+        this.extraHeaders = original.extraHeaders;
+        this.body = body;
+        this.outputGenerator = socketWrapper -> sendByteArrayResponse(socketWrapper, body);
+        this.bodyLength = body.length;
+        this.compressedVariant = null;
+    }
+
+    /**
+     * Build a copy of a response, carrying a compressed variant of it.
+     * Used by {@link #withCompressedVariant(Response)}
+     */
+    private Response(Response original, Response compressedVariant) {
+        this.statusCode = original.statusCode;
+        this.extraHeaders = original.extraHeaders;
+        this.body = original.body;
+        this.outputGenerator = original.outputGenerator;
+        this.bodyLength = original.bodyLength;
+        this.compressedVariant = compressedVariant;
     }
 
     /**
@@ -113,6 +155,23 @@ public final class Response implements IResponse {
         return new Response(statusCode, extraHeaders, null, outputGenerator, bodyLength);
     }
 
+    /**
+     * Build a response whose body has no end known in advance, such as an event stream.
+     * No content-length is sent, and the connection is closed once the output generator
+     * returns, which is how the client learns the body has ended.  See {@link SseBroadcaster}
+     */
+    static Response buildUnboundedStreamingResponse(StatusLine.StatusCode statusCode, Map<String, String> extraHeaders, ThrowingConsumer<ISocketWrapper> outputGenerator) {
+        return new Response(statusCode, extraHeaders, null, outputGenerator, -1);
+    }
+
+    /**
+     * True if this response has no content-length, and the body ends when
+     * the connection closes.  See {@link #buildUnboundedStreamingResponse(StatusLine.StatusCode, Map, ThrowingConsumer)}
+     */
+    boolean isUnbounded() {
+        return body == null && bodyLength < 0;
+    }
+
     /**
      * A constructor for situations where the developer wishes to send a small (less than a megabyte) byte array
      * to the client.  If there is need to send something of larger size, choose one these
@@ -170,14 +229,14 @@ public final class Response implements IResponse {
      * @param extraHeaders extra HTTP headers
      */
     public static IResponse buildLeanResponse(StatusLine.StatusCode statusCode, Map<String, String> extraHeaders) {
-        return new Response(statusCode, extraHeaders, null, socketWrapper -> {}, 0);
+        return new Response(statusCode, extraHeaders, null, NO_OUTPUT, 0);
     }
 
     /**
      * Build a {@link Response} with only a status code, with no body and no extra headers.
      */
     public static IResponse buildLeanResponse(StatusLine.StatusCode statusCode) {
-        return new Response(statusCode, Map.of(), null, socketWrapper -> {}, 0);
+        return new Response(statusCode, Map.of(), null, NO_OUTPUT, 0);
     }
 
 
@@ -216,6 +275,32 @@ public final class Response implements IResponse {
         return new HashMap<>(extraHeaders);
     }
 
+    /**
+     * A read-only view of the extra headers, for use while sending the
+     * response, so we don't make a copy each time we look at them.
+     */
+    Map<String, String> getExtraHeadersView() {
+        return extraHeaders;
+    }
+
+    /**
+     * Find the value of an extra header by its name, case-insensitive, without
+     * copying the headers.  Returns null if there is no such header.
+     * @throws com.renomad.minum.utils.InvariantException if there are two or more headers with this name
+     */
+    String getExtraHeaderValue(String name) {
+        String result = null;
+        int count = 0;
+        for (var entry : extraHeaders.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                result = entry.getValue();
+                count += 1;
+            }
+        }
+        mustBeTrue(count <= 1, "Must be zero or one of this thing, or it's a bug.  We found a size of " + count);
+        return result;
+    }
+
     @Override
     public StatusLine.StatusCode getStatusCode() {
         return statusCode;
@@ -235,6 +320,15 @@ public final class Response implements IResponse {
         }
     }
 
+    /**
+     * True if everything this response sends is held in memory, so it may
+     * be sent more than once.  A response streaming a file, for example,
+     * can only be sent once.
+     */
+    boolean isInMemory() {
+        return body != null || outputGenerator == NO_OUTPUT;
+    }
+
     /**
      * By calling this method with a {@link ISocketWrapper} parameter, the method
      * will send bytes on the associated socket.
@@ -290,19 +384,31 @@ public final class Response implements IResponse {
      * Compress the data in this body using gzip.
      * <br>
      * This operates by getting the body field from this instance of {@link Response} and
-     * creating a new Response with the compressed data.
+     * creating a new Response with the compressed data.  The new Response shares
+     * this one's headers rather than copying them.
      */
     Response compressBody() throws IOException {
+        if (compressedVariant != null) {
+            return compressedVariant;
+        }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // text typically compresses to well under half its size, so we start there
+        // rather than at the default of 32 bytes, to avoid repeatedly growing the buffer
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, body.length / 2));
         var gos = new GZIPOutputStream(out);
         gos.write(body);
         gos.finish();
-        return (Response)Response.buildResponse(
-                statusCode,
-                extraHeaders,
-                out.toByteArray()
-        );
+        return new Response(this, out.toByteArray());
+    }
+
+    /**
+     * A copy of this response which holds onto its compressed variant, so
+     * that {@link #compressBody()} returns that rather than compressing again.
+     * This is for responses sent many times, such as those in the {@link ResponseCache}.
+     * @param compressedVariant the result of {@link #compressBody()} on this response
+     */
+    Response withCompressedVariant(Response compressedVariant) {
+        return new Response(this, compressedVariant);
     }
 
     @Override
@@ -0,0 +1,350 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.utils.StacktraceUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
+
+/**
+ * A cache of responses from endpoints, for those registered with a {@link CachePolicy}.
+ * Get this from {@link WebFramework#getResponseCache()}, to drop entries when the data
+ * behind them changes, and to see how well the cache is working.
+ * <p>
+ *     Entries are kept ready to send, along with a gzip-compressed copy for text
+ *     that is large enough to be worth compressing.  The total size of all entries
+ *     is kept under {@link com.renomad.minum.state.Constants#responseCacheMaxBytes},
+ *     dropping the least-recently used first.
+ * </p>
+ * <p>
+ *     Only successful (200) responses with a body held in memory are cached.
+ *     Responses setting a cookie, or marked "Cache-Control: no-store", are not.
+ *     Requests with a Cookie or Authorization header go straight to the endpoint,
+ *     unless the {@link CachePolicy} allows for them.
+ * </p>
+ * <pre>{@code
+ * // after a new photo is saved, the listing must be rebuilt
+ * webFramework.getResponseCache().invalidatePath(GET, "photos");
+ * }</pre>
+ */
+public final class ResponseCache {
+
+    /**
+     * Identifies an entry: the registered method and path of the endpoint,
+     * and the values of any query parameters and headers named in its {@link CachePolicy}.
+     */
+    record CacheKey(RequestLine.Method method, String path, List<String> variant) { }
+
+    private static final class Entry {
+        private final Response response;
+        private final long sizeBytes;
+        private final long freshUntilNanos;
+        private final long staleUntilNanos;
+        private final AtomicBoolean isRefreshing;
+
+        private Entry(Response response, long sizeBytes, long freshUntilNanos, long staleUntilNanos) {
+            this.response = response;
+            this.sizeBytes = sizeBytes;
+            this.freshUntilNanos = freshUntilNanos;
+            this.staleUntilNanos = staleUntilNanos;
+            this.isRefreshing = new AtomicBoolean(false);
+        }
+    }
+
+    private final long maxBytes;
+    private final ExecutorService executorService;
+    private final ILogger logger;
+
+    /**
+     * In access order, so the eldest entry is the least-recently used.  Guarded
+     * by {@link #lock}, a {@link ReentrantLock} so virtual threads waiting on it
+     * do not hold onto their carrier threads.
+     */
+    private final LinkedHashMap<CacheKey, Entry> entries;
+    private final ReentrantLock lock;
+    private long totalBytes;
+
+    /**
+     * Incremented by each invalidation.  A response computed while an invalidation
+     * happened may be based on old data, so it is not stored.
+     */
+    private final AtomicLong generation;
+
+    private final LongAdder hitCount;
+    private final LongAdder staleHitCount;
+    private final LongAdder missCount;
+    private final LongAdder bypassCount;
+    private final LongAdder evictionCount;
+
+    ResponseCache(long maxBytes, ExecutorService executorService, ILogger logger) {
+        this.maxBytes = maxBytes;
+        this.executorService = executorService;
+        this.logger = logger;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.lock = new ReentrantLock();
+        this.generation = new AtomicLong();
+        this.hitCount = new LongAdder();
+        this.staleHitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.bypassCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+    }
+
+    /**
+     * Send a cached response if there is a fresh one.  If there is only a stale one, still
+     * within its stale-while-revalidate window, send that and refresh it in the background.
+     * Otherwise, run the endpoint and cache what it returns.
+     * @param method the method the endpoint was registered with
+     * @param path the path the endpoint was registered with
+     */
+    IResponse getOrCompute(RequestLine.Method method, String path, CachePolicy cachePolicy,
+                           IRequest request, ThrowingFunction<IRequest, IResponse> webHandler) throws Exception {
+        if (isBypassed(cachePolicy, request)) {
+            bypassCount.increment();
+            return webHandler.apply(request);
+        }
+        CacheKey key = buildKey(method, path, cachePolicy, request);
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (now - entry.freshUntilNanos < 0) {
+                hitCount.increment();
+                return entry.response;
+            }
+            if (now - entry.staleUntilNanos < 0) {
+                staleHitCount.increment();
+                if (entry.isRefreshing.compareAndSet(false, true)) {
+                    executorService.submit(() -> refresh(key, cachePolicy, request, webHandler, entry));
+                }
+                return entry.response;
+            }
+        }
+
+        missCount.increment();
+        long generationAtStart = generation.get();
+        return store(key, cachePolicy, webHandler.apply(request), generationAtStart);
+    }
+
+    private void refresh(CacheKey key, CachePolicy cachePolicy, IRequest request,
+                         ThrowingFunction<IRequest, IResponse> webHandler, Entry staleEntry) {
+        try {
+            long generationAtStart = generation.get();
+            store(key, cachePolicy, webHandler.apply(request), generationAtStart);
+        } catch (Exception ex) {
+            logger.logAsyncError(() -> "Error while refreshing cached response for " + key.path() + ": " + StacktraceUtils.stackTraceToString(ex));
+        } finally {
+            // if the entry was not replaced - the response was not cacheable, too large,
+            // or lost a race with invalidation - this allows a later request to try again
+            staleEntry.isRefreshing.set(false);
+        }
+    }
+
+    /**
+     * Cache the response, if it is cacheable and fits
+     * @return the response to send, which may now carry a compressed variant
+     */
+    private IResponse store(CacheKey key, CachePolicy cachePolicy, IResponse response, long generationAtStart) throws IOException {
+        if (!(response instanceof Response r) || !isCacheable(r)) {
+            return response;
+        }
+        Response readyResponse = r;
+        long sizeBytes = r.getBody().length;
+        if (WebFramework.isTextContent(r) && r.getBody().length >= WebFramework.MINIMUM_NUMBER_OF_BYTES_TO_COMPRESS) {
+            Response compressed = r.compressBody();
+            readyResponse = r.withCompressedVariant(compressed);
+            sizeBytes += compressed.getBody().length;
+        }
+        for (var header : r.getExtraHeadersView().entrySet()) {
+            sizeBytes += header.getKey().length() + header.getValue().length();
+        }
+        if (sizeBytes > maxBytes) {
+            logger.logDebug(() -> "Response for " + key.path() + " is too large to cache");
+            return readyResponse;
+        }
+
+        long now = System.nanoTime();
+        long freshUntil = now + cachePolicy.getTimeToLive().toNanos();
+        var entry = new Entry(readyResponse, sizeBytes, freshUntil, freshUntil + cachePolicy.getStaleWhileRevalidate().toNanos());
+        lock.lock();
+        try {
+            if (generation.get() != generationAtStart) {
+                return readyResponse;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalBytes -= previous.sizeBytes;
+            }
+            totalBytes += sizeBytes;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                totalBytes -= eldest.sizeBytes;
+                evictionCount.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return readyResponse;
+    }
+
+    private static boolean isCacheable(Response response) {
+        if (response.getStatusCode() != CODE_200_OK || response.getBody() == null) {
+            return false;
+        }
+        if (response.getExtraHeaderValue("set-cookie") != null) {
+            return false;
+        }
+        String cacheControl = response.getExtraHeaderValue("cache-control");
+        return cacheControl == null || !cacheControl.toLowerCase(Locale.ROOT).contains("no-store");
+    }
+
+    /**
+     * True if the request carries credentials - a Cookie or Authorization header - which
+     * the policy does not account for, so its response may be meant for that user alone
+     */
+    static boolean isBypassed(CachePolicy cachePolicy, IRequest request) {
+        if (cachePolicy.isIgnoringCredentials()) {
+            return false;
+        }
+        Headers headers = request.getHeaders();
+        if (headers == null) {
+            return false;
+        }
+        return (!cachePolicy.getHeaders().contains("cookie") && headers.valueByKey("cookie") != null) ||
+                (!cachePolicy.getHeaders().contains("authorization") && headers.valueByKey("authorization") != null);
+    }
+
+    static CacheKey buildKey(RequestLine.Method method, String path, CachePolicy cachePolicy, IRequest request) {
+        if (cachePolicy.getQueryParameters().isEmpty() && cachePolicy.getHeaders().isEmpty()) {
+            return new CacheKey(method, path, List.of());
+        }
+        // an ArrayList, since a missing parameter or header is kept as a null
+        var variant = new ArrayList<String>();
+        Map<String, String> queryString = request.getRequestLine().queryString();
+        for (String parameter : cachePolicy.getQueryParameters()) {
+            variant.add(queryString.get(parameter));
+        }
+        Headers headers = request.getHeaders();
+        for (String header : cachePolicy.getHeaders()) {
+            List<String> values = headers.valueByKey(header);
+            variant.add(values == null ? null : String.join(",", values));
+        }
+        return new CacheKey(method, path, variant);
+    }
+
+    /**
+     * Drop all cached responses for an endpoint, whatever their query parameters and headers
+     * @param method the method the endpoint was registered with
+     * @param path the path the endpoint was registered with
+     */
+    public void invalidatePath(RequestLine.Method method, String path) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CacheKey, Entry> entry = iterator.next();
+                if (entry.getKey().method() == method && entry.getKey().path().equals(path)) {
+                    totalBytes -= entry.getValue().sizeBytes;
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop every cached response
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            entries.clear();
+            totalBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The count of requests answered by a fresh cached response
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * The count of requests answered by a stale cached response, while it was refreshed
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.sum();
+    }
+
+    /**
+     * The count of requests for which the endpoint had to be run
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * The count of requests sent straight to the endpoint because they carried
+     * credentials.  See {@link CachePolicy#withCredentialsIgnored()}
+     */
+    public long getBypassCount() {
+        return bypassCount.sum();
+    }
+
+    /**
+     * The count of entries dropped to stay within the byte budget
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * The total size of the cached responses, in bytes
+     */
+    public long getSizeBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The count of cached responses
+     */
+    public int getEntryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.Counter;
+import com.renomad.minum.metrics.Histogram;
+import com.renomad.minum.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The metrics for one route, kept by the {@link WebFramework} so that
+ * handling a request does not build metric names and labels each time.
+ * <p>
+ *     Each metric is looked up in the {@link MetricsRegistry} the first time
+ *     it is needed, so a method or status never seen for this route adds
+ *     nothing to the output.
+ * </p>
+ */
+final class RouteMetrics {
+
+    private static final RequestLine.Method[] METHODS = RequestLine.Method.values();
+    private static final StatusLine.StatusCode[] STATUSES = StatusLine.StatusCode.values();
+
+    private final MetricsRegistry metrics;
+    private final String routeName;
+    private volatile Histogram handlerDuration;
+
+    /**
+     * The request counters, indexed by method and then status
+     */
+    private final AtomicReferenceArray<Counter> requestCounters;
+
+    RouteMetrics(MetricsRegistry metrics, String routeName) {
+        this.metrics = metrics;
+        this.routeName = routeName;
+        this.requestCounters = new AtomicReferenceArray<>(METHODS.length * STATUSES.length);
+    }
+
+    /**
+     * The time spent running the endpoint, "minum_handler_duration"
+     */
+    Histogram handlerDuration() {
+        Histogram result = handlerDuration;
+        if (result == null) {
+            // the registry returns the same histogram to every caller, so a race here is harmless
+            result = metrics.histogram("minum_handler_duration", "route", routeName);
+            handlerDuration = result;
+        }
+        return result;
+    }
+
+    /**
+     * The count of requests with this method and response status, "minum_requests"
+     */
+    Counter requests(RequestLine.Method method, StatusLine.StatusCode status) {
+        int index = method.ordinal() * STATUSES.length + status.ordinal();
+        Counter result = requestCounters.get(index);
+        if (result == null) {
+            result = metrics.counter("minum_requests",
+                    "method", method.name(),
+                    "route", routeName,
+                    "status", String.valueOf(status.code));
+            requestCounters.set(index, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package com.renomad.minum.web;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * Settings for a single endpoint, beyond its method and path.  Start from
+ * {@link #DEFAULT} and adjust what is needed.  Each adjustment returns a new
+ * instance, so these may be shared between registrations.
+ * <p>
+ *     Register an endpoint with options using
+ *     {@link WebFramework#registerPath(RequestLine.Method, String, ThrowingFunction, RouteOptions)}
+ * </p>
+ * <pre>{@code
+ * webFramework.registerPath(GET, "photos", listPhotos::listPhotosPage,
+ *         RouteOptions.DEFAULT.withDeadline(Duration.ofSeconds(2)));
+ * }</pre>
+ */
+public final class RouteOptions {
+
+    /**
+     * No options applied - the endpoint runs exactly as with
+     * {@link WebFramework#registerPath(RequestLine.Method, String, ThrowingFunction)}
+     */
+    public static final RouteOptions DEFAULT = new RouteOptions(null, null, null, WorkClass.DEFAULT);
+
+    private final Duration deadline;
+    private final CachePolicy cachePolicy;
+    private final Duration singleFlightTimeout;
+    private final WorkClass workClass;
+
+    private RouteOptions(Duration deadline, CachePolicy cachePolicy, Duration singleFlightTimeout, WorkClass workClass) {
+        this.deadline = deadline;
+        this.cachePolicy = cachePolicy;
+        this.singleFlightTimeout = singleFlightTimeout;
+        this.workClass = workClass;
+    }
+
+    /**
+     * Limit how long the endpoint may run.  Past the deadline, the thread running
+     * the endpoint is interrupted, and the client receives a 503 with an error
+     * correlation id, which is also logged.  Since the endpoint may still be using
+     * the connection when this happens, the connection is closed afterwards.
+     * <p>
+     *     Blocking operations like {@link Thread#sleep(long)}, waiting on locks, and
+     *     socket reads respond to the interrupt.  Code that computes without blocking
+     *     should check {@link Thread#interrupted()} now and then to stop promptly.
+     * </p>
+     */
+    public RouteOptions withDeadline(Duration deadline) {
+        mustBeTrue(deadline.isPositive(), "The deadline for an endpoint must be positive");
+        return new RouteOptions(deadline, cachePolicy, singleFlightTimeout, workClass);
+    }
+
+    /**
+     * The most time the endpoint may run, or null if unlimited.  See {@link #withDeadline(Duration)}
+     */
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Cache the responses of this endpoint, to skip running it for a while
+     * when the same thing is requested again.  Only GET endpoints may be cached.
+     * See {@link CachePolicy}
+     */
+    public RouteOptions withCache(CachePolicy cachePolicy) {
+        return new RouteOptions(deadline, cachePolicy, singleFlightTimeout, workClass);
+    }
+
+    /**
+     * How responses of this endpoint are cached, or null if they are not.  See {@link #withCache(CachePolicy)}
+     */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Coalesce identical requests arriving at the same time, so that the endpoint runs
+     * once and every waiting request shares its response.  Only GET endpoints may use this.
+     * <p>
+     *     Requests are identical if they have the same path, query string, Cookie and
+     *     Authorization headers, or if the endpoint is also cached, the same cache key.
+     *     See {@link CachePolicy}
+     * </p>
+     * <p>
+     *     Be careful: every coalesced request receives the same response.  If the response
+     *     depends on anything else about the request - some other header, or the remote
+     *     address - then one client may be sent what was computed for another.  For such an
+     *     endpoint, add a {@link CachePolicy} naming what the response depends on in
+     *     {@link CachePolicy#withHeaders(String...)}, or do not use single-flight.
+     *     With a cache policy, Cookie and Authorization are only considered if named there.
+     * </p>
+     * <p>
+     *     If the endpoint throws an exception, each waiting request receives a 500, as if
+     *     it had run the endpoint itself.  A request waiting longer than the timeout receives a 504.
+     * </p>
+     * @param waiterTimeout the most time a request waits on another's computation
+     */
+    public RouteOptions withSingleFlight(Duration waiterTimeout) {
+        mustBeTrue(waiterTimeout.isPositive(), "The timeout for waiting on a single-flight computation must be positive");
+        return new RouteOptions(deadline, cachePolicy, waiterTimeout, workClass);
+    }
+
+    /**
+     * How long a request may wait on an identical request's computation, or null
+     * if identical requests are not coalesced.  See {@link #withSingleFlight(Duration)}
+     */
+    public Duration getSingleFlightTimeout() {
+        return singleFlightTimeout;
+    }
+
+    /**
+     * Declare what kind of work this endpoint does, so it runs within that kind's
+     * limits on concurrency.  By default, {@link WorkClass#DEFAULT}.  See {@link Bulkhead}
+     */
+    public RouteOptions withWorkClass(WorkClass workClass) {
+        return new RouteOptions(deadline, cachePolicy, singleFlightTimeout, workClass);
+    }
+
+    public WorkClass getWorkClass() {
+        return workClass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RouteOptions that = (RouteOptions) o;
+        return Objects.equals(deadline, that.deadline) && Objects.equals(cachePolicy, that.cachePolicy) && Objects.equals(singleFlightTimeout, that.singleFlightTimeout) && workClass == that.workClass;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deadline, cachePolicy, singleFlightTimeout, workClass);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteOptions{" +
+                "deadline=" + deadline +
+                ", cachePolicy=" + cachePolicy +
+                ", singleFlightTimeout=" + singleFlightTimeout +
+                ", workClass=" + workClass +
+                '}';
+    }
+}
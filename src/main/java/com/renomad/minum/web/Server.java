@@ -49,6 +49,7 @@ final class Server implements IServer {
         this.serverName = serverName;
         this.theBrig = theBrig;
         setOfSWs = new SetOfSws(new ConcurrentSet<>(), logger, serverName);
+        context.getMetrics().gauge("minum_open_connections", () -> setOfSWs.socketWrappers().size(), "server", serverName);
         this.es = es;
         this.serverType = serverType;
     }
@@ -76,10 +77,14 @@ final class Server implements IServer {
                 // that's just part of its life cycle
                 //noinspection InfiniteLoopStatement
                 while (true) {
-                    logger.logTrace(() -> serverName + " waiting to accept connection");
+                    if (logger.isTraceEnabled()) {
+                        logger.logTrace(() -> serverName + " waiting to accept connection");
+                    }
                     Socket freshSocket = serverSocket.accept();
                     ISocketWrapper sw = new SocketWrapper(freshSocket, this, logger, constants.socketTimeoutMillis, constants.hostName);
-                    logger.logTrace(() -> String.format("client connected from %s", sw.getRemoteAddrWithPort()));
+                    if (logger.isTraceEnabled()) {
+                        logger.logTrace(() -> String.format("client connected from %s", sw.getRemoteAddrWithPort()));
+                    }
                     setOfSWs.add(sw);
                     ThrowingRunnable innerServerCode = this.webFramework.makePrimaryHttpHandler(sw, theBrig);
                     Runnable task = ThrowingRunnable.throwingRunnableWrapper(innerServerCode, logger);
@@ -0,0 +1,108 @@
+package com.renomad.minum.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A single event sent to clients in a text/event-stream, as
+ * published through a {@link SseBroadcaster}.
+ * <p>
+ *     On the wire, an event looks like this:
+ * </p>
+ * <pre>
+ * {@code
+ * id: 42
+ * event: price_update
+ * data: first line of data
+ * data: second line of data
+ *
+ * }
+ * </pre>
+ * <p>
+ *     The event is encoded to bytes once, when it is built, so that
+ *     sending it to many subscribers does not repeat the work.
+ * </p>
+ * See <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">Server-sent events</a>
+ */
+public final class ServerSentEvent {
+
+    private static final Pattern LINE_BREAKS = Pattern.compile("\r\n|\r|\n");
+
+    private final long id;
+    private final String eventName;
+    private final String data;
+    private final byte[] encoded;
+
+    /**
+     * @param id the identifier of this event, which the browser will send back
+     *           to us in a Last-Event-ID header if it reconnects.
+     * @param eventName the type of the event, which determines the listener called
+     *                  in the browser.  If null or blank, the browser treats this as a "message" event.
+     * @param data the content of the event.  It may contain multiple lines.
+     */
+    ServerSentEvent(long id, String eventName, String data) {
+        if (eventName != null && LINE_BREAKS.matcher(eventName).find()) {
+            throw new WebServerException("Error: the event name for a server-sent event must not contain line breaks");
+        }
+        this.id = id;
+        this.eventName = eventName == null ? "" : eventName;
+        this.data = Objects.requireNonNull(data);
+        this.encoded = encode();
+    }
+
+    private byte[] encode() {
+        StringBuilder sb = new StringBuilder(data.length() + eventName.length() + 32);
+        sb.append("id: ").append(id).append('\n');
+        if (!eventName.isBlank()) {
+            sb.append("event: ").append(eventName).append('\n');
+        }
+        for (String line : LINE_BREAKS.split(data, -1)) {
+            sb.append("data: ").append(line).append('\n');
+        }
+        sb.append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * The bytes of this event as they are sent on the wire.  This is
+     * not copied, to avoid work when sending to many subscribers.
+     */
+    byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ServerSentEvent that = (ServerSentEvent) o;
+        return id == that.id && Objects.equals(eventName, that.eventName) && Objects.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, eventName, data);
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSentEvent{" +
+                "id=" + id +
+                ", eventName='" + eventName + '\'' +
+                ", data='" + data + '\'' +
+                '}';
+    }
+}
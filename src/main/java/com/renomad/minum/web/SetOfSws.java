@@ -22,13 +22,17 @@ record SetOfSws(
     void add(ISocketWrapper sw) {
         socketWrappers().add(sw);
         int size = socketWrappers().size();
-        logger.logTrace(() -> nameOfSet + " added " + sw + " to SetOfSws. size: " + size);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> nameOfSet + " added " + sw + " to SetOfSws. size: " + size);
+        }
     }
 
     void remove(ISocketWrapper sw) {
         socketWrappers().remove(sw);
         int size = socketWrappers().size();
-        logger.logTrace(() -> nameOfSet +" removed " + sw + " from SetOfSws. size: " + size);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> nameOfSet +" removed " + sw + " from SetOfSws. size: " + size);
+        }
     }
 
     void stopAllServers() throws IOException {
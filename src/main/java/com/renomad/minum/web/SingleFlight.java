@@ -0,0 +1,77 @@
+package com.renomad.minum.web;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical requests arriving at the same time, so the endpoint
+ * runs once and they all share its response.  See {@link RouteOptions#withSingleFlight(java.time.Duration)}
+ * <p>
+ *     The first request for a key runs the endpoint as usual.  Requests
+ *     for the same key arriving while it runs wait on its result instead.
+ * </p>
+ */
+final class SingleFlight {
+
+    private final ConcurrentHashMap<Object, CompletableFuture<IResponse>> inFlight;
+    private final LongAdder coalescedCount;
+
+    SingleFlight() {
+        this.inFlight = new ConcurrentHashMap<>();
+        this.coalescedCount = new LongAdder();
+    }
+
+    /**
+     * Run the endpoint, or if an identical request is already running it, wait for its response.
+     * @param key identifies identical requests
+     * @param waiterTimeoutMillis the most time to wait on another request's computation
+     * @throws TimeoutException if waiting on another request's computation took too long
+     */
+    IResponse run(Object key, IRequest request, ThrowingFunction<IRequest, IResponse> webHandler, long waiterTimeoutMillis) throws Exception {
+        var ours = new CompletableFuture<IResponse>();
+        CompletableFuture<IResponse> existing = inFlight.putIfAbsent(key, ours);
+        if (existing != null) {
+            IResponse response;
+            try {
+                response = existing.get(waiterTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw ex;
+            }
+            // a response that can only be sent once, like a file being streamed,
+            // is no use to share.  In that case, run the endpoint for ourselves.
+            if (response instanceof Response r && r.isInMemory()) {
+                coalescedCount.increment();
+                return response;
+            }
+            return webHandler.apply(request);
+        }
+
+        try {
+            IResponse response = webHandler.apply(request);
+            ours.complete(response);
+            return response;
+        } catch (Exception ex) {
+            ours.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            if (!ours.isDone()) {
+                ours.completeExceptionally(new WebServerException("Error: the endpoint ended without a response"));
+            }
+            inFlight.remove(key, ours);
+        }
+    }
+
+    /**
+     * The count of requests which shared the response of an identical request, rather than running the endpoint
+     */
+    long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+}
@@ -0,0 +1,22 @@
+package com.renomad.minum.web;
+
+/**
+ * What a {@link SseBroadcaster} does when a subscriber's queue of
+ * unsent events is full - typically, because the client is reading
+ * slower than we are publishing.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Skip the new event for this subscriber, leaving it connected.  The
+     * client will miss the event.
+     */
+    DROP,
+
+    /**
+     * Disconnect the subscriber.  A browser using EventSource will
+     * reconnect, sending the Last-Event-ID header, and will be replayed
+     * whatever is still held in the broadcaster's replay buffer.
+     */
+    DISCONNECT
+}
@@ -2,11 +2,14 @@ package com.renomad.minum.web;
 
 import com.renomad.minum.logging.ILogger;
 
+import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.charset.Charset;
 
 /**
@@ -16,11 +19,35 @@ final class SocketWrapper implements ISocketWrapper {
 
     private final Socket socket;
     private final String hostName;
-    private final InputStream inputStream;
+    /**
+     * The socket's input stream, until {@link #isClientDisconnected()} first runs, and
+     * then {@link #pushbackInputStream}, so connections which never check keep the
+     * plain stream.
+     */
+    private InputStream inputStream;
+
+    /**
+     * Able to push back a single byte, so that {@link #isClientDisconnected()} may
+     * look ahead on the stream without losing anything the client sent.  Null until
+     * the first check.
+     */
+    private PushbackInputStream pushbackInputStream;
+
+    /**
+     * True for TLS connections, where {@link #isClientDisconnected()} does not look ahead,
+     * since a read timing out partway through a TLS record is not safe to resume.
+     */
+    private final boolean isTls;
     private final OutputStream writer;
     private final ILogger logger;
     private final IServer server;
 
+    /**
+     * The socket's read timeout from before {@link #isClientDisconnected()} shortened
+     * it, to be put back by {@link #endDisconnectChecks()}, or -1 if not shortened.
+     */
+    private int timeoutBeforeDisconnectChecks = -1;
+
     /**
      * Constructor
      * @param socket a socket we intend to wrap with methods applicable to our use cases
@@ -30,9 +57,12 @@ final class SocketWrapper implements ISocketWrapper {
     SocketWrapper(Socket socket, IServer server, ILogger logger, int timeoutMillis, String hostName) throws IOException {
         this.socket = socket;
         this.hostName = hostName;
-        logger.logTrace(() -> String.format("Setting timeout of %d milliseconds on socket %s", timeoutMillis, socket));
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> String.format("Setting timeout of %d milliseconds on socket %s", timeoutMillis, socket));
+        }
         this.socket.setSoTimeout(timeoutMillis);
         this.inputStream = socket.getInputStream();
+        this.isTls = socket instanceof SSLSocket;
         writer = socket.getOutputStream();
         this.logger = logger;
         this.server = server;
@@ -60,7 +90,9 @@ final class SocketWrapper implements ISocketWrapper {
 
     @Override
     public void sendHttpLine(String msg) throws IOException {
-        logger.logTrace(() -> String.format("%s sending: \"%s\"", this, msg));
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> String.format("%s sending: \"%s\"", this, msg));
+        }
         send(msg + WebEngine.HTTP_CRLF);
     }
 
@@ -86,7 +118,9 @@ final class SocketWrapper implements ISocketWrapper {
 
     @Override
     public void close() throws IOException {
-        logger.logTrace(() -> "close called on " + this);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> "close called on " + this);
+        }
         socket.close();
         if (server != null) server.removeMyRecord(this);
     }
@@ -96,6 +130,76 @@ final class SocketWrapper implements ISocketWrapper {
         return this.inputStream;
     }
 
+    /**
+     * Look ahead by one byte, waiting only a moment.  The end of the stream,
+     * or an error, means the client has gone.  If a byte did arrive, it is
+     * pushed back for the next reader.
+     * <p>
+     *     For TLS connections, this always returns false, so a client going
+     *     away is only noticed once the wait for the response ends.
+     * </p>
+     * <p>
+     *     The first call replaces the stream returned by {@link #getInputStream()}
+     *     with one that can push back a byte, so callers must get the stream again
+     *     afterwards rather than keeping the one from before.
+     * </p>
+     * <p>
+     *     The first call shortens the socket's read timeout, and it stays short
+     *     for any further checks until {@link #endDisconnectChecks()}, rather
+     *     than being changed back and forth on every check.
+     * </p>
+     * <p>
+     *     This reads from the socket, so it is not safe to call while another
+     *     thread may be reading from it.
+     * </p>
+     */
+    @Override
+    public boolean isClientDisconnected() {
+        if (isTls) {
+            return false;
+        }
+        if (pushbackInputStream == null) {
+            pushbackInputStream = new PushbackInputStream(inputStream, 1);
+            inputStream = pushbackInputStream;
+        }
+        try {
+            if (pushbackInputStream.available() > 0) {
+                return false;
+            }
+            if (timeoutBeforeDisconnectChecks < 0) {
+                timeoutBeforeDisconnectChecks = socket.getSoTimeout();
+                socket.setSoTimeout(1);
+            }
+            try {
+                int result = pushbackInputStream.read();
+                if (result == -1) {
+                    return true;
+                }
+                pushbackInputStream.unread(result);
+                return false;
+            } catch (SocketTimeoutException ex) {
+                return false;
+            }
+        } catch (IOException ex) {
+            logger.logTrace(() -> "Considering client disconnected at " + this + ": " + ex.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public void endDisconnectChecks() {
+        if (timeoutBeforeDisconnectChecks < 0) {
+            return;
+        }
+        try {
+            socket.setSoTimeout(timeoutBeforeDisconnectChecks);
+        } catch (IOException ex) {
+            logger.logTrace(() -> "Unable to restore the read timeout at " + this + ": " + ex.getMessage());
+        } finally {
+            timeoutBeforeDisconnectChecks = -1;
+        }
+    }
+
     /**
      * Note that since we are indicating just the remote address
      * as the unique value, in cases like tests where we are operating as
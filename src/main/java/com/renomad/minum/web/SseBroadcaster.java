@@ -0,0 +1,344 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.RingBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * Sends Server-Sent Events to any number of subscribed clients.
+ * <p>
+ *     Each published event is encoded to bytes once and then handed to every
+ *     subscriber's bounded queue.  Each subscriber's queue is drained onto its socket by the
+ *     thread already serving that connection, so a slow client only slows itself.  When a
+ *     subscriber's queue is full, the {@link SlowConsumerPolicy} decides what happens.
+ * </p>
+ * <p>
+ *     If nothing has been sent to a subscriber for a while, a heartbeat comment
+ *     is sent, keeping proxies from closing the connection and letting us notice
+ *     clients that have gone away.
+ * </p>
+ * <p>
+ *     The most recent events are kept in a replay buffer.  When a browser reconnects,
+ *     it sends the id of the last event it received in a Last-Event-ID header, and we
+ *     send it whatever it missed that is still in the buffer.
+ * </p>
+ * <p>
+ *     Example usage:
+ * </p>
+ * <pre>
+ * {@code
+ * var broadcaster = new SseBroadcaster(context);
+ * webFramework.registerPath(GET, "price_updates", broadcaster::subscribe);
+ *
+ * // then, elsewhere, whenever there is news:
+ * broadcaster.publish("price_update", "{\"price\": 42}");
+ * }
+ * </pre>
+ */
+public final class SseBroadcaster {
+
+    /**
+     * A comment line, ignored by browsers, sent when there has been nothing
+     * else to send for {@link #heartbeatMillis}
+     */
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Placed in a subscriber's queue to tell its writer to stop.  Compared by identity.
+     */
+    private static final byte[] DISCONNECT = new byte[0];
+
+    private final ILogger logger;
+    private final int queueSize;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final int heartbeatMillis;
+    private final RingBuffer<ServerSentEvent> replayBuffer;
+    private final Set<Subscriber> subscribers;
+    private final LongAdder droppedEventCount;
+    private final LongAdder disconnectedSubscriberCount;
+
+    /**
+     * Guards the replay buffer and event ids, so that a subscriber joining
+     * while events are published receives each event exactly once.  A
+     * {@link ReentrantLock} so virtual threads waiting on it do not hold
+     * onto their carrier threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private long nextId;
+    private boolean isClosed;
+
+    /**
+     * Build a broadcaster with defaults suitable for most purposes: a queue of 100 events
+     * per subscriber, disconnecting subscribers who fall behind, heartbeats every
+     * 15 seconds, and a replay buffer of 100 events.
+     */
+    public SseBroadcaster(Context context) {
+        this(context, 100, SlowConsumerPolicy.DISCONNECT, 15_000, 100);
+    }
+
+    /**
+     * @param queueSize the most events we will hold for a subscriber before applying the slow consumer policy
+     * @param slowConsumerPolicy what to do when a subscriber's queue is full
+     * @param heartbeatMillis if nothing else has been sent to a subscriber for this long, send a heartbeat
+     * @param replayBufferSize how many of the most recent events to keep for clients reconnecting with a Last-Event-ID
+     */
+    public SseBroadcaster(Context context, int queueSize, SlowConsumerPolicy slowConsumerPolicy, int heartbeatMillis, int replayBufferSize) {
+        mustBeTrue(queueSize > 0, "queueSize must be greater than zero");
+        mustBeTrue(heartbeatMillis > 0, "heartbeatMillis must be greater than zero");
+        mustBeTrue(replayBufferSize > 0, "replayBufferSize must be greater than zero");
+        this.logger = context.getLogger();
+        this.queueSize = queueSize;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.heartbeatMillis = heartbeatMillis;
+        this.replayBuffer = new RingBuffer<>(replayBufferSize, ServerSentEvent.class);
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.droppedEventCount = new LongAdder();
+        this.disconnectedSubscriberCount = new LongAdder();
+        this.nextId = 1;
+    }
+
+    /**
+     * A client receiving events.  The queue holds encoded events not yet
+     * written to the client's socket.
+     */
+    private static final class Subscriber {
+        private final ArrayBlockingQueue<byte[]> queue;
+        private final long lastEventId;
+        private volatile boolean isDisconnected;
+
+        /**
+         * The client's connection, set once its writer starts, so that
+         * disconnecting can close it
+         */
+        private volatile ISocketWrapper socketWrapper;
+
+        Subscriber(int queueSize, long lastEventId) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.lastEventId = lastEventId;
+        }
+    }
+
+    /**
+     * An endpoint for a client to subscribe to this broadcaster's events.  Register
+     * this with {@link WebFramework#registerPath(RequestLine.Method, String, ThrowingFunction)}.
+     * <p>
+     *     The returned response holds the connection open, sending events as they
+     *     are published, until the client goes away, the subscriber is disconnected
+     *     by the {@link SlowConsumerPolicy}, or this broadcaster is closed.
+     * </p>
+     */
+    public IResponse subscribe(IRequest request) {
+        var subscriber = new Subscriber(queueSize, getLastEventId(request.getHeaders()));
+        return Response.buildUnboundedStreamingResponse(
+                StatusLine.StatusCode.CODE_200_OK,
+                Map.of("Content-Type", "text/event-stream", "Cache-Control", "no-cache"),
+                socketWrapper -> stream(socketWrapper, subscriber));
+    }
+
+    /**
+     * Browsers reconnecting to an event stream send the id of the last event
+     * they received.  Returns -1 if there was none, or it was not a number
+     * we could have sent.
+     */
+    static long getLastEventId(Headers headers) {
+        List<String> lastEventId = headers.valueByKey("last-event-id");
+        if (lastEventId == null || lastEventId.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.getFirst().trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Write events to the client as they arrive in the subscriber's queue.  This
+     * runs on the thread serving the client's connection.
+     */
+    private void stream(ISocketWrapper sw, Subscriber subscriber) {
+        lock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            if (subscriber.lastEventId >= 0) {
+                for (ServerSentEvent event : replayBuffer) {
+                    // if there is more to replay than fits in the queue, the client gets
+                    // what fits, rather than being disconnected before it has started.
+                    if (event != null && event.getId() > subscriber.lastEventId && !subscriber.queue.offer(event.getEncoded())) {
+                        droppedEventCount.increment();
+                    }
+                }
+            }
+            subscriber.socketWrapper = sw;
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            while (true) {
+                byte[] bytes = subscriber.queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (bytes == DISCONNECT) {
+                    break;
+                }
+                sw.send(bytes == null ? HEARTBEAT : bytes);
+            }
+        } catch (IOException ex) {
+            // this is the usual way a subscription ends - the client closes its connection.
+            logger.logDebug(() -> "Server-sent event subscriber at " + sw.getRemoteAddr() + " has disconnected: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Publish an event of the default type ("message") to all subscribers
+     */
+    public ServerSentEvent publish(String data) {
+        return publish(null, data);
+    }
+
+    /**
+     * Publish an event to all subscribers
+     * @param eventName the type of event, which determines the listener called in the
+     *                  browser, or null for the default type, "message"
+     * @param data the content of the event, which may contain multiple lines
+     * @return the event sent, including its assigned id
+     */
+    public ServerSentEvent publish(String eventName, String data) {
+        ServerSentEvent event;
+        List<Subscriber> slowSubscribers = null;
+        lock.lock();
+        try {
+            if (isClosed) {
+                throw new WebServerException("Error: this SseBroadcaster is closed");
+            }
+            event = new ServerSentEvent(nextId, eventName, data);
+            nextId += 1;
+            replayBuffer.add(event);
+            byte[] encoded = event.getEncoded();
+            for (Subscriber subscriber : subscribers) {
+                if (!offer(subscriber, encoded)) {
+                    if (slowSubscribers == null) {
+                        slowSubscribers = new ArrayList<>();
+                    }
+                    slowSubscribers.add(subscriber);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // closing a socket may block, so it is done without holding up other publishers
+        if (slowSubscribers != null) {
+            slowSubscribers.forEach(this::closeConnection);
+        }
+        return event;
+    }
+
+    /**
+     * Add an encoded event to a subscriber's queue, applying the
+     * slow consumer policy if the queue is full.
+     * @return false if the subscriber was disconnected for falling
+     *         behind, and its connection must now be closed
+     */
+    private boolean offer(Subscriber subscriber, byte[] encoded) {
+        if (subscriber.isDisconnected || subscriber.queue.offer(encoded)) {
+            return true;
+        }
+        droppedEventCount.increment();
+        if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT) {
+            logger.logDebug(() -> "Server-sent event subscriber fell behind by " + queueSize + " events.  Disconnecting.");
+            markDisconnected(subscriber);
+            disconnectedSubscriberCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tell a subscriber's writer to stop, discarding anything unsent.  The
+     * connection must then be closed, with {@link #closeConnection(Subscriber)}.
+     */
+    private static void markDisconnected(Subscriber subscriber) {
+        subscriber.isDisconnected = true;
+        subscriber.queue.clear();
+        subscriber.queue.offer(DISCONNECT);
+    }
+
+    /**
+     * Close a disconnected subscriber's connection.
+     * <p>
+     *     A slow consumer's writer is likely blocked sending to a client that is
+     *     not reading.  The socket timeout does not apply to writes, so without
+     *     closing the socket, that writer - and the connection - would never end.
+     *     The close itself may block, for example on a TLS connection, so this
+     *     is never called while holding {@link #lock}.
+     * </p>
+     */
+    private void closeConnection(Subscriber subscriber) {
+        ISocketWrapper sw = subscriber.socketWrapper;
+        if (sw != null) {
+            try {
+                sw.close();
+            } catch (IOException ex) {
+                logger.logDebug(() -> "Error while closing the connection of a server-sent event subscriber: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The count of clients currently receiving events
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * The count of times an event could not be queued for a subscriber
+     * because its queue was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.sum();
+    }
+
+    /**
+     * The count of subscribers disconnected for falling behind,
+     * per {@link SlowConsumerPolicy#DISCONNECT}
+     */
+    public long getDisconnectedSubscriberCount() {
+        return disconnectedSubscriberCount.sum();
+    }
+
+    /**
+     * Disconnect all subscribers and stop accepting events
+     */
+    public void close() {
+        List<Subscriber> closedSubscribers;
+        lock.lock();
+        try {
+            isClosed = true;
+            closedSubscribers = new ArrayList<>(subscribers);
+            closedSubscribers.forEach(SseBroadcaster::markDisconnected);
+        } finally {
+            lock.unlock();
+        }
+        closedSubscribers.forEach(this::closeConnection);
+    }
+}
@@ -1,14 +1,12 @@
 package com.renomad.minum.web;
 
 
-import com.renomad.minum.utils.RingBuffer;
+import com.renomad.minum.utils.ByteUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Objects;
 
 /**
  * This class represents a single partition in a multipart/form
@@ -19,9 +17,8 @@ import java.util.stream.IntStream;
 public class StreamingMultipartPartition extends InputStream {
 
     private final Headers headers;
-    private final InputStream inputStream;
+    private final BufferedBodyInputStream inputStream;
     private final ContentDisposition contentDisposition;
-    private final int contentLength;
     /**
      * After we hit the boundary, we will set this flag to true, and all
      * subsequent reads will return -1.
@@ -29,11 +26,9 @@ public class StreamingMultipartPartition extends InputStream {
     private boolean isFinished = false;
 
     /**
-     * This buffer follows along with what we are reading, so we can
-     * easily compare against our boundary value.  There are four extra
-     * bytes included, since multipart splits the content by two
-     * dashes, followed by the boundary value, and then two dashes afterwards
-     * on the last boundary.
+     * The bytes which mark the end of this partition.  Multipart splits
+     * the content by a carriage-return and newline, two dashes, and then
+     * the boundary value (and then two dashes afterwards on the last boundary).
      * <pre>
      * That is,
      * for a typical boundary:
@@ -45,35 +40,25 @@ public class StreamingMultipartPartition extends InputStream {
      *   --boundary_value--
      *</pre>
      */
-    private final RingBuffer<Byte> recentBytesBuffer;
-    private final CountBytesRead countBytesRead;
-    private final List<Byte> boundaryValueList;
-    private boolean hasFilledBuffer;
+    private final byte[] boundary;
+
+    /**
+     * The skip table for searching for {@link #boundary}, built once
+     * per request body.  See {@link ByteUtils#buildSkipTable(byte[])}
+     */
+    private final int[] boundarySkipTable;
 
     StreamingMultipartPartition(Headers headers,
-                                       InputStream inputStream,
-                                       ContentDisposition contentDisposition,
-                                       String boundaryValue,
-                                       CountBytesRead countBytesRead,
-                                       int contentLength) {
+                                BufferedBodyInputStream inputStream,
+                                ContentDisposition contentDisposition,
+                                byte[] boundary,
+                                int[] boundarySkipTable) {
 
         this.headers = headers;
         this.inputStream = inputStream;
         this.contentDisposition = contentDisposition;
-        this.contentLength = contentLength;
-        String boundaryValue1 = "\r\n--" + boundaryValue;
-        byte[] bytes = boundaryValue1.getBytes(StandardCharsets.US_ASCII);
-        boundaryValueList = IntStream.range(0, bytes.length).mapToObj(i -> bytes[i]).toList();
-
-        /*
-         * To explain the numbers here: we add one at the beginning to represent
-         * the single character at the far left that is what we will actually return.
-         * We have to fill the cache before we start sending anything.  The number
-         * at the end represents the extra characters of the boundary - dashes,
-         * carriage return, newline.
-         */
-        recentBytesBuffer = new RingBuffer<>(boundaryValue1.length(), Byte.class);
-        this.countBytesRead = countBytesRead;
+        this.boundary = boundary;
+        this.boundarySkipTable = boundarySkipTable;
     }
 
     public Headers getHeaders() {
@@ -93,82 +78,104 @@ public class StreamingMultipartPartition extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        if (isFinished) {
+        if (scan(1) == -1) {
             return -1;
         }
-        if (!hasFilledBuffer) {
-            fillBuffer();
-            boolean atTheEnd = recentBytesBuffer.containsAt(boundaryValueList, 0);
-            if (atTheEnd) {
-                // don't really do anything with this, it's just to collect the
-                // last characters to have a clean finish.
-                byte[] unused = inputStream.readNBytes(2);
-                isFinished = true;
-                return -1;
-            }
-        } else {
-            int result = inputStream.read();
-            countBytesRead.increment();
-            if (countBytesRead.getCount() >= contentLength) {
-                isFinished = true;
-                return -1;
-            }
-            if (result == -1) {
-                throw new IOException("Error: The inputstream has closed unexpectedly while reading");
-            }
-            byte byteValue = (byte) result;
-            boolean isAtEndOfPartition = updateRecentBytesBufferAndCheck(byteValue);
-            if (isAtEndOfPartition) {
-                // don't really do anything with this, it's just to collect the
-                // last characters to have a clean finish.
-                byte[] unused = inputStream.readNBytes(2);
-                isFinished = true;
-                return -1;
-            }
+        int result = inputStream.getBuffer()[inputStream.getPosition()] & 0xff;
+        inputStream.consume(1);
+        return result;
+    }
 
+    /**
+     * Reads up to "len" bytes of this partition into the provided array.
+     * <p>
+     *     Rather than examining the incoming data a byte at a time, we
+     *     search a whole window of buffered bytes for the boundary.  Any bytes
+     *     before the boundary (or that are too far from the end of the window to
+     *     be the start of a boundary) are safe to hand back as data.
+     * </p>
+     * @return the number of bytes read, or -1 if we're at the end of the partition
+     * @throws IOException if the inputstream is closed unexpectedly while reading.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        int count = scan(len);
+        if (count > 0) {
+            System.arraycopy(inputStream.getBuffer(), inputStream.getPosition(), b, off, count);
+            inputStream.consume(count);
         }
-        return ((int)recentBytesBuffer.atNextIndex()) & 0xff;
+        return count;
     }
 
-    private void fillBuffer() throws IOException {
-        for (int i = 0; i < recentBytesBuffer.getLimit(); i++) {
-            int result = inputStream.read();
-            countBytesRead.increment();
-            if (result == -1) {
-                throw new IOException("Error: The inputstream has closed unexpectedly while reading");
-            }
-            byte byteValue = (byte) result;
-            updateRecentBytesBufferAndCheck(byteValue);
+    /**
+     * Examine the buffered data, determining how many bytes (up to maxCount) may be
+     * returned as content of this partition.
+     * @return a count of bytes at the current position of the buffer which are
+     *         content, or -1 if we have hit the end of the partition. If maxCount is zero,
+     *         returns zero.
+     */
+    private int scan(int maxCount) throws IOException {
+        if (isFinished) {
+            return -1;
+        }
+        if (maxCount == 0) {
+            return 0;
+        }
+        int available = inputStream.fill(boundary.length);
+        int position = inputStream.getPosition();
+        int indexOfBoundary = ByteUtils.indexOf(inputStream.getBuffer(), position, position + available, boundary, boundarySkipTable);
+
+        int safeCount;
+        if (indexOfBoundary == position) {
+            finishPartition();
+            return -1;
+        } else if (indexOfBoundary != -1) {
+            safeCount = indexOfBoundary - position;
+        } else if (available >= boundary.length) {
+            // the final few bytes of the window could be the start of a boundary,
+            // so hold those back until more data arrives.
+            safeCount = available - (boundary.length - 1);
+        } else if (available == 0) {
+            // the body ended without a closing boundary.
+            isFinished = true;
+            return -1;
+        } else {
+            // the body ended without a closing boundary, these are the last few bytes.
+            safeCount = available;
         }
-        hasFilledBuffer = true;
+        return Math.min(safeCount, maxCount);
+    }
+
+    /**
+     * Move past the boundary and the two characters following - either a
+     * carriage-return and newline, or the two dashes of the last boundary.
+     */
+    private void finishPartition() throws IOException {
+        inputStream.consume(boundary.length);
+        int trailingBytes = inputStream.fill(2);
+        inputStream.consume(Math.min(2, trailingBytes));
+        isFinished = true;
     }
 
     @Override
     public byte[] readAllBytes()  {
         var baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[BufferedBodyInputStream.DEFAULT_BUFFER_SIZE];
         while (true) {
-            int result = 0;
+            int result;
             try {
-                result = read();
+                result = read(buf, 0, buf.length);
             } catch (IOException e) {
                 throw new WebServerException(e);
             }
             if (result == -1) {
                 return baos.toByteArray();
             }
-            baos.write((byte)result);
+            baos.write(buf, 0, result);
         }
     }
 
-    /**
-     * Updates the buffer with the last characters read, and returns
-     * true if we have encountered the end of this partition.
-     */
-    private boolean updateRecentBytesBufferAndCheck(byte newByte) {
-        recentBytesBuffer.add(newByte);
-        return recentBytesBuffer.containsAt(boundaryValueList, 0);
-    }
-
     /**
      * By "close", we will read from the {@link InputStream} until we have finished the body,
      * so that our InputStream has been read until the start of the next partition.
@@ -176,11 +183,12 @@ public class StreamingMultipartPartition extends InputStream {
     @Override
     public void close() throws IOException {
         while (true) {
-            int result = read();
-            if (result == -1) {
+            int count = scan(Integer.MAX_VALUE);
+            if (count == -1) {
                 return;
             }
+            inputStream.consume(count);
         }
     }
 
-}
\ No newline at end of file
+}
@@ -1,6 +1,15 @@
 package com.renomad.minum.web;
 
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.logging.Logger;
+import com.renomad.minum.logging.LoggingLevel;
+import com.renomad.minum.metrics.Counter;
+import com.renomad.minum.metrics.Histogram;
+import com.renomad.minum.metrics.HttpRequestEvent;
+import com.renomad.minum.metrics.HttpStageEvent;
+import com.renomad.minum.metrics.JvmMetrics;
+import com.renomad.minum.metrics.MetricsRegistry;
+import com.renomad.minum.queue.ActionQueueState;
 import com.renomad.minum.security.ForbiddenUseException;
 import com.renomad.minum.security.ITheBrig;
 import com.renomad.minum.security.UnderInvestigation;
@@ -11,13 +20,24 @@ import com.renomad.minum.utils.*;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.renomad.minum.utils.FileUtils.badFilePathPatterns;
 import static com.renomad.minum.utils.Invariants.mustBeTrue;
@@ -67,6 +87,30 @@ public final class WebFramework {
      */
     private final Map<MethodPath, ThrowingFunction<IRequest, IResponse>> registeredPartialPaths;
 
+    /**
+     * The endpoints as registered, before any {@link Middleware} is wrapped around
+     * them.  {@link #registeredDynamicPaths} and {@link #registeredPartialPaths} hold
+     * the composed versions, rebuilt from these whenever middleware is added.
+     */
+    private final Map<MethodPath, ThrowingFunction<IRequest, IResponse>> uncomposedDynamicPaths;
+    private final Map<MethodPath, ThrowingFunction<IRequest, IResponse>> uncomposedPartialPaths;
+
+    /**
+     * Middleware, in the order registered.  See {@link #registerMiddleware(Middleware)}
+     */
+    private final List<ScopedMiddleware> middlewares;
+
+    /**
+     * A {@link Middleware} and the endpoints it applies to.  A null method
+     * matches any method.  The path is either a prefix, or an exact match.
+     */
+    record ScopedMiddleware(RequestLine.Method method, String path, boolean isExactPath, Middleware middleware) {
+        boolean appliesTo(MethodPath methodPath) {
+            if (method != null && method != methodPath.method()) return false;
+            return isExactPath ? methodPath.path().equals(path) : methodPath.path().startsWith(path);
+        }
+    }
+
     /**
      * A function that will be run instead of the ordinary business code. Has
      * provisions for running the business code as well.  See {@link #registerPreHandler(ThrowingFunction)}
@@ -85,11 +129,102 @@ public final class WebFramework {
     private final ZonedDateTime overrideForDateTime;
     private final FullSystem fs;
     private final ILogger logger;
+    private final ExecutorService executorService;
+
+    /**
+     * The count of requests which ran past their deadline or timeout.  See
+     * {@link RouteOptions#withDeadline(Duration)} and {@link #registerAsyncPath(RequestLine.Method, String, ThrowingFunction, Duration)}
+     */
+    private final Counter deadlineExceededCount;
+
+    /**
+     * The metrics of each route, by the route's name, see {@link Route}
+     */
+    private final Map<String, RouteMetrics> routeMetricsByName;
+
+    /**
+     * Responses of endpoints registered with a {@link CachePolicy}
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Coalesces identical requests, for endpoints registered with {@link RouteOptions#withSingleFlight(Duration)}
+     */
+    private final SingleFlight singleFlight;
+
+    /**
+     * The limits on concurrency for each kind of work.  See {@link WorkClass}
+     */
+    private final Map<WorkClass, Bulkhead> bulkheads;
+
+    /**
+     * Handlers for WebSocket connections, by path.  See {@link #registerWebSocket(String, WebSocketHandler)}
+     */
+    private final Map<String, WebSocketHandler> registeredWebSockets;
+
+    /**
+     * For each WebSocket path, the middleware composed around {@link #ACCEPT_WEBSOCKET_UPGRADE},
+     * which an upgrade request runs through - with the pre-handler - before being accepted.
+     */
+    private final Map<String, ThrowingFunction<IRequest, IResponse>> webSocketUpgradeChains;
+
+    /**
+     * The innermost step of a WebSocket upgrade request.  Reaching it, through any
+     * pre-handler and middleware, means the upgrade may go ahead.
+     */
+    private static final ThrowingFunction<IRequest, IResponse> ACCEPT_WEBSOCKET_UPGRADE =
+            request -> Response.buildLeanResponse(CODE_101_SWITCHING_PROTOCOLS);
+
+    /**
+     * The count of WebSocket connections currently open, limited
+     * by {@link Constants#maxWebSocketConnections}
+     */
+    private final AtomicInteger webSocketConnectionCount;
+
+    /**
+     * Appended to the client's key and hashed to build the Sec-WebSocket-Accept
+     * header.  See <a href="https://www.rfc-editor.org/rfc/rfc6455#section-1.3">RFC 6455, Opening Handshake</a>
+     */
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * While waiting on an asynchronous endpoint, this is how often we check
+     * whether the client is still connected.
+     */
+    private static final long ASYNC_DISCONNECT_CHECK_MILLIS = 100;
+
+    /**
+     * Counters and timings of the requests we serve.  See {@link Context#getMetrics()}
+     */
+    private final MetricsRegistry metrics;
+    private final ActionQueueState actionQueueState;
+    private final Histogram compressionDuration;
+    private final Counter bytesReceived;
+    private final Counter bytesSent;
+    private final Counter brigRefusals;
+
+    /**
+     * Measures the CPU time and allocation of each endpoint, or null
+     * if that is not enabled. See {@link Constants#isEndpointAccountingEnabled}
+     */
+    private final EndpointAccounting endpointAccounting;
+
+    /**
+     * The route label for requests served from the static files directory.  Using
+     * one label for all of them keeps the count of metrics from growing with the
+     * count of files.
+     */
+    static final String STATIC_ROUTE = "_static";
+
+    /**
+     * The route label for requests matching no endpoint
+     */
+    static final String UNMATCHED_ROUTE = "_unmatched";
 
     /**
      * This is the minimum number of bytes in a text response to apply gzip.
      */
-    private static final int MINIMUM_NUMBER_OF_BYTES_TO_COMPRESS = 2048;
+    static final int MINIMUM_NUMBER_OF_BYTES_TO_COMPRESS = 2048;
 
     /**
      * This is the brains of how the server responds to web clients.  Whatever
@@ -101,13 +236,18 @@ public final class WebFramework {
             Thread.currentThread().setName("SocketWrapper thread for " + sw.getRemoteAddr());
             try (sw) {
                 dumpIfAttacker(sw, fs);
-                final var is = sw.getInputStream();
 
                 // By default, browsers expect the server to run in keep-alive mode.
                 // We'll break out later if we find that the browser doesn't do keep-alive
                 while (true) {
-                    final String rawStartLine = inputStreamUtils.readLine(is);
-                    long startMillis = System.currentTimeMillis();
+                    // fetched each time, since checking for a disconnected client
+                    // while awaiting an asynchronous endpoint may replace the stream.
+                    final String rawStartLine = inputStreamUtils.readLine(sw.getInputStream());
+                    long startNanos = System.nanoTime();
+                    var requestEvent = new HttpRequestEvent();
+                    requestEvent.begin();
+                    var readHeadEvent = new HttpStageEvent();
+                    readHeadEvent.begin();
                     if (rawStartLine.isEmpty()) {
                         // here, the client connected, sent nothing, and closed.
                         // nothing to do but return.
@@ -127,42 +267,86 @@ public final class WebFramework {
 
                     // React to what the user requested, generate a result
                     Headers hi = getHeaders(sw);
+                    readHeadEvent.finish(HttpStageEvent.READ_HEAD);
+
                     boolean isKeepAlive = determineIfKeepAlive(sl, hi, logger);
-                    if (isThereIsABody(hi)) {
+                    if (logger.isTraceEnabled() && isThereIsABody(hi)) {
                         logger.logTrace(() -> "There is a body. Content-type is " + hi.contentType());
                     }
                     ProcessingResult result = processRequest(sw, sl, hi);
                     IRequest request = result.clientRequest();
                     Response response = (Response)result.resultingResponse();
 
-                    // calculate proper headers for the response
-                    StringBuilder headerStringBuilder = addDefaultHeaders(response);
-                    addOptionalExtraHeaders(response, headerStringBuilder);
-                    addKeepAliveTimeout(isKeepAlive, headerStringBuilder);
-
-                    // inspect the response being sent, see whether we can compress the data.
-                    Response adjustedResponse = potentiallyCompress(request.getHeaders(), response, headerStringBuilder);
-                    applyContentLength(headerStringBuilder, adjustedResponse.getBodyLength());
-                    confirmBodyHasContentType(request, response);
-
-                    // send the headers
-                    sw.send(headerStringBuilder.append(HTTP_CRLF).toString());
-
-                    // if the user sent a HEAD request, we send everything back except the body.
-                    // even though we skip the body, this requires full processing to get the
-                    // numbers right, like content-length.
-                    if (request.getRequestLine().getMethod().equals(RequestLine.Method.HEAD)) {
-                        logger.logDebug(() -> "client " + request.getRemoteRequester() +
-                                " is requesting HEAD for "+ request.getRequestLine().getPathDetails().getIsolatedPath() +
-                                ".  Excluding body from response");
-                    } else {
-                        // send the body
-                        adjustedResponse.sendBody(sw);
+                    // if the client asked to switch to a WebSocket, and the pre-handler and
+                    // middleware allowed it, the connection is handed over entirely, and
+                    // stops being HTTP.  If they refused, their response is sent as usual.
+                    if (response.getStatusCode() == CODE_101_SWITCHING_PROTOCOLS) {
+                        WebSocketHandler webSocketHandler = findWebSocketHandler(sl, hi);
+                        if (webSocketHandler != null) {
+                            handleWebSocketUpgrade(sw, request, webSocketHandler);
+                            break;
+                        }
+                    }
+                    // a response may ask for the connection to be closed once it is sent
+                    boolean isClosingAfterResponse = !isKeepAlive || response.isUnbounded() ||
+                            "close".equalsIgnoreCase(response.getExtraHeaderValue("connection"));
+                    try {
+                        // calculate proper headers for the response
+                        StringBuilder headerStringBuilder = addDefaultHeaders(response);
+                        addOptionalExtraHeaders(response, headerStringBuilder);
+                        addKeepAliveTimeout(!isClosingAfterResponse, headerStringBuilder);
+
+                        // inspect the response being sent, see whether we can compress the data.
+                        long compressionStartNanos = System.nanoTime();
+                        var compressEvent = new HttpStageEvent();
+                        compressEvent.begin();
+                        Response adjustedResponse = potentiallyCompress(request.getHeaders(), response, headerStringBuilder);
+                        if (adjustedResponse != response) {
+                            compressEvent.finish(HttpStageEvent.COMPRESS);
+                            compressionDuration.record(System.nanoTime() - compressionStartNanos);
+                        }
+                        if (adjustedResponse.isUnbounded()) {
+                            // with no content-length, the client knows the body is done when we close the connection.
+                            headerStringBuilder.append("Connection: close").append(HTTP_CRLF);
+                        } else {
+                            applyContentLength(headerStringBuilder, adjustedResponse.getBodyLength());
+                        }
+                        confirmBodyHasContentType(request, response);
+
+                        // send the headers
+                        var writeEvent = new HttpStageEvent();
+                        writeEvent.begin();
+                        String headerString = headerStringBuilder.append(HTTP_CRLF).toString();
+                        sw.send(headerString);
+                        bytesSent.add(headerString.length());
+
+                        // if the user sent a HEAD request, we send everything back except the body.
+                        // even though we skip the body, this requires full processing to get the
+                        // numbers right, like content-length.
+                        if (request.getRequestLine().getMethod().equals(RequestLine.Method.HEAD)) {
+                            logger.logDebug(() -> "client " + request.getRemoteRequester() +
+                                    " is requesting HEAD for "+ request.getRequestLine().getPathDetails().getIsolatedPath() +
+                                    ".  Excluding body from response");
+                        } else {
+                            // send the body
+                            adjustedResponse.sendBody(sw);
+                            bytesSent.add(Math.max(0, adjustedResponse.getBodyLength()));
+                        }
+                        // count what was actually read of the body, not what the client claimed
+                        if (request instanceof Request r) {
+                            bytesReceived.add(r.getBodyBytesRead());
+                        }
+                        writeEvent.finish(HttpStageEvent.WRITE);
+                    } finally {
+                        deleteTemporaryFiles(request);
                     }
                     // print how long this processing took
-                    long endMillis = System.currentTimeMillis();
-                    logger.logTrace(() -> String.format("full processing (including communication time) of %s %s took %d millis", sw, sl, endMillis - startMillis));
-                    if (!isKeepAlive) break;
+                    long durationNanos = System.nanoTime() - startNanos;
+                    if (logger.isTraceEnabled()) {
+                        logger.logTrace(() -> String.format("full processing (including communication time) of %s %s took %d millis", sw, sl, TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+                    }
+                    requestEvent.finish(sl.getMethod().name(), result.routeName(), sl.getPathDetails().getIsolatedPath(), response.getStatusCode().code, sw.getRemoteAddr());
+                    if (isClosingAfterResponse) break;
                 }
             } catch (SocketException | SocketTimeoutException ex) {
                 handleReadTimedOut(sw, ex, logger);
@@ -175,6 +359,20 @@ public final class WebFramework {
     }
 
 
+    /**
+     * Once we have finished sending the response, remove any temporary files that
+     * were made while reading the request body.  See {@link Constants#multipartTempDirectory}
+     */
+    void deleteTemporaryFiles(IRequest request) {
+        if (request instanceof Request r) {
+            try {
+                r.deleteTemporaryFiles();
+            } catch (IOException ex) {
+                logger.logAsyncError(() -> "Error while deleting temporary files for request: " + StacktraceUtils.stackTraceToString(ex));
+            }
+        }
+    }
+
     static void handleIOException(ISocketWrapper sw, IOException ex, ILogger logger, ITheBrig theBrig, UnderInvestigation underInvestigation, int vulnSeekingJailDuration ) {
         logger.logDebug(() -> ex.getMessage() + " (at Server.start)");
         String suspiciousClues = underInvestigation.isClientLookingForVulnerabilities(ex.getMessage());
@@ -220,28 +418,36 @@ public final class WebFramework {
             Headers requestHeaders) throws Exception {
         IRequest clientRequest = new Request(requestHeaders, requestLine, sw.getRemoteAddr(), sw, bodyProcessor);
         IResponse response;
-        ThrowingFunction<IRequest, IResponse> endpoint = findEndpointForThisStartline(requestLine, requestHeaders);
-        if (endpoint == null) {
+        Route route = findRoute(requestLine, requestHeaders);
+        String routeName = route == null ? UNMATCHED_ROUTE : route.name();
+        if (route == null) {
             response = Response.buildLeanResponse(CODE_404_NOT_FOUND);
         } else {
-            long millisAtStart = System.currentTimeMillis();
+            ThrowingFunction<IRequest, IResponse> endpoint = route.endpoint();
+            long nanosAtStart = System.nanoTime();
+            var handlerEvent = new HttpStageEvent();
+            handlerEvent.begin();
             try {
-                if (preHandler != null) {
-                    response = preHandler.apply(new PreHandlerInputs(clientRequest, endpoint, sw));
-                } else {
-                    response = endpoint.apply(clientRequest);
-                }
+                response = runEndpoint(clientRequest, endpoint, sw);
+            } catch (ClientDisconnectedException ex) {
+                // nobody is left to receive a response, so this connection is finished.
+                throw ex;
             } catch (Exception ex) {
                 // if an error happens while running an endpoint's code, this is the
                 // last-chance handling of that error where we return a 500 and a
                 // random code to the client, so a developer can find the detailed
                 // information in the logs, which have that same value.
                 int randomNumber = randomErrorCorrelationId.nextInt();
-                logger.logAsyncError(() -> "error while running endpoint " + endpoint + ". Code: " + randomNumber + ". Error: " + StacktraceUtils.stackTraceToString(ex));
+                logger.log(LoggingLevel.ASYNC_ERROR, () -> "error while running endpoint " + endpoint + ". Code: " + randomNumber + ". Error: " + StacktraceUtils.stackTraceToString(ex),
+                        "route", routeName, "remote", sw.getRemoteAddr());
                 response = Response.buildResponse(CODE_500_INTERNAL_SERVER_ERROR, Map.of("Content-Type", "text/plain;charset=UTF-8"), "Server error: " + randomNumber);
             }
-            long millisAtEnd = System.currentTimeMillis();
-            logger.logTrace(() -> String.format("handler processing of %s %s took %d millis", sw, requestLine, millisAtEnd - millisAtStart));
+            handlerEvent.finish(HttpStageEvent.HANDLER);
+            long handlerNanos = System.nanoTime() - nanosAtStart;
+            routeMetrics(routeName).handlerDuration().record(handlerNanos);
+            if (logger.isTraceEnabled()) {
+                logger.logTrace(() -> String.format("handler processing of %s %s took %d millis", sw, requestLine, TimeUnit.NANOSECONDS.toMillis(handlerNanos)));
+            }
         }
 
         // if the user has chosen to customize the response based on status code, that will
@@ -250,10 +456,209 @@ public final class WebFramework {
             response = lastMinuteHandler.apply(new LastMinuteHandlerInputs(clientRequest, response));
         }
 
-        return new ProcessingResult(clientRequest, response);
+        routeMetrics(routeName).requests(requestLine.getMethod(), response.getStatusCode()).increment();
+        return new ProcessingResult(clientRequest, response, routeName);
     }
 
-    record ProcessingResult(IRequest clientRequest, IResponse resultingResponse) { }
+    private RouteMetrics routeMetrics(String routeName) {
+        return routeMetricsByName.computeIfAbsent(routeName, name -> new RouteMetrics(metrics, name));
+    }
+
+    /**
+     * Run the endpoint, by way of the pre-handler if one is registered
+     */
+    private IResponse runEndpoint(IRequest clientRequest, ThrowingFunction<IRequest, IResponse> endpoint, ISocketWrapper sw) throws Exception {
+        if (preHandler != null) {
+            return preHandler.apply(new PreHandlerInputs(clientRequest, endpoint, sw));
+        } else {
+            return endpoint.apply(clientRequest);
+        }
+    }
+
+    /**
+     * @param routeName the name of the route that handled the request, see {@link Route}
+     */
+    record ProcessingResult(IRequest clientRequest, IResponse resultingResponse, String routeName) { }
+
+    /**
+     * Thrown when the client disconnects while we are waiting on the response
+     * from an asynchronous endpoint.  Being a {@link SocketException}, it ends the
+     * connection the same way as any other lost connection.
+     */
+    static final class ClientDisconnectedException extends SocketException {
+
+        private static final long serialVersionUID = 3128547450217566321L;
+
+        ClientDisconnectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Wait for the response from an asynchronous endpoint.  See {@link #registerAsyncPath(RequestLine.Method, String, ThrowingFunction, Duration)}
+     * <p>
+     *     Connections are served by virtual threads, so waiting here parks the
+     *     virtual thread and releases the platform thread beneath it to other work.
+     *     We wait in short slices, checking between them whether the client is still there.
+     * </p>
+     * @return the response completing the future, or a 504 if it took too long
+     */
+    IResponse awaitAsyncResponse(IRequest request, CompletableFuture<IResponse> future, long timeoutMillis) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (true) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    future.cancel(true);
+                    deadlineExceededCount.increment();
+                    int randomNumber = randomErrorCorrelationId.nextInt();
+                    logger.logAsyncError(() -> "asynchronous endpoint for " + request.getRequestLine() + " did not complete within " + timeoutMillis + " millis. Code: " + randomNumber);
+                    return Response.buildResponse(CODE_504_GATEWAY_TIMEOUT, Map.of("Content-Type", "text/plain;charset=UTF-8"), "Gateway timeout: " + randomNumber);
+                }
+                try {
+                    return future.get(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(ASYNC_DISCONNECT_CHECK_MILLIS)), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    if (request instanceof Request r && r.isClientDisconnected()) {
+                        future.cancel(true);
+                        throw new ClientDisconnectedException("client disconnected while awaiting asynchronous endpoint for " + request.getRequestLine());
+                    }
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw ex;
+                } catch (InterruptedException ex) {
+                    future.cancel(true);
+                    throw ex;
+                }
+            }
+        } finally {
+            // the checks may have shortened the read timeout, which must be put back before the next request
+            if (request instanceof Request r) {
+                r.endDisconnectChecks();
+            }
+        }
+    }
+
+    /**
+     * Run an endpoint on its own virtual thread, interrupting it if it runs past
+     * its deadline.  See {@link RouteOptions#withDeadline(Duration)}
+     * <p>
+     *     Past the deadline, the endpoint may still be reading from the socket, so
+     *     the response asks for the connection to be closed.
+     * </p>
+     * @return the endpoint's response, or a 503 if it ran out of time
+     */
+    IResponse runWithDeadline(IRequest request, ThrowingFunction<IRequest, IResponse> webHandler, long deadlineMillis) throws Exception {
+        Future<IResponse> future = executorService.submit(() -> webHandler.apply(request));
+        try {
+            return future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            deadlineExceededCount.increment();
+            int randomNumber = randomErrorCorrelationId.nextInt();
+            logger.logAsyncError(() -> "endpoint for " + request.getRequestLine() + " ran past its deadline of " + deadlineMillis + " millis and was interrupted. Code: " + randomNumber);
+            return Response.buildResponse(CODE_503_SERVICE_UNAVAILABLE,
+                    Map.of("Content-Type", "text/plain;charset=UTF-8", "Connection", "close"),
+                    "Server unavailable: " + randomNumber);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw ex;
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            throw ex;
+        }
+    }
+
+    /**
+     * The count of requests which ran past their deadline, or for asynchronous
+     * endpoints, their timeout.  This is the metric "minum_deadline_exceeded",
+     * shared by everything using the same {@link Context}.
+     */
+    public long getDeadlineExceededCount() {
+        return deadlineExceededCount.get();
+    }
+
+    /**
+     * If this is a request to upgrade to a WebSocket, on a path where a
+     * WebSocket handler is registered, return that handler.  Otherwise, null.
+     */
+    WebSocketHandler findWebSocketHandler(RequestLine sl, Headers hi) {
+        if (registeredWebSockets.isEmpty() || sl.getMethod() != RequestLine.Method.GET) {
+            return null;
+        }
+        List<String> upgradeHeaders = hi.valueByKey("upgrade");
+        if (upgradeHeaders == null || upgradeHeaders.stream().noneMatch(x -> x.trim().equalsIgnoreCase("websocket"))) {
+            return null;
+        }
+        return registeredWebSockets.get(sl.getPathDetails().getIsolatedPath().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Complete the WebSocket opening handshake, and then serve the connection until it ends.
+     */
+    void handleWebSocketUpgrade(ISocketWrapper sw, IRequest request, WebSocketHandler webSocketHandler) throws IOException {
+        RequestLine sl = request.getRequestLine();
+        Headers hi = request.getHeaders();
+        List<String> keys = hi.valueByKey("sec-websocket-key");
+        List<String> versions = hi.valueByKey("sec-websocket-version");
+        if (keys == null || keys.size() != 1 || keys.getFirst().isBlank()) {
+            logger.logDebug(() -> sw.getRemoteAddr() + " requested a WebSocket upgrade without a valid Sec-WebSocket-Key");
+            sendUpgradeRefusal(sw, CODE_400_BAD_REQUEST, "");
+            return;
+        }
+        if (versions == null || !versions.getFirst().trim().equals("13")) {
+            sendUpgradeRefusal(sw, CODE_426_UPGRADE_REQUIRED, "Sec-WebSocket-Version: 13" + HTTP_CRLF);
+            return;
+        }
+        if (webSocketConnectionCount.incrementAndGet() > constants.maxWebSocketConnections) {
+            webSocketConnectionCount.decrementAndGet();
+            logger.logDebug(() -> "Refusing WebSocket connection from " + sw.getRemoteAddr() + ", at the limit of " + constants.maxWebSocketConnections);
+            sendUpgradeRefusal(sw, CODE_503_SERVICE_UNAVAILABLE, "");
+            return;
+        }
+        try {
+            sw.send("HTTP/1.1 101 Switching Protocols" + HTTP_CRLF +
+                    "Upgrade: websocket" + HTTP_CRLF +
+                    "Connection: Upgrade" + HTTP_CRLF +
+                    "Sec-WebSocket-Accept: " + computeWebSocketAccept(keys.getFirst().trim()) + HTTP_CRLF +
+                    HTTP_CRLF);
+            logger.logTrace(() -> "WebSocket connection opened with " + sw.getRemoteAddr() + " for " + sl.getPathDetails().getIsolatedPath());
+            new WebSocket(sw, request, webSocketHandler, logger, constants.maxWebSocketMessageSizeBytes).run();
+        } finally {
+            webSocketConnectionCount.decrementAndGet();
+        }
+    }
+
+    private static void sendUpgradeRefusal(ISocketWrapper sw, StatusLine.StatusCode statusCode, String extraHeaders) throws IOException {
+        sw.send("HTTP/1.1 " + statusCode.code + " " + statusCode.shortDescription + HTTP_CRLF +
+                extraHeaders +
+                "Content-Length: 0" + HTTP_CRLF +
+                "Connection: close" + HTTP_CRLF +
+                HTTP_CRLF);
+    }
+
+    /**
+     * The value of the Sec-WebSocket-Accept header, proving to the client
+     * we understood its request to open a WebSocket.
+     */
+    static String computeWebSocketAccept(String webSocketKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((webSocketKey + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WebServerException(ex);
+        }
+    }
+
+    /**
+     * The count of WebSocket connections currently open
+     */
+    public int getWebSocketConnectionCount() {
+        return webSocketConnectionCount.get();
+    }
 
     private Headers getHeaders(ISocketWrapper sw) {
     /*
@@ -268,7 +673,9 @@ public final class WebFramework {
     */
         List<String> allHeaders = Headers.getAllHeaders(sw.getInputStream(), inputStreamUtils);
         Headers hi = new Headers(allHeaders);
-        logger.logTrace(() -> "The headers are: " + hi.getHeaderStrings());
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> "The headers are: " + hi.getHeaderStrings());
+        }
         return hi;
     }
 
@@ -282,20 +689,26 @@ public final class WebFramework {
         } else if (sl.getVersion() == HttpVersion.ONE_DOT_ONE) {
             isKeepAlive = ! hi.hasConnectionClose();
         }
-        boolean finalIsKeepAlive = isKeepAlive;
-        logger.logTrace(() -> "Is this a keep-alive connection? " + finalIsKeepAlive);
+        if (logger.isTraceEnabled()) {
+            boolean finalIsKeepAlive = isKeepAlive;
+            logger.logTrace(() -> "Is this a keep-alive connection? " + finalIsKeepAlive);
+        }
         return isKeepAlive;
     }
 
     RequestLine getProcessedRequestLine(ISocketWrapper sw, String rawStartLine) {
-        logger.logTrace(() -> sw + ": raw request line received: " + rawStartLine);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> sw + ": raw request line received: " + rawStartLine);
+        }
         RequestLine rl = new RequestLine(
                 RequestLine.Method.NONE,
                 PathDetails.empty,
                 HttpVersion.NONE,
                 "", logger);
         RequestLine extractedRequestLine = rl.extractRequestLine(rawStartLine);
-        logger.logTrace(() -> sw + ": RequestLine has been derived: " + extractedRequestLine);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> sw + ": RequestLine has been derived: " + extractedRequestLine);
+        }
         return extractedRequestLine;
     }
 
@@ -329,6 +742,7 @@ public final class WebFramework {
         if (theBrig.isInJail(remoteClient + "_vuln_seeking")) {
             // if this client is a vulnerability seeker, throw an exception,
             // causing them to get dumped unceremoniously
+            brigRefusals.increment();
             String message = "closing the socket on " + remoteClient + " due to being found in the brig";
             logger.logDebug(() -> message);
             throw new ForbiddenUseException(message);
@@ -380,11 +794,10 @@ public final class WebFramework {
     /**
      * Add extra headers specified by the business logic (set by the developer)
      */
-    private static void addOptionalExtraHeaders(IResponse response, StringBuilder stringBuilder) {
-        stringBuilder.append(
-                response.getExtraHeaders().entrySet().stream()
-                .map(x -> x.getKey() + ": " + x.getValue() + HTTP_CRLF)
-                .collect(Collectors.joining()));
+    private static void addOptionalExtraHeaders(Response response, StringBuilder stringBuilder) {
+        for (var header : response.getExtraHeadersView().entrySet()) {
+            stringBuilder.append(header.getKey()).append(": ").append(header.getValue()).append(HTTP_CRLF);
+        }
     }
 
     /**
@@ -392,7 +805,7 @@ public final class WebFramework {
      */
     static void confirmBodyHasContentType(IRequest request, Response response) {
         // check the correctness of the content-type header versus the data length (if any data, that is)
-        boolean hasContentType = response.getExtraHeaders().entrySet().stream().anyMatch(x -> x.getKey().toLowerCase(Locale.ROOT).equals("content-type"));
+        boolean hasContentType = response.getExtraHeaderValue("content-type") != null;
 
         // if there *is* data, we had better be returning a content type
         if (response.getBodyLength() > 0) {
@@ -434,17 +847,20 @@ public final class WebFramework {
         // regardless of whether the client requests compression in their Accept-Encoding header,
         // if the data we're sending back is not of an appropriate type, we won't bother
         // compressing it.  Basically, we're going to compress plain text.
-        Map.Entry<String, String> contentTypeHeader = SearchUtils.findExactlyOne(response.getExtraHeaders().entrySet().stream(), x -> x.getKey().equalsIgnoreCase("content-type"));
-
-        if (contentTypeHeader != null) {
-            String contentType = contentTypeHeader.getValue().toLowerCase(Locale.ROOT);
-            if (contentType.contains("text/")) {
-                return compressBodyIfRequested(response, acceptEncoding, headerStringBuilder, MINIMUM_NUMBER_OF_BYTES_TO_COMPRESS);
-            }
+        if (isTextContent(response)) {
+            return compressBodyIfRequested(response, acceptEncoding, headerStringBuilder, MINIMUM_NUMBER_OF_BYTES_TO_COMPRESS);
         }
         return response;
     }
 
+    /**
+     * True if the content-type of the response is text, the kind of data we compress
+     */
+    static boolean isTextContent(Response response) {
+        String contentTypeHeader = response.getExtraHeaderValue("content-type");
+        return contentTypeHeader != null && contentTypeHeader.toLowerCase(Locale.ROOT).contains("text/");
+    }
+
     /**
      * This method will examine the content-encoding headers, and if "gzip" is
      * requested by the client, we will replace the body bytes with compressed
@@ -475,31 +891,60 @@ public final class WebFramework {
      * do not find anything, return null)
      */
     ThrowingFunction<IRequest, IResponse> findEndpointForThisStartline(RequestLine sl, Headers requestHeaders) {
+        Route route = findRoute(sl, requestHeaders);
+        return route == null ? null : route.endpoint();
+    }
+
+    /**
+     * An endpoint, and the name of the route it was found by, used to label metrics.
+     * This is the path as registered, or {@link #STATIC_ROUTE} for static files.
+     */
+    record Route(String name, ThrowingFunction<IRequest, IResponse> endpoint) { }
+
+    /**
+     * Similar to {@link #findEndpointForThisStartline(RequestLine, Headers)}, also
+     * providing the name of the matching route.
+     */
+    Route findRoute(RequestLine sl, Headers requestHeaders) {
         ThrowingFunction<IRequest, IResponse> handler;
-        logger.logTrace(() -> "Seeking a handler for " + sl);
+        if (logger.isTraceEnabled()) {
+            logger.logTrace(() -> "Seeking a handler for " + sl);
+        }
 
         // first we check if there's a simple direct match
         String requestedPath = sl.getPathDetails().getIsolatedPath().toLowerCase(Locale.ROOT);
 
+        // a request to open a WebSocket runs through the pre-handler and middleware like
+        // any other, and if it reaches the end, the upgrade is accepted.
+        if (findWebSocketHandler(sl, requestHeaders) != null) {
+            return new Route(requestedPath, webSocketUpgradeChains.get(requestedPath));
+        }
+
         // if the user is asking for a HEAD request, they want to run a GET command
         // but don't want the body.  We'll simply exclude sending the body, later on, when returning the data
         RequestLine.Method method = sl.getMethod() == RequestLine.Method.HEAD ? RequestLine.Method.GET : sl.getMethod();
 
         MethodPath key = new MethodPath(method, requestedPath);
         handler = registeredDynamicPaths.get(key);
+        if (handler != null) {
+            return new Route(requestedPath, handler);
+        }
 
-        if (handler == null) {
+        if (logger.isTraceEnabled()) {
             logger.logTrace(() -> "No direct handler found.  looking for a partial match for " + requestedPath);
-            handler = findHandlerByPartialMatch(sl);
+        }
+        var partialMatch = findPartialMatch(sl);
+        if (partialMatch != null) {
+            return new Route(partialMatch.getKey().path(), partialMatch.getValue());
         }
 
-        if (handler == null) {
+        if (logger.isTraceEnabled()) {
             logger.logTrace(() -> "No partial match found, checking files on disk for " + requestedPath );
-            handler = findHandlerByFilesOnDisk(sl, requestHeaders);
         }
+        handler = findHandlerByFilesOnDisk(sl, requestHeaders);
 
         // we'll return this, and it could be a null.
-        return handler;
+        return handler == null ? null : new Route(STATIC_ROUTE, handler);
     }
 
     /**
@@ -511,8 +956,8 @@ public final class WebFramework {
             return null;
         }
         String requestedPath = sl.getPathDetails().getIsolatedPath();
-        IResponse response = readStaticFile(requestedPath, requestHeaders);
-        return request -> response;
+        Bulkhead bulkhead = bulkheads.get(WorkClass.STATIC);
+        return request -> bulkhead.run(request, withAccounting(STATIC_ROUTE, ignored -> readStaticFile(requestedPath, requestHeaders)));
     }
 
 
@@ -619,11 +1064,7 @@ public final class WebFramework {
      * let's see if we can match the registered paths against a **portion** of the startline
      */
     ThrowingFunction<IRequest, IResponse> findHandlerByPartialMatch(RequestLine sl) {
-        String requestedPath = sl.getPathDetails().getIsolatedPath();
-        var methodPathFunctionEntry = registeredPartialPaths.entrySet().stream()
-                .filter(x -> requestedPath.startsWith(x.getKey().path()) &&
-                        x.getKey().method().equals(sl.getMethod()))
-                .findFirst().orElse(null);
+        var methodPathFunctionEntry = findPartialMatch(sl);
         if (methodPathFunctionEntry != null) {
             return methodPathFunctionEntry.getValue();
         } else {
@@ -631,6 +1072,14 @@ public final class WebFramework {
         }
     }
 
+    private Map.Entry<MethodPath, ThrowingFunction<IRequest, IResponse>> findPartialMatch(RequestLine sl) {
+        String requestedPath = sl.getPathDetails().getIsolatedPath();
+        return registeredPartialPaths.entrySet().stream()
+                .filter(x -> requestedPath.startsWith(x.getKey().path()) &&
+                        x.getKey().method().equals(sl.getMethod()))
+                .findFirst().orElse(null);
+    }
+
     /**
      * This constructor is used for the real production system
      */
@@ -651,9 +1100,28 @@ public final class WebFramework {
         this.fs = context.getFullSystem();
         this.logger = context.getLogger();
         this.constants = context.getConstants();
+        this.executorService = context.getExecutorService();
+        this.metrics = context.getMetrics();
+        this.actionQueueState = context.getActionQueueState();
+        this.compressionDuration = metrics.histogram("minum_compression_duration");
+        this.bytesReceived = metrics.counter("minum_request_body_bytes_received");
+        this.bytesSent = metrics.counter("minum_response_bytes_sent");
+        this.brigRefusals = metrics.counter("minum_brig_refused_connections");
+        this.endpointAccounting = constants.isEndpointAccountingEnabled ? EndpointAccounting.build(metrics, logger) : null;
+        this.deadlineExceededCount = metrics.counter("minum_deadline_exceeded");
+        this.routeMetricsByName = new ConcurrentHashMap<>();
+        this.responseCache = new ResponseCache(constants.responseCacheMaxBytes, executorService, logger);
+        this.singleFlight = new SingleFlight();
+        this.bulkheads = buildBulkheads(constants.bulkheadLimits, constants.bulkheadQueueTimeoutMillis, metrics);
         this.overrideForDateTime = overrideForDateTime;
         this.registeredDynamicPaths = new HashMap<>();
         this.registeredPartialPaths = new HashMap<>();
+        this.uncomposedDynamicPaths = new HashMap<>();
+        this.uncomposedPartialPaths = new HashMap<>();
+        this.middlewares = new ArrayList<>();
+        this.registeredWebSockets = new HashMap<>();
+        this.webSocketUpgradeChains = new HashMap<>();
+        this.webSocketConnectionCount = new AtomicInteger(0);
         this.underInvestigation = new UnderInvestigation(constants);
         this.inputStreamUtils = new InputStreamUtils(constants.maxReadLineSizeBytes);
         this.bodyProcessor = new BodyProcessor(context);
@@ -670,13 +1138,66 @@ public final class WebFramework {
             this.fileReader = new FileReader(
                     LRUCache.getLruCache(constants.maxElementsLruCacheStaticFiles),
                     constants.useCacheForStaticFiles,
-                    logger);
+                    logger,
+                    metrics);
         }
         this.fileSuffixToMime = new HashMap<>();
         addDefaultValuesForMimeMap();
         readExtraMimeMappings(constants.extraMimeMappings);
     }
 
+    /**
+     * Build a {@link Bulkhead} for each {@link WorkClass}, using the default
+     * limits unless they are adjusted by {@link Constants#bulkheadLimits}.
+     * <p>
+     *     Each is registered in the metrics, labelled with its work class as "class":
+     *     "minum_bulkhead_queue_duration", the time requests waited for their turn,
+     *     "minum_bulkhead_active" and "minum_bulkhead_queued", the count of requests
+     *     running and waiting, and "minum_bulkhead_rejected", those turned away.
+     * </p>
+     */
+    static Map<WorkClass, Bulkhead> buildBulkheads(List<String> limits, int queueTimeoutMillis, MetricsRegistry metrics) {
+        mustBeTrue(limits.size() % 3 == 0, "BULKHEAD_LIMITS must be in groups of three: work class, concurrency limit, queue size. Your input: " + limits);
+        var concurrencyLimits = new EnumMap<WorkClass, Integer>(WorkClass.class);
+        var queueSizes = new EnumMap<WorkClass, Integer>(WorkClass.class);
+        for (int i = 0; i < limits.size(); i += 3) {
+            WorkClass workClass = WorkClass.valueOf(limits.get(i).toUpperCase(Locale.ROOT));
+            concurrencyLimits.put(workClass, Integer.parseInt(limits.get(i + 1)));
+            queueSizes.put(workClass, Integer.parseInt(limits.get(i + 2)));
+        }
+        var result = new EnumMap<WorkClass, Bulkhead>(WorkClass.class);
+        for (WorkClass workClass : WorkClass.values()) {
+            String label = workClass.name();
+            var bulkhead = new Bulkhead(
+                    workClass,
+                    concurrencyLimits.getOrDefault(workClass, workClass.defaultConcurrencyLimit),
+                    queueSizes.getOrDefault(workClass, workClass.defaultQueueSize),
+                    queueTimeoutMillis,
+                    metrics.histogram("minum_bulkhead_queue_duration", "class", label));
+            metrics.gauge("minum_bulkhead_active", bulkhead::getActiveCount, "class", label);
+            metrics.gauge("minum_bulkhead_queued", bulkhead::getQueuedCount, "class", label);
+            metrics.functionCounter("minum_bulkhead_rejected", bulkhead::getRejectedCount, "class", label);
+            result.put(workClass, bulkhead);
+        }
+        return result;
+    }
+
+    /**
+     * The limits on concurrency for one kind of work, and how busy it is
+     */
+    public Bulkhead getBulkhead(WorkClass workClass) {
+        return bulkheads.get(workClass);
+    }
+
+    /**
+     * Stop the threads owned by this class.  Called by {@link FullSystem#shutdown()}
+     */
+    void shutdown() {
+        if (endpointAccounting != null) {
+            endpointAccounting.shutdown();
+        }
+    }
+
     void readExtraMimeMappings(List<String> input) {
         if (input == null || input.isEmpty()) return;
         mustBeTrue(input.size() % 2 == 0, "input must be even (key + value = 2 items). Your input: " + input);
@@ -698,7 +1219,217 @@ public final class WebFramework {
      * so for example with {@code http://foo.com/mypath}, provide "mypath" as the path.
      */
     public void registerPath(RequestLine.Method method, String pathName, ThrowingFunction<IRequest, IResponse> webHandler) {
-        registeredDynamicPaths.put(new MethodPath(method, pathName), webHandler);
+        registerPath(method, pathName, webHandler, RouteOptions.DEFAULT);
+    }
+
+    /**
+     * Similar to {@link #registerPath(RequestLine.Method, String, ThrowingFunction)}, with
+     * further settings for this endpoint, such as a deadline.  See {@link RouteOptions}
+     */
+    public void registerPath(RequestLine.Method method, String pathName, ThrowingFunction<IRequest, IResponse> webHandler, RouteOptions routeOptions) {
+        addEndpoint(uncomposedDynamicPaths, registeredDynamicPaths, new MethodPath(method, pathName), applyRouteOptions(method, pathName, webHandler, routeOptions));
+    }
+
+    /**
+     * Wrap the endpoint with the behavior its options call for.  This is done once,
+     * at registration, so requests pay only for the options actually chosen.
+     * <p>
+     *     The cache is outermost, so a cached response is sent without
+     *     starting anything else.  Next is single-flight, so that identical
+     *     requests missing the cache together run the endpoint once.  Then the
+     *     bulkhead, so requests only count against their limit while running,
+     *     and last the deadline, which times only the endpoint itself.
+     * </p>
+     */
+    private ThrowingFunction<IRequest, IResponse> applyRouteOptions(RequestLine.Method method, String pathName,
+                                                                    ThrowingFunction<IRequest, IResponse> webHandler, RouteOptions routeOptions) {
+        ThrowingFunction<IRequest, IResponse> result = withAccounting(pathName, webHandler);
+        if (routeOptions.getDeadline() != null) {
+            long deadlineMillis = routeOptions.getDeadline().toMillis();
+            ThrowingFunction<IRequest, IResponse> inner = result;
+            result = request -> runWithDeadline(request, inner, deadlineMillis);
+        }
+        Bulkhead bulkhead = bulkheads.get(routeOptions.getWorkClass());
+        ThrowingFunction<IRequest, IResponse> beforeBulkhead = result;
+        result = request -> bulkhead.run(request, beforeBulkhead);
+        CachePolicy cachePolicy = routeOptions.getCachePolicy();
+        if (routeOptions.getSingleFlightTimeout() != null) {
+            mustBeTrue(method == RequestLine.Method.GET, "Only GET endpoints may use single-flight. Was: " + method + " " + pathName);
+            long waiterTimeoutMillis = routeOptions.getSingleFlightTimeout().toMillis();
+            ThrowingFunction<IRequest, IResponse> inner = result;
+            result = request -> runSingleFlight(method, pathName, cachePolicy, request, inner, waiterTimeoutMillis);
+        }
+        if (cachePolicy != null) {
+            mustBeTrue(method == RequestLine.Method.GET, "Only GET endpoints may be cached. Was: " + method + " " + pathName);
+            ThrowingFunction<IRequest, IResponse> inner = result;
+            result = request -> responseCache.getOrCompute(method, pathName, cachePolicy, request, inner);
+        }
+        return result;
+    }
+
+    /**
+     * Wrap {@link EndpointAccounting} around an endpoint's own code, if it is enabled,
+     * so it measures the endpoint on whichever thread ends up running it.
+     */
+    private <T> ThrowingFunction<IRequest, T> withAccounting(String routeName, ThrowingFunction<IRequest, T> webHandler) {
+        if (endpointAccounting == null) {
+            return webHandler;
+        }
+        return request -> endpointAccounting.measure(routeName, () -> webHandler.apply(request));
+    }
+
+    /**
+     * Run the endpoint, unless an identical request is already running it, in
+     * which case share its response.  See {@link RouteOptions#withSingleFlight(Duration)}
+     */
+    private IResponse runSingleFlight(RequestLine.Method method, String pathName, CachePolicy cachePolicy, IRequest request,
+                                      ThrowingFunction<IRequest, IResponse> webHandler, long waiterTimeoutMillis) throws Exception {
+        // with a cache policy, identical means having the same cache key, unless the
+        // request carries credentials the cache does not account for.  Otherwise, the
+        // same query string and the same credentials, so that one user is never sent
+        // a response computed for another.
+        Object key;
+        if (cachePolicy != null && !ResponseCache.isBypassed(cachePolicy, request)) {
+            key = ResponseCache.buildKey(method, pathName, cachePolicy, request);
+        } else {
+            Headers headers = request.getHeaders();
+            key = new SingleFlightKey(method, pathName,
+                    request.getRequestLine().getPathDetails().getRawQueryString(),
+                    headers == null ? null : headers.valueByKey("cookie"),
+                    headers == null ? null : headers.valueByKey("authorization"));
+        }
+        try {
+            return singleFlight.run(key, request, webHandler, waiterTimeoutMillis);
+        } catch (TimeoutException ex) {
+            int randomNumber = randomErrorCorrelationId.nextInt();
+            logger.logAsyncError(() -> "request for " + request.getRequestLine() + " waited more than " + waiterTimeoutMillis + " millis on an identical request. Code: " + randomNumber);
+            return Response.buildResponse(CODE_504_GATEWAY_TIMEOUT, Map.of("Content-Type", "text/plain;charset=UTF-8"), "Gateway timeout: " + randomNumber);
+        }
+    }
+
+    /**
+     * Identifies identical requests for single-flight, for endpoints without
+     * a {@link CachePolicy}.  See {@link #runSingleFlight}
+     */
+    private record SingleFlightKey(RequestLine.Method method, String path, String rawQueryString,
+                                   List<String> cookies, List<String> authorizations) { }
+
+    /**
+     * The count of requests which shared the response of an identical request running
+     * at the same time, rather than running the endpoint.  See {@link RouteOptions#withSingleFlight(Duration)}
+     */
+    public long getCoalescedRequestCount() {
+        return singleFlight.getCoalescedCount();
+    }
+
+    /**
+     * The cache of responses for endpoints registered with a {@link CachePolicy}, for
+     * example to drop entries when the data behind them changes.
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Similar to {@link #registerPath(RequestLine.Method, String, ThrowingFunction)}, except
+     * the handler returns a {@link CompletableFuture} which completes with the response.  This
+     * makes it easy to run several slow computations in parallel and compose their results.
+     * <p>
+     *     The handler itself runs on the connection's thread, and should return quickly,
+     *     starting its work elsewhere, for example on {@link Context#getExecutorService()}.
+     * </p>
+     * <p>
+     *     If the future does not complete within the timeout, it is cancelled and the client
+     *     receives a 504.  If the client disconnects while we wait, the future is cancelled
+     *     and the connection closed.  Cancelling a {@link CompletableFuture} does not interrupt
+     *     the work feeding it, so long-running work should check {@link CompletableFuture#isCancelled()}
+     *     or be chained from the future, so it is skipped.
+     * </p>
+     * <pre>{@code
+     * webFramework.registerAsyncPath(GET, "dashboard", request -> {
+     *     var photos = CompletableFuture.supplyAsync(() -> countPhotos(), executor);
+     *     var videos = CompletableFuture.supplyAsync(() -> countVideos(), executor);
+     *     return photos.thenCombine(videos, (p, v) -> Response.htmlOk(render(p, v)));
+     * }, Duration.ofSeconds(5));
+     * }</pre>
+     */
+    public void registerAsyncPath(RequestLine.Method method, String pathName, ThrowingFunction<IRequest, CompletableFuture<IResponse>> asyncHandler, Duration timeout) {
+        mustBeTrue(timeout.isPositive(), "The timeout for an asynchronous endpoint must be positive");
+        long timeoutMillis = timeout.toMillis();
+        ThrowingFunction<IRequest, CompletableFuture<IResponse>> accountedHandler = withAccounting(pathName, asyncHandler);
+        addEndpoint(uncomposedDynamicPaths, registeredDynamicPaths, new MethodPath(method, pathName), request -> awaitAsyncResponse(request, accountedHandler.apply(request), timeoutMillis));
+    }
+
+    /**
+     * Register a handler for WebSocket connections on a path.  When a client sends
+     * a GET request to this path asking to upgrade to a WebSocket, the connection
+     * switches over, and the handler is called as messages arrive.  This works on both
+     * the plain and the TLS server.
+     * <br>
+     * As with {@link #registerPath(RequestLine.Method, String, ThrowingFunction)}, the path
+     * is the text after the first forward slash, so for {@code ws://foo.com/chat}, provide "chat".
+     * <p>
+     *     The upgrade request first runs through the pre-handler and any {@link Middleware}
+     *     applying to GET on this path, so authentication done there protects WebSockets
+     *     too.  If they return their own response rather than calling the next step, such
+     *     as a 403, that is sent instead and the connection does not switch over.  The
+     *     handler may also check the original request itself, see {@link WebSocket#getRequest()}.
+     * </p>
+     */
+    public void registerWebSocket(String pathName, WebSocketHandler webSocketHandler) {
+        registeredWebSockets.put(pathName, webSocketHandler);
+        webSocketUpgradeChains.put(pathName, composeMiddleware(new MethodPath(RequestLine.Method.GET, pathName), ACCEPT_WEBSOCKET_UPGRADE));
+    }
+
+    /**
+     * Register endpoints showing how the running system is doing.  Only clients
+     * from the allowed addresses may see them - anyone else receives a 403.
+     * <ul>
+     *     <li>At the metrics path, the {@link Context#getMetrics()} in the Prometheus text
+     *     format, for example to be scraped by Prometheus.  JVM heap, garbage
+     *     collection and thread metrics are included.</li>
+     *     <li>At the diagnostics path, JSON for a person to read: open connections, the depth
+     *     of each {@link com.renomad.minum.queue.ActionQueue}, the count of entries in
+     *     each database, the static file cache's hit rate, and the JVM's heap, garbage
+     *     collection, and threads.</li>
+     * </ul>
+     * <pre>{@code
+     * webFramework.registerMetricsEndpoints("metrics", "diagnostics", List.of("127.0.0.1", "10.0.0.5"));
+     * }</pre>
+     */
+    public void registerMetricsEndpoints(String metricsPath, String diagnosticsPath, Collection<String> allowedRemoteAddresses) {
+        JvmMetrics.register(metrics);
+        var metricsEndpoints = new MetricsEndpoints(metrics, actionQueueState, constants.startTime, Set.copyOf(allowedRemoteAddresses));
+        registerPath(RequestLine.Method.GET, metricsPath, metricsEndpoints::metrics);
+        registerPath(RequestLine.Method.GET, diagnosticsPath, metricsEndpoints::diagnostics);
+    }
+
+    /**
+     * Register an endpoint for viewing and changing the enabled log levels
+     * while running, for example to turn on TRACE for a few minutes while
+     * investigating a problem in production.  Only clients from the allowed
+     * addresses may use it - anyone else receives a 403.
+     * <ul>
+     *     <li>GET returns the enabled levels and the TRACE sample rate as JSON</li>
+     *     <li>POST, with a form of {@code levels} and {@code trace_sample_rate},
+     *     changes them.  For example, {@code levels=DEBUG,TRACE,ASYNC_ERROR,AUDIT&trace_sample_rate=100}
+     *     writes one in a hundred TRACE messages.</li>
+     * </ul>
+     * <pre>{@code
+     * webFramework.registerLogLevelsEndpoint("loglevels", List.of("127.0.0.1"));
+     * }</pre>
+     * <p>
+     *     The changes last until the application restarts.  This requires the
+     *     logger to be a {@link Logger}, which it is unless a custom one was provided.
+     * </p>
+     */
+    public void registerLogLevelsEndpoint(String path, Collection<String> allowedRemoteAddresses) {
+        if (!(logger instanceof Logger minumLogger)) {
+            throw new WebServerException("Changing log levels requires the logger to be a " + Logger.class.getName() + ". Found: " + logger.getClass().getName());
+        }
+        var logLevelsEndpoint = new LogLevelsEndpoint(minumLogger, Set.copyOf(allowedRemoteAddresses));
+        registerPath(RequestLine.Method.GET, path, logLevelsEndpoint::get);
+        registerPath(RequestLine.Method.POST, path, logLevelsEndpoint::post);
     }
 
     /**
@@ -712,9 +1443,87 @@ public final class WebFramework {
      *     Be careful here, be thoughtful - partial paths will match a lot, and may
      *     overlap with other URL's for your app, such as endpoints and static files.
      * </p>
+     * <p>
+     *     These are meant for small, occasional needs like the example above, and
+     *     are not limited by a {@link Bulkhead}.
+     * </p>
      */
     public void registerPartialPath(RequestLine.Method method, String pathName, ThrowingFunction<IRequest, IResponse> webHandler) {
-        registeredPartialPaths.put(new MethodPath(method, pathName), webHandler);
+        addEndpoint(uncomposedPartialPaths, registeredPartialPaths, new MethodPath(method, pathName), withAccounting(pathName, webHandler));
+    }
+
+    /**
+     * Register a {@link Middleware} to run around every endpoint.
+     * <p>
+     *     Middleware runs in the order registered, the first registered being
+     *     the outermost.  It runs before the endpoint's {@link RouteOptions}, so
+     *     for example an authentication check happens before a cached response
+     *     is served.
+     * </p>
+     * <p>
+     *     The middleware for each endpoint is composed into a single function
+     *     when registered, so a request runs only the middleware that applies
+     *     to it, without examining its path each time.  It does not apply to
+     *     static files or requests matching no endpoint.  It does apply to requests
+     *     opening a WebSocket, as if to a GET endpoint on that path - see
+     *     {@link #registerWebSocket(String, WebSocketHandler)}.
+     * </p>
+     * <p>
+     *     For code which must see every request, including those, see
+     *     {@link #registerPreHandler(ThrowingFunction)}.
+     * </p>
+     */
+    public void registerMiddleware(Middleware middleware) {
+        addMiddleware(new ScopedMiddleware(null, "", false, middleware));
+    }
+
+    /**
+     * Register a {@link Middleware} to run around the endpoints whose
+     * path starts with the given text, for example "admin/".  See {@link #registerMiddleware(Middleware)}
+     */
+    public void registerMiddleware(String pathPrefix, Middleware middleware) {
+        addMiddleware(new ScopedMiddleware(null, pathPrefix, false, middleware));
+    }
+
+    /**
+     * Register a {@link Middleware} to run around a single endpoint,
+     * by its method and path.  See {@link #registerMiddleware(Middleware)}
+     */
+    public void registerMiddleware(RequestLine.Method method, String pathName, Middleware middleware) {
+        addMiddleware(new ScopedMiddleware(method, pathName, true, middleware));
+    }
+
+    private void addMiddleware(ScopedMiddleware scopedMiddleware) {
+        middlewares.add(scopedMiddleware);
+        // endpoints registered earlier are recomposed, so the order of registration does not matter
+        uncomposedDynamicPaths.forEach((key, handler) -> registeredDynamicPaths.put(key, composeMiddleware(key, handler)));
+        uncomposedPartialPaths.forEach((key, handler) -> registeredPartialPaths.put(key, composeMiddleware(key, handler)));
+        registeredWebSockets.keySet().forEach(path -> webSocketUpgradeChains.put(path, composeMiddleware(new MethodPath(RequestLine.Method.GET, path), ACCEPT_WEBSOCKET_UPGRADE)));
+    }
+
+    private void addEndpoint(Map<MethodPath, ThrowingFunction<IRequest, IResponse>> uncomposed,
+                             Map<MethodPath, ThrowingFunction<IRequest, IResponse>> composed,
+                             MethodPath key,
+                             ThrowingFunction<IRequest, IResponse> handler) {
+        uncomposed.put(key, handler);
+        composed.put(key, composeMiddleware(key, handler));
+    }
+
+    /**
+     * Wrap the applicable middleware around an endpoint, the first registered
+     * being outermost.  If none applies, the endpoint is returned unchanged.
+     */
+    private ThrowingFunction<IRequest, IResponse> composeMiddleware(MethodPath key, ThrowingFunction<IRequest, IResponse> handler) {
+        ThrowingFunction<IRequest, IResponse> result = handler;
+        for (int i = middlewares.size() - 1; i >= 0; i--) {
+            ScopedMiddleware scopedMiddleware = middlewares.get(i);
+            if (scopedMiddleware.appliesTo(key)) {
+                Middleware middleware = scopedMiddleware.middleware();
+                ThrowingFunction<IRequest, IResponse> next = result;
+                result = request -> middleware.apply(request, next);
+            }
+        }
+        return result;
     }
 
     /**
@@ -725,6 +1534,11 @@ public final class WebFramework {
      * choosing before the regular business code is run.  Note that by defining this value, the ordinary
      * call to endpoint.apply(request) will not be run.
      * </p>
+     * <p>
+     *     For logic which applies to particular endpoints, such as authentication
+     *     under a path, see {@link #registerMiddleware(String, Middleware)}, which
+     *     is composed once per endpoint rather than examining every request.
+     * </p>
      * <p>Here is an example</p>
      * <pre>{@code
      *
@@ -0,0 +1,305 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.utils.StacktraceUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.renomad.minum.web.WebSocketFrames.*;
+
+/**
+ * A WebSocket connection with a client.  See {@link WebSocketHandler}
+ * and {@link WebFramework#registerWebSocket(String, WebSocketHandler)}.
+ * <p>
+ *     Sends may be made from any thread.  A send blocks until the data has been
+ *     handed to the operating system, so a client which reads slowly will slow down
+ *     whoever is sending to it, rather than have data pile up in memory here.  Since
+ *     connections are served by virtual threads, blocking this way is inexpensive.
+ * </p>
+ * <p>
+ *     If the connection is idle for the socket timeout ({@link com.renomad.minum.state.Constants#socketTimeoutMillis}),
+ *     we send a ping.  If there is still nothing from the client after another timeout,
+ *     we consider it gone and close the connection.
+ * </p>
+ */
+public final class WebSocket {
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final ISocketWrapper sw;
+    private final IRequest request;
+    private final WebSocketHandler handler;
+    private final ILogger logger;
+    private final int maxMessageSizeBytes;
+
+    /**
+     * Only one frame may be written at a time.  This is a {@link ReentrantLock} rather
+     * than a synchronized block so that a virtual thread blocked while sending
+     * does not hold onto its carrier thread.
+     */
+    private final ReentrantLock sendLock;
+    private volatile boolean isCloseSent;
+    private volatile boolean isOpen;
+
+    WebSocket(ISocketWrapper sw, IRequest request, WebSocketHandler handler, ILogger logger, int maxMessageSizeBytes) {
+        this.sw = sw;
+        this.request = request;
+        this.handler = handler;
+        this.logger = logger;
+        this.maxMessageSizeBytes = maxMessageSizeBytes;
+        this.sendLock = new ReentrantLock();
+        this.isOpen = true;
+    }
+
+    /**
+     * Send a text message to the client
+     */
+    public void sendText(String message) throws IOException {
+        sendFrame(OPCODE_TEXT, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a binary message to the client
+     */
+    public void sendBinary(byte[] message) throws IOException {
+        sendFrame(OPCODE_BINARY, message);
+    }
+
+    /**
+     * Begin closing the connection.  Once the client acknowledges, or if it does not
+     * respond within the socket timeout, the connection ends and {@link WebSocketHandler#onClose(WebSocket, int, String)}
+     * is called.  Nothing may be sent after this.
+     * @param statusCode a close status code, for example 1000 for a normal closure
+     * @param reason a short explanation, at most 123 bytes when encoded as UTF-8
+     */
+    public void close(int statusCode, String reason) throws IOException {
+        byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+        if (reasonBytes.length > MAX_CONTROL_PAYLOAD_LENGTH - 2) {
+            throw new WebServerException("Error: the reason for closing a WebSocket must be 123 bytes or less");
+        }
+        byte[] payload = new byte[reasonBytes.length + 2];
+        payload[0] = (byte) (statusCode >>> 8);
+        payload[1] = (byte) statusCode;
+        System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+        sendLock.lock();
+        try {
+            if (isCloseSent) {
+                return;
+            }
+            writeFrame(OPCODE_CLOSE, payload);
+            isCloseSent = true;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * True until the connection has ended
+     */
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * The address of the client
+     */
+    public String getRemoteAddr() {
+        return sw.getRemoteAddr();
+    }
+
+    /**
+     * The original upgrade request, as seen by the pre-handler and middleware,
+     * for example to authenticate the client in {@link WebSocketHandler#onOpen(WebSocket)}
+     */
+    public IRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * The request line of the original upgrade request
+     */
+    public RequestLine getRequestLine() {
+        return request.getRequestLine();
+    }
+
+    /**
+     * The headers of the original upgrade request, for example to
+     * check cookies for authentication
+     */
+    public Headers getRequestHeaders() {
+        return request.getHeaders();
+    }
+
+    private void sendFrame(int opcode, byte[] payload) throws IOException {
+        sendLock.lock();
+        try {
+            if (isCloseSent) {
+                throw new IOException("Error: unable to send on a WebSocket which is closing or closed");
+            }
+            writeFrame(opcode, payload);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Must only be called while holding the send lock
+     */
+    private void writeFrame(int opcode, byte[] payload) throws IOException {
+        sw.send(buildFrameHeader(opcode, payload.length));
+        sw.send(payload);
+    }
+
+    /**
+     * Read frames from the client until the connection ends, handing complete
+     * messages to the handler.  This runs on the thread serving the connection.
+     */
+    void run() {
+        int closeCode = CLOSE_ABNORMAL;
+        String closeReason = "";
+        try {
+            handler.onOpen(this);
+            InputStream inputStream = sw.getInputStream();
+
+            // while receiving a fragmented message, this holds the pieces so far
+            ByteArrayOutputStream fragments = null;
+            int fragmentedOpcode = 0;
+            boolean isAwaitingPong = false;
+
+            while (true) {
+                int firstByte;
+                try {
+                    firstByte = inputStream.read();
+                } catch (SocketTimeoutException ex) {
+                    if (isAwaitingPong || isCloseSent) {
+                        logger.logDebug(() -> "WebSocket client at " + sw.getRemoteAddr() + " is unresponsive. Closing");
+                        break;
+                    }
+                    sendControlFrame(OPCODE_PING, EMPTY_BYTES);
+                    isAwaitingPong = true;
+                    continue;
+                }
+                if (firstByte == -1) {
+                    break;
+                }
+                isAwaitingPong = false;
+
+                long maxPayloadLength = maxMessageSizeBytes - (fragments == null ? 0 : fragments.size());
+                Frame frame = readFrame(inputStream, firstByte, maxPayloadLength);
+                switch (frame.opcode()) {
+                    case OPCODE_PING -> sendControlFrame(OPCODE_PONG, frame.payload());
+                    case OPCODE_PONG -> {
+                        // nothing to do - receiving any frame shows the client is alive
+                    }
+                    case OPCODE_CLOSE -> {
+                        byte[] payload = frame.payload();
+                        if (payload.length == 1) {
+                            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: a close frame must not have a payload of one byte");
+                        }
+                        closeCode = payload.length == 0 ? CLOSE_NO_STATUS : ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
+                        closeReason = payload.length <= 2 ? "" : decodeText(payload, 2, payload.length - 2);
+                        // acknowledge, if this was not already a reply to our own close
+                        close(closeCode == CLOSE_NO_STATUS ? CLOSE_NORMAL : closeCode, "");
+                        return;
+                    }
+                    case OPCODE_TEXT, OPCODE_BINARY -> {
+                        if (fragments != null) {
+                            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: expected a continuation frame");
+                        }
+                        if (frame.isFinal()) {
+                            deliver(frame.opcode(), frame.payload());
+                        } else {
+                            fragments = new ByteArrayOutputStream();
+                            fragments.write(frame.payload());
+                            fragmentedOpcode = frame.opcode();
+                        }
+                    }
+                    case OPCODE_CONTINUATION -> {
+                        if (fragments == null) {
+                            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: received a continuation frame without a message to continue");
+                        }
+                        fragments.write(frame.payload());
+                        if (frame.isFinal()) {
+                            deliver(fragmentedOpcode, fragments.toByteArray());
+                            fragments = null;
+                        }
+                    }
+                    default -> throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: unknown opcode " + frame.opcode());
+                }
+            }
+        } catch (ProtocolException ex) {
+            logger.logDebug(() -> "WebSocket client at " + sw.getRemoteAddr() + " broke protocol: " + ex.getMessage());
+            closeCode = ex.getCloseCode();
+            closeReason = ex.getMessage();
+            closeQuietly(ex.getCloseCode());
+        } catch (IOException ex) {
+            logger.logDebug(() -> "WebSocket connection with " + sw.getRemoteAddr() + " ended: " + ex.getMessage());
+        } catch (Exception ex) {
+            logger.logAsyncError(() -> "Error in WebSocket handler " + handler + ": " + StacktraceUtils.stackTraceToString(ex));
+            closeCode = CLOSE_INTERNAL_ERROR;
+            closeQuietly(CLOSE_INTERNAL_ERROR);
+        } finally {
+            isOpen = false;
+            runOnClose(closeCode, closeReason);
+        }
+    }
+
+    private void deliver(int opcode, byte[] message) throws Exception {
+        if (opcode == OPCODE_TEXT) {
+            handler.onText(this, decodeText(message, 0, message.length));
+        } else {
+            handler.onBinary(this, message);
+        }
+    }
+
+    /**
+     * Text messages must be valid UTF-8, or the connection fails
+     */
+    private static String decodeText(byte[] data, int offset, int length) throws ProtocolException {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data, offset, length))
+                    .toString();
+        } catch (CharacterCodingException ex) {
+            throw new ProtocolException(CLOSE_INVALID_DATA, "Error: a text message was not valid UTF-8");
+        }
+    }
+
+    /**
+     * Pings and pongs may be sent even while a close is underway
+     */
+    private void sendControlFrame(int opcode, byte[] payload) throws IOException {
+        sendLock.lock();
+        try {
+            writeFrame(opcode, payload);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private void closeQuietly(int statusCode) {
+        try {
+            close(statusCode, "");
+        } catch (IOException ex) {
+            logger.logDebug(() -> "Unable to send close frame to " + sw.getRemoteAddr() + ": " + ex.getMessage());
+        }
+    }
+
+    private void runOnClose(int statusCode, String reason) {
+        try {
+            handler.onClose(this, statusCode, reason);
+        } catch (Exception ex) {
+            logger.logAsyncError(() -> "Error in WebSocket handler " + handler + " while closing: " + StacktraceUtils.stackTraceToString(ex));
+        }
+    }
+}
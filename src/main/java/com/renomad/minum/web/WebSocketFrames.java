@@ -0,0 +1,167 @@
+package com.renomad.minum.web;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reading and writing the frames of the WebSocket protocol.
+ * See <a href="https://www.rfc-editor.org/rfc/rfc6455#section-5.2">RFC 6455, Base Framing Protocol</a>
+ * <pre>
+ * {@code
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-------+-+-------------+-------------------------------+
+ * |F|R|R|R| opcode|M| Payload len |    Extended payload length    |
+ * |I|S|S|S|  (4)  |A|     (7)     |             (16/64)           |
+ * |N|V|V|V|       |S|             |   (if payload len==126/127)   |
+ * | |1|2|3|       |K|             |                               |
+ * +-+-+-+-+-------+-+-------------+ - - - - - - - - - - - - - - - +
+ * |     Extended payload length continued, if payload len == 127  |
+ * + - - - - - - - - - - - - - - - +-------------------------------+
+ * |                               |Masking-key, if MASK set to 1  |
+ * +-------------------------------+-------------------------------+
+ * | Masking-key (continued)       |          Payload Data         |
+ * +-------------------------------- - - - - - - - - - - - - - - - +
+ * }
+ * </pre>
+ */
+final class WebSocketFrames {
+
+    private WebSocketFrames() {
+        // cannot construct
+    }
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    /**
+     * Control frames (close, ping, pong) may not carry more than this many bytes
+     */
+    static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+
+    static final int CLOSE_NORMAL = 1000;
+    static final int CLOSE_PROTOCOL_ERROR = 1002;
+    static final int CLOSE_NO_STATUS = 1005;
+    static final int CLOSE_ABNORMAL = 1006;
+    static final int CLOSE_INVALID_DATA = 1007;
+    static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+    static final int CLOSE_INTERNAL_ERROR = 1011;
+
+    /**
+     * A single frame received from a client, with its payload already unmasked
+     * @param isFinal true if this is the last frame of a message
+     */
+    record Frame(boolean isFinal, int opcode, byte[] payload) { }
+
+    /**
+     * Thrown when a client breaks the rules of the protocol.  The
+     * connection is closed with the status code carried here.
+     */
+    static final class ProtocolException extends IOException {
+
+        private static final long serialVersionUID = 4316592380741853390L;
+
+        private final int closeCode;
+
+        ProtocolException(int closeCode, String message) {
+            super(message);
+            this.closeCode = closeCode;
+        }
+
+        int getCloseCode() {
+            return closeCode;
+        }
+    }
+
+    static boolean isControlFrame(int opcode) {
+        return (opcode & 0x8) != 0;
+    }
+
+    /**
+     * Read the remainder of a frame sent by a client.
+     * @param firstByte the first byte of the frame, already read from the stream, holding the final-fragment flag and opcode
+     * @param maxPayloadLength the most bytes we will accept in this frame's payload
+     */
+    static Frame readFrame(InputStream inputStream, int firstByte, long maxPayloadLength) throws IOException {
+        boolean isFinal = (firstByte & 0x80) != 0;
+        if ((firstByte & 0x70) != 0) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: reserved bits were set, but no extension was negotiated");
+        }
+        int opcode = firstByte & 0x0F;
+
+        int secondByte = readByte(inputStream);
+        if ((secondByte & 0x80) == 0) {
+            throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: frames sent by a client must be masked");
+        }
+        long payloadLength = secondByte & 0x7F;
+        if (payloadLength == 126) {
+            payloadLength = ((long) readByte(inputStream) << 8) | readByte(inputStream);
+        } else if (payloadLength == 127) {
+            payloadLength = 0;
+            for (int i = 0; i < 8; i++) {
+                payloadLength = (payloadLength << 8) | readByte(inputStream);
+            }
+            if (payloadLength < 0) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: the payload length must not have its most significant bit set");
+            }
+        }
+
+        if (isControlFrame(opcode)) {
+            if (!isFinal) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: control frames must not be fragmented");
+            }
+            if (payloadLength > MAX_CONTROL_PAYLOAD_LENGTH) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Error: control frames must have a payload of 125 bytes or less");
+            }
+        } else if (payloadLength > maxPayloadLength) {
+            throw new ProtocolException(CLOSE_MESSAGE_TOO_BIG, "Error: message exceeds the maximum size allowed");
+        }
+
+        byte[] mask = inputStream.readNBytes(4);
+        if (mask.length < 4) {
+            throw new EOFException("Error: the stream ended in the middle of a WebSocket frame");
+        }
+        byte[] payload = inputStream.readNBytes((int) payloadLength);
+        if (payload.length < payloadLength) {
+            throw new EOFException("Error: the stream ended in the middle of a WebSocket frame");
+        }
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i & 3];
+        }
+        return new Frame(isFinal, opcode, payload);
+    }
+
+    private static int readByte(InputStream inputStream) throws IOException {
+        int result = inputStream.read();
+        if (result == -1) {
+            throw new EOFException("Error: the stream ended in the middle of a WebSocket frame");
+        }
+        return result;
+    }
+
+    /**
+     * Build the header for a single, final, unmasked frame sent from the server.  The
+     * payload is sent separately, so it does not need to be copied in with the header.
+     */
+    static byte[] buildFrameHeader(int opcode, long payloadLength) {
+        byte firstByte = (byte) (0x80 | opcode);
+        if (payloadLength < 126) {
+            return new byte[]{firstByte, (byte) payloadLength};
+        } else if (payloadLength <= 0xFFFF) {
+            return new byte[]{firstByte, 126, (byte) (payloadLength >>> 8), (byte) payloadLength};
+        } else {
+            byte[] header = new byte[10];
+            header[0] = firstByte;
+            header[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                header[9 - i] = (byte) (payloadLength >>> (8 * i));
+            }
+            return header;
+        }
+    }
+}
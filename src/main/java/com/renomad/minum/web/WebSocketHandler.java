@@ -0,0 +1,55 @@
+package com.renomad.minum.web;
+
+/**
+ * The code run for events on a {@link WebSocket} connection.  Register
+ * this with {@link WebFramework#registerWebSocket(String, WebSocketHandler)}.
+ * <p>
+ *     Messages from a connection are delivered one at a time, in order, on the
+ *     virtual thread serving that connection.  Replying from within these methods
+ *     is fine, as is sending from other threads.
+ * </p>
+ * <p>
+ *     If any of these methods throws an exception, it is logged and the
+ *     connection is closed with a status of 1011 (internal error).
+ * </p>
+ * <pre>
+ * {@code
+ * webFramework.registerWebSocket("chat", new WebSocketHandler() {
+ *     public void onText(WebSocket webSocket, String message) throws Exception {
+ *         webSocket.sendText("you said: " + message);
+ *     }
+ * });
+ * }
+ * </pre>
+ */
+public interface WebSocketHandler {
+
+    /**
+     * Run once the connection is established, before any messages
+     * arrive.  The upgrade request is available through {@link WebSocket#getRequest()},
+     * for example to check authentication and close the connection if needed.
+     * <p>
+     *     Before this, the upgrade request has already run through the pre-handler and
+     *     any middleware applying to its path, which may have refused it.  See
+     *     {@link WebFramework#registerWebSocket(String, WebSocketHandler)}
+     * </p>
+     */
+    default void onOpen(WebSocket webSocket) throws Exception {}
+
+    /**
+     * Run for each complete text message received
+     */
+    default void onText(WebSocket webSocket, String message) throws Exception {}
+
+    /**
+     * Run for each complete binary message received
+     */
+    default void onBinary(WebSocket webSocket, byte[] message) throws Exception {}
+
+    /**
+     * Run once, when the connection has closed, whichever side closed it.
+     * @param statusCode the close status code, such as 1000 for a normal closure,
+     *                   or 1006 if the connection ended without a close frame.
+     */
+    default void onClose(WebSocket webSocket, int statusCode, String reason) throws Exception {}
+}
@@ -0,0 +1,50 @@
+package com.renomad.minum.web;
+
+/**
+ * The kinds of work the server does, each kept within its own {@link Bulkhead},
+ * so a flood of one kind cannot starve the others.  An endpoint declares its kind
+ * with {@link RouteOptions#withWorkClass(WorkClass)}.
+ * <p>
+ *     The limits given here are the defaults, and may be changed
+ *     with {@link com.renomad.minum.state.Constants#bulkheadLimits}
+ * </p>
+ */
+public enum WorkClass {
+
+    /**
+     * Static files, read from disk or memory.  Quick, and plentiful.
+     */
+    STATIC(500, 5000),
+
+    /**
+     * Authentication, such as logging in.  Password hashing is deliberately
+     * slow and uses a lot of processor time, so few run at once.
+     */
+    AUTH(20, 200),
+
+    /**
+     * Receiving uploaded files, which tie up the disk and network for a long time
+     */
+    UPLOADS(10, 50),
+
+    /**
+     * Everything else
+     */
+    DEFAULT(1000, 10000);
+
+    /**
+     * By default, how many requests of this kind may run at once
+     */
+    public final int defaultConcurrencyLimit;
+
+    /**
+     * By default, how many requests of this kind may wait
+     * for their turn when the limit is reached
+     */
+    public final int defaultQueueSize;
+
+    WorkClass(int defaultConcurrencyLimit, int defaultQueueSize) {
+        this.defaultConcurrencyLimit = defaultConcurrencyLimit;
+        this.defaultQueueSize = defaultQueueSize;
+    }
+}
@@ -0,0 +1,318 @@
+package com.renomad.minum.perf;
+
+import com.renomad.minum.database.Db;
+import com.renomad.minum.logging.Logger;
+import com.renomad.minum.sampledomain.PersonName;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.LoadGenerator;
+import com.renomad.minum.testing.LoadRequest;
+import com.renomad.minum.testing.LoadResult;
+import com.renomad.minum.utils.FileUtils;
+import com.renomad.minum.utils.MyThread;
+import com.renomad.minum.web.FullSystem;
+import com.renomad.minum.web.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+/**
+ * Measures the performance of a whole running system, and compares it to a
+ * stored baseline.  This is run separately from the unit tests, with
+ * {@code make perf} or {@code mvn -P performance test}.
+ * <p>
+ *     It starts a {@link FullSystem}, timing the startup, and then puts each
+ *     scenario - static files, a dynamic endpoint, uploads, and database writes -
+ *     under load with the {@link LoadGenerator}, measuring throughput, latency
+ *     percentiles and memory allocated per request.  Lastly it measures the heap
+ *     in use once the load has finished.
+ * </p>
+ * <p>
+ *     The results are written to {@code docs/perf_data}, as JSON and as a markdown
+ *     report.  If there is a baseline there, {@code performance_baseline.json}, the
+ *     run fails when throughput falls, or allocation rises, by more than the tolerance.
+ *     To accept the current results as the new baseline, set {@code perf.updateBaseline}.
+ * </p>
+ * <p>
+ *     These system properties adjust the run:
+ * </p>
+ * <ul>
+ *     <li>perf.seconds - how long to measure each scenario. Default 10</li>
+ *     <li>perf.concurrency - how many requests at once. Default 20</li>
+ *     <li>perf.tolerance - the fraction by which results may be worse than the baseline. Default 0.15</li>
+ *     <li>perf.updateBaseline - if true, save these results as the baseline. Default false</li>
+ *     <li>perf.outputDirectory - where to write results. Default docs/perf_data</li>
+ * </ul>
+ */
+public final class PerformanceSuite {
+
+    private static final String RESULTS_FILE = "performance_results.json";
+    private static final String REPORT_FILE = "performance_report.md";
+    private static final String BASELINE_FILE = "performance_baseline.json";
+    private static final String MULTIPART_BOUNDARY = "minum_perf_boundary";
+
+    private final Duration duration;
+    private final int concurrency;
+    private final double tolerance;
+    private final boolean isUpdatingBaseline;
+    private final Path outputDirectory;
+
+    PerformanceSuite(Duration duration, int concurrency, double tolerance, boolean isUpdatingBaseline, Path outputDirectory) {
+        this.duration = duration;
+        this.concurrency = concurrency;
+        this.tolerance = tolerance;
+        this.isUpdatingBaseline = isUpdatingBaseline;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var suite = new PerformanceSuite(
+                Duration.ofSeconds(Long.parseLong(System.getProperty("perf.seconds", "10"))),
+                Integer.parseInt(System.getProperty("perf.concurrency", "20")),
+                Double.parseDouble(System.getProperty("perf.tolerance", "0.15")),
+                Boolean.parseBoolean(System.getProperty("perf.updateBaseline", "false")),
+                Path.of(System.getProperty("perf.outputDirectory", "docs/perf_data")));
+        List<String> regressions = suite.run();
+        if (!regressions.isEmpty()) {
+            System.out.println("Performance regressed beyond the tolerance of " + suite.tolerance + ":");
+            regressions.forEach(x -> System.out.println("  " + x));
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Run every scenario, write the results, and compare with the baseline
+     * @return a description of each regression, or an empty list if there were none
+     */
+    List<String> run() throws Exception {
+        Context context = buildContext();
+        new FileUtils(context.getLogger(), context.getConstants()).deleteDirectoryRecursivelyIfExists(Path.of(context.getConstants().dbDirectory));
+
+        long startupStart = System.nanoTime();
+        FullSystem fullSystem = new FullSystem(context).start();
+        long startupMillis = Duration.ofNanos(System.nanoTime() - startupStart).toMillis();
+
+        var results = new ArrayList<ScenarioResult>();
+        long steadyStateHeapBytes;
+        long dbDrainMillis;
+        long dbPersistenceLagP99Millis;
+        try {
+            Db<PersonName> personDb = new Db<>(Path.of(context.getConstants().dbDirectory, "perf_persons"), context, PersonName.EMPTY);
+            registerEndpoints(fullSystem, personDb);
+
+            results.add(runScenario(fullSystem, "static_file", List.of(LoadRequest.get("main.css"))));
+            results.add(runScenario(fullSystem, "dynamic_endpoint", List.of(LoadRequest.get("perf/hello?name=alice"))));
+            results.add(runScenario(fullSystem, "upload", List.of(buildUploadRequest(64 * 1024))));
+            results.add(runScenario(fullSystem, "db_write", List.of(LoadRequest.post("perf/person", "application/x-www-form-urlencoded", "name=alice+smith"))));
+
+            // the db_write responses only wait for the change in memory, the files
+            // are written afterwards, so also report how far behind the disk fell.
+            long drainStart = System.nanoTime();
+            personDb.awaitPersisted();
+            dbDrainMillis = Duration.ofNanos(System.nanoTime() - drainStart).toMillis();
+            dbPersistenceLagP99Millis = Duration.ofNanos(context.getMetrics()
+                    .histogram("minum_db_persistence_lag", "db", "perf_persons").percentile(99)).toMillis();
+
+            steadyStateHeapBytes = measureHeapAfterGc();
+            personDb.stop();
+        } finally {
+            fullSystem.shutdown();
+            context.getExecutorService().shutdownNow();
+        }
+
+        String resultsJson = toJson(startupMillis, steadyStateHeapBytes, dbDrainMillis, dbPersistenceLagP99Millis, results);
+        Files.createDirectories(outputDirectory);
+        Files.writeString(outputDirectory.resolve(RESULTS_FILE), resultsJson);
+        Files.writeString(outputDirectory.resolve(REPORT_FILE), toMarkdown(startupMillis, steadyStateHeapBytes, dbDrainMillis, dbPersistenceLagP99Millis, results));
+        System.out.println(resultsJson);
+
+        Path baselinePath = outputDirectory.resolve(BASELINE_FILE);
+        List<String> regressions = List.of();
+        if (Files.exists(baselinePath)) {
+            regressions = compareToBaseline(ScenarioResult.parseAll(Files.readString(baselinePath)), results, tolerance);
+        }
+        if (isUpdatingBaseline) {
+            Files.writeString(baselinePath, resultsJson);
+            System.out.println("Saved these results as the baseline, at " + baselinePath);
+            return List.of();
+        }
+        return regressions;
+    }
+
+    /**
+     * A context much like the ordinary one, but on its own ports and database
+     * directory, and logging only errors, so the logging is not what gets measured
+     */
+    private static Context buildContext() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("SERVER_PORT", "7990");
+        properties.setProperty("SSL_SERVER_PORT", "7991");
+        properties.setProperty("DB_DIRECTORY", "target/perf_db");
+        properties.setProperty("LOG_LEVELS", "ASYNC_ERROR");
+        var constants = new Constants(properties);
+        var executorService = Executors.newVirtualThreadPerTaskExecutor();
+        var context = new Context(executorService, constants);
+        context.setLogger(new Logger(constants, executorService, "performance"));
+        return context;
+    }
+
+    private static void registerEndpoints(FullSystem fullSystem, Db<PersonName> personDb) {
+        var webFramework = fullSystem.getWebFramework();
+        webFramework.registerPath(GET, "perf/hello", request ->
+                Response.htmlOk("<p>hello, " + request.getRequestLine().queryString().get("name") + "</p>"));
+        webFramework.registerPath(POST, "perf/upload", request ->
+                Response.htmlOk("received " + request.getBody().getPartitionByName("file").getFirst().getContent().length + " bytes"));
+        webFramework.registerPath(POST, "perf/person", request -> {
+            PersonName person = personDb.write(new PersonName(0L, request.getBody().asString("name")));
+            return Response.htmlOk("saved " + person.getIndex());
+        });
+    }
+
+    private static LoadRequest buildUploadRequest(int size) {
+        var body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + MULTIPART_BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        body.writeBytes(data);
+        body.writeBytes(("\r\n--" + MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return new LoadRequest("POST", "perf/upload",
+                Map.of("Content-Type", "multipart/form-data; boundary=" + MULTIPART_BOUNDARY),
+                body.toByteArray(), 1);
+    }
+
+    /**
+     * Warm up, so the code is compiled and caches are filled, then measure
+     */
+    private ScenarioResult runScenario(FullSystem fullSystem, String name, List<LoadRequest> requests) throws InterruptedException {
+        System.out.println("Running scenario: " + name);
+        LoadGenerator generator = LoadGenerator.forFullSystem(fullSystem, requests).withConcurrency(concurrency);
+        generator.withDuration(duration.dividedBy(3).plusSeconds(1)).run();
+
+        long allocatedBefore = totalAllocatedBytes();
+        LoadResult loadResult = generator.withDuration(duration).run();
+        long allocated = totalAllocatedBytes() - allocatedBefore;
+        System.out.println("  " + loadResult);
+        return ScenarioResult.from(name, loadResult, allocated);
+    }
+
+    /**
+     * The memory allocated so far by the whole program.  Virtual threads
+     * allocate on their carrier threads, so this includes them.
+     */
+    private static long totalAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean) {
+            return Math.max(0, threadMXBean.getTotalThreadAllocatedBytes());
+        }
+        return 0;
+    }
+
+    private static long measureHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            MyThread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Compare each scenario to the one of the same name in the baseline.  Fewer
+     * requests per second, or more bytes allocated per request, beyond the
+     * tolerance counts as a regression, as do any errors.
+     */
+    static List<String> compareToBaseline(List<ScenarioResult> baseline, List<ScenarioResult> current, double tolerance) {
+        var regressions = new ArrayList<String>();
+        for (ScenarioResult result : current) {
+            if (result.errors() > 0) {
+                regressions.add(String.format(Locale.ROOT, "%s: %d requests failed", result.name(), result.errors()));
+            }
+            for (ScenarioResult previous : baseline) {
+                if (!previous.name().equals(result.name())) continue;
+                if (result.throughput() < previous.throughput() * (1 - tolerance)) {
+                    regressions.add(String.format(Locale.ROOT, "%s: throughput fell from %.1f to %.1f requests per second",
+                            result.name(), previous.throughput(), result.throughput()));
+                }
+                if (previous.allocatedBytesPerRequest() > 0 &&
+                        result.allocatedBytesPerRequest() > previous.allocatedBytesPerRequest() * (1 + tolerance)) {
+                    regressions.add(String.format(Locale.ROOT, "%s: allocation rose from %d to %d bytes per request",
+                            result.name(), previous.allocatedBytesPerRequest(), result.allocatedBytesPerRequest()));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private String toJson(long startupMillis, long steadyStateHeapBytes, long dbDrainMillis, long dbPersistenceLagP99Millis, List<ScenarioResult> results) {
+        var sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        sb.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+        sb.append("  \"os\": \"").append(System.getProperty("os.name")).append(' ').append(System.getProperty("os.arch")).append("\",\n");
+        sb.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        sb.append("  \"concurrency\": ").append(concurrency).append(",\n");
+        sb.append("  \"secondsPerScenario\": ").append(duration.toSeconds()).append(",\n");
+        sb.append("  \"startupMillis\": ").append(startupMillis).append(",\n");
+        sb.append("  \"steadyStateHeapBytes\": ").append(steadyStateHeapBytes).append(",\n");
+        sb.append("  \"dbDrainMillis\": ").append(dbDrainMillis).append(",\n");
+        sb.append("  \"dbPersistenceLagP99Millis\": ").append(dbPersistenceLagP99Millis).append(",\n");
+        sb.append("  \"scenarios\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            sb.append("    ").append(results.get(i).toJson()).append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        sb.append("  ]\n}\n");
+        return sb.toString();
+    }
+
+    private String toMarkdown(long startupMillis, long steadyStateHeapBytes, long dbDrainMillis, long dbPersistenceLagP99Millis, List<ScenarioResult> results) {
+        var sb = new StringBuilder();
+        sb.append("Performance Report\n==================\n\n");
+        sb.append("Generated by `make perf` at ").append(Instant.now()).append(".\n\n");
+        sb.append("* Java: ").append(System.getProperty("java.version")).append('\n');
+        sb.append("* Operating System: ").append(System.getProperty("os.name")).append(' ').append(System.getProperty("os.arch")).append('\n');
+        sb.append("* Processors: ").append(Runtime.getRuntime().availableProcessors()).append('\n');
+        sb.append("* Maximum heap: ").append(Runtime.getRuntime().maxMemory() / (1024 * 1024)).append(" MB\n");
+        sb.append("* Concurrent requests: ").append(concurrency).append('\n');
+        sb.append("* Measured for: ").append(duration.toSeconds()).append(" seconds per scenario\n\n");
+        sb.append("Startup took ").append(startupMillis).append(" milliseconds.  ");
+        sb.append("Once the load finished, the heap in use was ").append(steadyStateHeapBytes / (1024 * 1024)).append(" MB.\n\n");
+        sb.append("The db_write responses return before the data is on disk.  After that scenario, the ")
+                .append("database took ").append(dbDrainMillis).append(" milliseconds more to write everything, ")
+                .append("and 99% of writes reached disk within ").append(dbPersistenceLagP99Millis).append(" milliseconds.\n\n");
+        sb.append("| scenario | requests | errors | requests/sec | p50 (ms) | p90 (ms) | p99 (ms) | max (ms) | bytes allocated/request |\n");
+        sb.append("|---|---|---|---|---|---|---|---|---|\n");
+        for (ScenarioResult result : results) {
+            sb.append(result.toMarkdownRow()).append('\n');
+        }
+        sb.append("\nThe server and the load generator run in the same program, on the loopback ")
+                .append("network, so the allocation includes the load generator's share.\n");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "PerformanceSuite{" +
+                "duration=" + duration +
+                ", concurrency=" + concurrency +
+                ", tolerance=" + tolerance +
+                ", outputDirectory=" + outputDirectory +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.renomad.minum.perf;
+
+import com.renomad.minum.testing.LoadResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The measurements of one scenario of the {@link PerformanceSuite}
+ * @param name a short name, such as "static_file"
+ * @param allocatedBytesPerRequest the memory allocated in the whole program for each
+ *                                 request, which includes the load generator's own share
+ */
+record ScenarioResult(String name,
+                      long requests,
+                      long errors,
+                      double throughput,
+                      double p50Millis,
+                      double p90Millis,
+                      double p99Millis,
+                      double maxMillis,
+                      long allocatedBytesPerRequest) {
+
+    /**
+     * One scenario per line, so that {@link #parseAll(String)} can find them again
+     */
+    private static final Pattern JSON_PATTERN = Pattern.compile(
+            "\\{\"name\": \"([^\"]+)\", \"requests\": (\\d+), \"errors\": (\\d+), \"throughput\": ([0-9.]+), " +
+            "\"p50Millis\": ([0-9.]+), \"p90Millis\": ([0-9.]+), \"p99Millis\": ([0-9.]+), \"maxMillis\": ([0-9.]+), " +
+            "\"allocatedBytesPerRequest\": (\\d+)}");
+
+    static ScenarioResult from(String name, LoadResult loadResult, long allocatedBytes) {
+        var latencies = loadResult.latencies();
+        return new ScenarioResult(
+                name,
+                loadResult.requestCount(),
+                loadResult.errorCount(),
+                loadResult.throughput(),
+                latencies.percentile(50) / 1e6,
+                latencies.percentile(90) / 1e6,
+                latencies.percentile(99) / 1e6,
+                latencies.getMax() / 1e6,
+                loadResult.requestCount() == 0 ? 0 : allocatedBytes / loadResult.requestCount());
+    }
+
+    String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"name\": \"%s\", \"requests\": %d, \"errors\": %d, \"throughput\": %.1f, " +
+                "\"p50Millis\": %.3f, \"p90Millis\": %.3f, \"p99Millis\": %.3f, \"maxMillis\": %.3f, " +
+                "\"allocatedBytesPerRequest\": %d}",
+                name, requests, errors, throughput, p50Millis, p90Millis, p99Millis, maxMillis, allocatedBytesPerRequest);
+    }
+
+    String toMarkdownRow() {
+        return String.format(Locale.ROOT, "| %s | %d | %d | %.1f | %.3f | %.3f | %.3f | %.3f | %d |",
+                name, requests, errors, throughput, p50Millis, p90Millis, p99Millis, maxMillis, allocatedBytesPerRequest);
+    }
+
+    /**
+     * Read back the scenarios from results written by the {@link PerformanceSuite}
+     */
+    static List<ScenarioResult> parseAll(String json) {
+        var results = new ArrayList<ScenarioResult>();
+        Matcher matcher = JSON_PATTERN.matcher(json);
+        while (matcher.find()) {
+            results.add(new ScenarioResult(
+                    matcher.group(1),
+                    Long.parseLong(matcher.group(2)),
+                    Long.parseLong(matcher.group(3)),
+                    Double.parseDouble(matcher.group(4)),
+                    Double.parseDouble(matcher.group(5)),
+                    Double.parseDouble(matcher.group(6)),
+                    Double.parseDouble(matcher.group(7)),
+                    Double.parseDouble(matcher.group(8)),
+                    Long.parseLong(matcher.group(9))));
+        }
+        return results;
+    }
+}
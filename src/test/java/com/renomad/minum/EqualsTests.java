@@ -13,6 +13,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -38,8 +39,11 @@ public class EqualsTests {
         EqualsVerifier.forClass(Constants.class).verify();
 
         EqualsVerifier.forClass(Response.class)
-                .withIgnoredFields("outputGenerator")
-                .verify();
+                .withIgnoredFields("outputGenerator", "compressedVariant")
+                .withPrefabValues(Response.class,
+                        (Response) Response.htmlOk("a"),
+                        (Response) Response.htmlOk("b")
+                ).verify();
 
         EqualsVerifier.forClass(Body.class)
                 .withPrefabValues(Headers.class,
@@ -76,12 +80,18 @@ public class EqualsTests {
 
         EqualsVerifier.forClass(ContentDisposition.class).verify();
 
-        EqualsVerifier.forClass(Partition.class).verify();
+        EqualsVerifier.forClass(Partition.class)
+                .withPrefabValues(Path.class, Path.of("a"), Path.of("b"))
+                .verify();
 
         EqualsVerifier.forClass(UrlEncodedKeyValue.class).verify();
 
         EqualsVerifier.forClass(Headers.class).verify();
 
+        EqualsVerifier.forClass(RouteOptions.class).verify();
+
+        EqualsVerifier.forClass(CachePolicy.class).verify();
+
 
     }
 
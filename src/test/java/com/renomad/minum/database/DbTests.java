@@ -93,7 +93,7 @@ public class DbTests {
      * Wide-ranging capabilities of the database
      */
     @Test
-    public void test_GeneralCapability() {
+    public void test_GeneralCapability() throws InterruptedException {
         fileUtils.deleteDirectoryRecursivelyIfExists(foosDirectory);
         MyThread.sleep(FINISH_TIME);
 
@@ -111,7 +111,7 @@ public class DbTests {
                 db.write(foo);
             }
 
-            MyThread.sleep(100);
+            db.awaitPersisted();
 
             // check that the files are now there.
             for (var foo : foos) {
@@ -145,8 +145,8 @@ public class DbTests {
             }
 
             // check that the files are all gone
-            MyThread.sleep(100);
-            
+            db.awaitPersisted();
+
             for (var foo : foos) {
                 assertFalse(Files.exists(foosDirectory.resolve(foo.getIndex() + Db.DATABASE_FILE_SUFFIX)));
             }
@@ -696,6 +696,25 @@ public class DbTests {
         assertTrue(logger.doesMessageExist("Stopping queue DatabaseWriter", 8));
     }
 
+    /**
+     * Once awaitPersisted returns, every write made before it is on disk,
+     * with no need to sleep and hope.
+     */
+    @Test
+    public void testAwaitPersisted() throws InterruptedException {
+        fileUtils.deleteDirectoryRecursivelyIfExists(foosDirectory);
+        var db = new Db<>(foosDirectory, context, INSTANCE);
+        Foo foo1 = db.write(new Foo(0, 2, "a"));
+        Foo foo2 = db.write(new Foo(0, 3, "b"));
+
+        db.awaitPersisted();
+
+        assertEquals(fileUtils.readTextFile(foosDirectory.resolve("1.ddps").toString()), foo1.serialize());
+        assertEquals(fileUtils.readTextFile(foosDirectory.resolve("2.ddps").toString()), foo2.serialize());
+        assertEquals(fileUtils.readTextFile(foosDirectory.resolve("index.ddps").toString()), "3");
+        db.stop();
+    }
+
     static class Foo extends DbData<Foo> implements Comparable<Foo> {
 
         private long index;
@@ -0,0 +1,243 @@
+package com.renomad.minum.logging;
+
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.MyThread;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class BatchingLogWriterTests {
+
+    private Context context;
+
+    @Before
+    public void init() {
+        context = buildTestingContext("BatchingLogWriter tests");
+    }
+
+    @After
+    public void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Messages are written as tab-separated lines, in order, and
+     * several messages may go out in a single write.
+     */
+    @Test
+    public void test_WritesInBatches() {
+        var output = new ByteArrayOutputStream();
+        var writes = new ArrayList<Integer>();
+        var writer = new BatchingLogWriter("test writer", 16, LogOverflowPolicy.BLOCK, LogFormat.TEXT, (bytes, length) -> {
+            writes.add(length);
+            output.write(bytes, 0, length);
+        });
+        for (int i = 0; i < 10; i++) {
+            writer.write(LoggingLevel.DEBUG, "message " + i, null);
+        }
+        writer.write(null, "raw text\n", null);
+
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(lines.length, 11);
+        assertTrue(lines[0].matches("\\d{4}-\\d{2}-\\d{2}T[\\d:.]+Z\tDEBUG\tmessage 0"), lines[0]);
+        assertTrue(lines[9].endsWith("\tDEBUG\tmessage 9"));
+        assertEquals(lines[10], "raw text");
+        assertEquals(writes.size(), 1);
+    }
+
+    /**
+     * A message which cannot be encoded is replaced by a complaint,
+     * and the messages around it are still written.
+     */
+    @Test
+    public void test_EncodingFailure() {
+        var output = new ByteArrayOutputStream();
+        var writer = new BatchingLogWriter("test writer", 16, LogOverflowPolicy.BLOCK, LogFormat.TEXT, (bytes, length) -> output.write(bytes, 0, length));
+        writer.write(LoggingLevel.DEBUG, "before", null);
+        writer.write(null, null, null);
+        writer.write(LoggingLevel.DEBUG, "after", null);
+
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(lines.length, 3);
+        assertTrue(lines[0].endsWith("\tDEBUG\tbefore"));
+        assertTrue(lines[1].contains("\tASYNC_ERROR\tfailed to encode a log message at level null: java.lang.NullPointerException"), lines[1]);
+        assertTrue(lines[2].endsWith("\tDEBUG\tafter"));
+    }
+
+    /**
+     * While there is nothing to write, the appender is regularly given
+     * the chance to finish a sync it put off.
+     */
+    @Test
+    public void test_FlushPendingSyncWhenIdle() throws InterruptedException {
+        var flushed = new CountDownLatch(3);
+        var writer = new BatchingLogWriter("test writer", 16, LogOverflowPolicy.BLOCK, LogFormat.TEXT, new LogAppender() {
+            @Override
+            public void append(byte[] bytes, int length) {
+                // not needed for this test
+            }
+
+            @Override
+            public void flushPendingSync() {
+                flushed.countDown();
+            }
+        });
+
+        writer.initialize(context.getExecutorService());
+
+        assertTrue(flushed.await(1, TimeUnit.SECONDS));
+        writer.stop();
+    }
+
+    /**
+     * Whitespace in a message is shown, so each message stays on one line
+     */
+    @Test
+    public void test_ShowsWhitespace() {
+        var output = new ByteArrayOutputStream();
+        var writer = new BatchingLogWriter("test writer", 16, LogOverflowPolicy.BLOCK, LogFormat.TEXT, (bytes, length) -> output.write(bytes, 0, length));
+        writer.write(LoggingLevel.AUDIT, "a\tb\nc", null);
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+        assertTrue(output.toString(StandardCharsets.UTF_8).endsWith("\tAUDIT\ta\\tb\\nc\n"));
+    }
+
+    /**
+     * With the DROP policy, messages arriving to a full buffer are
+     * thrown away, counted, and the count is logged.
+     */
+    @Test
+    public void test_Drop() {
+        var output = new ByteArrayOutputStream();
+        var writer = new BatchingLogWriter("test writer", 4, LogOverflowPolicy.DROP, LogFormat.TEXT, (bytes, length) -> output.write(bytes, 0, length));
+        for (int i = 0; i < 6; i++) {
+            assertTrue(writer.write(LoggingLevel.DEBUG, "message " + i, null));
+        }
+        assertEquals(writer.getDroppedCount(), 2L);
+
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+
+        String result = output.toString(StandardCharsets.UTF_8);
+        assertTrue(result.contains("\tDEBUG\tmessage 3\n"));
+        assertFalse(result.contains("message 4"));
+        assertTrue(result.contains("\tASYNC_ERROR\t2 log messages were dropped because the log buffer was full. Overflow policy: DROP\n"));
+    }
+
+    /**
+     * With DROP_TRACE_FIRST, TRACE messages are thrown away once the
+     * buffer is three-quarters full, leaving room for the other levels.
+     */
+    @Test
+    public void test_DropTraceFirst() {
+        var output = new ByteArrayOutputStream();
+        var writer = new BatchingLogWriter("test writer", 8, LogOverflowPolicy.DROP_TRACE_FIRST, LogFormat.TEXT, (bytes, length) -> output.write(bytes, 0, length));
+        for (int i = 0; i < 6; i++) {
+            writer.write(LoggingLevel.TRACE, "trace " + i, null);
+        }
+        writer.write(LoggingLevel.AUDIT, "audit 1", null);
+        writer.write(LoggingLevel.AUDIT, "audit 2", null);
+        assertEquals(writer.getDroppedCount(), 0L);
+        writer.write(LoggingLevel.TRACE, "trace 6", null);
+        assertEquals(writer.getDroppedCount(), 1L);
+
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+
+        String result = output.toString(StandardCharsets.UTF_8);
+        assertTrue(result.contains("\tAUDIT\taudit 2\n"));
+        assertFalse(result.contains("trace 6"));
+    }
+
+    /**
+     * With BLOCK, a thread logging to a full buffer waits for room
+     */
+    @Test
+    public void test_Block() throws InterruptedException {
+        var output = new ByteArrayOutputStream();
+        var writer = new BatchingLogWriter("test writer", 2, LogOverflowPolicy.BLOCK, LogFormat.TEXT, (bytes, length) -> output.write(bytes, 0, length));
+        writer.write(LoggingLevel.DEBUG, "a", null);
+        writer.write(LoggingLevel.DEBUG, "b", null);
+        var finished = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> {
+            writer.write(LoggingLevel.DEBUG, "c", null);
+            finished.countDown();
+        });
+        MyThread.sleep(30);
+        assertEquals(finished.getCount(), 1L);
+
+        writer.initialize(context.getExecutorService());
+        finished.await();
+        writer.stop();
+
+        assertEquals(writer.getDroppedCount(), 0L);
+        assertTrue(output.toString(StandardCharsets.UTF_8).endsWith("\tDEBUG\tc\n"));
+    }
+
+    /**
+     * Once stopped, the writer refuses messages, so the caller
+     * can write them some other way.
+     */
+    @Test
+    public void test_Stopped() {
+        var writer = new BatchingLogWriter("test writer", 8, LogOverflowPolicy.BLOCK, LogFormat.TEXT, (bytes, length) -> {});
+        writer.initialize(context.getExecutorService());
+        writer.stop();
+        assertTrue(writer.isStopped());
+        assertFalse(writer.write(LoggingLevel.DEBUG, "too late", null));
+    }
+
+    /**
+     * The logger sends its messages to the appender it is given
+     */
+    @Test
+    public void test_LoggerUsesAppender() {
+        var lines = new ArrayList<String>();
+        var logger = new Logger(context.getConstants(), Executors.newVirtualThreadPerTaskExecutor(), "appender test",
+                (bytes, length) -> lines.addAll(List.of(new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n"))));
+        logger.logAudit(() -> "hello appender");
+        logger.stop();
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.getFirst().endsWith("\tAUDIT\thello appender"));
+        assertEquals(logger.getDroppedMessageCount(), 0L);
+    }
+
+    /**
+     * Fields given with a message are written as their own keys in the
+     * structured formats, and kept in the test logger's recent lines.
+     */
+    @Test
+    public void test_LoggerFields() {
+        var lines = new ArrayList<String>();
+        var properties = new Properties();
+        properties.setProperty("LOG_FORMAT", "json");
+        var logger = new Logger(new Constants(properties), Executors.newVirtualThreadPerTaskExecutor(), "fields test",
+                (bytes, length) -> lines.addAll(List.of(new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n"))));
+        logger.log(LoggingLevel.AUDIT, () -> "user logged in", "user", "alice", "remote", "10.0.0.1");
+        logger.stop();
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.getFirst().endsWith("\"level\":\"AUDIT\",\"message\":\"user logged in\",\"user\":\"alice\",\"remote\":\"10.0.0.1\"}"));
+
+        var testLogger = (TestLogger) context.getLogger();
+        testLogger.log(LoggingLevel.DEBUG, () -> "request finished", "route", "login");
+        assertTrue(testLogger.doesMessageExist("request finished route=login"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.renomad.minum.logging;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class LogEncoderTests {
+
+    /**
+     * 2024-01-31T23:59:59.123Z
+     */
+    private static final long TIMESTAMP = 1706745599123L;
+
+    @Test
+    public void test_Text() {
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, "hello world"),
+                "2024-01-31T23:59:59.123Z\tDEBUG\thello world\n");
+    }
+
+    /**
+     * Whitespace is shown, so each message stays on one line, and
+     * empty and blank messages are made visible.
+     */
+    @Test
+    public void test_Text_Whitespace() {
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, "a\tb\r\nc"), "2024-01-31T23:59:59.123Z\tDEBUG\ta\\tb\\r\\nc\n");
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, ""), "2024-01-31T23:59:59.123Z\tDEBUG\t(EMPTY)\n");
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, "  "), "2024-01-31T23:59:59.123Z\tDEBUG\t(BLANK)\n");
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, null), "2024-01-31T23:59:59.123Z\tDEBUG\t(NULL)\n");
+    }
+
+    @Test
+    public void test_Text_Fields() {
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.AUDIT, "logged in", "user", "alice", "remote", "10.0.0.1"),
+                "2024-01-31T23:59:59.123Z\tAUDIT\tlogged in\tuser=alice remote=10.0.0.1\n");
+    }
+
+    @Test
+    public void test_Json() {
+        assertEquals(encode(LogFormat.JSON, LoggingLevel.AUDIT, "said \"hi\"\\\n\u0001", "route", "login"),
+                "{\"time\":\"2024-01-31T23:59:59.123Z\",\"level\":\"AUDIT\",\"message\":\"said \\\"hi\\\"\\\\\\n\\u0001\",\"route\":\"login\"}\n");
+        assertEquals(encode(LogFormat.JSON, LoggingLevel.DEBUG, null),
+                "{\"time\":\"2024-01-31T23:59:59.123Z\",\"level\":\"DEBUG\",\"message\":null}\n");
+    }
+
+    /**
+     * Values are quoted only when needed, and a key without a value is given an empty one
+     */
+    @Test
+    public void test_Logfmt() {
+        assertEquals(encode(LogFormat.LOGFMT, LoggingLevel.DEBUG, "hello world", "route", "login", "agent", "a b", "empty"),
+                "time=2024-01-31T23:59:59.123Z level=DEBUG msg=\"hello world\" route=login agent=\"a b\" empty=\"\"\n");
+    }
+
+    /**
+     * A null key is shown as "null" rather than failing
+     */
+    @Test
+    public void test_NullKey() {
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, "hi", null, "a"),
+                "2024-01-31T23:59:59.123Z\tDEBUG\thi\tnull=a\n");
+        assertEquals(encode(LogFormat.JSON, LoggingLevel.DEBUG, "hi", null, "a"),
+                "{\"time\":\"2024-01-31T23:59:59.123Z\",\"level\":\"DEBUG\",\"message\":\"hi\",\"null\":\"a\"}\n");
+        assertEquals(encode(LogFormat.LOGFMT, LoggingLevel.DEBUG, "hi", null, "a"),
+                "time=2024-01-31T23:59:59.123Z level=DEBUG msg=\"hi\" null=a\n");
+    }
+
+    /**
+     * Characters beyond ASCII are written as UTF-8, including those
+     * taking two chars in Java, and a lone half of such a pair is replaced.
+     */
+    @Test
+    public void test_Utf8() {
+        String message = "café € 😀 \ud83d";
+        assertEquals(encode(LogFormat.TEXT, LoggingLevel.DEBUG, message), "2024-01-31T23:59:59.123Z\tDEBUG\t" + message.replace("😀 \ud83d", "😀 ?") + "\n");
+    }
+
+    /**
+     * Raw text, from {@link TestLogger#test(String)}, is written as-is.
+     * Several messages go into one buffer, until it is reset.
+     */
+    @Test
+    public void test_RawAndReset() {
+        var encoder = new LogEncoder(LogFormat.JSON, 4);
+        encoder.encode(null, "+--+\n", null, TIMESTAMP);
+        encoder.encode(LoggingLevel.DEBUG, "a", null, TIMESTAMP);
+        encoder.encode(LoggingLevel.DEBUG, "b", null, TIMESTAMP + 1);
+        assertEquals(new String(encoder.buffer(), 0, encoder.length(), StandardCharsets.UTF_8),
+                "+--+\n" +
+                "{\"time\":\"2024-01-31T23:59:59.123Z\",\"level\":\"DEBUG\",\"message\":\"a\"}\n" +
+                "{\"time\":\"2024-01-31T23:59:59.124Z\",\"level\":\"DEBUG\",\"message\":\"b\"}\n");
+        encoder.reset();
+        assertEquals(encoder.length(), 0);
+    }
+
+    /**
+     * Milliseconds are always shown with three digits, even when zero
+     */
+    @Test
+    public void test_TimestampWholeSecond() {
+        var encoder = new LogEncoder(LogFormat.TEXT);
+        encoder.encode(LoggingLevel.DEBUG, "a", null, 1706745599000L);
+        assertTrue(new String(encoder.buffer(), 0, encoder.length(), StandardCharsets.UTF_8).startsWith("2024-01-31T23:59:59.000Z\t"));
+    }
+
+    private static String encode(LogFormat format, LoggingLevel level, String message, String... fields) {
+        var encoder = new LogEncoder(format);
+        encoder.encode(level, message, fields.length == 0 ? null : fields, TIMESTAMP);
+        return new String(encoder.buffer(), 0, encoder.length(), StandardCharsets.UTF_8);
+    }
+}
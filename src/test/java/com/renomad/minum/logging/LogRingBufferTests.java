@@ -0,0 +1,101 @@
+package com.renomad.minum.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class LogRingBufferTests {
+
+    /**
+     * Entries come out in the order they went in, and the buffer
+     * may be used around and around.
+     */
+    @Test
+    public void test_OrderAndWrapAround() {
+        var ringBuffer = new LogRingBuffer(4);
+        var results = new ArrayList<String>();
+        for (int lap = 0; lap < 3; lap++) {
+            assertTrue(ringBuffer.offer(LoggingLevel.DEBUG, "a" + lap, null, 1));
+            assertTrue(ringBuffer.offer(LoggingLevel.AUDIT, "b" + lap, null, 2));
+            assertTrue(ringBuffer.offer(LoggingLevel.TRACE, "c" + lap, null, 3));
+            assertEquals(ringBuffer.size(), 3);
+            ringBuffer.drain((level, message, fields, timestamp) -> results.add(level + " " + message + " " + timestamp), 10);
+        }
+        assertEquals(results, List.of(
+                "DEBUG a0 1", "AUDIT b0 2", "TRACE c0 3",
+                "DEBUG a1 1", "AUDIT b1 2", "TRACE c1 3",
+                "DEBUG a2 1", "AUDIT b2 2", "TRACE c2 3"));
+        assertEquals(ringBuffer.size(), 0);
+    }
+
+    /**
+     * A full buffer refuses new entries until the consumer makes room
+     */
+    @Test
+    public void test_Full() {
+        var ringBuffer = new LogRingBuffer(2);
+        assertTrue(ringBuffer.offer(LoggingLevel.DEBUG, "a", null, 0));
+        assertTrue(ringBuffer.offer(LoggingLevel.DEBUG, "b", null, 0));
+        assertFalse(ringBuffer.offer(LoggingLevel.DEBUG, "c", null, 0));
+
+        var results = new ArrayList<String>();
+        assertEquals(ringBuffer.drain((level, message, fields, timestamp) -> results.add(message), 1), 1);
+        assertTrue(ringBuffer.offer(LoggingLevel.DEBUG, "c", null, 0));
+        ringBuffer.drain((level, message, fields, timestamp) -> results.add(message), 10);
+        assertEquals(results, List.of("a", "b", "c"));
+    }
+
+    /**
+     * The capacity is rounded up to a power of two, and must be at least two
+     */
+    @Test
+    public void test_Capacity() {
+        assertEquals(new LogRingBuffer(5).capacity(), 8);
+        assertEquals(new LogRingBuffer(8).capacity(), 8);
+        assertThrows(IllegalArgumentException.class, "The log buffer must hold at least two entries. Requested: 1", () -> new LogRingBuffer(1));
+    }
+
+    /**
+     * Many threads adding at once lose nothing, and each thread's
+     * entries stay in the order that thread added them.
+     */
+    @Test
+    public void test_ManyProducers() throws Exception {
+        var ringBuffer = new LogRingBuffer(64);
+        int producers = 4;
+        int perProducer = 2_000;
+        var results = new ArrayList<String>();
+        try (var executor = Executors.newFixedThreadPool(producers)) {
+            for (int p = 0; p < producers; p++) {
+                String producer = String.valueOf(p);
+                executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!ringBuffer.offer(LoggingLevel.DEBUG, producer, null, i)) {
+                            // yield rather than spin, so the consumer gets to run even on one processor
+                            Thread.yield();
+                        }
+                    }
+                });
+            }
+            while (results.size() < producers * perProducer) {
+                if (ringBuffer.drain((level, message, fields, timestamp) -> results.add(message + ":" + timestamp), 100) == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        for (String result : results) {
+            String[] parts = result.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            long value = Long.parseLong(parts[1]);
+            assertEquals(value, lastSeen[producer] + 1);
+            lastSeen[producer] = value;
+        }
+    }
+}
@@ -6,8 +6,13 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
 
 import static com.renomad.minum.testing.TestFramework.*;
 
@@ -80,4 +85,58 @@ public class LoggerTests {
         assertEquals(Logger.showWhiteSpace(null), "(NULL)");
         assertEquals(Logger.showWhiteSpace("\t\r\n"), "\\t\\r\\n");
     }
+
+    /**
+     * The enabled levels may be changed while running, and the
+     * guards follow along.  A disabled level's message is never built.
+     */
+    @Test
+    public void testSetEnabledLevels() {
+        var lines = new ArrayList<String>();
+        var properties = new Properties();
+        properties.setProperty("LOG_LEVELS", "DEBUG,AUDIT");
+        var myLogger = new Logger(new Constants(properties), Executors.newVirtualThreadPerTaskExecutor(), "levels test",
+                (bytes, length) -> lines.addAll(List.of(new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n"))));
+        assertEquals(myLogger.getEnabledLevels(), Set.of(LoggingLevel.DEBUG, LoggingLevel.AUDIT));
+        assertTrue(myLogger.isDebugEnabled());
+        assertFalse(myLogger.isTraceEnabled());
+        myLogger.logTrace(() -> { throw new IllegalStateException("should not be built"); });
+
+        myLogger.setEnabledLevels(List.of(LoggingLevel.TRACE));
+        assertTrue(myLogger.isTraceEnabled());
+        assertFalse(myLogger.isDebugEnabled());
+        myLogger.logDebug(() -> "a debug message");
+        myLogger.logTrace(() -> "a trace message");
+        myLogger.stop();
+
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.getFirst().endsWith("\tTRACE\ta trace message"));
+    }
+
+    /**
+     * With a sample rate, only some of the TRACE messages are written,
+     * and other levels are unaffected.
+     */
+    @Test
+    public void testTraceSampling() {
+        var lines = new ArrayList<String>();
+        var properties = new Properties();
+        properties.setProperty("LOG_LEVELS", "TRACE,DEBUG");
+        properties.setProperty("TRACE_LOG_SAMPLE_RATE", "10");
+        properties.setProperty("LOG_OVERFLOW_POLICY", "BLOCK");
+        var myLogger = new Logger(new Constants(properties), Executors.newVirtualThreadPerTaskExecutor(), "sampling test",
+                (bytes, length) -> lines.addAll(List.of(new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n"))));
+        assertEquals(myLogger.getTraceSampleRate(), 10);
+        for (int i = 0; i < 1000; i++) {
+            myLogger.logTrace(() -> "a trace message");
+            myLogger.logDebug(() -> "a debug message");
+        }
+        myLogger.stop();
+
+        long traceCount = lines.stream().filter(x -> x.contains("\tTRACE\t")).count();
+        long debugCount = lines.stream().filter(x -> x.contains("\tDEBUG\t")).count();
+        assertEquals(debugCount, 1000L);
+        assertTrue(traceCount > 20 && traceCount < 300, "expected about 100 sampled trace messages, got " + traceCount);
+        assertThrows(IllegalArgumentException.class, () -> myLogger.setTraceSampleRate(0));
+    }
 }
@@ -0,0 +1,197 @@
+package com.renomad.minum.logging;
+
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.FileUtils;
+import com.renomad.minum.utils.MyThread;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class RollingFileAppenderTests {
+
+    private Context context;
+    private Path directory;
+    private FileUtils fileUtils;
+
+    @Before
+    public void init() {
+        context = buildTestingContext("RollingFileAppender tests");
+        fileUtils = new FileUtils(context.getLogger(), context.getConstants());
+        directory = Path.of("out/rolling_file_appender_tests");
+        fileUtils.deleteDirectoryRecursivelyIfExists(directory);
+    }
+
+    @After
+    public void cleanup() {
+        fileUtils.deleteDirectoryRecursivelyIfExists(directory);
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Writes are appended to the file, and the directory is made if needed
+     */
+    @Test
+    public void test_Append() throws IOException {
+        Path file = directory.resolve("append/minum.log");
+        var appender = new RollingFileAppender(file, 0, 0, -1, null);
+        appender.append(bytes("first\n"), 6);
+        appender.append(bytes("second\nnot this"), 7);
+        appender.close();
+
+        assertEquals(Files.readString(file), "first\nsecond\n");
+    }
+
+    /**
+     * When the next write would make the file too large, it is rotated first
+     */
+    @Test
+    public void test_RotateBySize() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var appender = new RollingFileAppender(file, 10, 0, -1, null, () -> 0L);
+        appender.append(bytes("123456\n"), 7);
+        appender.append(bytes("abc\n"), 4);
+        appender.append(bytes("def\n"), 4);
+        appender.close();
+
+        assertEquals(Files.readString(file), "abc\ndef\n");
+        assertEquals(Files.readString(directory.resolve("minum.log.19700101-000000")), "123456\n");
+    }
+
+    /**
+     * The file is rotated on the first write after each interval, and
+     * rotations at the same second are told apart by a number.
+     */
+    @Test
+    public void test_RotateByTime() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var now = new AtomicLong(1_000);
+        var appender = new RollingFileAppender(file, 0, 60_000, -1, null, now::get);
+        appender.append(bytes("a\n"), 2);
+        now.set(59_999);
+        appender.append(bytes("b\n"), 2);
+        now.set(60_000);
+        appender.append(bytes("c\n"), 2);
+        now.set(120_000);
+        appender.append(bytes("d\n"), 2);
+        appender.close();
+
+        assertEquals(Files.readString(file), "d\n");
+        assertEquals(Files.readString(directory.resolve("minum.log.19700101-000100")), "a\nb\n");
+        assertEquals(Files.readString(directory.resolve("minum.log.19700101-000200")), "c\n");
+    }
+
+    /**
+     * An empty file is not rotated, even when its time has passed
+     */
+    @Test
+    public void test_RotateByTime_EmptyFile() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var now = new AtomicLong(0);
+        var appender = new RollingFileAppender(file, 0, 60_000, -1, null, now::get);
+        now.set(200_000);
+        appender.append(bytes("a\n"), 2);
+        appender.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(files.map(x -> x.getFileName().toString()).toList(), List.of("minum.log"));
+        }
+    }
+
+    /**
+     * Rotated files are compressed on the queue we provide, and the
+     * uncompressed file removed.
+     */
+    @Test
+    public void test_Compress() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var compressionQueue = new LoggingActionQueue("test log compression", context.getExecutorService(), context.getConstants()).initialize();
+        var appender = new RollingFileAppender(file, 4, 0, -1, compressionQueue, () -> 0L);
+        appender.append(bytes("abc\n"), 4);
+        appender.append(bytes("def\n"), 4);
+        MyThread.sleep(100);
+        appender.close();
+
+        Path compressed = directory.resolve("minum.log.19700101-000000.gz");
+        assertFalse(Files.exists(directory.resolve("minum.log.19700101-000000")));
+        try (var gzip = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertEquals(new String(gzip.readAllBytes(), StandardCharsets.UTF_8), "abc\n");
+        }
+    }
+
+    /**
+     * Forcing AUDIT messages to disk happens at most once per interval, and
+     * one skipped for being too soon happens with a later write.
+     */
+    @Test
+    public void test_SyncAudit() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var now = new AtomicLong(10_000);
+        var appender = new RollingFileAppender(file, 0, 0, 1000, null, now::get);
+        appender.append(bytes("audit\n"), 6);
+        appender.syncAudit();
+        now.set(10_500);
+        appender.append(bytes("audit\n"), 6);
+        appender.syncAudit();
+        now.set(11_000);
+        appender.append(bytes("debug\n"), 6);
+        appender.close();
+
+        assertEquals(Files.readString(file), "audit\naudit\ndebug\n");
+    }
+
+    /**
+     * A sync put off for being too soon is done when the writer is
+     * idle, once the interval has passed, without waiting for another write.
+     */
+    @Test
+    public void test_FlushPendingSync() throws IOException {
+        Path file = directory.resolve("minum.log");
+        var now = new AtomicLong(10_000);
+        var appender = new RollingFileAppender(file, 0, 0, 1000, null, now::get);
+        appender.append(bytes("audit\n"), 6);
+        appender.syncAudit();
+        now.set(10_500);
+        appender.append(bytes("audit\n"), 6);
+        appender.syncAudit();
+
+        appender.flushPendingSync();
+        assertTrue(appender.isAuditSyncPending());
+        now.set(11_000);
+        appender.flushPendingSync();
+        assertFalse(appender.isAuditSyncPending());
+        appender.close();
+    }
+
+    /**
+     * The logger writes to the file set in LOG_FILE
+     */
+    @Test
+    public void test_LoggerWritesToFile() throws IOException {
+        var properties = new Properties();
+        properties.setProperty("LOG_FILE", directory.resolve("logger/minum.log").toString());
+        properties.setProperty("LOG_LEVELS", "AUDIT");
+        var logger = new Logger(new Constants(properties), Executors.newVirtualThreadPerTaskExecutor(), "file logger test");
+        logger.logAudit(() -> "a user did something");
+        logger.stop();
+
+        assertTrue(Files.readString(directory.resolve("logger/minum.log")).endsWith("\tAUDIT\ta user did something\n"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
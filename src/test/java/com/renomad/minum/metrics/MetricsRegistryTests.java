@@ -0,0 +1,151 @@
+package com.renomad.minum.metrics;
+
+import com.renomad.minum.utils.InvariantException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class MetricsRegistryTests {
+
+    /**
+     * Asking for the same name and labels provides the same counter
+     */
+    @Test
+    public void test_Counter_SameNameAndLabels() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("requests", "route", "login").increment();
+        metrics.counter("requests", "route", "login").add(2);
+        metrics.counter("requests", "route", "logout").increment();
+
+        assertEquals(metrics.counter("requests", "route", "login").get(), 3L);
+        assertEquals(metrics.getCounters().get(new MetricsRegistry.MetricKey("requests", "route=\"login\"")).get(), 3L);
+        assertEquals(metrics.getCounters().size(), 2);
+    }
+
+    /**
+     * Counting from many threads at once loses nothing
+     */
+    @Test
+    public void test_Counter_Concurrent() throws InterruptedException {
+        var metrics = new MetricsRegistry();
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    metrics.counter("hits").increment();
+                    metrics.histogram("time").record(j);
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+
+        assertEquals(metrics.counter("hits").get(), 80_000L);
+        assertEquals(metrics.histogram("time").getCount(), 80_000L);
+        assertEquals(metrics.histogram("time").getMax(), 9_999L);
+    }
+
+    /**
+     * A gauge is read when asked, and registering again replaces it
+     */
+    @Test
+    public void test_Gauge() {
+        var metrics = new MetricsRegistry();
+        var value = new AtomicLong(5);
+        metrics.gauge("depth", value::get, "queue", "writer");
+        value.set(7);
+        var key = new MetricsRegistry.MetricKey("depth", "queue=\"writer\"");
+        assertEquals(metrics.getGauges().get(key).getAsLong(), 7L);
+
+        metrics.gauge("depth", () -> 42, "queue", "writer");
+        assertEquals(metrics.getGauges().get(key).getAsLong(), 42L);
+    }
+
+    /**
+     * The garbage collection totals only go up, so they are counters, not gauges
+     */
+    @Test
+    public void test_JvmMetrics_GcCounters() {
+        var metrics = new MetricsRegistry();
+        JvmMetrics.register(metrics);
+        assertTrue(metrics.getFunctionCounters().keySet().stream().anyMatch(x -> x.name().equals("jvm_gc_collections")));
+        assertTrue(metrics.getFunctionCounters().keySet().stream().anyMatch(x -> x.name().equals("jvm_gc_time_millis")));
+        assertTrue(metrics.getGauges().keySet().stream().noneMatch(x -> x.name().startsWith("jvm_gc")));
+    }
+
+    /**
+     * Label values are escaped as the Prometheus text format expects
+     */
+    @Test
+    public void test_Labels_Escaped() {
+        var key = MetricsRegistry.buildKey("requests", "route", "a\"b\\c\nd", "status", "200");
+        assertEquals(key.labels(), "route=\"a\\\"b\\\\c\\nd\",status=\"200\"");
+        assertEquals(MetricsRegistry.buildKey("requests").labels(), "");
+    }
+
+    /**
+     * The value of a label can be read back from the key, unescaped
+     */
+    @Test
+    public void test_Labels_LabelValue() {
+        var key = MetricsRegistry.buildKey("requests", "route", "a\"b,c=d", "status", "200");
+        assertEquals(key.labelValue("route"), "a\"b,c=d");
+        assertEquals(key.labelValue("status"), "200");
+        assertTrue(key.labelValue("stat") == null);
+        assertTrue(MetricsRegistry.buildKey("requests").labelValue("route") == null);
+    }
+
+    @Test
+    public void test_Labels_EdgeCase_Unpaired() {
+        var ex = assertThrows(InvariantException.class, () -> new MetricsRegistry().counter("requests", "route"));
+        assertEquals(ex.getMessage(), "labels must be in pairs of key and value. Your input: route");
+    }
+
+    /**
+     * Percentiles are accurate to within the precision of the buckets
+     */
+    @Test
+    public void test_Histogram_Percentiles() {
+        var histogram = new Histogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(histogram.getCount(), 10_000L);
+        assertEquals(histogram.getMax(), 10_000_000L);
+        assertEquals(histogram.getSum(), 50_005_000_000L);
+        assertTrue(isClose(histogram.percentile(50), 5_000_000L));
+        assertTrue(isClose(histogram.percentile(99), 9_900_000L));
+        assertEquals(histogram.percentile(100), 10_000_000L);
+        long[] percentiles = histogram.percentiles(50, 99, 100);
+        assertEquals(percentiles[0], histogram.percentile(50));
+        assertEquals(percentiles[1], histogram.percentile(99));
+        assertEquals(percentiles[2], 10_000_000L);
+    }
+
+    /**
+     * Every value lands in a bucket whose range includes it
+     */
+    @Test
+    public void test_Histogram_Buckets() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = Histogram.BUCKETS.bucketIndex(value);
+            assertTrue(Histogram.BUCKETS.highestValueInBucket(index) >= value);
+            assertTrue(index == 0 || Histogram.BUCKETS.highestValueInBucket(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void test_Histogram_EdgeCase_Empty() {
+        var histogram = new Histogram();
+        assertEquals(histogram.percentile(99), 0L);
+        assertEquals(histogram.getMax(), 0L);
+        assertTrue(histogram.toString().startsWith("count=0 "));
+    }
+
+    private static boolean isClose(long actual, long expected) {
+        return Math.abs(actual - expected) <= expected / 25;
+    }
+}
@@ -0,0 +1,40 @@
+package com.renomad.minum.metrics;
+
+import org.junit.Test;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PrometheusFormatTests {
+
+    /**
+     * Each kind of metric is rendered in the Prometheus text format,
+     * with the samples of each name grouped together.
+     */
+    @Test
+    public void test_Render() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("requests", "route", "login").add(5);
+        metrics.counter("requests", "route", "logout").add(2);
+        metrics.gauge("depth", () -> 3);
+        metrics.functionCounter("collections", () -> 9, "gc", "young");
+        metrics.histogram("handler_duration", "route", "login").record(2_000_000);
+
+        String result = PrometheusFormat.render(metrics);
+
+        assertTrue(result.contains("# TYPE requests_total counter\n"));
+        assertTrue(result.contains("requests_total{route=\"login\"} 5\n"));
+        assertTrue(result.contains("requests_total{route=\"logout\"} 2\n"));
+        assertEquals(result.indexOf("# TYPE requests_total"), result.lastIndexOf("# TYPE requests_total"));
+        assertTrue(result.contains("# TYPE depth gauge\ndepth 3\n"));
+        assertTrue(result.contains("# TYPE collections_total counter\ncollections_total{gc=\"young\"} 9\n"));
+        assertTrue(result.contains("# TYPE handler_duration_seconds summary\n"));
+        assertTrue(result.contains("handler_duration_seconds{route=\"login\",quantile=\"0.99\"} 0.00"));
+        assertTrue(result.contains("handler_duration_seconds_sum{route=\"login\"} 0.002\n"));
+        assertTrue(result.contains("handler_duration_seconds_count{route=\"login\"} 1\n"));
+    }
+
+    @Test
+    public void test_Render_Empty() {
+        assertEquals(PrometheusFormat.render(new MetricsRegistry()), "");
+    }
+}
@@ -0,0 +1,68 @@
+package com.renomad.minum.testing;
+
+import org.junit.Test;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class LatencyHistogramTests {
+
+    /**
+     * Percentiles are accurate to within the precision of the buckets
+     */
+    @Test
+    public void test_Percentiles() {
+        var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(histogram.getCount(), 10_000L);
+        assertEquals(histogram.getMin(), 1000L);
+        assertEquals(histogram.getMax(), 10_000_000L);
+        assertTrue(isClose(histogram.percentile(50), 5_000_000L));
+        assertTrue(isClose(histogram.percentile(99), 9_900_000L));
+        assertTrue(isClose(histogram.percentile(99.9), 9_990_000L));
+        assertEquals(histogram.percentile(100), 10_000_000L);
+        assertTrue(isClose((long) histogram.getMean(), 5_000_500L));
+    }
+
+    /**
+     * Every value lands in a bucket whose range includes it
+     */
+    @Test
+    public void test_Buckets() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.BUCKETS.bucketIndex(value);
+            assertTrue(LatencyHistogram.BUCKETS.highestValueInBucket(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.BUCKETS.highestValueInBucket(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void test_Add() {
+        var first = new LatencyHistogram();
+        var second = new LatencyHistogram();
+        first.record(10);
+        second.record(30);
+        second.record(20);
+        first.add(second);
+
+        assertEquals(first.getCount(), 3L);
+        assertEquals(first.getMin(), 10L);
+        assertEquals(first.getMax(), 30L);
+        assertEquals(first.percentile(50), 20L);
+    }
+
+    @Test
+    public void test_EdgeCase_Empty() {
+        var histogram = new LatencyHistogram();
+        assertEquals(histogram.percentile(99), 0L);
+        assertEquals(histogram.getMin(), 0L);
+        assertEquals(histogram.getMean(), 0.0);
+        assertTrue(histogram.toString().startsWith("count=0 "));
+    }
+
+    private static boolean isClose(long actual, long expected) {
+        return Math.abs(actual - expected) <= expected / 50;
+    }
+}
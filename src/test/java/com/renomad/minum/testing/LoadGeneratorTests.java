@@ -0,0 +1,118 @@
+package com.renomad.minum.testing;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.web.FullSystem;
+import com.renomad.minum.web.Response;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class LoadGeneratorTests {
+
+    private static Context context;
+    private static FullSystem fullSystem;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("SERVER_PORT", "7983");
+        properties.setProperty("SSL_SERVER_PORT", "7984");
+        context = buildTestingContext("unit_tests", properties);
+        fullSystem = new FullSystem(context).start();
+        fullSystem.getWebFramework().registerPath(GET, "hello", request -> Response.htmlOk("hello"));
+        fullSystem.getWebFramework().registerPath(POST, "echo", request -> Response.htmlOk(request.getBody().asString()));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        fullSystem.shutdown();
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * In the closed-loop mode, the requested count of requests is sent,
+     * over reused connections, in the weighted mix given.
+     */
+    @Test
+    public void test_LoadGenerator_ClosedLoop() throws Exception {
+        LoadResult result = LoadGenerator.forFullSystem(fullSystem, List.of(
+                        LoadRequest.get("hello").withWeight(3),
+                        LoadRequest.post("echo", "text/plain", "hi there"),
+                        LoadRequest.get("does_not_exist")))
+                .withConcurrency(4)
+                .withMaxRequests(500)
+                .run();
+
+        assertEquals(result.requestCount(), 500L);
+        assertEquals(result.errorCount(), 0L);
+        assertEquals(result.latencies().getCount(), 500L);
+        assertEquals(result.statusCounts().get(200) + result.statusCounts().get(404), 500L);
+        // the 404s should be about a fifth of the whole
+        assertTrue(result.statusCounts().get(404) > 40 && result.statusCounts().get(404) < 170, result.toString());
+        assertTrue(result.throughput() > 0);
+    }
+
+    /**
+     * In the constant-rate mode, requests go out on schedule, and the run
+     * lasts for the given duration.
+     */
+    @Test
+    public void test_LoadGenerator_ConstantRate() throws Exception {
+        LoadResult result = new LoadGenerator(context.getConstants().hostName, context.getConstants().serverPort, List.of(LoadRequest.get("hello")))
+                .withConcurrency(4)
+                .withConstantRate(200)
+                .withDuration(Duration.ofMillis(500))
+                .run();
+
+        assertEquals(result.requestCount(), 100L);
+        assertEquals(result.errorCount(), 0L);
+        assertTrue(result.elapsed().toMillis() >= 490, result.toString());
+    }
+
+    /**
+     * Without keep-alive, each request opens its own connection
+     */
+    @Test
+    public void test_LoadGenerator_NoKeepAlive() throws Exception {
+        LoadResult result = LoadGenerator.forFullSystem(fullSystem, List.of(LoadRequest.get("hello")))
+                .withConcurrency(2)
+                .withMaxRequests(20)
+                .withKeepAlive(false)
+                .run();
+
+        assertEquals(result.statusCounts(), Map.of(200, 20L));
+    }
+
+    /**
+     * Failed connections are counted, rather than stopping the run
+     */
+    @Test
+    public void test_LoadGenerator_EdgeCase_NoServer() throws Exception {
+        LoadResult result = new LoadGenerator("localhost", 7985, List.of(LoadRequest.get("hello")))
+                .withConcurrency(1)
+                .withMaxRequests(3)
+                .run();
+
+        assertEquals(result.requestCount(), 0L);
+        assertEquals(result.errorCount(), 3L);
+        assertTrue(result.firstError().contains("Connection refused"), result.firstError());
+    }
+
+    @Test
+    public void test_LoadGenerator_EdgeCase_InvalidSettings() {
+        var generator = new LoadGenerator("localhost", 7983, List.of(LoadRequest.get("hello")));
+        assertThrows(InvariantException.class, "The concurrency of the load generator must be positive", () -> generator.withConcurrency(0));
+        assertThrows(InvariantException.class, "The load generator needs at least one request to send", () -> new LoadGenerator("localhost", 7983, List.of()));
+        assertThrows(InvariantException.class, "The weight of a load request must be positive. Was: 0", () -> LoadRequest.get("hello").withWeight(0));
+    }
+}
@@ -2,9 +2,10 @@ package com.renomad.minum.utils;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
-import static com.renomad.minum.testing.TestFramework.assertEqualByteArray;
+import static com.renomad.minum.testing.TestFramework.*;
 
 public class ByteUtilsTests {
 
@@ -13,4 +14,29 @@ public class ByteUtilsTests {
         assertEqualByteArray(new byte[]{1,2,3}, ByteUtils.byteListToArray(List.of((byte)1, (byte)2, (byte)3)));
         assertEqualByteArray(new byte[0], ByteUtils.byteListToArray(List.of()));
     }
+
+    /**
+     * Searching for a pattern of bytes with the skip-table search
+     */
+    @Test
+    public void testIndexOf() {
+        byte[] pattern = "\r\n--abc".getBytes(StandardCharsets.US_ASCII);
+        int[] skipTable = ByteUtils.buildSkipTable(pattern);
+        byte[] data = "hello\r\n--ab\r\n--abc--".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(ByteUtils.indexOf(data, 0, data.length, pattern, skipTable), 11);
+        // starting the search past the pattern
+        assertEquals(ByteUtils.indexOf(data, 12, data.length, pattern, skipTable), -1);
+        // the region ends before the pattern is complete
+        assertEquals(ByteUtils.indexOf(data, 0, 17, pattern, skipTable), -1);
+        // the pattern right at the start of the region
+        assertEquals(ByteUtils.indexOf(data, 11, 18, pattern, skipTable), 11);
+        assertEquals(ByteUtils.indexOf(new byte[0], 0, 0, pattern, skipTable), -1);
+    }
+
+    @Test
+    public void testBuildSkipTable_EdgeCase_EmptyPattern() {
+        var ex = assertThrows(UtilsException.class, () -> ByteUtils.buildSkipTable(new byte[0]));
+        assertEquals(ex.getMessage(), "expected a valid non-empty pattern to build a skip table");
+    }
 }
@@ -0,0 +1,188 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class AsyncEndpointTests {
+
+    private static Context context;
+    private static IInputStreamUtils inputStreamUtils;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("SERVER_PORT", "7981");
+        context = buildTestingContext("unit_tests", properties);
+        inputStreamUtils = new InputStreamUtils(context.getConstants().maxReadLineSizeBytes);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Two computations run in parallel, and their results are
+     * composed into the response.
+     */
+    @Test
+    public void test_AsyncPath_ComposesResults() throws Exception {
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        var executor = context.getExecutorService();
+        wf.registerAsyncPath(GET, "combined", request -> {
+            var first = CompletableFuture.supplyAsync(() -> "hello", executor);
+            var second = CompletableFuture.supplyAsync(() -> "world", executor);
+            return first.thenCombine(second, (a, b) -> Response.htmlOk(a + " " + b));
+        }, Duration.ofSeconds(5));
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                sendGet(client, "combined");
+                InputStream is = client.getInputStream();
+                assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 200 OK");
+                Headers headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                assertEquals(new String(is.readNBytes(headers.contentLength()), StandardCharsets.UTF_8), "hello world");
+            }
+        }
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    /**
+     * If the future does not complete in time, the client gets a 504
+     * and the future is cancelled.
+     */
+    @Test
+    public void test_AsyncPath_Timeout() throws Exception {
+        var wf = new WebFramework(context);
+        var future = new CompletableFuture<IResponse>();
+        var request = new FakeRequest();
+
+        IResponse response = wf.awaitAsyncResponse(request, future, 50);
+
+        assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_504_GATEWAY_TIMEOUT);
+        assertTrue(new String(response.getBody(), StandardCharsets.UTF_8).startsWith("Gateway timeout: "));
+        assertTrue(future.isCancelled());
+    }
+
+    /**
+     * A future completing exceptionally is treated like an exception
+     * thrown by an ordinary endpoint - it becomes a 500
+     */
+    @Test
+    public void test_AsyncPath_FailedFuture() throws Exception {
+        var wf = new WebFramework(context);
+        var future = CompletableFuture.<IResponse>failedFuture(new IOException("the database was unavailable"));
+        var ex = assertThrows(IOException.class, () -> wf.awaitAsyncResponse(new FakeRequest(), future, 1000));
+        assertEquals(ex.getMessage(), "the database was unavailable");
+
+        wf.registerAsyncPath(GET, "failing", request -> future, Duration.ofSeconds(1));
+        var sw = new FakeSocketWrapper();
+        WebFramework.ProcessingResult result = wf.processRequest(sw, new RequestLine(GET, new PathDetails("failing", "", java.util.Map.of()), HttpVersion.ONE_DOT_ONE, "GET /failing HTTP/1.1", context.getLogger()), new Headers(java.util.List.of()));
+        assertEquals(result.resultingResponse().getStatusCode(), StatusLine.StatusCode.CODE_500_INTERNAL_SERVER_ERROR);
+    }
+
+    @Test
+    public void test_AsyncPath_EdgeCase_NonPositiveTimeout() {
+        var wf = new WebFramework(context);
+        var ex = assertThrows(InvariantException.class, () -> wf.registerAsyncPath(GET, "foo", request -> new CompletableFuture<>(), Duration.ZERO));
+        assertEquals(ex.getMessage(), "The timeout for an asynchronous endpoint must be positive");
+    }
+
+    /**
+     * When the client hangs up while we are waiting, the future is
+     * cancelled rather than left running for nobody.
+     */
+    @Test
+    public void test_AsyncPath_ClientDisconnects() throws Exception {
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        var futureReference = new AtomicReference<CompletableFuture<IResponse>>();
+        wf.registerAsyncPath(GET, "never", request -> {
+            var future = new CompletableFuture<IResponse>();
+            futureReference.set(future);
+            return future;
+        }, Duration.ofSeconds(30));
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                sendGet(client, "never");
+                waitUntil(() -> futureReference.get() != null);
+            }
+            waitUntil(() -> futureReference.get().isCancelled());
+        }
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    /**
+     * Looking to see whether the client has gone must not lose any
+     * data the client has sent.
+     */
+    @Test
+    public void test_IsClientDisconnected_KeepsData() throws Exception {
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        var probeResults = new StringBuilder();
+        wf.registerPath(GET, "probe", request -> {
+            ISocketWrapper sw = request.getSocketWrapper();
+            // wait for the client to send the next request
+            while (sw.getInputStream().available() == 0 && !sw.isClientDisconnected()) {
+                MyThread.sleep(10);
+            }
+            probeResults.append(sw.isClientDisconnected());
+            sw.endDisconnectChecks();
+            return Response.htmlOk("probed");
+        });
+        wf.registerPath(GET, "second", request -> Response.htmlOk("second"));
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                sendGet(client, "probe");
+                sendGet(client, "second");
+                InputStream is = client.getInputStream();
+                assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 200 OK");
+                Headers headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                assertEquals(new String(is.readNBytes(headers.contentLength()), StandardCharsets.UTF_8), "probed");
+                assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 200 OK");
+                headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                assertEquals(new String(is.readNBytes(headers.contentLength()), StandardCharsets.UTF_8), "second");
+            }
+        }
+        assertEquals(probeResults.toString(), "false");
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    private static void sendGet(ISocketWrapper client, String path) throws IOException {
+        client.sendHttpLine("GET /" + path + " HTTP/1.1");
+        client.sendHttpLine("Host: localhost:7981");
+        client.sendHttpLine("");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        for (int i = 0; i < 300; i++) {
+            if (condition.getAsBoolean()) return;
+            MyThread.sleep(10);
+        }
+        throw new AssertionError("condition was not met in time");
+    }
+}
@@ -4,6 +4,7 @@ import com.renomad.minum.logging.TestLogger;
 import com.renomad.minum.state.Context;
 import com.renomad.minum.testing.StopwatchUtils;
 import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.StringUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -12,8 +13,12 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import static com.renomad.minum.testing.TestFramework.*;
@@ -372,5 +377,234 @@ public class BodyProcessorTests {
 
     }
 
+    /**
+     * Streaming several partitions, each larger than the read buffer, through
+     * the multipart iterable, reading each partition with a bulk buffer.  The
+     * content must arrive whole and in order.  The timing of this, at 100
+     * megabytes, is in BodyProcessorBenchmarks.
+     */
+    @Test
+    public void test_MultiPart_LargeUpload() throws IOException {
+        String boundaryValue = "----WebKitFormBoundaryGlzbZJMmR2xSuAaT";
+        int countOfPartitions = 3;
+        byte[] partitionContent = new byte[64 * 1024];
+        for (int i = 0; i < partitionContent.length; i++) {
+            partitionContent[i] = (byte) (i % 251);
+        }
+        byte[] partitionHeader = ("--" + boundaryValue + "\r\n" +
+                "Content-Disposition: form-data; name=\"image_uploads\"; filename=\"photo.jpg\"\r\n" +
+                "Content-Type: image/jpeg\r\n" +
+                "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] lineEnding = "\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] closingBoundary = ("--" + boundaryValue + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        List<InputStream> pieces = new ArrayList<>();
+        for (int i = 0; i < countOfPartitions; i++) {
+            pieces.add(new ByteArrayInputStream(partitionHeader));
+            pieces.add(new ByteArrayInputStream(partitionContent));
+            pieces.add(new ByteArrayInputStream(lineEnding));
+        }
+        pieces.add(new ByteArrayInputStream(closingBoundary));
+        int contentLength = countOfPartitions * (partitionHeader.length + partitionContent.length + lineEnding.length) + closingBoundary.length;
+        var inputStream = new SequenceInputStream(Collections.enumeration(pieces));
+        var bodyProcessor = new BodyProcessor(context);
+
+        int partitionsRead = 0;
+        byte[] buffer = new byte[8192];
+        for (StreamingMultipartPartition partition : bodyProcessor.getMultiPartIterable(inputStream, boundaryValue, contentLength)) {
+            var received = new ByteArrayOutputStream();
+            int count;
+            while ((count = partition.read(buffer, 0, buffer.length)) != -1) {
+                received.write(buffer, 0, count);
+            }
+            assertEqualByteArray(received.toByteArray(), partitionContent);
+            partitionsRead += 1;
+        }
+
+        assertEquals(partitionsRead, countOfPartitions);
+    }
+
+    /**
+     * Reading a partition in chunks much smaller than the buffer, and a byte at a time,
+     * should give the same result as reading it all at once.
+     */
+    @Test
+    public void test_MultiPart_ReadingInSmallPieces() throws IOException {
+        String body = """
+                --i_am_a_boundary\r
+                Content-Disposition: form-data; name="text1"\r
+                \r
+                abcdefghijklmnopqrstuvwxyz\r
+                --i_am_a_boundary\r
+                Content-Disposition: form-data; name="text2"\r
+                \r
+                0123456789\r
+                --i_am_a_boundary--\r
+                """;
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        var bodyProcessor = new BodyProcessor(context);
+        var iterator = bodyProcessor.getMultiPartIterable(new ByteArrayInputStream(bytes), "i_am_a_boundary", bytes.length).iterator();
+
+        StreamingMultipartPartition partition1 = iterator.next();
+        var baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int count;
+        while ((count = partition1.read(buffer, 0, buffer.length)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        assertEquals(baos.toString(StandardCharsets.US_ASCII), "abcdefghijklmnopqrstuvwxyz");
+        assertEquals(partition1.read(buffer, 0, buffer.length), -1);
+
+        StreamingMultipartPartition partition2 = iterator.next();
+        var baos2 = new ByteArrayOutputStream();
+        int result;
+        while ((result = partition2.read()) != -1) {
+            baos2.write(result);
+        }
+        assertEquals(baos2.toString(StandardCharsets.US_ASCII), "0123456789");
+        assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * If a directory for temporary files is configured, partitions larger
+     * than the threshold are streamed to disk rather than held in memory. Smaller
+     * partitions remain in memory.  Deleting the temporary files removes them.
+     */
+    @Test
+    public void test_MultiPart_LargePartitionsStoredOnDisk() throws IOException {
+        var properties = new Properties();
+        properties.setProperty("MULTIPART_TEMP_DIRECTORY", "target/multipart_temp_test");
+        properties.setProperty("MULTIPART_IN_MEMORY_THRESHOLD_BYTES", "10");
+        Context diskContext = buildTestingContext("multipart_on_disk", properties);
+        String body = """
+                --i_am_a_boundary\r
+                Content-Disposition: form-data; name="small"\r
+                \r
+                tiny\r
+                --i_am_a_boundary\r
+                Content-Disposition: form-data; name="large"; filename="large.txt"\r
+                \r
+                this value is larger than ten bytes\r
+                --i_am_a_boundary--\r
+                """;
+        var bodyProcessor = new BodyProcessor(diskContext);
+
+        Body bodyResult = bodyProcessor.extractBodyFromInputStream(
+                body.length(),
+                "Content-Type: multipart/form-data; boundary=i_am_a_boundary",
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.US_ASCII)));
 
+        Partition small = bodyResult.getPartitionByName("small").getFirst();
+        assertFalse(small.isStoredOnDisk());
+        assertTrue(small.getPath() == null);
+        assertEquals(small.getContentAsString(), "tiny");
+
+        Partition large = bodyResult.getPartitionByName("large").getFirst();
+        assertTrue(large.isStoredOnDisk());
+        assertEquals(large.getContentLength(), 35L);
+        assertEquals(Files.readString(large.getPath()), "this value is larger than ten bytes");
+        assertEquals(large.getContentAsString(), "this value is larger than ten bytes");
+        try (InputStream partitionStream = large.getInputStream()) {
+            assertEquals(new String(partitionStream.readAllBytes(), StandardCharsets.US_ASCII), "this value is larger than ten bytes");
+        }
+
+        bodyResult.deleteTemporaryFiles();
+        assertFalse(Files.exists(large.getPath()));
+        shutdownTestingContext(diskContext);
+    }
+
+    /**
+     * Values in a url-encoded form are percent-decoded in place.  A plus
+     * sign is a space, and multibyte characters come through intact.
+     */
+    @Test
+    public void test_UrlEncoded_PercentDecoding() {
+        byte[] bytes = "a=hello+world%21&b=%E2%9C%93&c=&d=%NULL%&e=50%25".getBytes(StandardCharsets.US_ASCII);
+        var bodyProcessor = new BodyProcessor(context);
+
+        Body body = bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(bytes), bytes.length);
+
+        assertEquals(body.getBodyType(), BodyType.FORM_URL_ENCODED);
+        assertEquals(body.asString("a"), "hello world!");
+        assertEquals(body.asString("b"), "\u2713");
+        assertEquals(body.asString("c"), "");
+        assertEquals(body.asString("d"), "");
+        assertEquals(body.asString("e"), "50%");
+    }
+
+    /**
+     * A percent sign must be followed by two hex digits.  If not, we
+     * return what we have parsed so far.
+     */
+    @Test
+    public void test_UrlEncoded_EdgeCase_BadEscape() {
+        var bodyProcessor = new BodyProcessor(context);
+
+        byte[] illegalHex = "a=1&b=%zz".getBytes(StandardCharsets.US_ASCII);
+        Body body = bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(illegalHex), illegalHex.length);
+        assertEquals(body.getBodyType(), BodyType.UNRECOGNIZED);
+        assertEquals(body.asString("a"), "1");
+        assertTrue(logger.doesMessageExist("Exception message: URLDecoder: Illegal hex characters in escape (%) pattern"));
+
+        byte[] incomplete = "a=1&b=%4".getBytes(StandardCharsets.US_ASCII);
+        Body body2 = bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(incomplete), incomplete.length);
+        assertEquals(body2.getBodyType(), BodyType.UNRECOGNIZED);
+        assertTrue(logger.doesMessageExist("Exception message: URLDecoder: Incomplete trailing escape (%) pattern"));
+    }
+
+    /**
+     * The limit on the count of keys applies to each body, not to
+     * the total seen across the lifetime of the body processor.
+     */
+    @Test
+    public void test_UrlEncoded_CountOfKeysIsPerRequest() {
+        var bodyProcessor = new BodyProcessor(context);
+        var sb = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            sb.append("key").append(i).append("=value&");
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < 3; i++) {
+            Body body = bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(bytes), bytes.length);
+            assertEquals(body.getBodyType(), BodyType.FORM_URL_ENCODED);
+            assertEquals(body.getKeys().size(), 600);
+        }
+    }
+
+    /**
+     * Parsing a typical form post by reading the whole (bounded) body at once
+     * and decoding it in place must give the same result as pulling it through
+     * the streaming iterable.  The comparison of their speed and allocation is
+     * in BodyProcessorBenchmarks.
+     */
+    @Test
+    public void test_UrlEncoded_BulkMatchesStreaming() throws IOException {
+        byte[] bytes = ("username=alice&email=alice%40example.com&password=correct+horse+battery+staple" +
+                "&comment=Hello+there%2C+this+is+a+longer+comment+with+some+%22punctuation%22+and+%E2%9C%93" +
+                "&remember_me=true&redirect=%2Fhome%2Fdashboard%3Ftab%3D1").getBytes(StandardCharsets.US_ASCII);
+        var bodyProcessor = new BodyProcessor(context);
+
+        Map<String, byte[]> streamed = parseUsingStreaming(bodyProcessor, bytes);
+        Body bulk = bodyProcessor.parseUrlEncodedForm(new ByteArrayInputStream(bytes), bytes.length);
+
+        assertEquals(bulk.getKeys(), streamed.keySet());
+        for (String key : streamed.keySet()) {
+            assertEqualByteArray(bulk.asBytes(key), streamed.get(key));
+        }
+        assertEquals(bulk.asString("comment"), "Hello there, this is a longer comment with some \"punctuation\" and \u2713");
+    }
+
+    /**
+     * The way url-encoded forms were parsed before reading the body in bulk
+     */
+    private static Map<String, byte[]> parseUsingStreaming(BodyProcessor bodyProcessor, byte[] bytes) throws IOException {
+        var result = new HashMap<String, byte[]>();
+        for (var keyValue : bodyProcessor.getUrlEncodedDataIterable(new ByteArrayInputStream(bytes), bytes.length)) {
+            String value = new String(keyValue.getUedg().readAllBytes(), StandardCharsets.US_ASCII);
+            String decoded = StringUtils.decode(value);
+            result.put(keyValue.getKey(), decoded == null ? new byte[0] : decoded.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
 }
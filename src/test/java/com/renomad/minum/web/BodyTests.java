@@ -2,7 +2,13 @@ package com.renomad.minum.web;
 
 import org.junit.Test;
 
-import static com.renomad.minum.testing.TestFramework.assertEquals;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.renomad.minum.testing.TestFramework.*;
 
 public class BodyTests {
 
@@ -12,4 +18,31 @@ public class BodyTests {
         assertEquals(empty.asString("foo"), "");
         assertEquals(empty.getBodyType(), BodyType.NONE);
     }
+
+    /**
+     * The raw bytes are available as a read-only view, without copying
+     */
+    @Test
+    public void testAsByteBuffer() {
+        byte[] raw = "hello".getBytes(StandardCharsets.UTF_8);
+        Body body = new Body(Map.of(), raw, List.of(), BodyType.UNRECOGNIZED);
+        ByteBuffer byteBuffer = body.asByteBuffer();
+        assertTrue(byteBuffer.isReadOnly());
+        assertEquals(byteBuffer.remaining(), 5);
+        assertEquals(byteBuffer.get(0), (byte) 'h');
+
+        // the public constructor made its own copy, so this change does not affect it
+        raw[0] = 'j';
+        assertEquals(body.asString(), "hello");
+    }
+
+    /**
+     * The set of keys cannot be used to change the body
+     */
+    @Test
+    public void testGetKeys_Unmodifiable() {
+        Body body = new Body(Map.of("a", new byte[]{1}), new byte[0], List.of(), BodyType.FORM_URL_ENCODED);
+        assertThrows(UnsupportedOperationException.class, () -> body.getKeys().remove("a"));
+        assertEquals(body.getKeys(), Set.of("a"));
+    }
 }
@@ -0,0 +1,234 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.Histogram;
+import com.renomad.minum.metrics.MetricsRegistry;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class BulkheadTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Past the concurrency limit, requests wait.  Past the queue size,
+     * they are turned away with a 503.
+     */
+    @Test
+    public void test_Bulkhead_LimitsAndQueue() throws Exception {
+        Histogram queueDuration = new MetricsRegistry().histogram("queue");
+        var bulkhead = new Bulkhead(WorkClass.AUTH, 2, 1, 10_000, queueDuration);
+        var release = new CountDownLatch(1);
+        ThrowingFunction<IRequest, IResponse> slowEndpoint = request -> {
+            release.await();
+            return Response.htmlOk("done");
+        };
+
+        var running = new ArrayList<Future<IResponse>>();
+        for (int i = 0; i < 3; i++) {
+            running.add(context.getExecutorService().submit(() -> bulkhead.run(new FakeRequest(), slowEndpoint)));
+        }
+        waitUntil(() -> bulkhead.getActiveCount() == 2 && bulkhead.getQueuedCount() == 1);
+
+        // no room to run, and no room to wait
+        IResponse rejected = bulkhead.run(new FakeRequest(), slowEndpoint);
+        assertEquals(rejected.getStatusCode(), StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE);
+        assertEquals(rejected.getExtraHeaders().get("Retry-After"), "1");
+        // the body of the request was not read, so the connection must not be reused
+        assertEquals(rejected.getExtraHeaders().get("Connection"), "close");
+        assertEquals(bulkhead.getRejectedCount(), 1L);
+
+        release.countDown();
+        for (Future<IResponse> future : running) {
+            assertEquals(future.get().getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+        }
+        assertEquals(bulkhead.getAdmittedCount(), 3L);
+        assertEquals(bulkhead.getActiveCount(), 0);
+        assertTrue(bulkhead.getTotalQueueNanos() > 0);
+        assertEquals(queueDuration.getCount(), 1L);
+        assertTrue(bulkhead.getMaxQueueNanos() > 0);
+    }
+
+    /**
+     * A request waiting longer than the queue timeout is turned away
+     */
+    @Test
+    public void test_Bulkhead_QueueTimeout() throws Exception {
+        var bulkhead = new Bulkhead(WorkClass.UPLOADS, 1, 10, 50, new MetricsRegistry().histogram("queue"));
+        var release = new CountDownLatch(1);
+        Future<IResponse> first = context.getExecutorService().submit(() -> bulkhead.run(new FakeRequest(), request -> {
+            release.await();
+            return Response.htmlOk("done");
+        }));
+        waitUntil(() -> bulkhead.getActiveCount() == 1);
+
+        IResponse response = bulkhead.run(new FakeRequest(), request -> Response.htmlOk("never"));
+        assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE);
+        assertTrue(bulkhead.getMaxQueueNanos() >= 50_000_000L);
+
+        release.countDown();
+        first.get();
+    }
+
+    /**
+     * A request arriving while others wait in the queue takes its place
+     * behind them, even if a permit is free at that moment.
+     */
+    @Test
+    public void test_Bulkhead_NoBarging() throws Exception {
+        var bulkhead = new Bulkhead(WorkClass.AUTH, 1, 10, 10_000, new MetricsRegistry().histogram("queue"));
+        var release = new CountDownLatch(1);
+        Future<IResponse> first = context.getExecutorService().submit(() -> bulkhead.run(new FakeRequest(), request -> {
+            release.await();
+            return Response.htmlOk("first");
+        }));
+        waitUntil(() -> bulkhead.getActiveCount() == 1);
+        var order = new ConcurrentLinkedQueue<String>();
+        Future<IResponse> second = context.getExecutorService().submit(() -> bulkhead.run(new FakeRequest(), request -> {
+            order.add("second");
+            return Response.htmlOk("second");
+        }));
+        waitUntil(() -> bulkhead.getQueuedCount() == 1);
+
+        release.countDown();
+        // arriving just as the permit is released, behind the waiting request
+        bulkhead.run(new FakeRequest(), request -> {
+            order.add("third");
+            return Response.htmlOk("third");
+        });
+        first.get();
+        second.get();
+        assertEquals(List.copyOf(order), List.of("second", "third"));
+    }
+
+    /**
+     * Saturating one kind of work leaves the others untouched
+     */
+    @Test
+    public void test_Bulkhead_Isolation() throws Exception {
+        var wf = new WebFramework(context);
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "login", request -> {
+            release.await();
+            return Response.htmlOk("logged in");
+        }, RouteOptions.DEFAULT.withWorkClass(WorkClass.AUTH));
+        wf.registerPath(GET, "health", request -> Response.htmlOk("ok"));
+
+        Bulkhead auth = wf.getBulkhead(WorkClass.AUTH);
+        var logins = new ArrayList<Future<String>>();
+        for (int i = 0; i < auth.getConcurrencyLimit(); i++) {
+            logins.add(context.getExecutorService().submit(() -> get(wf, "login")));
+        }
+        waitUntil(() -> auth.getActiveCount() == auth.getConcurrencyLimit());
+
+        assertEquals(get(wf, "health"), "ok");
+        assertEquals(wf.getBulkhead(WorkClass.DEFAULT).getAdmittedCount(), 1L);
+
+        release.countDown();
+        for (Future<String> login : logins) {
+            assertEquals(login.get(), "logged in");
+        }
+    }
+
+    /**
+     * Static files run within their own bulkhead
+     */
+    @Test
+    public void test_Bulkhead_StaticFiles() throws Exception {
+        var wf = new WebFramework(context);
+        get(wf, "moon.webp");
+        assertEquals(wf.getBulkhead(WorkClass.STATIC).getAdmittedCount(), 1L);
+        assertEquals(wf.getBulkhead(WorkClass.DEFAULT).getAdmittedCount(), 0L);
+    }
+
+    @Test
+    public void test_BuildBulkheads() {
+        Map<WorkClass, Bulkhead> bulkheads = WebFramework.buildBulkheads(List.of("auth", "8", "100", "Uploads", "4", "20"), 1000, new MetricsRegistry());
+        assertEquals(bulkheads.get(WorkClass.AUTH).getConcurrencyLimit(), 8);
+        assertEquals(bulkheads.get(WorkClass.AUTH).getQueueSize(), 100);
+        assertEquals(bulkheads.get(WorkClass.UPLOADS).getConcurrencyLimit(), 4);
+        assertEquals(bulkheads.get(WorkClass.STATIC).getConcurrencyLimit(), WorkClass.STATIC.defaultConcurrencyLimit);
+        assertEquals(bulkheads.get(WorkClass.DEFAULT).getQueueSize(), WorkClass.DEFAULT.defaultQueueSize);
+    }
+
+    /**
+     * Each bulkhead's activity is in the metrics, labelled by its work class
+     */
+    @Test
+    public void test_BuildBulkheads_Metrics() throws Exception {
+        var metrics = new MetricsRegistry();
+        Bulkhead bulkhead = WebFramework.buildBulkheads(List.of("auth", "1", "0"), 10_000, metrics).get(WorkClass.AUTH);
+        var active = new MetricsRegistry.MetricKey("minum_bulkhead_active", "class=\"AUTH\"");
+        var queued = new MetricsRegistry.MetricKey("minum_bulkhead_queued", "class=\"AUTH\"");
+        var rejected = new MetricsRegistry.MetricKey("minum_bulkhead_rejected", "class=\"AUTH\"");
+        var release = new CountDownLatch(1);
+        Future<IResponse> first = context.getExecutorService().submit(() -> bulkhead.run(new FakeRequest(), request -> {
+            release.await();
+            return Response.htmlOk("done");
+        }));
+        waitUntil(() -> bulkhead.getActiveCount() == 1);
+
+        bulkhead.run(new FakeRequest(), request -> Response.htmlOk("never"));
+
+        assertEquals(metrics.getGauges().get(active).getAsLong(), 1L);
+        assertEquals(metrics.getGauges().get(queued).getAsLong(), 0L);
+        assertEquals(metrics.getFunctionCounters().get(rejected).getAsLong(), 1L);
+        release.countDown();
+        first.get();
+        assertEquals(metrics.getGauges().get(active).getAsLong(), 0L);
+        assertTrue(metrics.getHistograms().containsKey(new MetricsRegistry.MetricKey("minum_bulkhead_queue_duration", "class=\"AUTH\"")));
+        assertTrue(metrics.getGauges().containsKey(new MetricsRegistry.MetricKey("minum_bulkhead_active", "class=\"UPLOADS\"")));
+    }
+
+    @Test
+    public void test_BuildBulkheads_EdgeCase_BadSyntax() {
+        var ex = assertThrows(InvariantException.class, () -> WebFramework.buildBulkheads(List.of("auth", "8"), 1000, new MetricsRegistry()));
+        assertEquals(ex.getMessage(), "BULKHEAD_LIMITS must be in groups of three: work class, concurrency limit, queue size. Your input: [auth, 8]");
+    }
+
+    /**
+     * Run a GET request through the framework's endpoint lookup, returning the body as text
+     */
+    private static String get(WebFramework wf, String path) throws Exception {
+        var requestLine = new RequestLine(RequestLine.Method.NONE, PathDetails.empty, HttpVersion.NONE, "", context.getLogger())
+                .extractRequestLine("GET /" + path + " HTTP/1.1");
+        var request = new FakeRequest();
+        request.requestLine = requestLine;
+        request.headers = new Headers(List.of());
+        IResponse response = wf.findEndpointForThisStartline(requestLine, request.headers).apply(request);
+        return response.getBody() == null ? "" : new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) return;
+            MyThread.sleep(10);
+        }
+        throw new AssertionError("condition was not met in time");
+    }
+}
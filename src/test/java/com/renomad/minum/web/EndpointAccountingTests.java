@@ -0,0 +1,179 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.MetricsRegistry;
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class EndpointAccountingTests {
+
+    private static Context context;
+
+    /**
+     * Somewhere for the pre-handler to put what it allocates, so it cannot be optimized away
+     */
+    private static volatile byte[] preHandlerAllocation;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("IS_ENDPOINT_ACCOUNTING_ENABLED", "true");
+        context = buildTestingContext("unit_tests", properties);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * When run on a platform thread, the endpoint is measured where it is
+     */
+    @Test
+    public void test_Accounting_PlatformThread() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "accounting_platform", request -> Response.htmlOk("length: " + new byte[1024 * 1024].length));
+        MetricsRegistry metrics = context.getMetrics();
+
+        var result = wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_platform"), new Headers(List.of()));
+
+        assertEquals(result.resultingResponse().getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+        assertEquals(metrics.counter("minum_endpoint_accounted_requests", "route", "accounting_platform").get(), 1L);
+        assertTrue(metrics.counter("minum_endpoint_allocated_bytes", "route", "accounting_platform").get() >= 1024 * 1024);
+        assertTrue(metrics.counter("minum_endpoint_cpu_nanos", "route", "accounting_platform").get() >= 0);
+    }
+
+    /**
+     * The JVM does not measure virtual threads, so the endpoint is
+     * run on a platform thread while the virtual thread waits.
+     */
+    @Test
+    public void test_Accounting_VirtualThread() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "accounting_virtual", request -> Response.htmlOk(Thread.currentThread().isVirtual() ? "virtual" : "platform"));
+        MetricsRegistry metrics = context.getMetrics();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var result = executor.submit(() -> wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_virtual"), new Headers(List.of()))).get();
+            assertEquals(new String(((Response) result.resultingResponse()).getBody()), "platform");
+        }
+
+        assertEquals(metrics.counter("minum_endpoint_accounted_requests", "route", "accounting_virtual").get(), 1L);
+        assertTrue(metrics.counter("minum_endpoint_allocated_bytes", "route", "accounting_virtual").get() > 0);
+    }
+
+    /**
+     * An exception from the endpoint reaches the usual handling, and
+     * the work done before it is still counted.
+     */
+    @Test
+    public void test_Accounting_EndpointThrows() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "accounting_throws", request -> { throw new IllegalStateException("accounting test"); });
+        MetricsRegistry metrics = context.getMetrics();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var result = executor.submit(() -> wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_throws"), new Headers(List.of()))).get();
+            assertEquals(result.resultingResponse().getStatusCode(), StatusLine.StatusCode.CODE_500_INTERNAL_SERVER_ERROR);
+        }
+
+        assertEquals(metrics.counter("minum_endpoint_accounted_requests", "route", "accounting_throws").get(), 1L);
+    }
+
+    /**
+     * There is no fixed count of platform threads, so more endpoints than
+     * there are carrier threads can be running, or waiting, at once.
+     */
+    @Test
+    public void test_Accounting_NotLimitedToCarrierThreads() throws Exception {
+        var wf = new WebFramework(context);
+        int requestCount = Runtime.getRuntime().availableProcessors() + 2;
+        var allRunning = new CyclicBarrier(requestCount);
+        wf.registerPath(GET, "accounting_unlimited", request -> {
+            allRunning.await(5, TimeUnit.SECONDS);
+            return Response.htmlOk("ok");
+        });
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<WebFramework.ProcessingResult>>();
+            for (int i = 0; i < requestCount; i++) {
+                futures.add(executor.submit(() -> wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_unlimited"), new Headers(List.of()))));
+            }
+            for (var future : futures) {
+                assertEquals(future.get().resultingResponse().getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+            }
+        } finally {
+            wf.shutdown();
+        }
+    }
+
+    /**
+     * Only the endpoint itself is measured - not the pre-handler around it - and
+     * an endpoint with a deadline is measured on the thread that runs it.
+     */
+    @Test
+    public void test_Accounting_OnlyTheEndpoint() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPreHandler(inputs -> {
+            preHandlerAllocation = new byte[8 * 1024 * 1024];
+            return inputs.endpoint().apply(inputs.clientRequest());
+        });
+        wf.registerPath(GET, "accounting_small", request -> Response.htmlOk("small"));
+        wf.registerPath(GET, "accounting_deadline", request -> Response.htmlOk("length: " + new byte[1024 * 1024].length),
+                RouteOptions.DEFAULT.withDeadline(Duration.ofSeconds(5)));
+        MetricsRegistry metrics = context.getMetrics();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_small"), new Headers(List.of()))).get();
+            executor.submit(() -> wf.processRequest(new FakeSocketWrapper(), requestLine("accounting_deadline"), new Headers(List.of()))).get();
+        } finally {
+            wf.shutdown();
+        }
+
+        assertEquals(metrics.counter("minum_endpoint_accounted_requests", "route", "accounting_small").get(), 1L);
+        assertTrue(metrics.counter("minum_endpoint_allocated_bytes", "route", "accounting_small").get() < 8 * 1024 * 1024);
+        assertEquals(metrics.counter("minum_endpoint_accounted_requests", "route", "accounting_deadline").get(), 1L);
+        assertTrue(metrics.counter("minum_endpoint_allocated_bytes", "route", "accounting_deadline").get() >= 1024 * 1024);
+    }
+
+    /**
+     * The diagnostics list the routes allocating the most, most first
+     */
+    @Test
+    public void test_Diagnostics_TopEndpoints() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("minum_endpoint_accounted_requests", "route", "small").add(2);
+        metrics.counter("minum_endpoint_allocated_bytes", "route", "small").add(100);
+        metrics.counter("minum_endpoint_accounted_requests", "route", "large").add(4);
+        metrics.counter("minum_endpoint_allocated_bytes", "route", "large").add(8000);
+        metrics.counter("minum_endpoint_cpu_nanos", "route", "large").add(50);
+        var metricsEndpoints = new MetricsEndpoints(metrics, context.getActionQueueState(), System.currentTimeMillis(), Set.of());
+
+        String body = metricsEndpoints.renderDiagnostics();
+
+        assertTrue(body.contains("\"endpoints_by_allocation\":[" +
+                "{\"route\":\"large\",\"requests\":4,\"allocated_bytes\":8000,\"allocated_bytes_per_request\":2000,\"cpu_nanos\":50}," +
+                "{\"route\":\"small\",\"requests\":2,\"allocated_bytes\":100,\"allocated_bytes_per_request\":50,\"cpu_nanos\":0}]"));
+        // reading the diagnostics does not create metrics
+        assertEquals(metrics.getCounters().size(), 5);
+    }
+
+    private RequestLine requestLine(String path) {
+        return new RequestLine(GET, new PathDetails(path, "", Map.of()), HttpVersion.ONE_DOT_ONE, "GET /" + path + " HTTP/1.1", context.getLogger());
+    }
+}
@@ -1,6 +1,7 @@
 package com.renomad.minum.web;
 
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 public class FakeBodyProcessor implements IBodyProcessor {
     public Body data;
@@ -19,4 +20,14 @@ public class FakeBodyProcessor implements IBodyProcessor {
     public Iterable<StreamingMultipartPartition> getMultiPartIterable(InputStream inputStream, String boundaryValue, int contentLength) {
         return null;
     }
+
+    @Override
+    public long checkStreamedBodyLength(Headers headers) {
+        return 0;
+    }
+
+    @Override
+    public long writeBody(InputStream inputStream, Headers headers, WritableByteChannel target) {
+        return 0;
+    }
 }
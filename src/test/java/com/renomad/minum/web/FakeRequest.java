@@ -1,11 +1,17 @@
 package com.renomad.minum.web;
 
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
 public class FakeRequest implements IRequest {
     public RequestLine requestLine;
+    public Headers headers;
+    public String remoteRequester;
+    public Body body;
 
     @Override
     public Headers getHeaders() {
-        return null;
+        return headers;
     }
 
     @Override
@@ -15,12 +21,12 @@ public class FakeRequest implements IRequest {
 
     @Override
     public Body getBody() {
-        return null;
+        return body;
     }
 
     @Override
     public String getRemoteRequester() {
-        return null;
+        return remoteRequester;
     }
 
     @Override
@@ -37,4 +43,14 @@ public class FakeRequest implements IRequest {
     public Iterable<StreamingMultipartPartition> getMultipartIterable() {
         return null;
     }
+
+    @Override
+    public long writeBodyTo(Path path) {
+        return 0;
+    }
+
+    @Override
+    public long writeBodyTo(WritableByteChannel channel) {
+        return 0;
+    }
 }
@@ -0,0 +1,74 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.HttpStageEvent;
+import com.renomad.minum.state.Context;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class FlightRecorderEventsTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * With a recording running, each request produces an event with its
+     * route and status, and events for the stages within it.
+     */
+    @Test
+    public void test_RequestAndStageEvents() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(POST, "jfr_echo", request -> Response.htmlOk(request.getBody().asString().repeat(1000)));
+        var transport = new InMemoryTransport(context, wf);
+        Path recordingFile = Files.createTempFile("minum_test", ".jfr");
+
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            recording.enable("minum.HttpRequest").withoutThreshold();
+            recording.enable("minum.HttpStage").withoutThreshold();
+            recording.start();
+            transport.send("POST /jfr_echo HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n" +
+                    "Content-Type: text/plain\r\nContent-Length: 5\r\nConnection: close\r\n\r\nhello");
+            recording.stop();
+            recording.dump(recordingFile);
+            events = RecordingFile.readAllEvents(recordingFile);
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+
+        RecordedEvent requestEvent = events.stream().filter(x -> x.getEventType().getName().equals("minum.HttpRequest")).findFirst().orElseThrow();
+        assertEquals(requestEvent.getString("method"), "POST");
+        assertEquals(requestEvent.getString("route"), "jfr_echo");
+        assertEquals(requestEvent.getInt("status"), 200);
+
+        List<String> stages = events.stream()
+                .filter(x -> x.getEventType().getName().equals("minum.HttpStage"))
+                .map(x -> x.getString("stage"))
+                .toList();
+        assertTrue(stages.containsAll(List.of(
+                HttpStageEvent.READ_HEAD,
+                HttpStageEvent.READ_BODY,
+                HttpStageEvent.HANDLER,
+                HttpStageEvent.COMPRESS,
+                HttpStageEvent.WRITE)), "stages were: " + stages);
+    }
+}
@@ -0,0 +1,91 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class InMemoryTransportTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * A request runs through the whole pipeline, and the raw response comes back
+     */
+    @Test
+    public void test_InMemoryTransport_Get() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "hello", request -> Response.htmlOk("hello " + request.getRemoteRequester()));
+        var transport = new InMemoryTransport(context, wf);
+
+        String response = transport.send("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+        assertTrue(response.contains("Content-Length: 15\r\n"), response);
+        assertTrue(response.endsWith("\r\n\r\nhello 127.0.0.1"), response);
+    }
+
+    /**
+     * Several requests sent together, as with keep-alive, each get a response.
+     * The transport may be used again afterwards.
+     */
+    @Test
+    public void test_InMemoryTransport_KeepAlive() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(POST, "echo", request -> Response.htmlOk(request.getBody().asString()));
+        var transport = new InMemoryTransport(context, wf);
+        String post = "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\nContent-Length: 3\r\n\r\n";
+
+        String response = transport.send(post + "abc" + post + "xyz" + "GET /nothing_here HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertEquals(response.split("HTTP/1.1 200 OK", -1).length, 3);
+        assertTrue(response.contains("abc"));
+        assertTrue(response.contains("xyz"));
+        assertTrue(response.contains("HTTP/1.1 404 NOT FOUND"), response);
+
+        assertTrue(transport.send(post + "def").endsWith("def"));
+    }
+
+    /**
+     * Compression happens just as it does over a socket
+     */
+    @Test
+    public void test_InMemoryTransport_Compression() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "big", request -> Response.htmlOk("a".repeat(10_000)));
+        var transport = new InMemoryTransport(context, wf);
+
+        byte[] response = transport.send("GET /big HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+
+        String text = new String(response, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("Content-Encoding: gzip\r\n"), text);
+        assertTrue(response.length < 1000);
+    }
+
+    /**
+     * The calling thread keeps its name
+     */
+    @Test
+    public void test_InMemoryTransport_ThreadName() throws Exception {
+        var transport = new InMemoryTransport(context, new WebFramework(context));
+        String name = Thread.currentThread().getName();
+        transport.send("GET /hello HTTP/1.1\r\n\r\n");
+        assertEquals(Thread.currentThread().getName(), name);
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 
 import static com.renomad.minum.testing.TestFramework.*;
@@ -97,6 +98,25 @@ public class InputStreamUtilsTests {
         }
     }
 
+    /**
+     * The length given is what the client claimed, so memory is taken as the
+     * bytes arrive, not all at once.  A client claiming a large body and sending
+     * little of it does not make us hold the whole amount.
+     */
+    @Test
+    public void testReading_EdgeCase_ClaimedLengthNotAllocatedUpFront() {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var inputStream = new ByteArrayInputStream(new byte[10]);
+        int claimedLength = 100 * 1024 * 1024;
+
+        long allocatedAtStart = threadBean.getCurrentThreadAllocatedBytes();
+        var exception = assertThrows(ForbiddenUseException.class, () -> inputStreamUtils.read(claimedLength, inputStream));
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedAtStart;
+
+        assertEquals(exception.getMessage(), "length of bytes read (10) must be what we expected (104857600)");
+        assertTrue(allocated < 1024 * 1024, "allocated " + allocated + " bytes");
+    }
+
     @Test
     public void testEquals() {
         EqualsVerifier.forClass(InputStreamUtils.class).verify();
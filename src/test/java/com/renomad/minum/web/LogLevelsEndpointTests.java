@@ -0,0 +1,136 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.logging.Logger;
+import com.renomad.minum.logging.LoggingLevel;
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class LogLevelsEndpointTests {
+
+    private static Context context;
+    private static Logger logger;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+        logger = (Logger) context.getLogger();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    @Test
+    public void test_Get() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerLogLevelsEndpoint("loglevels", List.of("127.0.0.1"));
+        Set<LoggingLevel> originalLevels = logger.getEnabledLevels();
+        logger.setEnabledLevels(List.of(LoggingLevel.DEBUG, LoggingLevel.AUDIT));
+        try {
+            Response response = (Response) wf.findEndpointForThisStartline(requestLine(GET), new Headers(List.of())).apply(request("127.0.0.1", Map.of()));
+
+            assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+            assertEquals(new String(response.getBody()), "{\"levels\":[\"DEBUG\",\"AUDIT\"],\"trace_sample_rate\":1}");
+        } finally {
+            logger.setEnabledLevels(originalLevels);
+        }
+    }
+
+    /**
+     * Posting changes the levels and sample rate, taking effect at once
+     */
+    @Test
+    public void test_Post() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerLogLevelsEndpoint("loglevels", List.of("127.0.0.1"));
+        Set<LoggingLevel> originalLevels = logger.getEnabledLevels();
+        try {
+            Response response = (Response) wf.findEndpointForThisStartline(requestLine(POST), new Headers(List.of()))
+                    .apply(request("127.0.0.1", Map.of("levels", "debug, trace,AUDIT", "trace_sample_rate", "50")));
+
+            assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+            assertEquals(new String(response.getBody()), "{\"levels\":[\"DEBUG\",\"TRACE\",\"AUDIT\"],\"trace_sample_rate\":50}");
+            assertEquals(logger.getEnabledLevels(), Set.of(LoggingLevel.DEBUG, LoggingLevel.TRACE, LoggingLevel.AUDIT));
+            assertEquals(logger.getTraceSampleRate(), 50);
+        } finally {
+            logger.setEnabledLevels(originalLevels);
+            logger.setTraceSampleRate(1);
+        }
+    }
+
+    /**
+     * A change to the log levels is recorded as AUDIT, so it is kept
+     * even when the new levels turn off DEBUG.
+     */
+    @Test
+    public void test_Post_Audited() {
+        var output = new ByteArrayOutputStream();
+        var auditedLogger = new Logger(context.getConstants(), Executors.newVirtualThreadPerTaskExecutor(), "audit test",
+                (bytes, length) -> output.write(bytes, 0, length));
+        var endpoint = new LogLevelsEndpoint(auditedLogger, Set.of("127.0.0.1"));
+
+        endpoint.post(request("127.0.0.1", Map.of("levels", "AUDIT")));
+        auditedLogger.stop();
+
+        assertTrue(output.toString(StandardCharsets.UTF_8).contains("\tAUDIT\tLog levels changed by 127.0.0.1 to [AUDIT], trace sample rate 1"), output.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Nothing is changed if any part of the request is invalid
+     */
+    @Test
+    public void test_Post_Invalid() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerLogLevelsEndpoint("loglevels", List.of("127.0.0.1"));
+        Set<LoggingLevel> originalLevels = logger.getEnabledLevels();
+        var endpoint = wf.findEndpointForThisStartline(requestLine(POST), new Headers(List.of()));
+
+        var badLevel = endpoint.apply(request("127.0.0.1", Map.of("levels", "DEBUG,VERBOSE", "trace_sample_rate", "5")));
+        var badRate = endpoint.apply(request("127.0.0.1", Map.of("levels", "TRACE", "trace_sample_rate", "0")));
+
+        assertEquals(badLevel.getStatusCode(), StatusLine.StatusCode.CODE_400_BAD_REQUEST);
+        assertEquals(badRate.getStatusCode(), StatusLine.StatusCode.CODE_400_BAD_REQUEST);
+        assertEquals(logger.getEnabledLevels(), originalLevels);
+        assertEquals(logger.getTraceSampleRate(), 1);
+    }
+
+    @Test
+    public void test_Forbidden() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerLogLevelsEndpoint("loglevels", List.of("127.0.0.1"));
+
+        var getResponse = wf.findEndpointForThisStartline(requestLine(GET), new Headers(List.of())).apply(request("10.0.0.5", Map.of()));
+        var postResponse = wf.findEndpointForThisStartline(requestLine(POST), new Headers(List.of())).apply(request("10.0.0.5", Map.of("levels", "TRACE")));
+
+        assertEquals(getResponse.getStatusCode(), StatusLine.StatusCode.CODE_403_FORBIDDEN);
+        assertEquals(postResponse.getStatusCode(), StatusLine.StatusCode.CODE_403_FORBIDDEN);
+    }
+
+    private static RequestLine requestLine(RequestLine.Method method) {
+        return new RequestLine(method, new PathDetails("loglevels", "", Map.of()), HttpVersion.ONE_DOT_ONE, method + " /loglevels HTTP/1.1", context.getLogger());
+    }
+
+    private static FakeRequest request(String remoteAddress, Map<String, String> form) {
+        var request = new FakeRequest();
+        request.remoteRequester = remoteAddress;
+        Map<String, byte[]> bodyMap = new HashMap<>();
+        form.forEach((key, value) -> bodyMap.put(key, value.getBytes(StandardCharsets.UTF_8)));
+        request.body = new Body(bodyMap, new byte[0], List.of(), BodyType.FORM_URL_ENCODED);
+        return request;
+    }
+}
@@ -0,0 +1,94 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class MetricsEndpointsTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * An allowed client gets the metrics in the Prometheus format
+     */
+    @Test
+    public void test_Metrics_Allowed() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerMetricsEndpoints("metrics", "diagnostics", List.of("127.0.0.1"));
+        context.getMetrics().counter("metrics_endpoint_test", "kind", "example").add(3);
+
+        Response response = (Response) wf.findEndpointForThisStartline(requestLine("metrics"), new Headers(List.of())).apply(request("127.0.0.1"));
+
+        assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+        String body = new String(response.getBody());
+        assertTrue(body.contains("# TYPE metrics_endpoint_test_total counter\nmetrics_endpoint_test_total{kind=\"example\"} 3\n"));
+        assertTrue(body.contains("# TYPE jvm_heap_used_bytes gauge\n"));
+    }
+
+    /**
+     * Anyone not on the list of allowed addresses is forbidden
+     */
+    @Test
+    public void test_Metrics_Forbidden() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerMetricsEndpoints("metrics", "diagnostics", List.of("127.0.0.1"));
+
+        var metricsResponse = wf.findEndpointForThisStartline(requestLine("metrics"), new Headers(List.of())).apply(request("10.0.0.5"));
+        var diagnosticsResponse = wf.findEndpointForThisStartline(requestLine("diagnostics"), new Headers(List.of())).apply(request("10.0.0.5"));
+
+        assertEquals(metricsResponse.getStatusCode(), StatusLine.StatusCode.CODE_403_FORBIDDEN);
+        assertEquals(diagnosticsResponse.getStatusCode(), StatusLine.StatusCode.CODE_403_FORBIDDEN);
+    }
+
+    @Test
+    public void test_Diagnostics() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerMetricsEndpoints("metrics", "diagnostics", List.of("127.0.0.1"));
+        context.getMetrics().gauge("minum_db_entries", () -> 12, "db", "photos");
+
+        Response response = (Response) wf.findEndpointForThisStartline(requestLine("diagnostics"), new Headers(List.of())).apply(request("127.0.0.1"));
+
+        assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_200_OK);
+        assertEquals(response.getExtraHeaderValue("content-type"), "application/json; charset=utf-8");
+        String body = new String(response.getBody());
+        assertTrue(body.startsWith("{\"uptime_millis\":"));
+        assertTrue(body.contains("\"database_entries\":{") && body.contains("\"photos\":12"));
+        assertTrue(body.contains("\"static_cache\":{\"hits\":"));
+        assertTrue(body.contains("\"heap_used_bytes\":"));
+        assertTrue(body.endsWith("}}}"));
+    }
+
+    @Test
+    public void test_AppendJsonString() {
+        var sb = new StringBuilder();
+        MetricsEndpoints.appendJsonString(sb, "a\"b\\c\nd\u0001");
+        assertEquals(sb.toString(), "\"a\\\"b\\\\c\\nd\\u0001\"");
+    }
+
+    private static RequestLine requestLine(String path) {
+        return new RequestLine(GET, new PathDetails(path, "", Map.of()), HttpVersion.ONE_DOT_ONE, "GET /" + path + " HTTP/1.1", context.getLogger());
+    }
+
+    private static FakeRequest request(String remoteAddress) {
+        var request = new FakeRequest();
+        request.remoteRequester = remoteAddress;
+        return request;
+    }
+}
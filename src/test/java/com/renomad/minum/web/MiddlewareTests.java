@@ -0,0 +1,144 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class MiddlewareTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Middleware runs in the order registered, the first being outermost
+     */
+    @Test
+    public void test_Middleware_Order() throws Exception {
+        var wf = new WebFramework(context);
+        var calls = new ArrayList<String>();
+        wf.registerMiddleware(recording(calls, "first"));
+        wf.registerMiddleware(recording(calls, "second"));
+        wf.registerPath(GET, "hello", request -> {
+            calls.add("endpoint");
+            return Response.htmlOk("hi");
+        });
+
+        assertEquals(get(wf, GET, "hello"), "hi");
+        assertEquals(calls, List.of("first before", "second before", "endpoint", "second after", "first after"));
+    }
+
+    /**
+     * Middleware scoped to a path prefix, or a single route, runs only for those endpoints
+     */
+    @Test
+    public void test_Middleware_Scoping() throws Exception {
+        var wf = new WebFramework(context);
+        var calls = new ArrayList<String>();
+        wf.registerMiddleware("admin/", recording(calls, "admin"));
+        wf.registerMiddleware(POST, "upload", recording(calls, "upload"));
+        wf.registerPath(GET, "admin/users", request -> Response.htmlOk("users"));
+        wf.registerPath(GET, "upload", request -> Response.htmlOk("upload form"));
+        wf.registerPath(POST, "upload", request -> Response.htmlOk("uploaded"));
+        wf.registerPath(GET, "home", request -> Response.htmlOk("home"));
+
+        get(wf, GET, "home");
+        get(wf, GET, "upload");
+        assertEquals(calls, List.of());
+
+        get(wf, GET, "admin/users");
+        assertEquals(calls, List.of("admin before", "admin after"));
+
+        calls.clear();
+        get(wf, POST, "upload");
+        assertEquals(calls, List.of("upload before", "upload after"));
+    }
+
+    /**
+     * A middleware may answer on its own, and the endpoint is never
+     * run.  This happens before a cached response is served.
+     */
+    @Test
+    public void test_Middleware_ShortCircuit() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        wf.registerPath(GET, "secure/report", request -> Response.htmlOk("report " + runCount.incrementAndGet()),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1))));
+        assertEquals(get(wf, GET, "secure/report"), "report 1");
+
+        // registered after the endpoint, it still applies
+        wf.registerMiddleware("secure/", (request, next) -> {
+            if (request.getHeaders().valueByKey("authorization") != null) {
+                return next.apply(request);
+            }
+            return Response.buildResponse(StatusLine.StatusCode.CODE_403_FORBIDDEN, Map.of(), "forbidden");
+        });
+
+        assertEquals(get(wf, GET, "secure/report"), "forbidden");
+        assertEquals(runCount.get(), 1);
+    }
+
+    /**
+     * The chain is composed once, at registration, so each request
+     * gets the same function back.  With no middleware applying, the
+     * endpoint is not wrapped at all.
+     */
+    @Test
+    public void test_Middleware_ComposedOnce() {
+        var wf = new WebFramework(context);
+        ThrowingFunction<IRequest, IResponse> partialHandler = request -> Response.htmlOk("challenge");
+        wf.registerPartialPath(GET, ".well-known/acme-challenge", partialHandler);
+        wf.registerMiddleware("admin/", (request, next) -> next.apply(request));
+        wf.registerPath(GET, "admin/users", request -> Response.htmlOk("users"));
+
+        var first = wf.findEndpointForThisStartline(requestLine(GET, "admin/users"), new Headers(List.of()));
+        var second = wf.findEndpointForThisStartline(requestLine(GET, "admin/users"), new Headers(List.of()));
+        assertTrue(first == second);
+        assertTrue(wf.findHandlerByPartialMatch(requestLine(GET, ".well-known/acme-challenge/abc")) == partialHandler);
+    }
+
+    private static Middleware recording(List<String> calls, String name) {
+        return (request, next) -> {
+            calls.add(name + " before");
+            IResponse response = next.apply(request);
+            calls.add(name + " after");
+            return response;
+        };
+    }
+
+    private static RequestLine requestLine(RequestLine.Method method, String path) {
+        return new RequestLine(RequestLine.Method.NONE, PathDetails.empty, HttpVersion.NONE, "", context.getLogger())
+                .extractRequestLine(method + " /" + path + " HTTP/1.1");
+    }
+
+    /**
+     * Run a request through the framework's endpoint lookup, returning the body as text
+     */
+    private static String get(WebFramework wf, RequestLine.Method method, String path) throws Exception {
+        var request = new FakeRequest();
+        request.requestLine = requestLine(method, path);
+        request.headers = new Headers(List.of());
+        IResponse response = wf.findEndpointForThisStartline(request.requestLine, request.headers).apply(request);
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+}
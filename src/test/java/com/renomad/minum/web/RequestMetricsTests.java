@@ -0,0 +1,80 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.metrics.MetricsRegistry;
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class RequestMetricsTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Requests are counted by route and status, and endpoints are timed by route
+     */
+    @Test
+    public void test_RequestsCountedByRouteAndStatus() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "metrics_hello", request -> Response.htmlOk("hello"));
+        MetricsRegistry metrics = context.getMetrics();
+
+        wf.processRequest(new FakeSocketWrapper(), requestLine("metrics_hello"), new Headers(List.of()));
+        wf.processRequest(new FakeSocketWrapper(), requestLine("metrics_hello"), new Headers(List.of()));
+        wf.processRequest(new FakeSocketWrapper(), requestLine("metrics_missing_endpoint"), new Headers(List.of()));
+
+        assertEquals(metrics.counter("minum_requests", "method", "GET", "route", "metrics_hello", "status", "200").get(), 2L);
+        assertEquals(metrics.histogram("minum_handler_duration", "route", "metrics_hello").getCount(), 2L);
+        assertTrue(metrics.counter("minum_requests", "method", "GET", "route", WebFramework.STATIC_ROUTE, "status", "404").get() >= 1L);
+    }
+
+    /**
+     * A route's metrics are those in the registry, created only once used
+     */
+    @Test
+    public void test_RouteMetrics() {
+        var metrics = new MetricsRegistry();
+        var routeMetrics = new RouteMetrics(metrics, "metrics_route");
+        assertTrue(metrics.getCounters().isEmpty());
+        assertTrue(metrics.getHistograms().isEmpty());
+
+        routeMetrics.requests(GET, StatusLine.StatusCode.CODE_200_OK).increment();
+        routeMetrics.requests(GET, StatusLine.StatusCode.CODE_200_OK).increment();
+        routeMetrics.handlerDuration().record(5);
+
+        assertEquals(metrics.getCounters().size(), 1);
+        assertEquals(metrics.counter("minum_requests", "method", "GET", "route", "metrics_route", "status", "200").get(), 2L);
+        assertEquals(metrics.histogram("minum_handler_duration", "route", "metrics_route").getCount(), 1L);
+    }
+
+    /**
+     * The route of a partial path is the path as registered, not as requested
+     */
+    @Test
+    public void test_PartialPathRoute() {
+        var wf = new WebFramework(context);
+        wf.registerPartialPath(GET, "metrics_partial/", request -> Response.htmlOk("hello"));
+        WebFramework.Route route = wf.findRoute(requestLine("metrics_partial/abc"), new Headers(List.of()));
+        assertEquals(route.name(), "metrics_partial/");
+    }
+
+    private RequestLine requestLine(String path) {
+        return new RequestLine(GET, new PathDetails(path, "", Map.of()), HttpVersion.ONE_DOT_ONE, "GET /" + path + " HTTP/1.1", context.getLogger());
+    }
+}
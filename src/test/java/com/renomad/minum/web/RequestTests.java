@@ -9,6 +9,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -69,6 +70,10 @@ public class RequestTests {
                         )
                 )
                 .suppress(Warning.NONFINAL_FIELDS)
+                .withPrefabValues(CountingInputStream.class,
+                        new CountingInputStream(new ByteArrayInputStream(new byte[0])),
+                        new CountingInputStream(new ByteArrayInputStream(new byte[1])))
+                .withIgnoredFields("bodyInputStream")
                 .verify();
     }
 
@@ -830,6 +835,164 @@ public class RequestTests {
         }
     }
 
+    /**
+     * A body of known length may be written straight into a file, without
+     * being held in memory.  Any bytes after the body (e.g. the next request
+     * on a keep-alive connection) must be left on the stream.
+     */
+    @Test
+    public void test_Request_WriteBodyTo_Path() throws IOException {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        byte[] bodyBytes = "a".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        byte[] nextRequest = "GET /next HTTP/1.1".getBytes(StandardCharsets.UTF_8);
+        socketWrapper.is = new SequenceInputStream(new ByteArrayInputStream(bodyBytes), new ByteArrayInputStream(nextRequest));
+        IRequest request = makeRequest(List.of("content-length: " + bodyBytes.length, "content-type: application/octet-stream"), socketWrapper);
+        Path path = Path.of("target/request_write_body_test.bin");
+
+        long result = request.writeBodyTo(path);
+
+        assertEquals(result, (long) bodyBytes.length);
+        assertEqualByteArray(Files.readAllBytes(path), bodyBytes);
+        assertEqualByteArray(socketWrapper.is.readAllBytes(), nextRequest);
+        Files.delete(path);
+    }
+
+    @Test
+    public void test_Request_WriteBodyTo_Channel() throws IOException {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        byte[] bodyBytes = "b".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        socketWrapper.is = new ByteArrayInputStream(bodyBytes);
+        IRequest request = makeRequest(List.of("content-length: " + bodyBytes.length), socketWrapper);
+        var outputStream = new ByteArrayOutputStream();
+
+        long result = request.writeBodyTo(Channels.newChannel(outputStream));
+
+        assertEquals(result, (long) bodyBytes.length);
+        assertEqualByteArray(outputStream.toByteArray(), bodyBytes);
+    }
+
+    /**
+     * If the client stops sending before the whole body arrives,
+     * we throw an exception and don't leave a partial file behind.
+     */
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_PartialBody() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        socketWrapper.is = new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8));
+        IRequest request = makeRequest(List.of("content-length: 10"), socketWrapper);
+        Path path = Path.of("target/request_write_body_partial_test.bin");
+
+        var ex = assertThrows(WebServerException.class, () -> request.writeBodyTo(path));
+
+        assertEquals(ex.getMessage(), "java.io.IOException: Error: The inputstream has closed unexpectedly while reading. Expected 10 bytes, received 3");
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_NoContentLength() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        IRequest request = makeRequest(List.of("transfer-encoding: chunked"), socketWrapper);
+
+        var ex = assertThrows(WebServerException.class, () -> request.writeBodyTo(Channels.newChannel(new ByteArrayOutputStream())));
+
+        assertEquals(ex.getMessage(), "Error: a content-length header is required to write the body to a channel. Minum does not read chunked transfer-encoding.");
+    }
+
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_TooLong() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        IRequest request = makeRequest(List.of("content-length: " + Integer.MAX_VALUE), socketWrapper);
+
+        var ex = assertThrows(ForbiddenUseException.class, () -> request.writeBodyTo(Channels.newChannel(new ByteArrayOutputStream())));
+
+        assertEquals(ex.getMessage(), "It is disallowed to stream a body with a length more than 1073741824 bytes");
+    }
+
+    /**
+     * A content-length beyond what fits in an int is read as a long,
+     * so the complaint is about the size limit rather than parsing.
+     */
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_LongerThanInt() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        IRequest request = makeRequest(List.of("content-length: 3000000000"), socketWrapper);
+
+        var ex = assertThrows(ForbiddenUseException.class, () -> request.writeBodyTo(Channels.newChannel(new ByteArrayOutputStream())));
+
+        assertEquals(ex.getMessage(), "It is disallowed to stream a body with a length more than 1073741824 bytes");
+    }
+
+    /**
+     * An invalid request is refused before the file is opened, so
+     * an existing file at that path is left untouched.
+     */
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_InvalidLeavesExistingFile() throws IOException {
+        Path path = Path.of("target/request_write_body_existing_test.bin");
+        Files.writeString(path, "keep me");
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        IRequest request = makeRequest(List.of("transfer-encoding: chunked"), socketWrapper);
+
+        assertThrows(WebServerException.class, () -> request.writeBodyTo(path));
+
+        assertEquals(Files.readString(path), "keep me");
+        Files.delete(path);
+    }
+
+    @Test
+    public void test_Request_WriteBodyTo_EdgeCase_ComplaintAfterGetBody() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        byte[] bytes = "foo=bar".getBytes(StandardCharsets.UTF_8);
+        socketWrapper.is = new ByteArrayInputStream(bytes);
+        IRequest request = makeRequest(List.of("content-length: " + bytes.length), socketWrapper);
+        request.getBody();
+
+        var ex = assertThrows(WebServerException.class, () -> request.writeBodyTo(Path.of("target/should_not_exist.bin")));
+
+        assertEquals(ex.getMessage(), "Requesting this after getting the body with getBody() will result in incorrect behavior.  If you intend to work with the Request at this level, do not use getBody");
+    }
+
+    /**
+     * The bytes counted for a body are those the framework actually read,
+     * not the content-length the client claimed.
+     */
+    @Test
+    public void test_Request_BodyBytesRead() throws IOException {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        byte[] bodyBytes = "c".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        socketWrapper.is = new ByteArrayInputStream(bodyBytes);
+        Request request = (Request) makeRequest(List.of("content-length: " + bodyBytes.length), socketWrapper);
+        assertEquals(request.getBodyBytesRead(), 0L);
+
+        request.writeBodyTo(Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertEquals(request.getBodyBytesRead(), (long) bodyBytes.length);
+    }
+
+    /**
+     * A client may claim a much larger body than it sends.  If the handler
+     * stops reading early, only what was read is counted.
+     */
+    @Test
+    public void test_Request_BodyBytesRead_LessThanClaimed() {
+        FakeSocketWrapper socketWrapper = new FakeSocketWrapper();
+        byte[] bytes = """
+                --i_am_a_boundary\r
+                Content-Type: text/plain\r
+                Content-Disposition: form-data; name="text1"\r
+                \r
+                I am a value that is text\r
+                --i_am_a_boundary--\r
+                """.getBytes(StandardCharsets.UTF_8);
+        socketWrapper.is = new ByteArrayInputStream(bytes);
+        Request request = (Request) makeRequest(List.of("content-length: 100000000", "content-type: multipart/form-data; boundary=i_am_a_boundary"), socketWrapper);
+
+        StreamingMultipartPartition partition = request.getMultipartIterable().iterator().next();
+
+        assertEquals(partition.getContentDisposition().getName(), "text1");
+        assertEquals(request.getBodyBytesRead(), (long) bytes.length);
+    }
+
     private IRequest makeRequest(List<String> headers, ISocketWrapper socketWrapper) {
         return new Request(
                 new Headers(headers),
@@ -0,0 +1,313 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class ResponseCacheTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * The second request for the same thing is answered from the cache,
+     * without running the endpoint.
+     */
+    @Test
+    public void test_Cache_Hit() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        wf.registerPath(GET, "photos", request -> Response.htmlOk("photos " + runCount.incrementAndGet()),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1))));
+
+        assertEquals(get(wf, "photos"), "photos 1");
+        assertEquals(get(wf, "photos"), "photos 1");
+        // the query string is ignored unless named in the policy
+        assertEquals(get(wf, "photos?page=2"), "photos 1");
+
+        ResponseCache cache = wf.getResponseCache();
+        assertEquals(cache.getMissCount(), 1L);
+        assertEquals(cache.getHitCount(), 2L);
+        assertEquals(cache.getEntryCount(), 1);
+        assertTrue(cache.getSizeBytes() > 0);
+    }
+
+    /**
+     * Named query parameters and headers each get their own entries
+     */
+    @Test
+    public void test_Cache_Variants() throws Exception {
+        var wf = new WebFramework(context);
+        wf.registerPath(GET, "photos", request -> Response.htmlOk(
+                        "page " + request.getRequestLine().queryString().get("page") +
+                        " in " + request.getHeaders().valueByKey("accept-language")),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1))
+                        .withQueryParameters("page")
+                        .withHeaders("Accept-Language")));
+
+        assertEquals(get(wf, "photos?page=1", "Accept-Language: en"), "page 1 in [en]");
+        assertEquals(get(wf, "photos?page=2", "Accept-Language: en"), "page 2 in [en]");
+        assertEquals(get(wf, "photos?page=1", "Accept-Language: fr"), "page 1 in [fr]");
+        assertEquals(get(wf, "photos", "Accept-Language: fr"), "page null in [fr]");
+        assertEquals(get(wf, "photos?page=1&other=3", "Accept-Language: en"), "page 1 in [en]");
+
+        assertEquals(wf.getResponseCache().getEntryCount(), 4);
+        assertEquals(wf.getResponseCache().getHitCount(), 1L);
+    }
+
+    /**
+     * Requests with a cookie or authorization are answered by the endpoint, so
+     * one user is never sent a response cached for another.  Naming the header
+     * in the policy caches each user separately, and a policy may opt in to
+     * sharing when the response is the same for everyone.
+     */
+    @Test
+    public void test_Cache_Credentials() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        ThrowingFunction<IRequest, IResponse> account = request ->
+                Response.htmlOk("account for " + request.getHeaders().valueByKey("cookie") + " " + runCount.incrementAndGet());
+        wf.registerPath(GET, "account", account, RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1))));
+        wf.registerPath(GET, "account_by_cookie", account, RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1)).withHeaders("Cookie")));
+        wf.registerPath(GET, "shared", account, RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1)).withCredentialsIgnored()));
+        ResponseCache cache = wf.getResponseCache();
+
+        assertEquals(get(wf, "account", "Cookie: session=alice"), "account for [session=alice] 1");
+        assertEquals(get(wf, "account", "Cookie: session=bob"), "account for [session=bob] 2");
+        assertEquals(get(wf, "account", "Authorization: Basic Y2Fyb2w="), "account for null 3");
+        assertEquals(get(wf, "account", "Cookie: session=alice"), "account for [session=alice] 4");
+        assertEquals(cache.getBypassCount(), 4L);
+        assertEquals(cache.getEntryCount(), 0);
+
+        assertEquals(get(wf, "account_by_cookie", "Cookie: session=alice"), "account for [session=alice] 5");
+        assertEquals(get(wf, "account_by_cookie", "Cookie: session=bob"), "account for [session=bob] 6");
+        assertEquals(get(wf, "account_by_cookie", "Cookie: session=alice"), "account for [session=alice] 5");
+
+        assertEquals(get(wf, "shared", "Cookie: session=alice"), "account for [session=alice] 7");
+        assertEquals(get(wf, "shared", "Cookie: session=bob"), "account for [session=alice] 7");
+        assertEquals(cache.getBypassCount(), 4L);
+    }
+
+    /**
+     * Once expired, but within the stale-while-revalidate window, the stale
+     * response is sent while the endpoint runs in the background.
+     */
+    @Test
+    public void test_Cache_StaleWhileRevalidate() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        wf.registerPath(GET, "photos", request -> Response.htmlOk("photos " + runCount.incrementAndGet()),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMillis(20))
+                        .withStaleWhileRevalidate(Duration.ofMinutes(1))));
+
+        assertEquals(get(wf, "photos"), "photos 1");
+        MyThread.sleep(50);
+        assertEquals(get(wf, "photos"), "photos 1");
+        waitUntil(() -> runCount.get() == 2);
+        waitUntil(() -> {
+            try {
+                return get(wf, "photos").equals("photos 2");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(wf.getResponseCache().getStaleHitCount() >= 1L);
+    }
+
+    /**
+     * If a background refresh returns something that cannot be cached, the
+     * stale entry stays, and a later request tries refreshing again.
+     */
+    @Test
+    public void test_Cache_StaleWhileRevalidate_RefreshNotCacheable() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        wf.registerPath(GET, "photos", request -> runCount.incrementAndGet() == 1 ?
+                        Response.htmlOk("photos 1") :
+                        Response.htmlOk("photos", Map.of("Cache-Control", "no-store")),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMillis(20))
+                        .withStaleWhileRevalidate(Duration.ofMinutes(1))));
+
+        assertEquals(get(wf, "photos"), "photos 1");
+        MyThread.sleep(50);
+        assertEquals(get(wf, "photos"), "photos 1");
+        waitUntil(() -> runCount.get() == 2);
+        waitUntil(() -> {
+            try {
+                get(wf, "photos");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return runCount.get() >= 3;
+        });
+    }
+
+    /**
+     * Without a stale-while-revalidate window, an expired
+     * response is computed again before answering.
+     */
+    @Test
+    public void test_Cache_Expired() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        wf.registerPath(GET, "photos", request -> Response.htmlOk("photos " + runCount.incrementAndGet()),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMillis(20))));
+
+        assertEquals(get(wf, "photos"), "photos 1");
+        MyThread.sleep(50);
+        assertEquals(get(wf, "photos"), "photos 2");
+    }
+
+    @Test
+    public void test_Cache_Invalidation() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        var policy = RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1)).withQueryParameters("page"));
+        wf.registerPath(GET, "photos", request -> Response.htmlOk("photos " + runCount.incrementAndGet()), policy);
+        wf.registerPath(GET, "videos", request -> Response.htmlOk("videos " + runCount.incrementAndGet()), policy);
+        ResponseCache cache = wf.getResponseCache();
+
+        assertEquals(get(wf, "photos?page=1"), "photos 1");
+        assertEquals(get(wf, "photos?page=2"), "photos 2");
+        assertEquals(get(wf, "videos"), "videos 3");
+        assertEquals(cache.getEntryCount(), 3);
+
+        cache.invalidatePath(GET, "photos");
+        assertEquals(cache.getEntryCount(), 1);
+        assertEquals(get(wf, "photos?page=1"), "photos 4");
+        assertEquals(get(wf, "videos"), "videos 3");
+
+        cache.invalidateAll();
+        assertEquals(cache.getEntryCount(), 0);
+        assertEquals(cache.getSizeBytes(), 0L);
+        assertEquals(get(wf, "videos"), "videos 5");
+    }
+
+    /**
+     * When the byte budget is exceeded, the least-recently used entries go first
+     */
+    @Test
+    public void test_Cache_ByteBudget() throws Exception {
+        var cache = new ResponseCache(1000, context.getExecutorService(), context.getLogger());
+        var policy = CachePolicy.forDuration(Duration.ofMinutes(1));
+        ThrowingFunction<IRequest, IResponse> endpoint = request -> Response.buildResponse(
+                StatusLine.StatusCode.CODE_200_OK, Map.of("Content-Type", "application/octet-stream"), new byte[400]);
+
+        cache.getOrCompute(GET, "a", policy, new FakeRequest(), endpoint);
+        cache.getOrCompute(GET, "b", policy, new FakeRequest(), endpoint);
+        // use "a", so "b" is the least-recently used
+        cache.getOrCompute(GET, "a", policy, new FakeRequest(), endpoint);
+        cache.getOrCompute(GET, "c", policy, new FakeRequest(), endpoint);
+
+        assertEquals(cache.getEntryCount(), 2);
+        assertEquals(cache.getEvictionCount(), 1L);
+        assertTrue(cache.getSizeBytes() <= 1000);
+        cache.getOrCompute(GET, "a", policy, new FakeRequest(), endpoint);
+        assertEquals(cache.getHitCount(), 2L);
+
+        // too large to ever fit
+        cache.getOrCompute(GET, "huge", policy, new FakeRequest(), request -> Response.buildResponse(
+                StatusLine.StatusCode.CODE_200_OK, Map.of("Content-Type", "application/octet-stream"), new byte[2000]));
+        assertEquals(cache.getEntryCount(), 2);
+    }
+
+    /**
+     * Large text is kept along with its compressed form, so it
+     * is not compressed again each time it is sent.
+     */
+    @Test
+    public void test_Cache_KeepsCompressedVariant() throws Exception {
+        var cache = new ResponseCache(100_000, context.getExecutorService(), context.getLogger());
+        var policy = CachePolicy.forDuration(Duration.ofMinutes(1));
+        String text = "a".repeat(5000);
+        Response response = (Response) cache.getOrCompute(GET, "a", policy, new FakeRequest(), request -> Response.htmlOk(text));
+
+        Response compressed = response.compressBody();
+        assertTrue(compressed == response.compressBody());
+        assertTrue(compressed.getBody().length < 5000);
+        assertTrue(cache.getSizeBytes() > 5000);
+    }
+
+    /**
+     * Errors, cookies, and "no-store" responses are not cached
+     */
+    @Test
+    public void test_Cache_NotCacheable() throws Exception {
+        var cache = new ResponseCache(100_000, context.getExecutorService(), context.getLogger());
+        var policy = CachePolicy.forDuration(Duration.ofMinutes(1));
+        List<IResponse> responses = List.of(
+                Response.buildLeanResponse(StatusLine.StatusCode.CODE_404_NOT_FOUND),
+                Response.htmlOk("hi", Map.of("Set-Cookie", "id=123")),
+                Response.htmlOk("hi", Map.of("Cache-Control", "no-store")),
+                Response.buildStreamingResponse(StatusLine.StatusCode.CODE_200_OK, Map.of(), sw -> {}, 0));
+        for (IResponse response : responses) {
+            cache.getOrCompute(GET, "a", policy, new FakeRequest(), request -> response);
+        }
+        assertEquals(cache.getEntryCount(), 0);
+        assertEquals(cache.getMissCount(), 4L);
+    }
+
+    @Test
+    public void test_Cache_EdgeCase_OnlyGet() {
+        var wf = new WebFramework(context);
+        var ex = assertThrows(InvariantException.class, () -> wf.registerPath(POST, "photos", request -> Response.htmlOk("hi"),
+                RouteOptions.DEFAULT.withCache(CachePolicy.forDuration(Duration.ofMinutes(1)))));
+        assertEquals(ex.getMessage(), "Only GET endpoints may be cached. Was: POST photos");
+    }
+
+    @Test
+    public void test_CachePolicy_EdgeCases() {
+        var ex = assertThrows(InvariantException.class, () -> CachePolicy.forDuration(Duration.ZERO));
+        assertEquals(ex.getMessage(), "The time to live for a cached response must be positive");
+        var ex2 = assertThrows(InvariantException.class, () -> CachePolicy.forDuration(Duration.ofSeconds(1)).withStaleWhileRevalidate(Duration.ofSeconds(-1)));
+        assertEquals(ex2.getMessage(), "The stale-while-revalidate duration must not be negative");
+        assertEquals(CachePolicy.forDuration(Duration.ofSeconds(1)).withHeaders("Accept-Language").getHeaders(), List.of("accept-language"));
+        assertTrue(CachePolicy.forDuration(Duration.ofSeconds(1)).withCredentialsIgnored().withHeaders("Accept-Language").isIgnoringCredentials());
+        assertFalse(CachePolicy.forDuration(Duration.ofSeconds(1)).isIgnoringCredentials());
+    }
+
+    /**
+     * Run a GET request through the framework's endpoint lookup, returning the body as text
+     */
+    private static String get(WebFramework wf, String pathAndQuery, String... headers) throws Exception {
+        var requestLine = new RequestLine(RequestLine.Method.NONE, PathDetails.empty, HttpVersion.NONE, "", context.getLogger())
+                .extractRequestLine("GET /" + pathAndQuery + " HTTP/1.1");
+        var request = new FakeRequest();
+        request.requestLine = requestLine;
+        request.headers = new Headers(Arrays.asList(headers));
+        IResponse response = wf.findEndpointForThisStartline(requestLine, request.headers).apply(request);
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) return;
+            MyThread.sleep(10);
+        }
+        throw new AssertionError("condition was not met in time");
+    }
+}
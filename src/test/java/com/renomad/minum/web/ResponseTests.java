@@ -1,5 +1,6 @@
 package com.renomad.minum.web;
 
+import com.renomad.minum.utils.InvariantException;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
@@ -13,6 +14,7 @@ import java.util.Map;
 
 import static com.renomad.minum.testing.TestFramework.assertEquals;
 import static com.renomad.minum.testing.TestFramework.assertThrows;
+import static com.renomad.minum.testing.TestFramework.assertTrue;
 import static com.renomad.minum.web.Response.buildStreamingResponse;
 import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
 
@@ -93,4 +95,52 @@ public class ResponseTests {
         assertEquals(s, "hello");
     }
 
+    /**
+     * Internally, the headers of a response are read through a view, rather
+     * than copied.  The view is read-only, and getExtraHeaders still returns
+     * a copy the caller may modify.
+     */
+    @Test
+    public void testResponse_ExtraHeadersView() {
+        var headers = new HashMap<String, String>();
+        headers.put("Content-Type", "text/plain");
+        Response response = (Response)Response.buildResponse(CODE_200_OK, headers, "hello");
+
+        // changing the map we passed in doesn't change the response
+        headers.put("foo", "bar");
+        assertEquals(response.getExtraHeadersView(), Map.of("Content-Type", "text/plain"));
+        assertTrue(response.getExtraHeadersView() == response.getExtraHeadersView());
+        assertThrows(UnsupportedOperationException.class, () -> response.getExtraHeadersView().put("a", "b"));
+
+        Map<String, String> copy = response.getExtraHeaders();
+        copy.put("a", "b");
+        assertEquals(response.getExtraHeaders(), Map.of("Content-Type", "text/plain"));
+
+        assertEquals(response.getExtraHeaderValue("content-type"), "text/plain");
+        assertTrue(response.getExtraHeaderValue("location") == null);
+    }
+
+    /**
+     * Two headers differing only by case are ambiguous, an error
+     */
+    @Test
+    public void testResponse_ExtraHeaderValue_EdgeCase_Duplicate() {
+        Response response = (Response)Response.buildResponse(CODE_200_OK, Map.of("Content-Type", "text/plain", "content-type", "text/html"), "hello");
+        var ex = assertThrows(InvariantException.class, () -> response.getExtraHeaderValue("content-type"));
+        assertEquals(ex.getMessage(), "Must be zero or one of this thing, or it's a bug.  We found a size of 2");
+    }
+
+    /**
+     * Compressing a response shares the headers of the original, rather
+     * than copying them into a new response.
+     */
+    @Test
+    public void testResponse_CompressBody_SharesHeaders() throws IOException {
+        Response response = (Response)Response.htmlOk("hello ".repeat(100));
+        Response compressed = response.compressBody();
+        assertTrue(response.getExtraHeadersView() == compressed.getExtraHeadersView());
+        assertEquals(compressed.getStatusCode(), CODE_200_OK);
+        assertTrue(compressed.getBodyLength() < response.getBodyLength());
+        assertEquals(compressed.getBodyLength(), (long) compressed.getBody().length);
+    }
 }
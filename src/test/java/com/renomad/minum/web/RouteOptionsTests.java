@@ -0,0 +1,138 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class RouteOptionsTests {
+
+    private static Context context;
+    private static IInputStreamUtils inputStreamUtils;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("SERVER_PORT", "7982");
+        context = buildTestingContext("unit_tests", properties);
+        inputStreamUtils = new InputStreamUtils(context.getConstants().maxReadLineSizeBytes);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    @Test
+    public void test_WithDeadline() {
+        assertTrue(RouteOptions.DEFAULT.getDeadline() == null);
+        var options = RouteOptions.DEFAULT.withDeadline(Duration.ofMillis(500));
+        assertEquals(options.getDeadline(), Duration.ofMillis(500));
+        // the default is left unchanged
+        assertTrue(RouteOptions.DEFAULT.getDeadline() == null);
+    }
+
+    @Test
+    public void test_WithDeadline_EdgeCase_NotPositive() {
+        var ex = assertThrows(InvariantException.class, () -> RouteOptions.DEFAULT.withDeadline(Duration.ofMillis(-1)));
+        assertEquals(ex.getMessage(), "The deadline for an endpoint must be positive");
+    }
+
+    /**
+     * An endpoint finishing within its deadline returns its response as usual
+     */
+    @Test
+    public void test_RunWithDeadline_InTime() throws Exception {
+        var wf = new WebFramework(context);
+        long exceededBefore = wf.getDeadlineExceededCount();
+        IResponse response = wf.runWithDeadline(new FakeRequest(), request -> Response.htmlOk("quick"), 1000);
+        assertEquals(new String(response.getBody(), StandardCharsets.UTF_8), "quick");
+        assertEquals(wf.getDeadlineExceededCount(), exceededBefore);
+    }
+
+    /**
+     * An endpoint running too long is interrupted, and the client gets a 503
+     */
+    @Test
+    public void test_RunWithDeadline_Exceeded() throws Exception {
+        var wf = new WebFramework(context);
+        long exceededBefore = wf.getDeadlineExceededCount();
+        var wasInterrupted = new CountDownLatch(1);
+        IResponse response = wf.runWithDeadline(new FakeRequest(), request -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException ex) {
+                wasInterrupted.countDown();
+            }
+            return Response.htmlOk("too late");
+        }, 50);
+
+        assertEquals(response.getStatusCode(), StatusLine.StatusCode.CODE_503_SERVICE_UNAVAILABLE);
+        assertTrue(new String(response.getBody(), StandardCharsets.UTF_8).startsWith("Server unavailable: "));
+        assertEquals(response.getExtraHeaders().get("Connection"), "close");
+        assertTrue(wasInterrupted.await(2, TimeUnit.SECONDS));
+        assertEquals(wf.getDeadlineExceededCount(), exceededBefore + 1);
+        assertEquals(context.getMetrics().counter("minum_deadline_exceeded").get(), wf.getDeadlineExceededCount());
+    }
+
+    /**
+     * An exception thrown by the endpoint is passed along, to
+     * become a 500 as usual.
+     */
+    @Test
+    public void test_RunWithDeadline_Exception() {
+        var wf = new WebFramework(context);
+        var ex = assertThrows(IllegalStateException.class, () -> wf.runWithDeadline(new FakeRequest(), request -> {
+            throw new IllegalStateException("broken");
+        }, 1000));
+        assertEquals(ex.getMessage(), "broken");
+    }
+
+    /**
+     * Over a real connection, a deadline hit returns a 503 and
+     * then closes the connection.
+     */
+    @Test
+    public void test_Deadline_EndToEnd() throws Exception {
+        var wf = new WebFramework(context);
+        long exceededBefore = wf.getDeadlineExceededCount();
+        var webEngine = new WebEngine(context, wf);
+        wf.registerPath(GET, "slow", request -> {
+            Thread.sleep(10_000);
+            return Response.htmlOk("too late");
+        }, RouteOptions.DEFAULT.withDeadline(Duration.ofMillis(100)));
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                client.sendHttpLine("GET /slow HTTP/1.1");
+                client.sendHttpLine("Host: localhost:7982");
+                client.sendHttpLine("");
+
+                InputStream is = client.getInputStream();
+                assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 503 SERVICE UNAVAILABLE");
+                Headers headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                assertEquals(headers.valueByKey("connection"), List.of("close"));
+                assertTrue(headers.valueByKey("keep-alive") == null);
+                is.readNBytes(headers.contentLength());
+                assertEquals(is.read(), -1);
+            }
+        }
+        assertEquals(wf.getDeadlineExceededCount(), exceededBefore + 1);
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+}
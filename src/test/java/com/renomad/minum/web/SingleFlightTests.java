@@ -0,0 +1,225 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.InvariantException;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+import static com.renomad.minum.web.RequestLine.Method.POST;
+
+public class SingleFlightTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("unit_tests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * Identical requests arriving together run the endpoint
+     * once, and share its response.
+     */
+    @Test
+    public void test_SingleFlight_Coalesces() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "report", request -> {
+            release.await();
+            return Response.htmlOk("report " + runCount.incrementAndGet());
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(10)));
+
+        List<Future<String>> results = startRequests(wf, "report", 5);
+        // give the requests time to arrive and begin waiting
+        MyThread.sleep(200);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals(result.get(), "report 1");
+        }
+        assertEquals(runCount.get(), 1);
+        assertEquals(wf.getCoalescedRequestCount(), 4L);
+
+        // once finished, the next request runs the endpoint again
+        assertEquals(get(wf, "report"), "report 2");
+    }
+
+    /**
+     * Requests with different query strings are not identical
+     */
+    @Test
+    public void test_SingleFlight_DifferentQueries() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "report", request -> {
+            release.await();
+            runCount.incrementAndGet();
+            return Response.htmlOk("report " + request.getRequestLine().queryString().get("id"));
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(10)));
+
+        List<Future<String>> first = startRequests(wf, "report?id=1", 1);
+        List<Future<String>> second = startRequests(wf, "report?id=2", 1);
+        MyThread.sleep(100);
+        release.countDown();
+
+        assertEquals(first.getFirst().get(), "report 1");
+        assertEquals(second.getFirst().get(), "report 2");
+        assertEquals(runCount.get(), 2);
+        assertEquals(wf.getCoalescedRequestCount(), 0L);
+    }
+
+    /**
+     * Requests from different users - different cookies or authorization -
+     * are not identical, so neither sees the other's response
+     */
+    @Test
+    public void test_SingleFlight_DifferentCredentials() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "account", request -> {
+            release.await();
+            runCount.incrementAndGet();
+            return Response.htmlOk("account for " + request.getHeaders().valueByKey("cookie") + request.getHeaders().valueByKey("authorization"));
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(10)));
+
+        var alice = context.getExecutorService().submit(() -> get(wf, "account", "Cookie: session=alice"));
+        var bob = context.getExecutorService().submit(() -> get(wf, "account", "Cookie: session=bob"));
+        var carol = context.getExecutorService().submit(() -> get(wf, "account", "Authorization: Basic Y2Fyb2w="));
+        MyThread.sleep(100);
+        release.countDown();
+
+        assertEquals(alice.get(), "account for [session=alice]null");
+        assertEquals(bob.get(), "account for [session=bob]null");
+        assertEquals(carol.get(), "account for null[Basic Y2Fyb2w=]");
+        assertEquals(runCount.get(), 3);
+        assertEquals(wf.getCoalescedRequestCount(), 0L);
+    }
+
+    /**
+     * With a cache policy, requests from different users are still not
+     * identical, unless the policy accounts for their credentials
+     */
+    @Test
+    public void test_SingleFlight_DifferentCredentials_WithCache() throws Exception {
+        var wf = new WebFramework(context);
+        var runCount = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "account", request -> {
+            release.await();
+            runCount.incrementAndGet();
+            return Response.htmlOk("account for " + request.getHeaders().valueByKey("cookie"));
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(10)).withCache(CachePolicy.forDuration(Duration.ofMinutes(1))));
+
+        var alice = context.getExecutorService().submit(() -> get(wf, "account", "Cookie: session=alice"));
+        var bob = context.getExecutorService().submit(() -> get(wf, "account", "Cookie: session=bob"));
+        MyThread.sleep(100);
+        release.countDown();
+
+        assertEquals(alice.get(), "account for [session=alice]");
+        assertEquals(bob.get(), "account for [session=bob]");
+        assertEquals(runCount.get(), 2);
+        assertEquals(wf.getCoalescedRequestCount(), 0L);
+    }
+
+    /**
+     * If the endpoint fails, each waiting request fails the same way
+     */
+    @Test
+    public void test_SingleFlight_ErrorPropagates() throws Exception {
+        var wf = new WebFramework(context);
+        var release = new CountDownLatch(1);
+        wf.registerPath(GET, "report", request -> {
+            release.await();
+            throw new IOException("the database was unavailable");
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(10)));
+
+        List<Future<String>> results = startRequests(wf, "report", 3);
+        MyThread.sleep(200);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            var ex = assertThrows(ExecutionException.class, result::get);
+            assertEquals(ex.getCause().getMessage(), "the database was unavailable");
+        }
+    }
+
+    /**
+     * A request waiting too long on an identical request gets a 504
+     */
+    @Test
+    public void test_SingleFlight_WaiterTimeout() throws Exception {
+        var wf = new WebFramework(context);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        wf.registerPath(GET, "report", request -> {
+            started.countDown();
+            release.await();
+            return Response.htmlOk("report");
+        }, RouteOptions.DEFAULT.withSingleFlight(Duration.ofMillis(50)));
+
+        List<Future<String>> first = startRequests(wf, "report", 1);
+        started.await();
+        assertTrue(get(wf, "report").startsWith("Gateway timeout: "));
+        release.countDown();
+        assertEquals(first.getFirst().get(), "report");
+    }
+
+    @Test
+    public void test_SingleFlight_EdgeCase_OnlyGet() {
+        var wf = new WebFramework(context);
+        var ex = assertThrows(InvariantException.class, () -> wf.registerPath(POST, "report", request -> Response.htmlOk("hi"),
+                RouteOptions.DEFAULT.withSingleFlight(Duration.ofSeconds(1))));
+        assertEquals(ex.getMessage(), "Only GET endpoints may use single-flight. Was: POST report");
+    }
+
+    @Test
+    public void test_IsInMemory() {
+        assertTrue(((Response) Response.htmlOk("hi")).isInMemory());
+        assertTrue(((Response) Response.buildLeanResponse(StatusLine.StatusCode.CODE_204_NO_CONTENT)).isInMemory());
+        assertFalse(((Response) Response.buildStreamingResponse(StatusLine.StatusCode.CODE_200_OK, Map.of(), sw -> {})).isInMemory());
+    }
+
+    private static List<Future<String>> startRequests(WebFramework wf, String pathAndQuery, int count) {
+        var results = new ArrayList<Future<String>>();
+        for (int i = 0; i < count; i++) {
+            results.add(context.getExecutorService().submit(() -> get(wf, pathAndQuery)));
+        }
+        return results;
+    }
+
+    /**
+     * Run a GET request through the framework's endpoint lookup, returning the body as text
+     */
+    private static String get(WebFramework wf, String pathAndQuery, String... headers) throws Exception {
+        var requestLine = new RequestLine(RequestLine.Method.NONE, PathDetails.empty, HttpVersion.NONE, "", context.getLogger())
+                .extractRequestLine("GET /" + pathAndQuery + " HTTP/1.1");
+        var request = new FakeRequest();
+        request.requestLine = requestLine;
+        request.headers = new Headers(List.of(headers));
+        IResponse response = wf.findEndpointForThisStartline(requestLine, request.headers).apply(request);
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+}
@@ -3,14 +3,19 @@ package com.renomad.minum.web;
 import com.renomad.minum.logging.TestLogger;
 import com.renomad.minum.state.Context;
 import org.junit.Before;
+import com.renomad.minum.utils.MyThread;
 import org.junit.Test;
 
+import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 
 import static com.renomad.minum.testing.TestFramework.assertEquals;
+import static com.renomad.minum.testing.TestFramework.assertFalse;
+import static com.renomad.minum.testing.TestFramework.assertTrue;
 import static com.renomad.minum.testing.TestFramework.buildTestingContext;
 
 public class SocketWrapperTests {
@@ -40,4 +45,54 @@ public class SocketWrapperTests {
         SocketWrapper testSocketWrapper = new SocketWrapper(socket, null, logger, 0, "test host");
         testSocketWrapper.send(123);
     }
+
+    /**
+     * Checking for a disconnected client shortens the read timeout only
+     * until the checks are finished, and then puts it back.
+     */
+    @Test
+    public void testDisconnectChecks() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0);
+             Socket client = new Socket("localhost", serverSocket.getLocalPort());
+             Socket accepted = serverSocket.accept()) {
+            SocketWrapper testSocketWrapper = new SocketWrapper(accepted, null, logger, 5000, "test host");
+            // until there is a check, the socket's own stream is used
+            assertFalse(testSocketWrapper.getInputStream() instanceof PushbackInputStream);
+
+            assertFalse(testSocketWrapper.isClientDisconnected());
+            assertEquals(accepted.getSoTimeout(), 1);
+            client.getOutputStream().write(42);
+            client.getOutputStream().flush();
+            MyThread.sleep(50);
+            assertFalse(testSocketWrapper.isClientDisconnected());
+            testSocketWrapper.endDisconnectChecks();
+            assertEquals(accepted.getSoTimeout(), 5000);
+            // the byte read while checking is still there for the next reader
+            assertEquals(testSocketWrapper.getInputStream().read(), 42);
+
+            client.close();
+            assertTrue(testSocketWrapper.isClientDisconnected());
+            testSocketWrapper.endDisconnectChecks();
+            assertEquals(accepted.getSoTimeout(), 5000);
+        }
+    }
+
+    /**
+     * On TLS, the check does not read from the socket, since a read timing
+     * out partway through a TLS record is not safe to resume.
+     */
+    @Test
+    public void testDisconnectChecks_Tls() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0);
+             Socket client = new Socket("localhost", serverSocket.getLocalPort());
+             Socket accepted = serverSocket.accept();
+             Socket tlsSocket = ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(accepted, "localhost", serverSocket.getLocalPort(), false)) {
+            SocketWrapper testSocketWrapper = new SocketWrapper(tlsSocket, null, logger, 5000, "test host");
+
+            client.close();
+            assertFalse(testSocketWrapper.isClientDisconnected());
+            assertEquals(tlsSocket.getSoTimeout(), 5000);
+            assertFalse(testSocketWrapper.getInputStream() instanceof PushbackInputStream);
+        }
+    }
 }
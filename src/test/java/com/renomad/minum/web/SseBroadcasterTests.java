@@ -0,0 +1,327 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.RequestLine.Method.GET;
+
+public class SseBroadcasterTests {
+
+    private static Context context;
+    private static IInputStreamUtils inputStreamUtils;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("SERVER_PORT", "7979");
+        context = buildTestingContext("unit_tests", properties);
+        inputStreamUtils = new InputStreamUtils(context.getConstants().maxReadLineSizeBytes);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    @Test
+    public void test_ServerSentEvent_Encoding() {
+        var event = new ServerSentEvent(5, "update", "first line\nsecond line");
+        assertEquals(new String(event.getEncoded(), StandardCharsets.UTF_8), "id: 5\nevent: update\ndata: first line\ndata: second line\n\n");
+
+        var plainEvent = new ServerSentEvent(6, null, "hello");
+        assertEquals(new String(plainEvent.getEncoded(), StandardCharsets.UTF_8), "id: 6\ndata: hello\n\n");
+    }
+
+    @Test
+    public void test_ServerSentEvent_EdgeCase_LineBreakInEventName() {
+        var ex = assertThrows(WebServerException.class, () -> new ServerSentEvent(1, "foo\nbar", "hello"));
+        assertEquals(ex.getMessage(), "Error: the event name for a server-sent event must not contain line breaks");
+    }
+
+    @Test
+    public void test_GetLastEventId() {
+        assertEquals(SseBroadcaster.getLastEventId(new Headers(List.of())), -1L);
+        assertEquals(SseBroadcaster.getLastEventId(new Headers(List.of("Last-Event-ID: 42"))), 42L);
+        assertEquals(SseBroadcaster.getLastEventId(new Headers(List.of("Last-Event-ID: abc"))), -1L);
+    }
+
+    /**
+     * A client connects over a real socket, and receives the
+     * events published after it subscribes.
+     */
+    @Test
+    public void test_Broadcast_EndToEnd() throws Exception {
+        // a short heartbeat, so the server notices quickly when the client leaves
+        var broadcaster = new SseBroadcaster(context, 100, SlowConsumerPolicy.DISCONNECT, 50, 100);
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        wf.registerPath(GET, "events", broadcaster::subscribe);
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort())) {
+                try (ISocketWrapper client = webEngine.startClient(socket)) {
+                    InputStream is = client.getInputStream();
+                    client.sendHttpLine("GET /events HTTP/1.1");
+                    client.sendHttpLine("Host: localhost:7979");
+                    client.sendHttpLine("");
+
+                    StatusLine statusLine = StatusLine.extractStatusLine(inputStreamUtils.readLine(is));
+                    assertEquals(statusLine.status(), StatusLine.StatusCode.CODE_200_OK);
+                    Headers headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                    assertEquals(headers.valueByKey("content-type"), List.of("text/event-stream"));
+                    assertTrue(headers.valueByKey("content-length") == null);
+                    assertEquals(headers.valueByKey("connection"), List.of("close"));
+
+                    waitUntil(() -> broadcaster.getSubscriberCount() == 1);
+                    broadcaster.publish("greeting", "hello");
+                    broadcaster.publish("two\nlines");
+
+                    assertEquals(readEvent(is), List.of("id: 1", "event: greeting", "data: hello"));
+                    assertEquals(readEvent(is), List.of("id: 2", "data: two", "data: lines"));
+                }
+            }
+            waitUntil(() -> broadcaster.getSubscriberCount() == 0);
+        }
+        broadcaster.close();
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    /**
+     * A client reconnecting with a Last-Event-ID gets the events it
+     * missed, if they are still in the replay buffer
+     */
+    @Test
+    public void test_Broadcast_ReplayFromLastEventId() throws Exception {
+        var broadcaster = new SseBroadcaster(context, 10, SlowConsumerPolicy.DISCONNECT, 10_000, 3);
+        for (int i = 1; i <= 5; i++) {
+            broadcaster.publish("event " + i);
+        }
+        var request = new FakeRequest();
+        request.headers = new Headers(List.of("Last-Event-ID: 3"));
+        Response response = (Response) broadcaster.subscribe(request);
+        var sw = new FakeSocketWrapper();
+
+        Future<?> future = context.getExecutorService().submit(() -> {
+            response.sendBody(sw);
+            return null;
+        });
+        waitUntil(() -> broadcaster.getSubscriberCount() == 1);
+        broadcaster.close();
+        future.get();
+
+        assertEquals(((ByteArrayOutputStream) sw.os).toString(StandardCharsets.UTF_8),
+                "id: 4\ndata: event 4\n\nid: 5\ndata: event 5\n\n");
+    }
+
+    /**
+     * If nothing is published for a while, subscribers are sent a comment
+     * as a heartbeat
+     */
+    @Test
+    public void test_Broadcast_Heartbeat() throws Exception {
+        var broadcaster = new SseBroadcaster(context, 10, SlowConsumerPolicy.DISCONNECT, 10, 10);
+        var request = new FakeRequest();
+        request.headers = new Headers(List.of());
+        Response response = (Response) broadcaster.subscribe(request);
+        var sw = new FakeSocketWrapper();
+
+        Future<?> future = context.getExecutorService().submit(() -> {
+            response.sendBody(sw);
+            return null;
+        });
+        waitUntil(() -> ((ByteArrayOutputStream) sw.os).size() > 0);
+        broadcaster.close();
+        future.get();
+
+        assertTrue(((ByteArrayOutputStream) sw.os).toString(StandardCharsets.UTF_8).startsWith(":\n\n"));
+    }
+
+    /**
+     * When a subscriber stops reading, its queue fills.  With the DROP policy,
+     * further events are skipped for that subscriber, but it stays connected.
+     * With the DISCONNECT policy, it is disconnected.
+     */
+    @Test
+    public void test_Broadcast_SlowConsumer() throws Exception {
+        for (SlowConsumerPolicy policy : SlowConsumerPolicy.values()) {
+            var broadcaster = new SseBroadcaster(context, 2, policy, 10_000, 10);
+            var request = new FakeRequest();
+            request.headers = new Headers(List.of());
+            Response response = (Response) broadcaster.subscribe(request);
+            var unblock = new CountDownLatch(1);
+            var firstWriteStarted = new CountDownLatch(1);
+            // closing the connection is what frees a writer blocked on a client not reading
+            var sw = new FakeSocketWrapper() {
+                @Override
+                public void close() {
+                    unblock.countDown();
+                }
+            };
+            // a client which reads nothing until we say so
+            sw.os = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    firstWriteStarted.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+
+            Future<?> future = context.getExecutorService().submit(() -> {
+                response.sendBody(sw);
+                return null;
+            });
+            waitUntil(() -> broadcaster.getSubscriberCount() == 1);
+
+            // the first event is taken by the writer, which then blocks.  Two more fill the queue.
+            broadcaster.publish("one");
+            firstWriteStarted.await();
+            broadcaster.publish("two");
+            broadcaster.publish("three");
+            assertEquals(broadcaster.getDroppedEventCount(), 0L);
+
+            // this one does not fit
+            broadcaster.publish("four");
+            assertEquals(broadcaster.getDroppedEventCount(), 1L);
+
+            if (policy == SlowConsumerPolicy.DROP) {
+                assertEquals(broadcaster.getDisconnectedSubscriberCount(), 0L);
+                assertEquals(broadcaster.getSubscriberCount(), 1);
+                unblock.countDown();
+                broadcaster.close();
+            } else {
+                // the writer is still blocked sending "one", and is freed
+                // by the broadcaster closing its connection
+                assertEquals(broadcaster.getDisconnectedSubscriberCount(), 1L);
+            }
+            future.get();
+            assertEquals(broadcaster.getSubscriberCount(), 0);
+        }
+    }
+
+    /**
+     * Closing a slow subscriber's connection may block, as it can on TLS.
+     * Other publishers carry on meanwhile.
+     */
+    @Test
+    public void test_Broadcast_SlowClose_DoesNotBlockPublishers() throws Exception {
+        var broadcaster = new SseBroadcaster(context, 1, SlowConsumerPolicy.DISCONNECT, 10_000, 10);
+        var request = new FakeRequest();
+        request.headers = new Headers(List.of());
+        Response response = (Response) broadcaster.subscribe(request);
+        var firstWriteStarted = new CountDownLatch(1);
+        var closeStarted = new CountDownLatch(1);
+        var releaseClose = new CountDownLatch(1);
+        var unblock = new CountDownLatch(1);
+        var sw = new FakeSocketWrapper() {
+            @Override
+            public void close() {
+                closeStarted.countDown();
+                try {
+                    releaseClose.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                unblock.countDown();
+            }
+        };
+        sw.os = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                firstWriteStarted.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        Future<?> writer = context.getExecutorService().submit(() -> {
+            response.sendBody(sw);
+            return null;
+        });
+        waitUntil(() -> broadcaster.getSubscriberCount() == 1);
+        broadcaster.publish("one");
+        firstWriteStarted.await();
+        broadcaster.publish("two");
+
+        // this one does not fit, and its publisher is stuck closing the connection
+        Future<?> slowPublisher = context.getExecutorService().submit(() -> broadcaster.publish("three"));
+        closeStarted.await();
+
+        Future<?> otherPublisher = context.getExecutorService().submit(() -> broadcaster.publish("four"));
+        otherPublisher.get(2, TimeUnit.SECONDS);
+        assertEquals(broadcaster.getDisconnectedSubscriberCount(), 1L);
+
+        releaseClose.countDown();
+        slowPublisher.get();
+        writer.get();
+        assertEquals(broadcaster.getSubscriberCount(), 0);
+    }
+
+    @Test
+    public void test_Broadcast_EdgeCase_PublishAfterClose() {
+        var broadcaster = new SseBroadcaster(context);
+        broadcaster.close();
+        var ex = assertThrows(WebServerException.class, () -> broadcaster.publish("hello"));
+        assertEquals(ex.getMessage(), "Error: this SseBroadcaster is closed");
+    }
+
+    /**
+     * Read the lines of one event, up to the blank line ending it,
+     * skipping heartbeats
+     */
+    private static List<String> readEvent(InputStream is) throws IOException {
+        var result = new ArrayList<String>();
+        var line = new ByteArrayOutputStream();
+        while (true) {
+            int b = is.read();
+            if (b == -1) throw new IOException("stream ended unexpectedly");
+            if (b == '\n') {
+                if (line.size() == 0 && !result.isEmpty()) return result;
+                String value = line.toString(StandardCharsets.UTF_8);
+                if (!value.isEmpty() && !value.startsWith(":")) result.add(value);
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) return;
+            MyThread.sleep(10);
+        }
+        throw new AssertionError("condition was not met in time");
+    }
+}
@@ -0,0 +1,306 @@
+package com.renomad.minum.web;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.MyThread;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.WebSocketFrames.*;
+
+public class WebSocketTests {
+
+    private static Context context;
+    private static IInputStreamUtils inputStreamUtils;
+
+    @BeforeClass
+    public static void init() {
+        var properties = new Properties();
+        properties.setProperty("SERVER_PORT", "7980");
+        properties.setProperty("MAX_WEBSOCKET_CONNECTIONS", "1");
+        properties.setProperty("MAX_WEBSOCKET_MESSAGE_SIZE_BYTES", "100");
+        context = buildTestingContext("unit_tests", properties);
+        inputStreamUtils = new InputStreamUtils(context.getConstants().maxReadLineSizeBytes);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        shutdownTestingContext(context);
+    }
+
+    /**
+     * The example from RFC 6455, section 1.3
+     */
+    @Test
+    public void test_ComputeWebSocketAccept() {
+        assertEquals(WebFramework.computeWebSocketAccept("dGhlIHNhbXBsZSBub25jZQ=="), "s3pPLMBiTxaQ9kYGzzhZRbK+xOo=");
+    }
+
+    @Test
+    public void test_ReadFrame() throws IOException {
+        byte[] frame = buildClientFrame(true, OPCODE_TEXT, "Hello".getBytes(StandardCharsets.UTF_8));
+        var inputStream = new ByteArrayInputStream(frame);
+        Frame result = readFrame(inputStream, inputStream.read(), 1000);
+        assertTrue(result.isFinal());
+        assertEquals(result.opcode(), OPCODE_TEXT);
+        assertEquals(new String(result.payload(), StandardCharsets.UTF_8), "Hello");
+    }
+
+    /**
+     * Payloads from 126 to 65535 bytes use a two-byte extended length
+     */
+    @Test
+    public void test_ReadFrame_ExtendedLength() throws IOException {
+        byte[] payload = new byte[300];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        var inputStream = new ByteArrayInputStream(buildClientFrame(true, OPCODE_BINARY, payload));
+        Frame result = readFrame(inputStream, inputStream.read(), 1000);
+        assertEqualByteArray(result.payload(), payload);
+    }
+
+    @Test
+    public void test_ReadFrame_EdgeCase_Unmasked() {
+        var inputStream = new ByteArrayInputStream(new byte[]{(byte) 0x81, 0x01, 'a'});
+        var ex = assertThrows(ProtocolException.class, () -> readFrame(inputStream, inputStream.read(), 1000));
+        assertEquals(ex.getMessage(), "Error: frames sent by a client must be masked");
+        assertEquals(ex.getCloseCode(), CLOSE_PROTOCOL_ERROR);
+    }
+
+    @Test
+    public void test_ReadFrame_EdgeCase_FragmentedControlFrame() {
+        var inputStream = new ByteArrayInputStream(buildClientFrame(false, OPCODE_PING, new byte[0]));
+        var ex = assertThrows(ProtocolException.class, () -> readFrame(inputStream, inputStream.read(), 1000));
+        assertEquals(ex.getMessage(), "Error: control frames must not be fragmented");
+    }
+
+    @Test
+    public void test_ReadFrame_EdgeCase_TooBig() {
+        var inputStream = new ByteArrayInputStream(buildClientFrame(true, OPCODE_BINARY, new byte[20]));
+        var ex = assertThrows(ProtocolException.class, () -> readFrame(inputStream, inputStream.read(), 10));
+        assertEquals(ex.getCloseCode(), CLOSE_MESSAGE_TOO_BIG);
+    }
+
+    @Test
+    public void test_BuildFrameHeader() {
+        assertEqualByteArray(buildFrameHeader(OPCODE_TEXT, 5), new byte[]{(byte) 0x81, 5});
+        assertEqualByteArray(buildFrameHeader(OPCODE_BINARY, 300), new byte[]{(byte) 0x82, 126, 1, 44});
+        assertEqualByteArray(buildFrameHeader(OPCODE_BINARY, 70_000), new byte[]{(byte) 0x82, 127, 0, 0, 0, 0, 0, 1, 17, 112});
+    }
+
+    /**
+     * A client upgrades to a WebSocket, sends messages whole and in
+     * fragments, pings, and then closes.
+     */
+    @Test
+    public void test_WebSocket_EndToEnd() throws Exception {
+        var closedWithCode = new AtomicInteger();
+        var closed = new CountDownLatch(1);
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        wf.registerWebSocket("echo", new WebSocketHandler() {
+            @Override
+            public void onText(WebSocket webSocket, String message) throws Exception {
+                webSocket.sendText("echo: " + message);
+            }
+
+            @Override
+            public void onBinary(WebSocket webSocket, byte[] message) throws Exception {
+                webSocket.sendBinary(message);
+            }
+
+            @Override
+            public void onClose(WebSocket webSocket, int statusCode, String reason) {
+                closedWithCode.set(statusCode);
+                closed.countDown();
+            }
+        });
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort())) {
+                try (ISocketWrapper client = webEngine.startClient(socket)) {
+                    InputStream is = client.getInputStream();
+                    sendUpgradeRequest(client);
+
+                    assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 101 Switching Protocols");
+                    Headers headers = new Headers(Headers.getAllHeaders(is, inputStreamUtils));
+                    assertEquals(headers.valueByKey("sec-websocket-accept"), List.of("s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+                    assertEquals(wf.getWebSocketConnectionCount(), 1);
+
+                    // a whole text message
+                    client.send(buildClientFrame(true, OPCODE_TEXT, "hello".getBytes(StandardCharsets.UTF_8)));
+                    assertEquals(readServerFrame(is), "echo: hello");
+
+                    // a message in fragments, with a ping in the middle
+                    client.send(buildClientFrame(false, OPCODE_TEXT, "hel".getBytes(StandardCharsets.UTF_8)));
+                    client.send(buildClientFrame(true, OPCODE_PING, "p".getBytes(StandardCharsets.UTF_8)));
+                    assertEquals(is.read(), 0x80 | OPCODE_PONG);
+                    assertEquals(is.read(), 1);
+                    assertEquals(is.read(), (int) 'p');
+                    client.send(buildClientFrame(true, OPCODE_CONTINUATION, "lo there".getBytes(StandardCharsets.UTF_8)));
+                    assertEquals(readServerFrame(is), "echo: hello there");
+
+                    // close, with status 1000
+                    client.send(buildClientFrame(true, OPCODE_CLOSE, new byte[]{0x03, (byte) 0xE8}));
+                    assertEquals(is.read(), 0x80 | OPCODE_CLOSE);
+                    assertTrue(closed.await(2, TimeUnit.SECONDS));
+                    assertEquals(closedWithCode.get(), 1000);
+                }
+            }
+        }
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    /**
+     * Past the limit on connections, the upgrade is refused.  Also,
+     * a message larger than the maximum closes the connection.
+     */
+    @Test
+    public void test_WebSocket_ConnectionLimitAndMessageSize() throws Exception {
+        var closedWithCode = new AtomicInteger();
+        var closed = new CountDownLatch(1);
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        wf.registerWebSocket("limited", new WebSocketHandler() {
+            @Override
+            public void onClose(WebSocket webSocket, int statusCode, String reason) {
+                closedWithCode.set(statusCode);
+                closed.countDown();
+            }
+        });
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                InputStream is = client.getInputStream();
+                sendUpgradeRequest(client, "limited");
+                assertEquals(inputStreamUtils.readLine(is), "HTTP/1.1 101 Switching Protocols");
+                Headers.getAllHeaders(is, inputStreamUtils);
+
+                try (Socket socket2 = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                     ISocketWrapper client2 = webEngine.startClient(socket2)) {
+                    sendUpgradeRequest(client2, "limited");
+                    assertEquals(inputStreamUtils.readLine(client2.getInputStream()), "HTTP/1.1 503 SERVICE UNAVAILABLE");
+                }
+
+                client.send(buildClientFrame(true, OPCODE_BINARY, new byte[101]));
+                assertEquals(is.read(), 0x80 | OPCODE_CLOSE);
+                assertTrue(closed.await(2, TimeUnit.SECONDS));
+                assertEquals(closedWithCode.get(), CLOSE_MESSAGE_TOO_BIG);
+            }
+        }
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    /**
+     * The upgrade request runs through middleware like any GET request, so
+     * authentication there protects the WebSocket.  A refusal is sent as an
+     * ordinary response, and the handler sees the request that was allowed.
+     */
+    @Test
+    public void test_WebSocket_Middleware() throws Exception {
+        var openedWith = new AtomicReference<String>();
+        var opened = new CountDownLatch(1);
+        var wf = new WebFramework(context);
+        var webEngine = new WebEngine(context, wf);
+        wf.registerMiddleware("secure/", (request, next) -> {
+            if (request.getHeaders().valueByKey("authorization") == null) {
+                return Response.buildLeanResponse(StatusLine.StatusCode.CODE_403_FORBIDDEN);
+            }
+            return next.apply(request);
+        });
+        wf.registerWebSocket("secure/chat", new WebSocketHandler() {
+            @Override
+            public void onOpen(WebSocket webSocket) {
+                openedWith.set(webSocket.getRequest().getHeaders().valueByKey("authorization").getFirst());
+                opened.countDown();
+            }
+        });
+
+        try (IServer primaryServer = webEngine.startServer()) {
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                sendUpgradeRequest(client, "secure/chat");
+                assertEquals(inputStreamUtils.readLine(client.getInputStream()), "HTTP/1.1 403 FORBIDDEN");
+            }
+            assertEquals(opened.getCount(), 1L);
+
+            try (Socket socket = new Socket(primaryServer.getHost(), primaryServer.getPort());
+                 ISocketWrapper client = webEngine.startClient(socket)) {
+                client.sendHttpLine("GET /secure/chat HTTP/1.1");
+                client.sendHttpLine("Host: localhost:7980");
+                client.sendHttpLine("Authorization: Bearer abc");
+                client.sendHttpLine("Upgrade: websocket");
+                client.sendHttpLine("Connection: Upgrade");
+                client.sendHttpLine("Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==");
+                client.sendHttpLine("Sec-WebSocket-Version: 13");
+                client.sendHttpLine("");
+                assertEquals(inputStreamUtils.readLine(client.getInputStream()), "HTTP/1.1 101 Switching Protocols");
+                assertTrue(opened.await(2, TimeUnit.SECONDS));
+                assertEquals(openedWith.get(), "Bearer abc");
+                client.send(buildClientFrame(true, OPCODE_CLOSE, new byte[]{0x03, (byte) 0xE8}));
+            }
+        }
+        MyThread.sleep(WebTests.SERVER_CLOSE_WAIT_TIME);
+    }
+
+    private static void sendUpgradeRequest(ISocketWrapper client) throws IOException {
+        sendUpgradeRequest(client, "echo");
+    }
+
+    private static void sendUpgradeRequest(ISocketWrapper client, String path) throws IOException {
+        client.sendHttpLine("GET /" + path + " HTTP/1.1");
+        client.sendHttpLine("Host: localhost:7980");
+        client.sendHttpLine("Upgrade: websocket");
+        client.sendHttpLine("Connection: Upgrade");
+        client.sendHttpLine("Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==");
+        client.sendHttpLine("Sec-WebSocket-Version: 13");
+        client.sendHttpLine("");
+    }
+
+    /**
+     * Build a frame as a client would, masked
+     */
+    private static byte[] buildClientFrame(boolean isFinal, int opcode, byte[] payload) {
+        var baos = new ByteArrayOutputStream();
+        baos.write((isFinal ? 0x80 : 0) | opcode);
+        if (payload.length < 126) {
+            baos.write(0x80 | payload.length);
+        } else {
+            baos.write(0x80 | 126);
+            baos.write(payload.length >>> 8);
+            baos.write(payload.length & 0xFF);
+        }
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        baos.writeBytes(mask);
+        for (int i = 0; i < payload.length; i++) {
+            baos.write(payload[i] ^ mask[i & 3]);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read a short, unfragmented frame from the server, as text
+     */
+    private static String readServerFrame(InputStream is) throws IOException {
+        int firstByte = is.read();
+        assertEquals(firstByte & 0x80, 0x80);
+        int length = is.read();
+        return new String(is.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}